@@ -28,6 +28,8 @@ import java.util.StringTokenizer;
 import org.apache.camel.Endpoint;
 import org.apache.camel.impl.UriEndpointComponent;
 import org.apache.camel.spi.UriEndpoint;
+import org.ardulink.camel.EndpointConfig.BodyType;
+import org.ardulink.camel.EndpointConfig.Conflation;
 import org.ardulink.core.Pin;
 import org.ardulink.util.Optional;
 
@@ -52,6 +54,20 @@ public class ArdulinkComponent extends UriEndpointComponent {
 		EndpointConfig config = new EndpointConfig()
 				.type(remaining)
 				.listenTo(parsePins(getOptional(parameters, "listenTo").or("")))
+				.consume(parsePins(getOptional(parameters, "consume").or("")))
+				.bodyType(
+						BodyType.valueOf(getOptional(parameters, "bodyType")
+								.or(BodyType.TEXT.name()).toUpperCase()))
+				.throttle(
+						Long.parseLong(getOptional(parameters, "throttle").or(
+								"0")))
+				.conflate(
+						Conflation.valueOf(getOptional(parameters, "conflate")
+								.or(Conflation.LATEST.name()).toUpperCase()))
+				.replyTimeout(
+						Long.parseLong(getOptional(parameters, "replyTimeout")
+								.or(String
+										.valueOf(ArdulinkProducer.DEFAULT_REPLY_TIMEOUT_MILLIS))))
 				.linkParams(parameters);
 		parameters.clear();
 		ArdulinkEndpoint endpoint = new ArdulinkEndpoint(uri, this, config);
@@ -1,9 +1,13 @@
 package org.ardulink.camel;
 
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static org.ardulink.core.proto.impl.ALProtoBuilder.ALPProtocolKey.ANALOG_PIN_READ;
 import static org.ardulink.core.proto.impl.ALProtoBuilder.ALPProtocolKey.DIGITAL_PIN_READ;
+import static org.ardulink.util.Preconditions.checkNotNull;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
 
 import org.apache.camel.Endpoint;
 import org.apache.camel.Exchange;
@@ -11,7 +15,9 @@ import org.apache.camel.Message;
 import org.apache.camel.Processor;
 import org.apache.camel.impl.DefaultConsumer;
 import org.apache.camel.impl.DefaultMessage;
+import org.ardulink.camel.EndpointConfig.BodyType;
 import org.ardulink.core.Link;
+import org.ardulink.core.Pin;
 import org.ardulink.core.events.AnalogPinValueChangedEvent;
 import org.ardulink.core.events.DigitalPinValueChangedEvent;
 import org.ardulink.core.events.EventListener;
@@ -20,24 +26,105 @@ import org.ardulink.core.proto.impl.ALProtoBuilder;
 public class ArdulinkConsumer extends DefaultConsumer {
 
 	private final EventListener listener = listener();
-	private final Link link;
+	/**
+	 * The endpoint the link is acquired from while started, <code>null</code>
+	 * if the link was passed by the creator of this consumer.
+	 */
+	private final ArdulinkEndpoint owner;
+	private Link link;
+	private final boolean typed;
+	private final List<Pin> listenTo;
+	private final List<Pin> consume;
+	private final long throttleMillis;
+	/**
+	 * <code>null</code> if not throttled
+	 */
+	private final Conflater conflater;
+	private ScheduledExecutorService drainer;
 
 	public ArdulinkConsumer(Endpoint endpoint, Processor processor, Link link)
 			throws IOException {
+		this(endpoint, processor, link, BodyType.TEXT);
+	}
+
+	public ArdulinkConsumer(Endpoint endpoint, Processor processor, Link link,
+			BodyType bodyType) throws IOException {
+		this(endpoint, processor, link, new EndpointConfig().bodyType(bodyType));
+	}
+
+	/**
+	 * Creates a consumer that has the link listen to the config's pins as long
+	 * as it is started and only passes the events of the pins to consume. If
+	 * throttling is configured the values received within the interval are
+	 * conflated before any exchange is created.
+	 */
+	public ArdulinkConsumer(Endpoint endpoint, Processor processor, Link link,
+			EndpointConfig config) throws IOException {
+		this(endpoint, null, processor, checkNotNull(link,
+				"link must not be null"), config);
+	}
+
+	/**
+	 * Creates a consumer using the link of the endpoint as long as it is
+	 * started.
+	 */
+	ArdulinkConsumer(ArdulinkEndpoint endpoint, Processor processor,
+			EndpointConfig config) {
+		this(endpoint, endpoint, processor, null, config);
+	}
+
+	private ArdulinkConsumer(Endpoint endpoint, ArdulinkEndpoint owner,
+			Processor processor, Link link, EndpointConfig config) {
 		super(endpoint, processor);
+		this.owner = owner;
 		this.link = link;
+		this.typed = config.getBodyType() == BodyType.EVENT;
+		this.listenTo = config.getPins();
+		this.consume = config.getConsume();
+		this.throttleMillis = config.getThrottleMillis();
+		this.conflater = throttleMillis > 0 ? new Conflater(
+				config.getConflation()) : null;
 	}
 
 	@Override
-	public void start() throws Exception {
-		link.addListener(listener);
-		super.start();
+	protected void doStart() throws Exception {
+		if (owner != null) {
+			link = owner.acquireLink(this);
+		}
+		if (conflater != null) {
+			drainer = getEndpoint().getCamelContext()
+					.getExecutorServiceManager()
+					.newSingleThreadScheduledExecutor(this, "ArdulinkConsumer");
+			drainer.scheduleAtFixedRate(new Runnable() {
+				@Override
+				public void run() {
+					conflater.drain(new Conflater.Sink() {
+						@Override
+						public void emit(Pin pin, Object value) {
+							ArdulinkConsumer.this.emit(pin, value);
+						}
+					});
+				}
+			}, throttleMillis, throttleMillis, MILLISECONDS);
+		}
+		IndexedEventDispatcher.add(link, listenTo, consume, listener);
+		super.doStart();
 	}
 
 	@Override
-	public void stop() throws Exception {
-		link.removeListener(listener);
-		super.stop();
+	protected void doStop() throws Exception {
+		IndexedEventDispatcher.remove(link, listenTo, consume, listener);
+		ScheduledExecutorService tmpDrainer = this.drainer;
+		if (tmpDrainer != null) {
+			getEndpoint().getCamelContext().getExecutorServiceManager()
+					.shutdownNow(tmpDrainer);
+			this.drainer = null;
+		}
+		if (owner != null) {
+			link = null;
+			owner.releaseLink(this);
+		}
+		super.doStop();
 	}
 
 	private EventListener listener() {
@@ -45,37 +132,22 @@ public class ArdulinkConsumer extends DefaultConsumer {
 
 			@Override
 			public void stateChanged(DigitalPinValueChangedEvent event) {
-				String body = ALProtoBuilder
-						.alpProtocolMessage(DIGITAL_PIN_READ)
-						.forPin(event.getPin().pinNum())
-						.withState(event.getValue().booleanValue());
-				process(exchangeWithBody(body));
+				if (conflater == null) {
+					emit(event.getPin(), event.getValue(),
+							event.getReceivedNanos());
+				} else {
+					conflater.add(event.getPin(), event.getValue()
+							.booleanValue());
+				}
 			}
 
 			@Override
 			public void stateChanged(AnalogPinValueChangedEvent event) {
-				String body = ALProtoBuilder
-						.alpProtocolMessage(ANALOG_PIN_READ)
-						.forPin(event.getPin().pinNum())
-						.withValue(event.getValue().intValue());
-				process(exchangeWithBody(body));
-			}
-
-			private Exchange exchangeWithBody(String body) {
-				Exchange exchange = getEndpoint().createExchange();
-				Message message = new DefaultMessage();
-				message.setBody(body);
-				exchange.setIn(message);
-				return exchange;
-			}
-
-			private void process(Exchange exchange) {
-				try {
-					getAsyncProcessor().process(exchange);
-				} catch (Exception ex) {
-					ex.printStackTrace();
-					getExceptionHandler().handleException(
-							"Failed to process notification", ex);
+				if (conflater == null) {
+					emit(event.getPin(), event.getValue(),
+							event.getReceivedNanos());
+				} else {
+					conflater.add(event.getPin(), event.getValue().intValue());
 				}
 			}
 
@@ -83,4 +155,46 @@ public class ArdulinkConsumer extends DefaultConsumer {
 
 	}
 
+	/**
+	 * Creates and processes the exchange for the pin's value. Until here no
+	 * exchange has been created, so throttled events that got conflated don't
+	 * cause any exchanges.
+	 */
+	private void emit(Pin pin, Object value) {
+		emit(pin, value, System.nanoTime());
+	}
+
+	private void emit(Pin pin, Object value, long receivedNanos) {
+		if (typed) {
+			process(exchangeWithBody(new PinEvent(pin, value,
+					System.currentTimeMillis(), receivedNanos)));
+		} else if (value instanceof Boolean) {
+			process(exchangeWithBody(ALProtoBuilder
+					.alpProtocolMessage(DIGITAL_PIN_READ).forPin(pin.pinNum())
+					.withState(((Boolean) value).booleanValue())));
+		} else {
+			process(exchangeWithBody(ALProtoBuilder
+					.alpProtocolMessage(ANALOG_PIN_READ).forPin(pin.pinNum())
+					.withValue(((Integer) value).intValue())));
+		}
+	}
+
+	private Exchange exchangeWithBody(Object body) {
+		Exchange exchange = getEndpoint().createExchange();
+		Message message = new DefaultMessage();
+		message.setBody(body);
+		exchange.setIn(message);
+		return exchange;
+	}
+
+	private void process(Exchange exchange) {
+		try {
+			getAsyncProcessor().process(exchange);
+		} catch (Exception ex) {
+			ex.printStackTrace();
+			getExceptionHandler().handleException(
+					"Failed to process notification", ex);
+		}
+	}
+
 }
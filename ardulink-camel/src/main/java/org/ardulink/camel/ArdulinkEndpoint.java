@@ -3,7 +3,9 @@ package org.ardulink.camel;
 import static org.ardulink.util.Preconditions.checkNotNull;
 
 import java.io.IOException;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.camel.Component;
 import org.apache.camel.Consumer;
@@ -12,7 +14,6 @@ import org.apache.camel.Processor;
 import org.apache.camel.Producer;
 import org.apache.camel.impl.DefaultEndpoint;
 import org.ardulink.core.Link;
-import org.ardulink.core.Pin;
 import org.ardulink.core.convenience.Links;
 import org.ardulink.util.Joiner;
 import org.ardulink.util.Joiner.MapJoiner;
@@ -26,18 +27,58 @@ public class ArdulinkEndpoint extends DefaultEndpoint implements
 			.withKeyValueSeparator("=");
 
 	private EndpointConfig config;
-	private final Link link;
+	private Link link;
+	private final Set<Object> linkUsers = new HashSet<Object>();
 
 	public ArdulinkEndpoint(String uri, Component ardulinkComponent,
 			EndpointConfig config) throws IOException {
 		super(uri, ardulinkComponent);
 		this.config = config;
-		this.link = createLink();
-		for (Pin pin : config.getPins()) {
-			this.link.startListening(pin);
+		checkNotNull(config.getType(), "type must not be null");
+	}
+
+	/**
+	 * Returns the link shared by the producers and consumers of this endpoint,
+	 * it is opened for the first one started. Each call has to be followed by
+	 * a call of {@link #releaseLink(Object)}.
+	 */
+	synchronized Link acquireLink(Object user) {
+		if (link == null) {
+			link = createLink();
+		}
+		linkUsers.add(user);
+		return link;
+	}
+
+	/**
+	 * Closes the link when the last producer or consumer of this endpoint
+	 * has been stopped.
+	 */
+	synchronized void releaseLink(Object user) throws IOException {
+		if (linkUsers.remove(user) && linkUsers.isEmpty()) {
+			closeLink();
 		}
 	}
 
+	/**
+	 * Closes the link even if there are producers not stopped (e.g. the ones
+	 * cached by producer templates).
+	 */
+	@Override
+	protected synchronized void doStop() throws Exception {
+		if (link != null) {
+			linkUsers.clear();
+			closeLink();
+		}
+		super.doStop();
+	}
+
+	private void closeLink() throws IOException {
+		Link tmpLink = link;
+		link = null;
+		tmpLink.close();
+	}
+
 	private Link createLink() {
 		try {
 			return Links.getLink(URIs.newURI(appendParams("ardulink://"
@@ -50,7 +91,7 @@ public class ArdulinkEndpoint extends DefaultEndpoint implements
 
 	@Override
 	public Producer createProducer() throws Exception {
-		return new ArdulinkProducer(this, this.link);
+		return new ArdulinkProducer(this, config.getReplyTimeoutMillis());
 	}
 
 	private static String appendParams(String base,
@@ -61,7 +102,7 @@ public class ArdulinkEndpoint extends DefaultEndpoint implements
 
 	@Override
 	public Consumer createConsumer(Processor processor) throws Exception {
-		return new ArdulinkConsumer(this, processor, link);
+		return new ArdulinkConsumer(this, processor, config);
 	}
 
 	@Override
@@ -74,7 +115,11 @@ public class ArdulinkEndpoint extends DefaultEndpoint implements
 		return true;
 	}
 
-	public Link getLink() {
+	/**
+	 * Returns the link of this endpoint or <code>null</code> if none of its
+	 * producers and consumers is started.
+	 */
+	public synchronized Link getLink() {
 		return link;
 	}
 
@@ -16,38 +16,85 @@ limitations under the License.
 
 package org.ardulink.camel;
 
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static org.ardulink.core.Pin.analogPin;
 import static org.ardulink.core.Pin.digitalPin;
 import static org.ardulink.core.Pin.Type.ANALOG;
 import static org.ardulink.core.Pin.Type.DIGITAL;
 import static org.ardulink.core.messages.api.FromDeviceChangeListeningState.Mode.START;
 import static org.ardulink.core.messages.api.FromDeviceChangeListeningState.Mode.STOP;
+import static org.ardulink.util.Preconditions.checkArgument;
+import static org.ardulink.util.Preconditions.checkNotNull;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 
+import org.apache.camel.AsyncCallback;
 import org.apache.camel.Endpoint;
 import org.apache.camel.Exchange;
+import org.apache.camel.ExchangeTimedOutException;
 import org.apache.camel.Message;
-import org.apache.camel.impl.DefaultProducer;
+import org.apache.camel.impl.DefaultAsyncProducer;
+import org.apache.camel.util.concurrent.SizedScheduledExecutorService;
+import org.ardulink.core.ConnectionBasedLink;
+import org.ardulink.core.ConnectionBasedLink.Batch;
 import org.ardulink.core.Link;
 import org.ardulink.core.Pin;
+import org.ardulink.core.convenience.LinkDelegate;
+import org.ardulink.core.events.PinValueChangedEvent;
+import org.ardulink.core.events.RplyEvent;
+import org.ardulink.core.events.RplyListener;
 import org.ardulink.core.messages.api.FromDeviceChangeListeningState;
 import org.ardulink.core.messages.api.FromDeviceMessage;
 import org.ardulink.core.messages.api.FromDeviceMessagePinStateChanged;
 import org.ardulink.core.proto.api.Protocol;
 import org.ardulink.core.proto.impl.ArdulinkProtocol2;
+import org.ardulink.core.qos.QosLink;
 
 /**
  * [ardulinktitle] [ardulinkversion]
- * 
+ *
+ * Passes the commands of the exchanges to the link. The body can be alp text
+ * (one command per line), typed ({@link PinValueChangedEvent}s like
+ * {@link PinEvent} or {@link FromDeviceMessage}s) or a list of those. All
+ * commands of one exchange are sent using one write if the link supports it.
+ * <br>
+ * Links not waiting for replies complete the exchange as soon as the commands
+ * are written. For qos links the commands are sent without waiting and the
+ * exchange is completed asynchronously by the device's last reply, so neither
+ * a camel thread nor any other thread is parked per exchange and many
+ * exchanges can be in flight at once. Exchanges whose replies did not arrive
+ * within the reply timeout fail with an {@link ExchangeTimedOutException}.
+ * Note that the commands are sent using the qos link's delegate so they
+ * bypass the qos link's one-message-at-a-time ordering: Messages of other
+ * users of the same qos link may be interleaved with the producer's ones (each
+ * message is still answered by its own reply).
+ *
  * project Ardulink http://www.ardulink.org/
- * 
+ *
  * [adsense]
  *
  */
-public class ArdulinkProducer extends DefaultProducer {
+public class ArdulinkProducer extends DefaultAsyncProducer {
+
+	public static final long DEFAULT_REPLY_TIMEOUT_MILLIS = 10000;
+
+	private static final String OK = "OK";
+
+	/**
+	 * The endpoint the link is acquired from while started, <code>null</code>
+	 * if the link was passed by the creator of this producer.
+	 */
+	private final ArdulinkEndpoint owner;
 
-	private final Link link;
+	private Link link;
+
+	private final long replyTimeoutMillis;
 
 	/**
 	 * This is NOT the protocol of the link but the expected payload of camel's
@@ -55,54 +102,506 @@ public class ArdulinkProducer extends DefaultProducer {
 	 */
 	private final Protocol protocol = ArdulinkProtocol2.instance();
 
+	/**
+	 * The link of the qos link the commands are sent with (without waiting),
+	 * <code>null</code> if the link does not wait for replies.
+	 */
+	private Link nonBlocking;
+
+	/**
+	 * Guards {@link #pending} and {@link #sending}. Not held while writing to
+	 * the link so the dispatching of replies is never blocked by a write.
+	 */
+	private final Object lock = new Object();
+
+	private final Map<Long, Pending> pending = new HashMap<Long, Pending>();
+
+	/**
+	 * The exchanges being sent, they collect the replies arriving before
+	 * their ids are known.
+	 */
+	private final List<Pending> sending = new ArrayList<Pending>();
+
+	private ScheduledExecutorService timeouts;
+
+	private final RplyListener rplyListener = new RplyListener() {
+		@Override
+		public void rplyReceived(RplyEvent event) {
+			Pending exchange;
+			synchronized (lock) {
+				exchange = pending.remove(event.getId());
+				if (exchange == null) {
+					// the exchange sending it might not know its ids yet
+					for (Pending sender : sending) {
+						sender.unanswered.add(event);
+					}
+				}
+			}
+			if (exchange != null) {
+				exchange.replied(event);
+			}
+		}
+	};
+
+	/**
+	 * A command and the text it was parsed from (<code>null</code> for typed
+	 * commands).
+	 */
+	private static class Command {
+
+		private final String text;
+		private final Object message;
+
+		private Command(String text, Object message) {
+			this.text = text;
+			this.message = message;
+		}
+
+		private boolean isSupported() {
+			return message instanceof PinValueChangedEvent
+					|| message instanceof FromDeviceMessagePinStateChanged
+					|| message instanceof FromDeviceChangeListeningState;
+		}
+
+		private Object response() {
+			return text == null ? message : isSupported() ? text + "=" + OK
+					: text;
+		}
+
+	}
+
+	/**
+	 * The commands of an exchange's body.
+	 */
+	private static class Request {
+
+		private final List<Command> commands = new ArrayList<Command>();
+		private boolean list;
+		private String separator = "\n";
+
+	}
+
+	/**
+	 * An exchange waiting for the replies to its commands.
+	 */
+	private class Pending {
+
+		private final Exchange exchange;
+		private final AsyncCallback callback;
+		private final Request request;
+		private final List<Long> ids = new ArrayList<Long>();
+		private final List<RplyEvent> unanswered = new ArrayList<RplyEvent>();
+		private int outstanding;
+		private boolean completed;
+		private Exception failure;
+		private ScheduledFuture<?> timeout;
+
+		private Pending(Exchange exchange, AsyncCallback callback,
+				Request request) {
+			this.exchange = exchange;
+			this.callback = callback;
+			this.request = request;
+		}
+
+		/**
+		 * Registers the ids of the replies to wait for, must be called while
+		 * holding {@link ArdulinkProducer#lock}.
+		 * 
+		 * @return the replies that arrived while sending, they have to be
+		 *         passed to {@link #replied(RplyEvent)} without holding the
+		 *         lock
+		 */
+		private List<RplyEvent> await(long[] ids) {
+			Map<Long, RplyEvent> early = new HashMap<Long, RplyEvent>();
+			for (RplyEvent event : unanswered) {
+				early.put(event.getId(), event);
+			}
+			unanswered.clear();
+			List<RplyEvent> replies = new ArrayList<RplyEvent>();
+			for (long id : ids) {
+				// links not supporting replies do not return ids
+				if (id > 0) {
+					this.ids.add(id);
+					RplyEvent reply = early.get(id);
+					if (reply == null) {
+						pending.put(id, this);
+					} else {
+						replies.add(reply);
+					}
+				}
+			}
+			synchronized (this) {
+				outstanding = this.ids.size();
+			}
+			return replies;
+		}
+
+		private boolean isAwaiting() {
+			return !ids.isEmpty();
+		}
+
+		private void replied(RplyEvent event) {
+			boolean last;
+			synchronized (this) {
+				if (!event.isOk() && failure == null) {
+					failure = new IllegalStateException(
+							"Response status is not ok");
+				}
+				last = --outstanding == 0;
+			}
+			if (last) {
+				complete(failure);
+			}
+		}
+
+		private void scheduleTimeout() {
+			ScheduledFuture<?> future = timeouts.schedule(new Runnable() {
+				@Override
+				public void run() {
+					timedOut();
+				}
+			}, replyTimeoutMillis, MILLISECONDS);
+			synchronized (this) {
+				if (!completed) {
+					timeout = future;
+					return;
+				}
+			}
+			// the replies arrived while scheduling
+			future.cancel(false);
+		}
+
+		private void timedOut() {
+			synchronized (lock) {
+				for (Long id : ids) {
+					pending.remove(id);
+				}
+			}
+			complete(new ExchangeTimedOutException(exchange, replyTimeoutMillis));
+		}
+
+		private void complete(Exception failure) {
+			ScheduledFuture<?> tmpTimeout;
+			synchronized (this) {
+				if (completed) {
+					return;
+				}
+				completed = true;
+				tmpTimeout = timeout;
+			}
+			if (tmpTimeout != null) {
+				tmpTimeout.cancel(false);
+			}
+			if (failure == null) {
+				setResponse(exchange, request);
+			} else {
+				exchange.setException(failure);
+			}
+			callback.done(false);
+		}
+
+	}
+
 	public ArdulinkProducer(Endpoint endpoint, Link link) {
+		this(endpoint, link, DEFAULT_REPLY_TIMEOUT_MILLIS);
+	}
+
+	/**
+	 * @param replyTimeoutMillis
+	 *            the time to wait for the replies of a qos link before the
+	 *            exchange fails
+	 */
+	public ArdulinkProducer(Endpoint endpoint, Link link,
+			long replyTimeoutMillis) {
+		this(endpoint, null, checkNotNull(link, "link must not be null"),
+				replyTimeoutMillis);
+	}
+
+	/**
+	 * Creates a producer using the link of the endpoint as long as it is
+	 * started.
+	 */
+	ArdulinkProducer(ArdulinkEndpoint endpoint, long replyTimeoutMillis) {
+		this(endpoint, endpoint, null, replyTimeoutMillis);
+	}
+
+	private ArdulinkProducer(Endpoint endpoint, ArdulinkEndpoint owner,
+			Link link, long replyTimeoutMillis) {
 		super(endpoint);
+		checkArgument(replyTimeoutMillis > 0,
+				"replyTimeout must be positive but was %s", replyTimeoutMillis);
+		this.owner = owner;
 		this.link = link;
+		this.replyTimeoutMillis = replyTimeoutMillis;
 	}
 
 	@Override
-	public void process(Exchange exchange) throws Exception {
-		String body = exchange.getIn().getBody(String.class);
-		FromDeviceMessage fromDevice = protocol.fromDevice(body.getBytes());
-		if (fromDevice instanceof FromDeviceMessagePinStateChanged) {
-			handlePinStateChange((FromDeviceMessagePinStateChanged) fromDevice);
-			setResponse(exchange, body, "OK");
-		} else if (fromDevice instanceof FromDeviceChangeListeningState) {
-			handleListeningStateChange((FromDeviceChangeListeningState) fromDevice);
-			setResponse(exchange, body, "OK");
+	protected void doStart() throws Exception {
+		super.doStart();
+		if (owner != null) {
+			link = owner.acquireLink(this);
+		}
+		Link unwrapped = unwrap(link);
+		if (unwrapped instanceof QosLink) {
+			this.nonBlocking = ((QosLink) unwrapped).getDelegate();
+			// makes the link add ids to the messages sent
+			this.nonBlocking.addRplyListener(rplyListener);
+			this.timeouts = getEndpoint().getCamelContext()
+					.getExecutorServiceManager()
+					.newSingleThreadScheduledExecutor(this,
+							"ArdulinkProducerReplyTimeout");
+			if (timeouts instanceof SizedScheduledExecutorService) {
+				// the timeouts of completed exchanges would be kept (and
+				// delay the shutdown) until they expire
+				((SizedScheduledExecutorService) timeouts)
+						.getScheduledThreadPoolExecutor()
+						.setRemoveOnCancelPolicy(true);
+			}
 		}
 	}
 
-	private void setResponse(Exchange exchange, String bodyIn, String rc) {
-		exchange.getIn().setBody(bodyIn + "=" + rc);
+	@Override
+	public boolean process(final Exchange exchange, final AsyncCallback callback) {
+		Request request;
+		try {
+			request = parse(exchange);
+		} catch (Exception e) {
+			exchange.setException(e);
+			callback.done(true);
+			return true;
+		}
+		if (nonBlocking == null) {
+			try {
+				send(link, request.commands);
+				setResponse(exchange, request);
+			} catch (Exception e) {
+				exchange.setException(e);
+			}
+			callback.done(true);
+			return true;
+		}
+		return sendNonBlocking(new Pending(exchange, callback, request));
 	}
 
-	private void handlePinStateChange(FromDeviceMessagePinStateChanged event)
-			throws IOException {
-		Pin pin = event.getPin();
+	private boolean sendNonBlocking(final Pending exchange) {
+		synchronized (lock) {
+			sending.add(exchange);
+		}
+		long[] ids;
+		try {
+			ids = send(nonBlocking, exchange.request.commands);
+		} catch (Exception e) {
+			synchronized (lock) {
+				sending.remove(exchange);
+			}
+			exchange.exchange.setException(e);
+			exchange.callback.done(true);
+			return true;
+		}
+		List<RplyEvent> replies;
+		synchronized (lock) {
+			sending.remove(exchange);
+			replies = exchange.await(ids);
+		}
+		if (!exchange.isAwaiting()) {
+			setResponse(exchange.exchange, exchange.request);
+			exchange.callback.done(true);
+			return true;
+		}
+		exchange.scheduleTimeout();
+		for (RplyEvent reply : replies) {
+			exchange.replied(reply);
+		}
+		return false;
+	}
+
+	private Request parse(Exchange exchange) {
+		Request request = new Request();
+		Object body = exchange.getIn().getBody();
+		if (body instanceof Iterable<?>) {
+			request.list = true;
+			for (Object element : (Iterable<?>) body) {
+				if (!addTyped(request, element)) {
+					addText(request, exchange.getContext().getTypeConverter()
+							.convertTo(String.class, exchange, element));
+				}
+			}
+		} else if (!addTyped(request, body)) {
+			addText(request, exchange.getIn().getBody(String.class));
+		}
+		return request;
+	}
+
+	private static boolean addTyped(Request request, Object body) {
+		if (body instanceof PinValueChangedEvent
+				|| body instanceof FromDeviceMessage) {
+			request.commands.add(new Command(null, body));
+			return true;
+		}
+		return false;
+	}
+
+	private void addText(Request request, String text) {
+		checkNotNull(text, "body must not be null");
+		if (text.contains("\r\n")) {
+			request.separator = "\r\n";
+		}
+		for (String line : text.split("\r?\n")) {
+			if (!line.trim().isEmpty()) {
+				request.commands.add(new Command(line, protocol.fromDevice(line
+						.getBytes())));
+			}
+		}
+	}
+
+	/**
+	 * Sends the commands and returns the ids of the messages sent.
+	 */
+	private long[] send(Link link, List<Command> commands) throws IOException {
+		ConnectionBasedLink batchable = batchable(link);
+		if (batchable == null || commands.size() < 2) {
+			long[] ids = new long[commands.size()];
+			for (int i = 0; i < ids.length; i++) {
+				ids[i] = handle(link, commands.get(i).message);
+			}
+			return ids;
+		}
+		Batch batch = batchable.batch();
+		for (Command command : commands) {
+			add(batch, command.message);
+		}
+		return batch.send();
+	}
+
+	private static Link unwrap(Link link) {
+		return link instanceof LinkDelegate ? ((LinkDelegate) link)
+				.getDelegate() : link;
+	}
+
+	/**
+	 * Returns the link if it can send batches, <code>null</code> otherwise
+	 * (e.g. qos links have to wait for the reply of each message).
+	 */
+	private static ConnectionBasedLink batchable(Link link) {
+		Link unwrapped = unwrap(link);
+		return unwrapped instanceof ConnectionBasedLink ? (ConnectionBasedLink) unwrapped
+				: null;
+	}
+
+	private static void setResponse(Exchange exchange, Request request) {
+		List<Command> commands = request.commands;
+		if (request.list) {
+			List<Object> responses = new ArrayList<Object>(commands.size());
+			for (Command command : commands) {
+				responses.add(command.response());
+			}
+			exchange.getIn().setBody(responses);
+		} else if (commands.size() == 1) {
+			exchange.getIn().setBody(commands.get(0).response());
+		} else if (!commands.isEmpty()) {
+			StringBuilder sb = new StringBuilder();
+			for (Command command : commands) {
+				sb = sb.length() == 0 ? sb : sb.append(request.separator);
+				sb.append(command.response());
+			}
+			exchange.getIn().setBody(sb.toString());
+		}
+	}
+
+	private static long handle(Link link, Object message) throws IOException {
+		if (message instanceof PinValueChangedEvent) {
+			PinValueChangedEvent event = (PinValueChangedEvent) message;
+			return switchPin(link, event.getPin(), event.getValue());
+		} else if (message instanceof FromDeviceMessagePinStateChanged) {
+			FromDeviceMessagePinStateChanged event = (FromDeviceMessagePinStateChanged) message;
+			return switchPin(link, event.getPin(), event.getValue());
+		} else if (message instanceof FromDeviceChangeListeningState) {
+			return handleListeningStateChange(link,
+					(FromDeviceChangeListeningState) message);
+		}
+		return -1;
+	}
+
+	private static void add(Batch batch, Object message) {
+		if (message instanceof PinValueChangedEvent) {
+			PinValueChangedEvent event = (PinValueChangedEvent) message;
+			add(batch, event.getPin(), event.getValue());
+		} else if (message instanceof FromDeviceMessagePinStateChanged) {
+			FromDeviceMessagePinStateChanged event = (FromDeviceMessagePinStateChanged) message;
+			add(batch, event.getPin(), event.getValue());
+		} else if (message instanceof FromDeviceChangeListeningState) {
+			FromDeviceChangeListeningState event = (FromDeviceChangeListeningState) message;
+			if (event.getMode() == START) {
+				batch.startListening(event.getPin());
+			} else if (event.getMode() == STOP) {
+				batch.stopListening(event.getPin());
+			}
+		}
+	}
+
+	private static void add(Batch batch, Pin pin, Object value) {
 		if (pin.is(ANALOG)) {
-			link.switchAnalogPin(analogPin(pin.pinNum()),
-					Integer.parseInt(String.valueOf(event.getValue())));
+			batch.switchAnalogPin(analogPin(pin.pinNum()), intValue(value));
 		} else if (pin.is(DIGITAL)) {
-			link.switchDigitalPin(digitalPin(pin.pinNum()),
-					Boolean.parseBoolean(String.valueOf(event.getValue())));
+			batch.switchDigitalPin(digitalPin(pin.pinNum()), booleanValue(value));
 		}
 	}
 
-	private void handleListeningStateChange(FromDeviceChangeListeningState event)
+	private static long switchPin(Link link, Pin pin, Object value)
 			throws IOException {
+		if (pin.is(ANALOG)) {
+			return link.switchAnalogPin(analogPin(pin.pinNum()),
+					intValue(value));
+		} else if (pin.is(DIGITAL)) {
+			return link.switchDigitalPin(digitalPin(pin.pinNum()),
+					booleanValue(value));
+		}
+		return -1;
+	}
+
+	private static int intValue(Object value) {
+		return value instanceof Integer ? ((Integer) value).intValue()
+				: Integer.parseInt(String.valueOf(value));
+	}
+
+	private static boolean booleanValue(Object value) {
+		return value instanceof Boolean ? ((Boolean) value).booleanValue()
+				: Boolean.parseBoolean(String.valueOf(value));
+	}
+
+	private static long handleListeningStateChange(Link link,
+			FromDeviceChangeListeningState event) throws IOException {
 		Pin pin = event.getPin();
 		if (event.getMode() == START) {
-			link.startListening(pin);
+			return link.startListening(pin);
 		} else if (event.getMode() == STOP) {
-			link.stopListening(pin);
+			return link.stopListening(pin);
 		}
+		return -1;
 	}
 
 	@Override
-	public void stop() throws Exception {
-		this.link.close();
-		super.stop();
+	protected void doStop() throws Exception {
+		if (nonBlocking != null) {
+			nonBlocking.removeRplyListener(rplyListener);
+			getEndpoint().getCamelContext().getExecutorServiceManager()
+					.shutdownNow(timeouts);
+			List<Pending> unanswered;
+			synchronized (lock) {
+				unanswered = new ArrayList<Pending>(pending.values());
+				pending.clear();
+			}
+			for (Pending exchange : unanswered) {
+				exchange.complete(new IllegalStateException(
+						"Producer stopped before the reply arrived"));
+			}
+			nonBlocking = null;
+		}
+		if (owner != null) {
+			link = null;
+			owner.releaseLink(this);
+		}
+		super.doStop();
 	}
 
 }
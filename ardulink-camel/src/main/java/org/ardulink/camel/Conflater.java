@@ -0,0 +1,155 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.camel;
+
+import static org.ardulink.util.Preconditions.checkNotNull;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.ardulink.camel.EndpointConfig.Conflation;
+import org.ardulink.core.Pin;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * Collects the values of each pin between two calls of {@link #drain(Sink)}
+ * and conflates them using a {@link Conflation}. The values are kept in
+ * primitive fields, so adding a value does not allocate. Digital pins always
+ * use {@link Conflation#LATEST}.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+final class Conflater {
+
+	interface Sink {
+		void emit(Pin pin, Object value);
+	}
+
+	private final Conflation conflation;
+	private final ConcurrentMap<Pin, Window> windows = new ConcurrentHashMap<Pin, Window>();
+
+	Conflater(Conflation conflation) {
+		this.conflation = checkNotNull(conflation,
+				"conflation must not be null");
+	}
+
+	void add(Pin pin, int value) {
+		Window window = window(pin);
+		synchronized (window) {
+			window.add(value);
+		}
+	}
+
+	void add(Pin pin, boolean value) {
+		Window window = window(pin);
+		synchronized (window) {
+			window.add(value ? 1 : 0);
+		}
+	}
+
+	/**
+	 * Emits the conflated values of each pin that had values since the last
+	 * drain.
+	 */
+	void drain(Sink sink) {
+		for (Window window : windows.values()) {
+			int count, latest, average, min, max;
+			boolean minFirst;
+			synchronized (window) {
+				if ((count = window.count) == 0) {
+					continue;
+				}
+				latest = window.latest;
+				average = (int) Math.round((double) window.sum / count);
+				min = window.min;
+				max = window.max;
+				minFirst = window.minFirst;
+				window.reset();
+			}
+			Pin pin = window.pin;
+			if (pin.is(Pin.Type.DIGITAL)) {
+				sink.emit(pin, Boolean.valueOf(latest != 0));
+			} else if (conflation == Conflation.AVERAGE) {
+				sink.emit(pin, Integer.valueOf(average));
+			} else if (conflation == Conflation.MINMAX && min != max) {
+				sink.emit(pin, Integer.valueOf(minFirst ? min : max));
+				sink.emit(pin, Integer.valueOf(minFirst ? max : min));
+			} else if (conflation == Conflation.MINMAX) {
+				sink.emit(pin, Integer.valueOf(min));
+			} else {
+				sink.emit(pin, Integer.valueOf(latest));
+			}
+		}
+	}
+
+	private Window window(Pin pin) {
+		Window window = windows.get(pin);
+		if (window == null) {
+			Window newWindow = new Window(pin);
+			window = windows.putIfAbsent(pin, newWindow);
+			if (window == null) {
+				window = newWindow;
+			}
+		}
+		return window;
+	}
+
+	private static final class Window {
+
+		private final Pin pin;
+		private int count;
+		private int latest;
+		private long sum;
+		private int min;
+		private int max;
+		/**
+		 * <code>true</code> if the minimum was seen before the maximum, so
+		 * both can be emitted in the order they occurred.
+		 */
+		private boolean minFirst;
+
+		private Window(Pin pin) {
+			this.pin = pin;
+		}
+
+		private void add(int value) {
+			if (count == 0) {
+				min = max = value;
+				minFirst = true;
+			} else if (value < min) {
+				min = value;
+				minFirst = false;
+			} else if (value > max) {
+				max = value;
+				minFirst = true;
+			}
+			latest = value;
+			sum += value;
+			count++;
+		}
+
+		private void reset() {
+			count = 0;
+			sum = 0;
+		}
+
+	}
+
+}
@@ -2,6 +2,8 @@ package org.ardulink.camel;
 
 import static java.util.Collections.unmodifiableList;
 import static java.util.Collections.unmodifiableMap;
+import static org.ardulink.util.Preconditions.checkArgument;
+import static org.ardulink.util.Preconditions.checkNotNull;
 
 import java.util.Collections;
 import java.util.HashMap;
@@ -13,9 +15,47 @@ import org.ardulink.util.Lists;
 
 public class EndpointConfig {
 
+	/**
+	 * The type of the message bodies the consumer emits.
+	 */
+	public enum BodyType {
+		/**
+		 * alp text, e.g. <code>alp://ared/0/123</code>
+		 */
+		TEXT,
+		/**
+		 * {@link org.ardulink.camel.PinEvent}s
+		 */
+		EVENT;
+	}
+
+	/**
+	 * How the values of a pin within a throttle interval are conflated.
+	 */
+	public enum Conflation {
+		/**
+		 * the last value received
+		 */
+		LATEST,
+		/**
+		 * the (rounded) mean of the values received
+		 */
+		AVERAGE,
+		/**
+		 * the minimum and the maximum value received, in the order they were
+		 * received
+		 */
+		MINMAX;
+	}
+
 	private String type;
 	private Map<String, Object> typeParams = Collections.emptyMap();
 	private List<Pin> pins = Collections.emptyList();
+	private List<Pin> consume = Collections.emptyList();
+	private BodyType bodyType = BodyType.TEXT;
+	private long throttleMillis;
+	private Conflation conflation = Conflation.LATEST;
+	private long replyTimeoutMillis = ArdulinkProducer.DEFAULT_REPLY_TIMEOUT_MILLIS;
 
 	public EndpointConfig type(String type) {
 		this.type = type;
@@ -33,6 +73,49 @@ public class EndpointConfig {
 		return this;
 	}
 
+	/**
+	 * The pins whose events are passed to the consumers. If not set the
+	 * consumers get the events of all pins.
+	 */
+	public EndpointConfig consume(Iterable<Pin> pins) {
+		this.consume = unmodifiableList(Lists.newArrayList(pins));
+		return this;
+	}
+
+	public EndpointConfig bodyType(BodyType bodyType) {
+		this.bodyType = bodyType;
+		return this;
+	}
+
+	/**
+	 * Emit the events of each pin at most every throttleMillis milliseconds.
+	 * The events received in between are conflated, see
+	 * {@link #conflate(Conflation)}. 0 disables throttling.
+	 */
+	public EndpointConfig throttle(long throttleMillis) {
+		checkArgument(throttleMillis >= 0,
+				"throttle must not be negative but was %s", throttleMillis);
+		this.throttleMillis = throttleMillis;
+		return this;
+	}
+
+	public EndpointConfig conflate(Conflation conflation) {
+		this.conflation = checkNotNull(conflation,
+				"conflation must not be null");
+		return this;
+	}
+
+	/**
+	 * The time the producers wait for the replies of a qos link before the
+	 * exchange fails.
+	 */
+	public EndpointConfig replyTimeout(long replyTimeoutMillis) {
+		checkArgument(replyTimeoutMillis > 0,
+				"replyTimeout must be positive but was %s", replyTimeoutMillis);
+		this.replyTimeoutMillis = replyTimeoutMillis;
+		return this;
+	}
+
 	public String getType() {
 		return type;
 	}
@@ -45,4 +128,24 @@ public class EndpointConfig {
 		return pins;
 	}
 
+	public List<Pin> getConsume() {
+		return consume;
+	}
+
+	public BodyType getBodyType() {
+		return bodyType;
+	}
+
+	public long getThrottleMillis() {
+		return throttleMillis;
+	}
+
+	public Conflation getConflation() {
+		return conflation;
+	}
+
+	public long getReplyTimeoutMillis() {
+		return replyTimeoutMillis;
+	}
+
 }
\ No newline at end of file
@@ -0,0 +1,196 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.camel;
+
+import static org.ardulink.util.Preconditions.checkState;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.ardulink.core.Link;
+import org.ardulink.core.Pin;
+import org.ardulink.core.convenience.LinkDelegate;
+import org.ardulink.core.events.AnalogPinValueChangedEvent;
+import org.ardulink.core.events.DigitalPinValueChangedEvent;
+import org.ardulink.core.events.EventListener;
+import org.ardulink.core.events.PinValueChangedEvent;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * The one listener registered on a link for all the consumers of that link
+ * (even if they are using different endpoints). Events are dispatched using
+ * an index by pin so each consumer only gets the pins it consumes.
+ * Listening is reference counted: The link is told to start listening on a
+ * pin when the first consumer needing it is added and to stop listening when
+ * the last one is removed.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+final class IndexedEventDispatcher implements EventListener {
+
+	private static final Map<Link, IndexedEventDispatcher> dispatchers = new HashMap<Link, IndexedEventDispatcher>();
+
+	private final Link link;
+	private final Map<Pin, Integer> listenings = new HashMap<Pin, Integer>();
+	private final List<EventListener> unfiltered = new CopyOnWriteArrayList<EventListener>();
+	private final ConcurrentMap<Pin, List<EventListener>> byPin = new ConcurrentHashMap<Pin, List<EventListener>>();
+	private int listeners;
+
+	private IndexedEventDispatcher(Link link) {
+		this.link = link;
+	}
+
+	/**
+	 * Registers the listener on the link.
+	 *
+	 * @param link
+	 *            the link to listen on
+	 * @param listenTo
+	 *            the pins the link has to listen to
+	 * @param consume
+	 *            the pins whose events are passed to the listener (all pins if
+	 *            empty)
+	 * @param listener
+	 *            the listener to register
+	 */
+	static void add(Link link, Collection<Pin> listenTo,
+			Collection<Pin> consume, EventListener listener)
+			throws IOException {
+		synchronized (dispatchers) {
+			Link key = unwrap(link);
+			IndexedEventDispatcher dispatcher = dispatchers.get(key);
+			if (dispatcher == null) {
+				dispatcher = new IndexedEventDispatcher(link);
+				link.addListener(dispatcher);
+				dispatchers.put(key, dispatcher);
+			}
+			dispatcher.add(listenTo, consume, listener);
+		}
+	}
+
+	/**
+	 * Removes a listener previously registered using
+	 * {@link #add(Link, Collection, Collection, EventListener)} (passing the
+	 * same pins).
+	 */
+	static void remove(Link link, Collection<Pin> listenTo,
+			Collection<Pin> consume, EventListener listener)
+			throws IOException {
+		synchronized (dispatchers) {
+			Link key = unwrap(link);
+			IndexedEventDispatcher dispatcher = dispatchers.get(key);
+			checkState(dispatcher != null, "No listeners registered on %s",
+					link);
+			dispatcher.remove(listenTo, consume, listener);
+			if (dispatcher.listeners == 0) {
+				dispatchers.remove(key);
+				dispatcher.link.removeListener(dispatcher);
+			}
+		}
+	}
+
+	private static Link unwrap(Link link) {
+		return link instanceof LinkDelegate ? ((LinkDelegate) link)
+				.getDelegate() : link;
+	}
+
+	private void add(Collection<Pin> listenTo, Collection<Pin> consume,
+			EventListener listener) throws IOException {
+		for (Pin pin : listenTo) {
+			Integer count = listenings.get(pin);
+			if (count == null) {
+				link.startListening(pin);
+			}
+			listenings.put(pin, count == null ? 1 : count + 1);
+		}
+		if (consume.isEmpty()) {
+			unfiltered.add(listener);
+		} else {
+			for (Pin pin : consume) {
+				List<EventListener> listeners = byPin.get(pin);
+				if (listeners == null) {
+					listeners = new CopyOnWriteArrayList<EventListener>();
+					byPin.put(pin, listeners);
+				}
+				listeners.add(listener);
+			}
+		}
+		listeners++;
+	}
+
+	private void remove(Collection<Pin> listenTo, Collection<Pin> consume,
+			EventListener listener) throws IOException {
+		if (consume.isEmpty()) {
+			unfiltered.remove(listener);
+		} else {
+			for (Pin pin : consume) {
+				List<EventListener> listeners = byPin.get(pin);
+				if (listeners != null && listeners.remove(listener)
+						&& listeners.isEmpty()) {
+					byPin.remove(pin);
+				}
+			}
+		}
+		for (Pin pin : listenTo) {
+			Integer count = listenings.get(pin);
+			if (count != null && count > 1) {
+				listenings.put(pin, count - 1);
+			} else if (count != null) {
+				listenings.remove(pin);
+				link.stopListening(pin);
+			}
+		}
+		listeners--;
+	}
+
+	@Override
+	public void stateChanged(AnalogPinValueChangedEvent event) {
+		for (EventListener listener : unfiltered) {
+			listener.stateChanged(event);
+		}
+		for (EventListener listener : listenersOf(event)) {
+			listener.stateChanged(event);
+		}
+	}
+
+	@Override
+	public void stateChanged(DigitalPinValueChangedEvent event) {
+		for (EventListener listener : unfiltered) {
+			listener.stateChanged(event);
+		}
+		for (EventListener listener : listenersOf(event)) {
+			listener.stateChanged(event);
+		}
+	}
+
+	private List<EventListener> listenersOf(PinValueChangedEvent event) {
+		List<EventListener> listeners = byPin.get(event.getPin());
+		return listeners == null ? Collections.<EventListener> emptyList()
+				: listeners;
+	}
+
+}
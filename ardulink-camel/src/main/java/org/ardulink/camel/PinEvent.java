@@ -0,0 +1,112 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.camel;
+
+import static org.ardulink.core.Pin.Type.ANALOG;
+import static org.ardulink.util.Preconditions.checkArgument;
+import static org.ardulink.util.Preconditions.checkNotNull;
+
+import org.ardulink.core.Pin;
+import org.ardulink.core.events.PinValueChangedEvent;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * Typed message body used by endpoints configured with
+ * <code>bodyType=event</code>: The pin, its value (an {@link Integer} for
+ * analog, a {@link Boolean} for digital pins) and the time the value was
+ * received. {@link PinEventConverter} converts from and to the alp text form.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public final class PinEvent implements PinValueChangedEvent {
+
+	private final Pin pin;
+	private final Object value;
+	private final long timestamp;
+	private final long receivedNanos;
+
+	public PinEvent(Pin pin, Object value) {
+		this(pin, value, System.currentTimeMillis());
+	}
+
+	public PinEvent(Pin pin, Object value, long timestamp) {
+		this(pin, value, timestamp, System.nanoTime());
+	}
+
+	public PinEvent(Pin pin, Object value, long timestamp, long receivedNanos) {
+		this.pin = checkNotNull(pin, "pin must not be null");
+		this.value = checkNotNull(value, "value must not be null");
+		checkArgument(pin.is(ANALOG) ? value instanceof Integer
+				: value instanceof Boolean, "Illegal value %s for pin %s",
+				value, pin);
+		this.timestamp = timestamp;
+		this.receivedNanos = receivedNanos;
+	}
+
+	@Override
+	public Pin getPin() {
+		return pin;
+	}
+
+	@Override
+	public Object getValue() {
+		return value;
+	}
+
+	/**
+	 * Milliseconds since epoch when the value was received.
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	@Override
+	public long getReceivedNanos() {
+		return receivedNanos;
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * pin.hashCode() + value.hashCode();
+	}
+
+	/**
+	 * Two events are equal if pin and value are equal, the timestamp is not
+	 * taken into account.
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof PinEvent)) {
+			return false;
+		}
+		PinEvent other = (PinEvent) obj;
+		return pin.equals(other.pin) && value.equals(other.value);
+	}
+
+	@Override
+	public String toString() {
+		return "PinEvent [pin=" + pin + ", value=" + value + ", timestamp="
+				+ timestamp + "]";
+	}
+
+}
@@ -0,0 +1,68 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.camel;
+
+import static org.ardulink.core.Pin.Type.ANALOG;
+import static org.ardulink.core.proto.impl.ALProtoBuilder.alpProtocolMessage;
+import static org.ardulink.core.proto.impl.ALProtoBuilder.ALPProtocolKey.ANALOG_PIN_READ;
+import static org.ardulink.core.proto.impl.ALProtoBuilder.ALPProtocolKey.DIGITAL_PIN_READ;
+import static org.ardulink.util.Preconditions.checkArgument;
+
+import org.apache.camel.Converter;
+import org.ardulink.core.Pin;
+import org.ardulink.core.messages.api.FromDeviceMessage;
+import org.ardulink.core.messages.api.FromDeviceMessagePinStateChanged;
+import org.ardulink.core.proto.impl.ArdulinkProtocol2;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * Camel type converters between {@link PinEvent}s and their alp text form
+ * (e.g. <code>alp://ared/0/123</code>), so routes can mix endpoints using
+ * <code>bodyType=event</code> with ones expecting text.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+@Converter
+public final class PinEventConverter {
+
+	private PinEventConverter() {
+		super();
+	}
+
+	@Converter
+	public static String toString(PinEvent event) {
+		Pin pin = event.getPin();
+		return pin.is(ANALOG) ? alpProtocolMessage(ANALOG_PIN_READ).forPin(
+				pin.pinNum()).withValue(((Integer) event.getValue()).intValue())
+				: alpProtocolMessage(DIGITAL_PIN_READ).forPin(pin.pinNum())
+						.withState(((Boolean) event.getValue()).booleanValue());
+	}
+
+	@Converter
+	public static PinEvent toPinEvent(String alp) {
+		FromDeviceMessage message = ArdulinkProtocol2.instance().fromDevice(
+				alp.getBytes());
+		checkArgument(message instanceof FromDeviceMessagePinStateChanged,
+				"%s is not a pin state change", alp);
+		FromDeviceMessagePinStateChanged stateChanged = (FromDeviceMessagePinStateChanged) message;
+		return new PinEvent(stateChanged.getPin(), stateChanged.getValue());
+	}
+
+}
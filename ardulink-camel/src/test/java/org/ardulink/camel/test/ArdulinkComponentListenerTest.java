@@ -3,23 +3,31 @@ package org.ardulink.camel.test;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.ardulink.core.Pin.analogPin;
 import static org.ardulink.core.Pin.digitalPin;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.verifyZeroInteractions;
 
 import java.io.IOException;
 
 import org.apache.camel.CamelContext;
 import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.mock.MockEndpoint;
 import org.apache.camel.impl.DefaultCamelContext;
 import org.ardulink.core.Link;
 import org.ardulink.core.convenience.LinkDelegate;
 import org.ardulink.core.convenience.Links;
+import org.ardulink.core.events.DefaultAnalogPinValueChangedEvent;
+import org.ardulink.core.events.DefaultDigitalPinValueChangedEvent;
+import org.ardulink.core.events.EventListener;
 import org.ardulink.util.URIs;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.Timeout;
+import org.mockito.ArgumentCaptor;
 
 public class ArdulinkComponentListenerTest {
 
@@ -37,42 +45,138 @@ public class ArdulinkComponentListenerTest {
 
 	@After
 	public void tearDown() throws IOException {
-		link.close();
+		if (link != null) {
+			link.close();
+		}
 	}
 
 	@Test
 	public void startListeningOnPassedPins() throws Exception {
-		haltCamel(startCamel("listenTo=d1,d2,a1"));
-		Link mock = getMock(link);
+		CamelContext context = startCamel("listenTo=d1,d2,a1");
+		Link mock = releaseLink();
+		haltCamel(context);
 		verify(mock).startListening(digitalPin(1));
 		verify(mock).startListening(digitalPin(2));
 		verify(mock).startListening(analogPin(1));
+		verify(mock).addListener(any(EventListener.class));
+		verify(mock).stopListening(digitalPin(1));
+		verify(mock).stopListening(digitalPin(2));
+		verify(mock).stopListening(analogPin(1));
+		verify(mock).removeListener(any(EventListener.class));
 		verify(mock).close();
 		verifyNoMoreInteractions(mock);
 	}
 
 	@Test
 	public void listeningIsCaseInsensitive() throws Exception {
-		haltCamel(startCamel("listenTo=d1,D2,a3,A4"));
-		Link mock = getMock(link);
+		CamelContext context = startCamel("listenTo=d1,D2,a3,A4");
+		Link mock = releaseLink();
+		haltCamel(context);
 		verify(mock).startListening(digitalPin(1));
 		verify(mock).startListening(digitalPin(2));
 		verify(mock).startListening(analogPin(3));
 		verify(mock).startListening(analogPin(4));
+		verify(mock).addListener(any(EventListener.class));
+		verify(mock).stopListening(digitalPin(1));
+		verify(mock).stopListening(digitalPin(2));
+		verify(mock).stopListening(analogPin(3));
+		verify(mock).stopListening(analogPin(4));
+		verify(mock).removeListener(any(EventListener.class));
 		verify(mock).close();
 		verifyNoMoreInteractions(mock);
 	}
 
 	@Test
 	public void ignoresMultipleOccurencesOfSamePin() throws Exception {
-		haltCamel(startCamel("listenTo=d1,D1,a2,A2"));
-		Link mock = getMock(link);
+		CamelContext context = startCamel("listenTo=d1,D1,a2,A2");
+		Link mock = releaseLink();
+		haltCamel(context);
 		verify(mock).startListening(digitalPin(1));
 		verify(mock).startListening(analogPin(2));
+		verify(mock).addListener(any(EventListener.class));
+		verify(mock).stopListening(digitalPin(1));
+		verify(mock).stopListening(analogPin(2));
+		verify(mock).removeListener(any(EventListener.class));
+		verify(mock).close();
+		verifyNoMoreInteractions(mock);
+	}
+
+	@Test
+	public void doesNotListenWithoutConsumers() throws Exception {
+		CamelContext context = new DefaultCamelContext();
+		context.addRoutes(new RouteBuilder() {
+			@Override
+			public void configure() {
+				from("direct:noMatterWhat").to(MOCK_URI + "?listenTo=d1,a1");
+			}
+		});
+		context.start();
+		haltCamel(context);
+		verifyZeroInteractions(getMock(link));
+	}
+
+	@Test
+	public void listeningIsReferenceCounted() throws Exception {
+		CamelContext context = new DefaultCamelContext();
+		context.addRoutes(new RouteBuilder() {
+			@Override
+			public void configure() {
+				from(MOCK_URI + "?listenTo=d1,a1&consume=d1").routeId("d1")
+						.to("mock:d1");
+				from(MOCK_URI + "?listenTo=a1&consume=a1").routeId("a1").to(
+						"mock:a1");
+			}
+		});
+		context.start();
+		Link mock = releaseLink();
+		verify(mock).startListening(digitalPin(1));
+		verify(mock).startListening(analogPin(1));
+		verify(mock).addListener(any(EventListener.class));
+
+		context.stopRoute("d1");
+		verify(mock).stopListening(digitalPin(1));
+		verify(mock, never()).stopListening(analogPin(1));
+		verify(mock, never()).close();
+
+		context.stopRoute("a1");
+		verify(mock).stopListening(analogPin(1));
+		verify(mock).removeListener(any(EventListener.class));
 		verify(mock).close();
+		haltCamel(context);
 		verifyNoMoreInteractions(mock);
 	}
 
+	@Test
+	public void consumersOnlyGetThePinsTheyConsume() throws Exception {
+		CamelContext context = new DefaultCamelContext();
+		context.addRoutes(new RouteBuilder() {
+			@Override
+			public void configure() {
+				from(MOCK_URI + "?listenTo=a0,d2&consume=a0").to("mock:a0");
+				from(MOCK_URI + "?listenTo=a0,d2&consume=d2").to("mock:d2");
+				from(MOCK_URI + "?listenTo=a0,d2").to("mock:all");
+			}
+		});
+		context.start();
+		MockEndpoint a0 = context.getEndpoint("mock:a0", MockEndpoint.class);
+		MockEndpoint d2 = context.getEndpoint("mock:d2", MockEndpoint.class);
+		MockEndpoint all = context.getEndpoint("mock:all", MockEndpoint.class);
+		a0.expectedBodiesReceived("alp://ared/0/42");
+		d2.expectedBodiesReceived("alp://dred/2/1");
+		all.expectedBodiesReceived("alp://ared/0/42", "alp://dred/2/1");
+
+		ArgumentCaptor<EventListener> listener = ArgumentCaptor
+				.forClass(EventListener.class);
+		verify(getMock(link)).addListener(listener.capture());
+		listener.getValue().stateChanged(
+				new DefaultAnalogPinValueChangedEvent(analogPin(0), 42));
+		listener.getValue().stateChanged(
+				new DefaultDigitalPinValueChangedEvent(digitalPin(2), true));
+
+		MockEndpoint.assertIsSatisfied(a0, d2, all);
+		haltCamel(context);
+	}
+
 	private CamelContext haltCamel(CamelContext context) throws Exception {
 		context.stop();
 		return context;
@@ -83,7 +187,7 @@ public class ArdulinkComponentListenerTest {
 		context.addRoutes(new RouteBuilder() {
 			@Override
 			public void configure() {
-				from(noMatterWhat()).to(MOCK_URI + "?" + args);
+				from(MOCK_URI + "?" + args).to(noMatterWhat());
 			}
 		});
 		context.start();
@@ -91,7 +195,18 @@ public class ArdulinkComponentListenerTest {
 	}
 
 	private String noMatterWhat() {
-		return "direct:bean";
+		return "mock:noMatterWhat";
+	}
+
+	/**
+	 * Closes the link of this test (the link is shared), so it gets closed as
+	 * soon as camel does no longer use it.
+	 */
+	private Link releaseLink() throws IOException {
+		Link mock = getMock(link);
+		link.close();
+		link = null;
+		return mock;
 	}
 
 	private Link getMock(Link link) {
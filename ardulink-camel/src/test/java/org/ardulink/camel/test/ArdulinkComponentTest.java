@@ -13,16 +13,20 @@ import static org.ardulink.core.proto.impl.ALProtoBuilder.ALPProtocolKey.STOP_LI
 import static org.ardulink.util.Iterables.getFirst;
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 
+import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.camel.CamelContext;
+import org.apache.camel.CamelExecutionException;
 import org.apache.camel.Route;
 import org.apache.camel.builder.RouteBuilder;
 import org.apache.camel.impl.DefaultCamelContext;
 import org.ardulink.camel.ArdulinkEndpoint;
+import org.ardulink.camel.PinEvent;
 import org.ardulink.core.Link;
 import org.ardulink.core.Pin.AnalogPin;
 import org.ardulink.core.Pin.DigitalPin;
@@ -121,6 +125,52 @@ public class ArdulinkComponentTest {
 		verifyNoMoreInteractions(mock);
 	}
 
+	@Test
+	public void canSendManyCommandsInOneMultiLineBody() throws Exception {
+		String digital = alpProtocolMessage(DIGITAL_PIN_READ).forPin(2)
+				.withState(true);
+		String analog = alpProtocolMessage(ANALOG_PIN_READ).forPin(5)
+				.withValue(123);
+		Object response = context.createProducerTemplate().requestBody(
+				MOCK_URI, digital + "\r\n" + analog);
+		assertThat(response, is((Object) (digital + "=OK\r\n" + analog + "=OK")));
+		Link mock = getMock(link);
+		verify(mock).switchDigitalPin(digitalPin(2), true);
+		verify(mock).switchAnalogPin(analogPin(5), 123);
+		verifyNoMoreInteractions(mock);
+	}
+
+	@Test
+	public void canSendListOfCommands() throws Exception {
+		send(Arrays.asList(
+				alpProtocolMessage(START_LISTENING_ANALOG).forPin(6)
+						.withoutValue(), new PinEvent(digitalPin(7), false)));
+		Link mock = getMock(link);
+		verify(mock).startListening(analogPin(6));
+		verify(mock).switchDigitalPin(digitalPin(7), false);
+		verifyNoMoreInteractions(mock);
+	}
+
+	@Test
+	public void convertsBodyToText() throws Exception {
+		send(alpProtocolMessage(ANALOG_PIN_READ).forPin(5).withValue(123)
+				.getBytes());
+		Link mock = getMock(link);
+		verify(mock).switchAnalogPin(analogPin(5), 123);
+		verifyNoMoreInteractions(mock);
+	}
+
+	@Test
+	public void rejectsNullBody() throws Exception {
+		try {
+			send(null);
+			fail("null body was accepted");
+		} catch (CamelExecutionException e) {
+			assertThat(e.getCause().getMessage(), is("body must not be null"));
+		}
+		verifyNoMoreInteractions(getMock(link));
+	}
+
 	private void testDigital(DigitalPin pin, boolean state) throws Exception {
 		send(alpProtocolMessage(DIGITAL_PIN_READ).forPin(pin.pinNum())
 				.withState(state));
@@ -158,7 +208,7 @@ public class ArdulinkComponentTest {
 		return ((LinkDelegate) link).getDelegate();
 	}
 
-	private void send(String message) {
+	private void send(Object message) {
 		context.createProducerTemplate().sendBody(MOCK_URI, message);
 	}
 
@@ -166,6 +216,7 @@ public class ArdulinkComponentTest {
 	public void canSetLinkParameters() throws Exception {
 		String a = "foo";
 		String b = "HOURS";
+		context.stop();
 		context = camelContext("ardulink://testlink?a=" + a + "&b=" + b,
 				MOCK_URI);
 
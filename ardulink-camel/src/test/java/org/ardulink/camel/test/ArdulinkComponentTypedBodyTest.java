@@ -0,0 +1,98 @@
+package org.ardulink.camel.test;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.ardulink.core.Pin.analogPin;
+import static org.ardulink.core.Pin.digitalPin;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.verify;
+
+import java.io.IOException;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.ardulink.camel.PinEvent;
+import org.ardulink.core.Link;
+import org.ardulink.core.convenience.LinkDelegate;
+import org.ardulink.core.convenience.Links;
+import org.ardulink.core.events.DefaultAnalogPinValueChangedEvent;
+import org.ardulink.core.events.EventListener;
+import org.ardulink.util.URIs;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+import org.mockito.ArgumentCaptor;
+
+public class ArdulinkComponentTypedBodyTest {
+
+	@Rule
+	public Timeout timeout = new Timeout(5, SECONDS);
+
+	private static final String MOCK_URI = "ardulink://mock";
+
+	private static final String OUT = "mock:result";
+
+	private Link link;
+
+	private CamelContext context;
+
+	@Before
+	public void setup() throws Exception {
+		link = Links.getLink(URIs.newURI(MOCK_URI));
+		context = new DefaultCamelContext();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		context.stop();
+		link.close();
+	}
+
+	@Test
+	public void consumerEmitsPinEvents() throws Exception {
+		context.addRoutes(new RouteBuilder() {
+			@Override
+			public void configure() {
+				from(MOCK_URI + "?bodyType=event").to(OUT);
+			}
+		});
+		context.start();
+		MockEndpoint out = context.getEndpoint(OUT, MockEndpoint.class);
+		out.expectedBodiesReceived(new PinEvent(analogPin(1), 42));
+
+		ArgumentCaptor<EventListener> listener = ArgumentCaptor
+				.forClass(EventListener.class);
+		verify(getMock(link)).addListener(listener.capture());
+		listener.getValue().stateChanged(
+				new DefaultAnalogPinValueChangedEvent(analogPin(1), 42));
+
+		out.assertIsSatisfied();
+	}
+
+	@Test
+	public void producerAcceptsPinEvents() throws Exception {
+		context.start();
+		context.createProducerTemplate().sendBody(MOCK_URI,
+				new PinEvent(digitalPin(3), true));
+		verify(getMock(link)).switchDigitalPin(digitalPin(3), true);
+	}
+
+	@Test
+	public void convertsFromAndToAlpText() throws Exception {
+		PinEvent event = new PinEvent(analogPin(1), 42);
+		String alp = context.getTypeConverter().convertTo(String.class, event);
+		assertThat(alp, is("alp://ared/1/42"));
+		assertThat(
+				context.getTypeConverter().convertTo(PinEvent.class, alp),
+				is(event));
+	}
+
+	private Link getMock(Link link) throws IOException {
+		return ((LinkDelegate) link).getDelegate();
+	}
+
+}
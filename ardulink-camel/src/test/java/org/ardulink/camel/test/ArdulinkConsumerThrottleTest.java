@@ -0,0 +1,108 @@
+package org.ardulink.camel.test;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.ardulink.core.Pin.analogPin;
+import static org.ardulink.core.Pin.digitalPin;
+import static org.mockito.Mockito.verify;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.ardulink.core.Link;
+import org.ardulink.core.convenience.LinkDelegate;
+import org.ardulink.core.convenience.Links;
+import org.ardulink.core.events.DefaultAnalogPinValueChangedEvent;
+import org.ardulink.core.events.DefaultDigitalPinValueChangedEvent;
+import org.ardulink.core.events.EventListener;
+import org.ardulink.util.URIs;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+import org.mockito.ArgumentCaptor;
+
+public class ArdulinkConsumerThrottleTest {
+
+	@Rule
+	public Timeout timeout = new Timeout(5, SECONDS);
+
+	private static final String MOCK_URI = "ardulink://mock";
+
+	private static final String OUT = "mock:result";
+
+	private Link link;
+
+	private CamelContext context;
+
+	@Before
+	public void setup() throws Exception {
+		link = Links.getLink(URIs.newURI(MOCK_URI));
+		context = new DefaultCamelContext();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		context.stop();
+		link.close();
+	}
+
+	@Test
+	public void emitsLatestValuePerPin() throws Exception {
+		MockEndpoint out = start("throttle=200");
+		out.expectedBodiesReceivedInAnyOrder("alp://ared/1/3",
+				"alp://dred/2/0");
+		EventListener listener = listener();
+		fireAnalog(listener, 1, 1, 2, 3);
+		listener.stateChanged(new DefaultDigitalPinValueChangedEvent(
+				digitalPin(2), true));
+		listener.stateChanged(new DefaultDigitalPinValueChangedEvent(
+				digitalPin(2), false));
+		out.assertIsSatisfied();
+	}
+
+	@Test
+	public void emitsAverage() throws Exception {
+		MockEndpoint out = start("throttle=200&conflate=average");
+		out.expectedBodiesReceived("alp://ared/1/20");
+		fireAnalog(listener(), 1, 10, 20, 30);
+		out.assertIsSatisfied();
+	}
+
+	@Test
+	public void emitsMinAndMaxInTheOrderTheyWereReceived() throws Exception {
+		MockEndpoint out = start("throttle=200&conflate=minmax");
+		out.expectedBodiesReceived("alp://ared/1/90", "alp://ared/1/5");
+		fireAnalog(listener(), 1, 50, 90, 40, 5, 60);
+		out.assertIsSatisfied();
+	}
+
+	private MockEndpoint start(final String params) throws Exception {
+		context.addRoutes(new RouteBuilder() {
+			@Override
+			public void configure() {
+				from(MOCK_URI + "?" + params).to(OUT);
+			}
+		});
+		context.start();
+		return context.getEndpoint(OUT, MockEndpoint.class);
+	}
+
+	private EventListener listener() throws Exception {
+		ArgumentCaptor<EventListener> listener = ArgumentCaptor
+				.forClass(EventListener.class);
+		verify(((LinkDelegate) link).getDelegate()).addListener(
+				listener.capture());
+		return listener.getValue();
+	}
+
+	private static void fireAnalog(EventListener listener, int pin,
+			int... values) {
+		for (int value : values) {
+			listener.stateChanged(new DefaultAnalogPinValueChangedEvent(
+					analogPin(pin), value));
+		}
+	}
+
+}
@@ -0,0 +1,109 @@
+package org.ardulink.camel.test;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.ardulink.core.proto.impl.ALProtoBuilder.alpProtocolMessage;
+import static org.ardulink.core.proto.impl.ALProtoBuilder.ALPProtocolKey.ANALOG_PIN_READ;
+import static org.ardulink.core.proto.impl.ALProtoBuilder.ALPProtocolKey.DIGITAL_PIN_READ;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.CamelExecutionException;
+import org.apache.camel.ExchangeTimedOutException;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+public class ArdulinkProducerAsyncTest {
+
+	@Rule
+	public Timeout timeout = new Timeout(10, SECONDS);
+
+	private CamelContext context;
+
+	private ProducerTemplate template;
+
+	@Before
+	public void setup() throws Exception {
+		SlowReplyingLinkFactory.reset();
+		context = new DefaultCamelContext();
+		context.start();
+		template = context.createProducerTemplate();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		context.stop();
+	}
+
+	@Test
+	public void manyExchangesAwaitTheirRepliesAtOnce() throws Exception {
+		String uri = "ardulink://slowReplying?delay=500";
+		int exchanges = 6;
+		long start = System.nanoTime();
+		List<String> messages = new ArrayList<String>();
+		List<Future<Object>> responses = new ArrayList<Future<Object>>();
+		for (int i = 0; i < exchanges; i++) {
+			String message = alpProtocolMessage(ANALOG_PIN_READ).forPin(i)
+					.withValue(i);
+			messages.add(message);
+			responses.add(template.asyncRequestBody(uri, message));
+		}
+		for (int i = 0; i < exchanges; i++) {
+			assertThat(responses.get(i).get(), is((Object) (messages.get(i) + "=OK")));
+		}
+		long millis = NANOSECONDS.toMillis(System.nanoTime() - start);
+		// one after the other would take 3 seconds
+		assertThat(millis < 2000, is(true));
+		assertThat(SlowReplyingLinkFactory.getMaxInFlight() > 1, is(true));
+	}
+
+	@Test
+	public void completesBatchWhenAllRepliesArrived() {
+		String digital = alpProtocolMessage(DIGITAL_PIN_READ).forPin(2)
+				.withState(true);
+		String analog = alpProtocolMessage(ANALOG_PIN_READ).forPin(5)
+				.withValue(123);
+		Object response = template.requestBody(
+				"ardulink://slowReplying?delay=100", digital + "\n" + analog);
+		assertThat(response, is((Object) (digital + "=OK\n" + analog + "=OK")));
+		assertThat(SlowReplyingLinkFactory.getMaxInFlight(), is(2));
+	}
+
+	@Test
+	public void completesExchangesWhoseRepliesArriveWhileSending() {
+		String uri = "ardulink://slowReplying?delay=0";
+		for (int i = 0; i < 50; i++) {
+			String digital = alpProtocolMessage(DIGITAL_PIN_READ).forPin(2)
+					.withState(true);
+			String analog = alpProtocolMessage(ANALOG_PIN_READ).forPin(5)
+					.withValue(i);
+			assertThat(template.requestBody(uri, digital + "\n" + analog),
+					is((Object) (digital + "=OK\n" + analog + "=OK")));
+		}
+	}
+
+	@Test
+	public void failsExchangeIfReplyDoesNotArrive() {
+		try {
+			template.requestBody(
+					"ardulink://slowReplying?delay=60000&replyTimeout=200",
+					alpProtocolMessage(ANALOG_PIN_READ).forPin(1).withValue(1));
+			fail("exchange did not time out");
+		} catch (CamelExecutionException e) {
+			assertThat(e.getCause(), instanceOf(ExchangeTimedOutException.class));
+		}
+	}
+
+}
@@ -0,0 +1,24 @@
+package org.ardulink.camel.test;
+
+import javax.validation.constraints.Min;
+
+import org.ardulink.core.linkmanager.LinkConfig;
+
+public class SlowReplyingLinkConfig implements LinkConfig {
+
+	@Named("delay")
+	@Min(0)
+	private int delay = 200;
+
+	/**
+	 * Returns the time in milliseconds the device takes to reply.
+	 */
+	public int getDelay() {
+		return delay;
+	}
+
+	public void setDelay(int delay) {
+		this.delay = delay;
+	}
+
+}
@@ -0,0 +1,129 @@
+package org.ardulink.camel.test;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.ardulink.core.ConnectionBasedLink;
+import org.ardulink.core.Link;
+import org.ardulink.core.StreamConnection;
+import org.ardulink.core.linkmanager.LinkFactory;
+import org.ardulink.core.proto.api.Protocol;
+import org.ardulink.core.proto.impl.ArdulinkProtocol2;
+import org.ardulink.core.qos.QosLink;
+
+/**
+ * Creates qos links to a simulated device that answers each message having an
+ * id with an ok reply after a delay. Replies are sent independently of each
+ * other so several messages can await their replies at once.
+ */
+public class SlowReplyingLinkFactory implements
+		LinkFactory<SlowReplyingLinkConfig> {
+
+	private static final Pattern ID = Pattern.compile("\\?id=(\\d+)");
+
+	private static final AtomicInteger maxInFlight = new AtomicInteger();
+
+	/**
+	 * Returns the maximum number of messages that were awaiting their replies
+	 * at once.
+	 */
+	public static int getMaxInFlight() {
+		return maxInFlight.get();
+	}
+
+	public static void reset() {
+		maxInFlight.set(0);
+	}
+
+	@Override
+	public String getName() {
+		return "slowReplying";
+	}
+
+	@Override
+	public Link newLink(SlowReplyingLinkConfig config) throws IOException {
+		Protocol protocol = ArdulinkProtocol2.instance();
+		PipedInputStream in = new PipedInputStream();
+		Device device = new Device(new PipedOutputStream(in), config.getDelay());
+		return new QosLink(new ConnectionBasedLink(new StreamConnection(in,
+				device, protocol), protocol));
+	}
+
+	@Override
+	public SlowReplyingLinkConfig newLinkConfig() {
+		return new SlowReplyingLinkConfig();
+	}
+
+	private static class Device extends OutputStream {
+
+		private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+		private final AtomicInteger inFlight = new AtomicInteger();
+		private final PipedOutputStream replies;
+		private final int delay;
+		private final ScheduledExecutorService executor = Executors
+				.newSingleThreadScheduledExecutor(new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, "SlowDevice");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+
+		private Device(PipedOutputStream replies, int delay) {
+			this.replies = replies;
+			this.delay = delay;
+		}
+
+		@Override
+		public synchronized void write(int b) throws IOException {
+			if (b != '\n') {
+				line.write(b);
+				return;
+			}
+			Matcher matcher = ID.matcher(line.toString());
+			line.reset();
+			if (matcher.find()) {
+				final String id = matcher.group(1);
+				int current = inFlight.incrementAndGet();
+				int max;
+				while (current > (max = maxInFlight.get())
+						&& !maxInFlight.compareAndSet(max, current)) {
+					// retry
+				}
+				executor.schedule(new Runnable() {
+					@Override
+					public void run() {
+						inFlight.decrementAndGet();
+						try {
+							replies.write(("alp://rply/ok?id=" + id + "\n")
+									.getBytes());
+							replies.flush();
+						} catch (IOException e) {
+							// closed
+						}
+					}
+				}, delay, MILLISECONDS);
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			executor.shutdownNow();
+			replies.close();
+		}
+
+	}
+
+}
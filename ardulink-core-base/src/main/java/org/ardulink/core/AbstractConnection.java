@@ -46,4 +46,25 @@ public abstract class AbstractConnection implements Connection {
 			}
 		}
 	}
+
+	/**
+	 * Like {@link #contactListeners4Received(byte[])} but the listeners can
+	 * query the times passed using {@link ReceiveTimestamp}. Connections not
+	 * based on a {@link StreamReader} use this to timestamp their frames.
+	 * 
+	 * @param readNanos
+	 *            {@link System#nanoTime()} the last byte of the frame has
+	 *            been read
+	 * @param receivedNanos
+	 *            {@link System#nanoTime()} the frame has been extracted
+	 */
+	public void contactListeners4Received(byte[] bytes, long readNanos,
+			long receivedNanos) {
+		ReceiveTimestamp.set(readNanos, receivedNanos);
+		try {
+			contactListeners4Received(bytes);
+		} finally {
+			ReceiveTimestamp.clear();
+		}
+	}
 }
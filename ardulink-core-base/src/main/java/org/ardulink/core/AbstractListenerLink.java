@@ -28,6 +28,7 @@ import org.ardulink.core.events.EventListener;
 import org.ardulink.core.events.FilteredEventListenerAdapter;
 import org.ardulink.core.events.RplyEvent;
 import org.ardulink.core.events.RplyListener;
+import org.ardulink.core.trace.LatencyTrace;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -51,6 +52,8 @@ public abstract class AbstractListenerLink implements Link {
 
 	private boolean closed;
 
+	private volatile LatencyTrace trace;
+
 	public Link addListener(EventListener listener) throws IOException {
 		if (!closed && listener instanceof FilteredEventListenerAdapter) {
 			Pin pin = ((FilteredEventListenerAdapter) listener).getPin();
@@ -105,43 +108,95 @@ public abstract class AbstractListenerLink implements Link {
 	}
 
 	public void fireStateChanged(AnalogPinValueChangedEvent event) {
+		LatencyTrace trace = this.trace;
+		long dispatchNanos = trace == null ? 0 : System.nanoTime();
 		for (EventListener eventListener : this.eventListeners) {
+			long startNanos = trace == null ? 0 : trace
+					.listenerStarting(dispatchNanos);
 			try {
 				eventListener.stateChanged(event);
 			} catch (Exception e) {
 				logger.error("EventListener {} failure", eventListener, e);
 			}
+			if (trace != null) {
+				trace.listenerFinished(startNanos);
+			}
 		}
 	}
 
 	public void fireStateChanged(DigitalPinValueChangedEvent event) {
+		LatencyTrace trace = this.trace;
+		long dispatchNanos = trace == null ? 0 : System.nanoTime();
 		for (EventListener eventListener : this.eventListeners) {
+			long startNanos = trace == null ? 0 : trace
+					.listenerStarting(dispatchNanos);
 			try {
 				eventListener.stateChanged(event);
 			} catch (Exception e) {
 				logger.error("EventListener {} failure", eventListener, e);
 			}
+			if (trace != null) {
+				trace.listenerFinished(startNanos);
+			}
 		}
 	}
 
 	public void fireReplyReceived(RplyEvent event) {
+		LatencyTrace trace = this.trace;
+		long dispatchNanos = trace == null ? 0 : System.nanoTime();
 		for (RplyListener rplyListener : this.rplyListeners) {
+			long startNanos = trace == null ? 0 : trace
+					.listenerStarting(dispatchNanos);
 			try {
 				rplyListener.rplyReceived(event);
 			} catch (Exception e) {
 				logger.error("EventListener {} failure", rplyListener, e);
 			}
+			if (trace != null) {
+				trace.listenerFinished(startNanos);
+			}
 		}
 	}
 
 	public void fireCustomReceived(CustomEvent event) {
+		LatencyTrace trace = this.trace;
+		long dispatchNanos = trace == null ? 0 : System.nanoTime();
 		for (CustomListener customListener : this.customListeners) {
+			long startNanos = trace == null ? 0 : trace
+					.listenerStarting(dispatchNanos);
 			try {
 				customListener.customEventReceived(event);
 			} catch (Exception e) {
 				logger.error("EventListener {} failure", customListener, e);
 			}
+			if (trace != null) {
+				trace.listenerFinished(startNanos);
+			}
+		}
+	}
+
+	/**
+	 * Starts recording the latencies of the events of this link, does
+	 * nothing if already started.
+	 *
+	 * @return the trace the latencies are recorded to
+	 */
+	public synchronized LatencyTrace enableTracing() {
+		if (this.trace == null) {
+			this.trace = new LatencyTrace();
 		}
+		return this.trace;
+	}
+
+	public synchronized void disableTracing() {
+		this.trace = null;
+	}
+
+	/**
+	 * Returns the trace if tracing is enabled, otherwise <code>null</code>.
+	 */
+	protected LatencyTrace getTrace() {
+		return trace;
 	}
 
 	public void fireConnectionLost() {
@@ -0,0 +1,196 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.core;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.ardulink.core.Pin.analogPin;
+import static org.ardulink.util.Preconditions.checkArgument;
+import static org.ardulink.util.Preconditions.checkNotNull;
+import static org.ardulink.util.Throwables.propagate;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.ardulink.core.events.RplyEvent;
+import org.ardulink.core.events.RplyListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * Switches a serial link to a higher baudrate after the arduino did boot at
+ * the baudrate configured (higher baudrates are unreliable while the
+ * bootloader resets the arduino). The new baudrate is proposed sending the
+ * custom message <code>baud/&lt;baudrate&gt;</code>. An arduino supporting
+ * the switch answers it with an <code>ok</code> reply at the current baudrate
+ * and then switches. The host switches too and pings the arduino at the new
+ * baudrate. If the pings stay unanswered the host falls back to the old
+ * baudrate. So does the arduino if it did not receive a message within
+ * {@value #DEVICE_VERIFY_MILLIS} milliseconds after the switch. Arduinos not
+ * supporting the switch answer the proposal with <code>ko</code> or not at
+ * all, both sides then stay at the current baudrate.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public class BaudrateNegotiation {
+
+	/**
+	 * Switches the baudrate of the host's side of the serial line.
+	 */
+	public interface Port {
+
+		void setBaudrate(int baudrate) throws IOException;
+
+	}
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(BaudrateNegotiation.class);
+
+	/**
+	 * The time the arduino waits for a message after the switch before it
+	 * falls back, the sketches have to use the same value.
+	 */
+	public static final int DEVICE_VERIFY_MILLIS = 2000;
+
+	private static final long REPLY_TIMEOUT = SECONDS.toNanos(1);
+	private static final long VERIFY_TIMEOUT = SECONDS.toNanos(1);
+	private static final long FALLBACK_TIMEOUT = MILLISECONDS
+			.toNanos(DEVICE_VERIFY_MILLIS) + SECONDS.toNanos(3);
+	private static final long PING_INTERVAL = MILLISECONDS.toNanos(100);
+
+	private final ConnectionBasedLink link;
+	private final Port port;
+
+	public BaudrateNegotiation(ConnectionBasedLink link, Port port) {
+		this.link = checkNotNull(link, "link must not be null");
+		this.port = checkNotNull(port, "port must not be null");
+	}
+
+	/**
+	 * Negotiates the switch from the current to the target baudrate.
+	 * 
+	 * @param current
+	 *            the baudrate both sides currently use
+	 * @param target
+	 *            the baudrate to switch to
+	 * @return the baudrate both sides use after the negotiation,
+	 *         <code>target</code> if the switch did succeed otherwise
+	 *         <code>current</code>
+	 * @throws IOException
+	 *             if the arduino did not answer at either baudrate after the
+	 *             switch did fail
+	 */
+	public int upgrade(int current, int target) throws IOException {
+		checkArgument(target > 0, "target must be positive but was %s", target);
+		if (target == current) {
+			return current;
+		}
+		Replies replies = new Replies();
+		link.addRplyListener(replies);
+		try {
+			long id = link.sendCustomMessage("baud", String.valueOf(target));
+			RplyEvent reply = replies.await(id, REPLY_TIMEOUT);
+			if (reply == null || !reply.isOk()) {
+				logger.info("Arduino did not accept baudrate {}, staying at {}",
+						target, current);
+				return current;
+			}
+			port.setBaudrate(target);
+			if (verify(replies, VERIFY_TIMEOUT)) {
+				logger.info("Switched baudrate from {} to {}", current, target);
+				return target;
+			}
+			logger.warn("Arduino did not answer at baudrate {}, falling back to {}",
+					target, current);
+			port.setBaudrate(current);
+			if (verify(replies, FALLBACK_TIMEOUT)) {
+				return current;
+			}
+			throw new IOException("Arduino did not answer after falling back from baudrate "
+					+ target + " to " + current);
+		} finally {
+			link.removeRplyListener(replies);
+		}
+	}
+
+	/**
+	 * Pings the arduino until a ping is answered or the time elapsed. Pings
+	 * are repeated since bytes received while the baudrates differ are
+	 * garbage that can make the next message unreadable.
+	 */
+	private boolean verify(Replies replies, long timeout) throws IOException {
+		long deadline = System.nanoTime() + timeout;
+		long firstId = -1;
+		while (true) {
+			long id = link.sendNoTone(analogPin(0));
+			if (firstId < 0) {
+				firstId = id;
+			}
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0) {
+				return false;
+			}
+			if (replies.awaitFrom(firstId, Math.min(PING_INTERVAL, remaining)) != null) {
+				return true;
+			}
+		}
+	}
+
+	private static class Replies implements RplyListener {
+
+		private final BlockingQueue<RplyEvent> queue = new LinkedBlockingQueue<RplyEvent>();
+
+		@Override
+		public void rplyReceived(RplyEvent e) {
+			queue.add(e);
+		}
+
+		RplyEvent await(long id, long timeout) {
+			return await(id, id, timeout);
+		}
+
+		RplyEvent awaitFrom(long firstId, long timeout) {
+			return await(firstId, Long.MAX_VALUE, timeout);
+		}
+
+		private RplyEvent await(long fromId, long toId, long timeout) {
+			long deadline = System.nanoTime() + timeout;
+			try {
+				while (true) {
+					RplyEvent reply = queue.poll(deadline - System.nanoTime(),
+							NANOSECONDS);
+					if (reply == null) {
+						return null;
+					}
+					if (reply.getId() >= fromId && reply.getId() <= toId) {
+						return reply;
+					}
+				}
+			} catch (InterruptedException e) {
+				throw propagate(e);
+			}
+		}
+
+	}
+
+}
@@ -16,6 +16,9 @@ limitations under the License.
 
 package org.ardulink.core;
 
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.ardulink.core.ConnectionBasedLink.Mode.ANY_MESSAGE_RECEIVED;
 import static org.ardulink.core.Pin.analogPin;
 import static org.ardulink.core.Pin.Type.ANALOG;
@@ -25,8 +28,11 @@ import static org.ardulink.core.proto.api.MessageIdHolders.addMessageId;
 import static org.ardulink.core.proto.api.MessageIdHolders.toHolder;
 import static org.ardulink.util.Throwables.propagate;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 import org.ardulink.core.Connection.ListenerAdapter;
@@ -58,6 +64,7 @@ import org.ardulink.core.messages.impl.DefaultToDeviceMessageStartListening;
 import org.ardulink.core.messages.impl.DefaultToDeviceMessageStopListening;
 import org.ardulink.core.messages.impl.DefaultToDeviceMessageTone;
 import org.ardulink.core.proto.api.Protocol;
+import org.ardulink.core.trace.LatencyTrace;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -74,10 +81,13 @@ public class ConnectionBasedLink extends AbstractListenerLink {
 	private static final Logger logger = LoggerFactory
 			.getLogger(ConnectionBasedLink.class);
 
+	private static final long FIRST_PING_INTERVAL = MILLISECONDS.toNanos(100);
+	private static final long MAX_PING_INTERVAL = SECONDS.toNanos(2);
+
 	private final Connection connection;
 	private final Protocol protocol;
 	private long messageId = 0;
-	private boolean readyMsgReceived;
+	private volatile boolean readyMsgReceived;
 
 	public ConnectionBasedLink(Connection connection, Protocol protocol) {
 		this.connection = connection;
@@ -99,7 +109,14 @@ public class ConnectionBasedLink extends AbstractListenerLink {
 	}
 
 	protected void received(byte[] bytes) {
-		received(this.protocol.fromDevice(bytes));
+		long receivedNanos = ReceiveTimestamp.receivedNanos();
+		FromDeviceMessage fromDevice = this.protocol.fromDevice(bytes);
+		LatencyTrace trace = getTrace();
+		if (trace != null) {
+			trace.decoded(ReceiveTimestamp.isSet() ? ReceiveTimestamp
+					.readNanos() : receivedNanos, receivedNanos);
+		}
+		received(fromDevice);
 	}
 
 	protected void received(FromDeviceMessage fromDevice) {
@@ -110,7 +127,8 @@ public class ConnectionBasedLink extends AbstractListenerLink {
 			fireReplyReceived(new DefaultRplyEvent(reply.isOk(), reply.getId(), reply.getParameters()));
 		} else if (fromDevice instanceof FromDeviceMessageCustom) {
 			FromDeviceMessageCustom custom_event = (FromDeviceMessageCustom) fromDevice;
-			fireCustomReceived(new DefaultCustomEvent(custom_event.getMessage()));
+			fireCustomReceived(new DefaultCustomEvent(custom_event.getMessage(),
+					ReceiveTimestamp.receivedNanos()));
 		} else if (fromDevice instanceof FromDeviceMessageReady) {
 			this.readyMsgReceived = true;
 		} else {
@@ -123,11 +141,13 @@ public class ConnectionBasedLink extends AbstractListenerLink {
 		Object value = pinChanged.getValue();
 		if (pin.is(ANALOG) && value instanceof Integer) {
 			AnalogPinValueChangedEvent event = new DefaultAnalogPinValueChangedEvent(
-					(AnalogPin) pin, (Integer) value);
+					(AnalogPin) pin, (Integer) value,
+					ReceiveTimestamp.receivedNanos());
 			fireStateChanged(event);
 		} else if (pin.is(DIGITAL) && value instanceof Boolean) {
 			DigitalPinValueChangedEvent event = new DefaultDigitalPinValueChangedEvent(
-					(DigitalPin) pin, (Boolean) value);
+					(DigitalPin) pin, (Boolean) value,
+					ReceiveTimestamp.receivedNanos());
 			fireStateChanged(event);
 		} else {
 			throw new IllegalStateException(
@@ -163,7 +183,12 @@ public class ConnectionBasedLink extends AbstractListenerLink {
 
 	/**
 	 * Will wait for the arduino to received the "ready" paket or the arduino to
-	 * respond to our messages sent.
+	 * respond to our messages sent. Returns as soon as the arduino is detected
+	 * to be ready, a "ready" paket received before this method was called is
+	 * detected as well. The arduino is pinged right away and again with
+	 * exponentially growing intervals (starting at 100 milliseconds up to two
+	 * seconds) so a ping sent while it was still booting does not delay the
+	 * detection until the maximum time elapsed.
 	 * 
 	 * @param wait
 	 *            the maximum time to wait
@@ -176,38 +201,62 @@ public class ConnectionBasedLink extends AbstractListenerLink {
 	 *         time otherwise <code>false</code>
 	 */
 	public boolean waitForArduinoToBoot(int wait, TimeUnit timeUnit, final Mode mode) {
+		return waitForArduino(wait, timeUnit, mode, true);
+	}
 
-		/*
-		 * lockingQueue used instead of Lock and Condition it has a shorter and simpler
-		 * implementation.
-		 */
-		final ArrayBlockingQueue<Boolean> lockingQueue = new ArrayBlockingQueue<Boolean>(1);
+	/**
+	 * Will wait for the arduino to send anything (e.g. its "ready" paket)
+	 * without sending something to it.
+	 * 
+	 * @param wait
+	 *            the maximum time to wait
+	 * @param timeUnit
+	 *            the units to wait
+	 * @return <code>true</code> if the arduino did send something within the
+	 *         given time otherwise <code>false</code>
+	 */
+	public boolean waitForArduinoToSend(int wait, TimeUnit timeUnit) {
+		return waitForArduino(wait, timeUnit, ANY_MESSAGE_RECEIVED, false);
+	}
 
+	private boolean waitForArduino(int wait, TimeUnit timeUnit,
+			final Mode mode, boolean ping) {
+		final CountDownLatch ready = new CountDownLatch(1);
 		ListenerAdapter listener = new ListenerAdapter() {
 			@Override
 			public void received(byte[] bytes) throws IOException {
 				if (mode == ANY_MESSAGE_RECEIVED || readyMsgReceived) {
 					// messages are arriving so device is ready
-					lockingQueue.offer(true);
+					ready.countDown();
 				}
 			}
 		};
 		this.connection.addListener(listener);
-
-		Boolean deviceIsReady = null;
 		try {
-			ping();
-			deviceIsReady = lockingQueue.poll(wait, timeUnit);
-			if (deviceIsReady == null) {
-				deviceIsReady = false;
+			if (readyMsgReceived) {
+				return true;
+			}
+			long deadline = System.nanoTime() + timeUnit.toNanos(wait);
+			long pingInterval = FIRST_PING_INTERVAL;
+			while (true) {
+				if (ping) {
+					ping();
+				}
+				long remaining = deadline - System.nanoTime();
+				if (ready.await(ping ? Math.min(pingInterval, remaining)
+						: remaining, NANOSECONDS)) {
+					return true;
+				}
+				if (deadline - System.nanoTime() <= 0) {
+					return false;
+				}
+				pingInterval = Math.min(2 * pingInterval, MAX_PING_INTERVAL);
 			}
-
 		} catch (InterruptedException e) {
 			throw propagate(e);
 		} finally {
 			this.connection.removeListener(listener);
 		}
-		return deviceIsReady;
 	}
 
 	private void ping() {
@@ -321,6 +370,85 @@ public class ConnectionBasedLink extends AbstractListenerLink {
 		this.connection.write(bytes);
 	}
 
+	/**
+	 * Returns a new {@link Batch} to send many messages using one write on the
+	 * connection.
+	 */
+	public Batch batch() {
+		return new Batch();
+	}
+
+	/**
+	 * Collects pin and listening state changes which then are sent to the
+	 * device with one write on the connection, instead of one write per
+	 * message.
+	 */
+	public class Batch {
+
+		private final List<Object> messages = new ArrayList<Object>();
+
+		private Batch() {
+			super();
+		}
+
+		public Batch switchAnalogPin(AnalogPin analogPin, int value) {
+			messages.add(new DefaultToDeviceMessagePinStateChange(analogPin,
+					value));
+			return this;
+		}
+
+		public Batch switchDigitalPin(DigitalPin digitalPin, boolean value) {
+			messages.add(new DefaultToDeviceMessagePinStateChange(digitalPin,
+					value));
+			return this;
+		}
+
+		public Batch startListening(Pin pin) {
+			messages.add(new DefaultToDeviceMessageStartListening(pin));
+			return this;
+		}
+
+		public Batch stopListening(Pin pin) {
+			messages.add(new DefaultToDeviceMessageStopListening(pin));
+			return this;
+		}
+
+		public int size() {
+			return messages.size();
+		}
+
+		/**
+		 * Sends all messages of this batch.
+		 * 
+		 * @return the ids of the messages sent (in the order they were added)
+		 */
+		public long[] send() throws IOException {
+			long[] ids = new long[messages.size()];
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			synchronized (connection) {
+				for (int i = 0; i < ids.length; i++) {
+					Object msg = addMessageIdIfNeeded(messages.get(i));
+					bytes.write(toDevice(msg));
+					ids[i] = messageIdOf(msg);
+				}
+				ConnectionBasedLink.this.send(bytes.toByteArray());
+			}
+			return ids;
+		}
+
+		private byte[] toDevice(Object msg) {
+			if (msg instanceof ToDeviceMessagePinStateChange) {
+				return protocol.toDevice((ToDeviceMessagePinStateChange) msg);
+			} else if (msg instanceof ToDeviceMessageStartListening) {
+				return protocol.toDevice((ToDeviceMessageStartListening) msg);
+			} else if (msg instanceof ToDeviceMessageStopListening) {
+				return protocol.toDevice((ToDeviceMessageStopListening) msg);
+			}
+			throw new IllegalStateException("Cannot handle " + msg);
+		}
+
+	}
+
 	private <T> T addMessageIdIfNeeded(T event) {
 		return hasRplyListeners() ? addMessageId(event, nextId()) : event;
 	}
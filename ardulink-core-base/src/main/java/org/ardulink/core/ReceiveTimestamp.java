@@ -0,0 +1,84 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.core;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * Holds the timestamps of the frame the current thread is processing. They
+ * are set by the {@link StreamReader} (or by connections using
+ * {@link AbstractConnection#contactListeners4Received(byte[], long, long)})
+ * for the time the frame is passed to its listeners, so the events created while decoding the frame can carry the
+ * time the frame was received. All timestamps are {@link System#nanoTime()}
+ * values.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public final class ReceiveTimestamp {
+
+	private static final ThreadLocal<long[]> current = new ThreadLocal<long[]>() {
+		@Override
+		protected long[] initialValue() {
+			// set, readNanos, receivedNanos
+			return new long[3];
+		}
+	};
+
+	private ReceiveTimestamp() {
+		super();
+	}
+
+	static void set(long readNanos, long receivedNanos) {
+		long[] timestamps = current.get();
+		timestamps[0] = 1;
+		timestamps[1] = readNanos;
+		timestamps[2] = receivedNanos;
+	}
+
+	static void clear() {
+		current.get()[0] = 0;
+	}
+
+	/**
+	 * Returns <code>true</code> if the current thread is processing a frame
+	 * read by a {@link StreamReader} or another timestamping connection.
+	 */
+	public static boolean isSet() {
+		return current.get()[0] != 0;
+	}
+
+	/**
+	 * Returns the time the last byte of the current frame has been read from
+	 * the stream or {@link System#nanoTime()} if no frame is processed.
+	 */
+	public static long readNanos() {
+		long[] timestamps = current.get();
+		return timestamps[0] == 0 ? System.nanoTime() : timestamps[1];
+	}
+
+	/**
+	 * Returns the time the current frame has been extracted from the stream
+	 * or {@link System#nanoTime()} if no frame is processed.
+	 */
+	public static long receivedNanos() {
+		long[] timestamps = current.get();
+		return timestamps[0] == 0 ? System.nanoTime() : timestamps[2];
+	}
+
+}
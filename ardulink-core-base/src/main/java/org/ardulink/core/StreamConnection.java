@@ -44,8 +44,19 @@ public class StreamConnection extends AbstractConnection {
 
 	public StreamConnection(InputStream inputStream, OutputStream outputStream,
 			Protocol protocol) {
+		this(inputStream, outputStream, protocol, 1);
+	}
+
+	/**
+	 * @param readBufferSize
+	 *            the maximum number of bytes read from the input stream at
+	 *            once
+	 * @see StreamReader#StreamReader(InputStream, int)
+	 */
+	public StreamConnection(InputStream inputStream, OutputStream outputStream,
+			Protocol protocol, int readBufferSize) {
 		this.outputStream = outputStream;
-		this.streamReader = new StreamReader(inputStream) {
+		this.streamReader = new StreamReader(inputStream, readBufferSize) {
 			@Override
 			protected void received(byte[] bytes) throws Exception {
 				contactListeners4Received(bytes);
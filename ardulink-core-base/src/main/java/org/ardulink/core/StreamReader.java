@@ -16,6 +16,8 @@ limitations under the License.
 
 package org.ardulink.core;
 
+import static org.ardulink.util.Preconditions.checkArgument;
+
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
@@ -36,16 +38,30 @@ public abstract class StreamReader implements Closeable {
 	private static final Logger logger = LoggerFactory.getLogger(StreamReader.class);
 
 	private final InputStream inputStream;
+	private final int readBufferSize;
 	private StreamScanner scanner;
 
 	private Thread thread;
 
 	public StreamReader(InputStream inputStream) {
+		this(inputStream, 1);
+	}
+
+	/**
+	 * @param readBufferSize
+	 *            the maximum number of bytes read from the stream at once,
+	 *            streams returning what is available (instead of blocking
+	 *            until the buffer is full) can be read in bulk this way
+	 */
+	public StreamReader(InputStream inputStream, int readBufferSize) {
+		checkArgument(readBufferSize > 0,
+				"readBufferSize must be positive but was %s", readBufferSize);
 		this.inputStream = inputStream;
+		this.readBufferSize = readBufferSize;
 	}
 
 	public void runReaderThread(final byte[] delimiter) {
-		scanner = new StreamScanner(inputStream, delimiter);
+		scanner = new StreamScanner(inputStream, delimiter, readBufferSize);
 		this.thread = new Thread() {
 
 			{
@@ -65,13 +81,19 @@ public abstract class StreamReader implements Closeable {
 		
 		try {
 						
-			while (scanner.hasNext() && !this.thread.isInterrupted()) {
+			while (scanner.hasNext() && !Thread.currentThread().isInterrupted()) {
 				try {
 					logger.debug("Waiting for data");
 					byte[] bytes = scanner.next();
 					logger.debug("Stream read {}", bytes);
 					if(bytes != null) {
-						received(bytes);
+						ReceiveTimestamp.set(scanner.getReadNanos(),
+								System.nanoTime());
+						try {
+							received(bytes);
+						} finally {
+							ReceiveTimestamp.clear();
+						}
 					}
 				} catch (Exception e) {
 					logger.error("Error while retrieving data", e);
@@ -35,6 +35,8 @@ public class StreamScanner {
 
 	private boolean interrupted;
 
+	private long readNanos;
+
 	public StreamScanner(InputStream inputStream, byte[] delimiter) {
 		this(inputStream, delimiter, 1);
 	}
@@ -60,6 +62,7 @@ public class StreamScanner {
 	private int read() throws IOException {
 		int bytesRead = inputStream.read(readBuffer);
 		if (bytesRead > 0) {
+			readNanos = System.nanoTime();
 			underBuffer.append(readBuffer, bytesRead);
 		}
 		return bytesRead;
@@ -69,6 +72,15 @@ public class StreamScanner {
 		return hasNext() ? underBuffer.next(delimiter) : null;
 	}
 
+	/**
+	 * Returns the {@link System#nanoTime()} of the last read that returned
+	 * data, so for the array returned by {@link #next()} the time its last
+	 * byte has been read.
+	 */
+	public long getReadNanos() {
+		return readNanos;
+	}
+
 	public void close() {
 		try {
 			inputStream.close();
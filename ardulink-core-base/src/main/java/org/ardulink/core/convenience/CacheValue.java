@@ -28,14 +28,46 @@ import org.ardulink.core.Link;
  */
 class CacheValue {
 
-	private final Link link;
+	private Link link;
+	private Throwable failure;
 	private int usageCounter;
 
-	public CacheValue(Link link) {
+
+	public synchronized void created(Link link) {
 		this.link = link;
+		notifyAll();
+	}
+
+	public synchronized void failed(Throwable failure) {
+		this.failure = failure;
+		notifyAll();
 	}
 
-	public Link getLink() {
+	/**
+	 * Returns the link as soon as it has been created, if creating it failed
+	 * the failure is thrown.
+	 */
+	public synchronized Link awaitLink() {
+		boolean interrupted = false;
+		try {
+			while (link == null && failure == null) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		if (failure instanceof Error) {
+			throw (Error) failure;
+		}
+		if (failure != null) {
+			throw (RuntimeException) failure;
+		}
 		return link;
 	}
 
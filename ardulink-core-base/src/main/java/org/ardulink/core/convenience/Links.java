@@ -17,12 +17,24 @@ limitations under the License.
 package org.ardulink.core.convenience;
 
 import static org.ardulink.core.linkmanager.LinkManager.extractNameFromURI;
+import static org.ardulink.util.Preconditions.checkNotNull;
 
 import java.io.IOException;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.ardulink.core.Link;
 import org.ardulink.core.linkmanager.LinkManager;
@@ -43,6 +55,8 @@ public final class Links {
 	// TODO use a WeakHashMap and use PhantomReferences to close GCed Links
 	private static final Map<Object, CacheValue> cache = new HashMap<Object, CacheValue>();
 
+	private static final int MAX_CONCURRENT_CREATIONS = 32;
+
 	private Links() {
 		super();
 	}
@@ -97,19 +111,110 @@ public final class Links {
 		return "default".equalsIgnoreCase(extractNameFromURI(uri));
 	}
 
+	/**
+	 * Returns a shared Link for the passed Configurer. The Link is created
+	 * outside of the cache's lock so Links for different URIs can be created
+	 * concurrently (e.g. waiting for their arduinos to boot), callers asking
+	 * for a Link that is just created wait for it.
+	 */
 	public static Link getLink(Configurer configurer) {
 		final Object cacheKey = configurer.uniqueIdentifier();
+		CacheValue cacheValue;
+		boolean create;
 		synchronized (cache) {
-			CacheValue cacheValue = cache.get(cacheKey);
-			if (cacheValue == null) {
-				cache.put(
-						cacheKey,
-						(cacheValue = new CacheValue(newDelegate(cacheKey,
-								configurer.newLink()))));
+			cacheValue = cache.get(cacheKey);
+			create = cacheValue == null;
+			if (create) {
+				cache.put(cacheKey, (cacheValue = new CacheValue()));
 			}
 			cacheValue.increaseUsageCounter();
-			return cacheValue.getLink();
 		}
+		if (create) {
+			try {
+				cacheValue.created(newDelegate(cacheKey, configurer.newLink()));
+			} catch (RuntimeException e) {
+				creationFailed(cacheKey, cacheValue, e);
+			} catch (Error e) {
+				creationFailed(cacheKey, cacheValue, e);
+			}
+		}
+		return cacheValue.awaitLink();
+	}
+
+	private static void creationFailed(Object cacheKey, CacheValue cacheValue,
+			Throwable failure) {
+		synchronized (cache) {
+			cache.remove(cacheKey);
+		}
+		cacheValue.failed(failure);
+	}
+
+	/**
+	 * Returns shared Links for all passed URIs like {@link #getLink(URI)} but
+	 * creates them concurrently, so the time it takes does not grow with the
+	 * number of URIs if e.g. each Link waits for its arduino to boot. Returns
+	 * when all Links have been created or failed to be created.
+	 * 
+	 * @param uris
+	 *            the URIs to create the Links for
+	 * @return the Links created and the failures of the ones not created
+	 */
+	public static OpenedLinks getLinks(Collection<URI> uris) {
+		List<URI> distinct = new ArrayList<URI>(new LinkedHashSet<URI>(
+				checkNotNull(uris, "uris must not be null")));
+		Map<URI, Link> links = new LinkedHashMap<URI, Link>();
+		Map<URI, Exception> failures = new LinkedHashMap<URI, Exception>();
+		if (distinct.isEmpty()) {
+			return new OpenedLinks(links, failures);
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(
+				Math.min(distinct.size(), MAX_CONCURRENT_CREATIONS),
+				daemonThreads());
+		try {
+			List<Future<Link>> futures = new ArrayList<Future<Link>>(
+					distinct.size());
+			for (final URI uri : distinct) {
+				futures.add(executor.submit(new Callable<Link>() {
+					@Override
+					public Link call() {
+						return getLink(uri);
+					}
+				}));
+			}
+			for (int i = 0; i < distinct.size(); i++) {
+				URI uri = distinct.get(i);
+				try {
+					links.put(uri, futures.get(i).get());
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof Error) {
+						throw (Error) cause;
+					}
+					failures.put(uri, (Exception) cause);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					failures.put(uri, e);
+				}
+			}
+		} finally {
+			executor.shutdown();
+		}
+		return new OpenedLinks(links, failures);
+	}
+
+	private static ThreadFactory daemonThreads() {
+		return new ThreadFactory() {
+
+			private final AtomicInteger threadNumber = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "Links-"
+						+ threadNumber.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
 	}
 
 	private static LinkDelegate newDelegate(final Object cacheKey, Link link) {
@@ -0,0 +1,78 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+ 
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+ 
+    http://www.apache.org/licenses/LICENSE-2.0
+ 
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.ardulink.core.convenience;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Collections;
+import java.util.Map;
+
+import org.ardulink.core.Link;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ * 
+ * The result of {@link Links#getLinks(java.util.Collection)}: The Links
+ * created and the failures of the ones that could not be created, both in
+ * the order of the URIs passed. Closing it closes all Links created.
+ * 
+ * project Ardulink http://www.ardulink.org/
+ * 
+ * [adsense]
+ *
+ */
+public class OpenedLinks implements Closeable {
+
+	private final Map<URI, Link> links;
+	private final Map<URI, Exception> failures;
+
+	OpenedLinks(Map<URI, Link> links, Map<URI, Exception> failures) {
+		this.links = Collections.unmodifiableMap(links);
+		this.failures = Collections.unmodifiableMap(failures);
+	}
+
+	public Map<URI, Link> getLinks() {
+		return links;
+	}
+
+	public Map<URI, Exception> getFailures() {
+		return failures;
+	}
+
+	/**
+	 * Returns <code>true</code> if the Links for all URIs have been created.
+	 */
+	public boolean isComplete() {
+		return failures.isEmpty();
+	}
+
+	@Override
+	public void close() throws IOException {
+		IOException firstFailure = null;
+		for (Link link : links.values()) {
+			try {
+				link.close();
+			} catch (IOException e) {
+				firstFailure = firstFailure == null ? e : firstFailure;
+			}
+		}
+		if (firstFailure != null) {
+			throw firstFailure;
+		}
+	}
+
+}
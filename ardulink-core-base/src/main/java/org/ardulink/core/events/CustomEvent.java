@@ -27,4 +27,11 @@ public interface CustomEvent {
 	
 	String getMessage();
 
+	/**
+	 * Returns the {@link System#nanoTime()} the frame carrying this event was
+	 * received, for events not read from a stream the time the event was
+	 * created.
+	 */
+	long getReceivedNanos();
+
 }
@@ -31,10 +31,17 @@ public class DefaultAnalogPinValueChangedEvent implements
 
 	private final AnalogPin pin;
 	private final Integer value;
+	private final long receivedNanos;
 
 	public DefaultAnalogPinValueChangedEvent(AnalogPin pin, int value) {
+		this(pin, value, System.nanoTime());
+	}
+
+	public DefaultAnalogPinValueChangedEvent(AnalogPin pin, int value,
+			long receivedNanos) {
 		this.pin = pin;
 		this.value = value;
+		this.receivedNanos = receivedNanos;
 	}
 
 	public AnalogPin getPin() {
@@ -45,6 +52,11 @@ public class DefaultAnalogPinValueChangedEvent implements
 		return this.value;
 	}
 
+	@Override
+	public long getReceivedNanos() {
+		return this.receivedNanos;
+	}
+
 	@Override
 	public String toString() {
 		return "DefaultAnalogPinValueChangedEvent [pin=" + pin + ", value="
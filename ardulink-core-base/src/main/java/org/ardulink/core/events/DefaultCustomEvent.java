@@ -26,9 +26,15 @@ package org.ardulink.core.events;
 public class DefaultCustomEvent implements CustomEvent {
 
 	private final String message;
+	private final long receivedNanos;
 	
 	public DefaultCustomEvent(String message) {
+		this(message, System.nanoTime());
+	}
+
+	public DefaultCustomEvent(String message, long receivedNanos) {
 		this.message = message;
+		this.receivedNanos = receivedNanos;
 	}
 
 	@Override
@@ -36,4 +42,9 @@ public class DefaultCustomEvent implements CustomEvent {
 		return message;
 	}
 
+	@Override
+	public long getReceivedNanos() {
+		return receivedNanos;
+	}
+
 }
@@ -31,10 +31,17 @@ public class DefaultDigitalPinValueChangedEvent implements
 
 	private final DigitalPin pin;
 	private final Boolean value;
+	private final long receivedNanos;
 
 	public DefaultDigitalPinValueChangedEvent(DigitalPin pin, boolean value) {
+		this(pin, value, System.nanoTime());
+	}
+
+	public DefaultDigitalPinValueChangedEvent(DigitalPin pin, boolean value,
+			long receivedNanos) {
 		this.pin = pin;
 		this.value = value;
+		this.receivedNanos = receivedNanos;
 	}
 
 	public DigitalPin getPin() {
@@ -45,6 +52,11 @@ public class DefaultDigitalPinValueChangedEvent implements
 		return this.value;
 	}
 
+	@Override
+	public long getReceivedNanos() {
+		return this.receivedNanos;
+	}
+
 	@Override
 	public String toString() {
 		return "DefaultDigitalPinValueChangedEvent [pin=" + pin + ", value="
@@ -32,4 +32,11 @@ public interface PinValueChangedEvent {
 
 	Object getValue();
 
+	/**
+	 * Returns the {@link System#nanoTime()} the frame carrying this event was
+	 * received, for events not read from a stream the time the event was
+	 * created.
+	 */
+	long getReceivedNanos();
+
 }
@@ -605,23 +605,37 @@ public abstract class LinkManager {
 				DefaultConfigurer defaultConfigurer = new DefaultConfigurer(
 						connectionFactory);
 				return configure(defaultConfigurer,
-						uri.getQuery() == null ? new String[0] : uri.getQuery()
-								.split("\\&"));
+						uri.getRawQuery() == null ? new String[0] : uri
+								.getRawQuery().split("\\&"));
 			}
 
+			/**
+			 * The params are split before they are decoded so values can be
+			 * URIs having params on their own (e.g. the link a proxy should
+			 * open). Params without a value are ignored.
+			 */
 			private Configurer configure(Configurer configurer, String[] params) {
 				for (String param : params) {
-					String[] split = param.split("\\=");
-					if (split.length == 2) {
+					String[] split = param.split("\\=", 2);
+					if (split.length == 2 && !split[1].isEmpty()) {
 						ConfigAttribute attribute = configurer
-								.getAttribute(split[0]);
-						attribute.setValue(convert(split[1],
+								.getAttribute(decode(split[0]));
+						attribute.setValue(convert(decode(split[1]),
 								attribute.getType()));
 					}
 				}
 				return configurer;
 			}
 
+			/**
+			 * Decodes the %XX escapes only, like {@link URI#getQuery()} does
+			 * a '+' is kept (and not turned into a space like form encoding
+			 * does).
+			 */
+			private String decode(String value) {
+				return URIs.decode(value.replace("+", "%2B"));
+			}
+
 			private Object convert(String value,
 					Class<? extends Object> targetType) {
 				if (targetType.isInstance(value)) {
@@ -0,0 +1,125 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.core.ports;
+
+import static org.ardulink.util.Preconditions.checkNotNull;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * Caches the ports listed by an {@link Enumerator} (which e.g. asks a native
+ * serial library) so asking for the ports (like the validation of each new
+ * link and every refresh of a UI does) is served from memory. The ports are
+ * listed again only if one of the watched directories (<code>/dev</code> and
+ * <code>/dev/serial/by-id</code> by default) changed, since plugging or
+ * unplugging a device adds or removes entries there. Checking this costs a
+ * <code>stat</code> per directory instead of a native enumeration. On
+ * systems having none of the watched directories the ports are listed again
+ * after a fixed time.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public class PortRegistry {
+
+	public interface Enumerator {
+
+		List<String> listPorts();
+
+	}
+
+	private static final List<File> DEFAULT_WATCHED = Arrays.asList(new File(
+			"/dev"), new File("/dev/serial/by-id"));
+
+	private static final long DEFAULT_MAX_AGE_MILLIS = 5000;
+
+	private final Enumerator enumerator;
+	private final List<File> watched;
+	private final long maxAgeMillis;
+
+	private List<String> ports;
+	private long[] stamps;
+	private long listedAt;
+
+	public PortRegistry(Enumerator enumerator) {
+		this(enumerator, DEFAULT_WATCHED, DEFAULT_MAX_AGE_MILLIS);
+	}
+
+	public PortRegistry(Enumerator enumerator, List<File> watched,
+			long maxAgeMillis) {
+		this.enumerator = checkNotNull(enumerator, "enumerator must not be null");
+		this.watched = new ArrayList<File>(checkNotNull(watched,
+				"watched must not be null"));
+		this.maxAgeMillis = maxAgeMillis;
+	}
+
+	/**
+	 * Returns the ports, they are listed by the {@link Enumerator} only if
+	 * they have not been listed yet or might have changed since.
+	 */
+	public synchronized List<String> getPorts() {
+		long[] stamps = stamps();
+		if (ports == null || !Arrays.equals(stamps, this.stamps)
+				|| !isWatching(stamps)
+				&& System.currentTimeMillis() - listedAt >= maxAgeMillis) {
+			this.ports = Collections.unmodifiableList(new ArrayList<String>(
+					enumerator.listPorts()));
+			this.stamps = stamps;
+			this.listedAt = System.currentTimeMillis();
+		}
+		return ports;
+	}
+
+	/**
+	 * Forces the ports to be listed again on the next call of
+	 * {@link #getPorts()}.
+	 */
+	public synchronized void invalidate() {
+		this.ports = null;
+	}
+
+	/**
+	 * The modification time of a directory changes whenever an entry is added
+	 * or removed, -1 for directories not existing (/dev/serial/by-id exists
+	 * only while a serial device is plugged in).
+	 */
+	private long[] stamps() {
+		long[] stamps = new long[watched.size()];
+		for (int i = 0; i < stamps.length; i++) {
+			File dir = watched.get(i);
+			stamps[i] = dir.isDirectory() ? dir.lastModified() : -1;
+		}
+		return stamps;
+	}
+
+	private static boolean isWatching(long[] stamps) {
+		for (long stamp : stamps) {
+			if (stamp != -1) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
@@ -64,6 +64,14 @@ public class QosLink implements Link {
 		this.timeUnit = timeUnit;
 	}
 
+	/**
+	 * Returns the link the messages are sent with, sending on it does not wait
+	 * for the replies.
+	 */
+	public Link getDelegate() {
+		return delegate;
+	}
+
 	public void close() throws IOException {
 		delegate.close();
 	}
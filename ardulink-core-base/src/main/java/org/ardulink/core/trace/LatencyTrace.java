@@ -0,0 +1,107 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.core.trace;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * Per stage latency histograms of the events of a link, see
+ * {@link org.ardulink.core.AbstractListenerLink#enableTracing()}.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public class LatencyTrace {
+
+	public enum Stage {
+		/**
+		 * From reading the last byte of a frame to extracting the frame from
+		 * the stream.
+		 */
+		FRAMING,
+		/**
+		 * From extracting the frame to the decoded message.
+		 */
+		DECODE,
+		/**
+		 * From the decoded event to calling a listener, this includes the
+		 * time spent in the listeners called before.
+		 */
+		DISPATCH_QUEUE,
+		/**
+		 * The time a listener takes to handle the event.
+		 */
+		LISTENER;
+	}
+
+	private final Map<Stage, LatencyHistogram> histograms = new EnumMap<Stage, LatencyHistogram>(
+			Stage.class);
+
+	public LatencyTrace() {
+		for (Stage stage : Stage.values()) {
+			histograms.put(stage, new LatencyHistogram());
+		}
+	}
+
+	public LatencyHistogram getHistogram(Stage stage) {
+		return histograms.get(stage);
+	}
+
+	public void record(Stage stage, long nanos) {
+		histograms.get(stage).record(nanos);
+	}
+
+	/**
+	 * Records a frame that has been decoded just now.
+	 */
+	public void decoded(long readNanos, long receivedNanos) {
+		record(Stage.FRAMING, receivedNanos - readNanos);
+		record(Stage.DECODE, System.nanoTime() - receivedNanos);
+	}
+
+	/**
+	 * Records a listener that is about to be called.
+	 *
+	 * @param dispatchNanos
+	 *            the time dispatching of the event started
+	 * @return the time the listener is called
+	 */
+	public long listenerStarting(long dispatchNanos) {
+		long now = System.nanoTime();
+		record(Stage.DISPATCH_QUEUE, now - dispatchNanos);
+		return now;
+	}
+
+	public void listenerFinished(long startNanos) {
+		record(Stage.LISTENER, System.nanoTime() - startNanos);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (Stage stage : Stage.values()) {
+			sb.append(stage).append(": ").append(histograms.get(stage))
+					.append('\n');
+		}
+		return sb.toString();
+	}
+
+}
@@ -48,6 +48,8 @@ import org.ardulink.core.events.FilteredEventListenerAdapter;
 import org.ardulink.core.events.PinValueChangedEvent;
 import org.ardulink.core.proto.api.Protocol;
 import org.ardulink.core.proto.impl.ArdulinkProtocol2;
+import org.ardulink.core.trace.LatencyTrace;
+import org.ardulink.core.trace.LatencyTrace.Stage;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
@@ -106,6 +108,61 @@ public class ConnectionBasedLinkTest {
 				+ new String(proto.getSeparator())));
 	}
 
+	@Test
+	public void canSendBatchUsingOneWrite() throws IOException {
+		final AtomicInteger writes = new AtomicInteger();
+		this.connection.addListener(new Connection.ListenerAdapter() {
+			@Override
+			public void sent(byte[] bytes) {
+				writes.incrementAndGet();
+			}
+		});
+		long[] ids = this.link.batch().switchAnalogPin(analogPin(1), 42)
+				.switchDigitalPin(digitalPin(2), true)
+				.startListening(analogPin(3)).send();
+		assertThat(ids.length, is(3));
+		assertThat(writes.get(), is(1));
+		assertThat(toArduinoWasSent(),
+				is("alp://ppin/1/42\nalp://ppsw/2/1\nalp://srla/3\n"));
+	}
+
+	@Test
+	public void eventsCarryTheTimeTheirFrameWasReceived() throws IOException {
+		final List<PinValueChangedEvent> events = new ArrayList<PinValueChangedEvent>();
+		this.link.addListener(new EventListenerAdapter() {
+			@Override
+			public void stateChanged(AnalogPinValueChangedEvent event) {
+				events.add(event);
+			}
+		});
+		long before = System.nanoTime();
+		String message = alpProtocolMessage(ANALOG_PIN_READ).forPin(1)
+				.withValue(2);
+		simulateArdunoSend(message);
+		waitUntilRead(this.bytesRead, message.length());
+		long receivedNanos = events.get(0).getReceivedNanos();
+		assertThat(receivedNanos - before >= 0, is(true));
+		assertThat(System.nanoTime() - receivedNanos >= 0, is(true));
+	}
+
+	@Test
+	public void tracingRecordsEachStage() throws IOException {
+		LatencyTrace trace = this.link.enableTracing();
+		this.link.addListener(new EventListenerAdapter() {
+			@Override
+			public void stateChanged(DigitalPinValueChangedEvent event) {
+				// do nothing
+			}
+		});
+		String message = alpProtocolMessage(DIGITAL_PIN_READ).forPin(1)
+				.withState(true);
+		simulateArdunoSend(message);
+		waitUntilRead(this.bytesRead, message.length());
+		for (Stage stage : Stage.values()) {
+			assertThat(trace.getHistogram(stage).getCount(), is(1L));
+		}
+	}
+
 	@Test
 	public void canSendDigitalValue() throws IOException {
 		int pin = anyPositive(int.class);
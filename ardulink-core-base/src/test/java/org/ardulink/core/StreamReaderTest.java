@@ -91,11 +91,36 @@ public class StreamReaderTest {
 		reader.close();
 	}
 
+	@Test
+	public void canReadInBulkMessagesSplitAcrossReads() throws Exception {
+		List<String> expected = Arrays.asList("a", "bc", "d");
+
+		PipedOutputStream os = new PipedOutputStream();
+		PipedInputStream is = new PipedInputStream(os);
+
+		StreamReader reader = process(is, "\n", expected, 64);
+
+		os.write("a\nb".getBytes());
+		os.flush();
+		MILLISECONDS.sleep(200);
+		os.write("c\nd\n".getBytes());
+
+		waitUntil(expected.size());
+		assertThat(received, is(expected));
+		reader.close();
+	}
+
 	private StreamReader process(InputStream is, String separator,
 			List<String> expected) throws InterruptedException, IOException {
+		return process(is, separator, expected, 1);
+	}
+
+	private StreamReader process(InputStream is, String separator,
+			List<String> expected, int readBufferSize)
+			throws InterruptedException, IOException {
 		final CountDownLatch latch = new CountDownLatch(expected.size());
 
-		StreamReader streamReader = new StreamReader(is) {
+		StreamReader streamReader = new StreamReader(is, readBufferSize) {
 			@Override
 			protected void received(byte[] bytes) {
 				received.add(new String(bytes));
@@ -97,6 +97,20 @@ public class WaitForArduinoToBootTest {
 				is(true));
 	}
 
+	@Test
+	public void waitingForArduinoToSendEndsWithTheFirstMessage()
+			throws IOException {
+		arduino.after(1, SECONDS).send("alp://ready/");
+		assertThat(link.waitForArduinoToSend(3, DAYS), is(true));
+	}
+
+	@Test
+	public void waitingForArduinoToSendDoesNotPing() throws IOException {
+		arduino.whenReceive(regex("alp:\\/\\/notn\\/0\\?id\\=(\\d)"))
+				.thenRespond("alp://rply/ok?id=%s");
+		assertThat(link.waitForArduinoToSend(1, SECONDS), is(false));
+	}
+
 	private Pattern regex(String regex) {
 		return Pattern.compile(regex);
 	}
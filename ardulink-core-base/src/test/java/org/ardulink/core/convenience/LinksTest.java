@@ -24,6 +24,9 @@ import static org.junit.Assert.assertThat;
 
 import java.io.IOException;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 
 import org.ardulink.core.Connection;
 import org.ardulink.core.ConnectionBasedLink;
@@ -136,6 +139,30 @@ public class LinksTest {
 		close(link1, link2);
 	}
 
+	@Test
+	public void canOpenSeveralLinksAtOnce() throws IOException {
+		URI uri1 = URIs.newURI("ardulink://dummyLink?b=1");
+		URI uri2 = URIs.newURI("ardulink://dummyLink?b=2");
+		URI invalid = URIs.newURI("ardulink://dummyLink?a=invalid");
+		OpenedLinks opened = Links.getLinks(Arrays.asList(uri1, invalid, uri2,
+				uri1));
+		assertThat(opened.isComplete(), is(false));
+		assertThat(new ArrayList<URI>(opened.getLinks().keySet()),
+				is(Arrays.asList(uri1, uri2)));
+		assertThat(opened.getFailures().keySet(),
+				is(Collections.singleton(invalid)));
+		// the links are shared
+		Link link1 = Links.getLink(uri1);
+		assertThat(opened.getLinks().get(uri1), sameInstance(link1));
+		DummyConnection connection1 = getConnection(link1);
+		DummyConnection connection2 = getConnection(opened.getLinks().get(uri2));
+		opened.close();
+		assertThat(connection1.getCloseCalls(), is(0));
+		assertThat(connection2.getCloseCalls(), is(1));
+		close(link1);
+		assertThat(connection1.getCloseCalls(), is(1));
+	}
+
 	private static <T> T[] assertAllSameInstances(T... objects) {
 		for (int i = 0; i < objects.length - 1; i++) {
 			assertThat(objects[i], sameInstance(objects[i + 1]));
@@ -21,10 +21,13 @@ import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertThat;
 
+import java.util.concurrent.TimeUnit;
+
 import org.ardulink.core.Link;
 import org.ardulink.core.linkmanager.LinkManager.Configurer;
 import org.ardulink.core.linkmanager.viaservices.AlLinkWithoutArealLinkFactoryWithConfig;
 import org.ardulink.core.linkmanager.viaservices.AlLinkWithoutArealLinkFactoryWithoutConfig;
+import org.ardulink.util.URIs;
 import org.junit.Test;
 
 /**
@@ -85,4 +88,22 @@ public class LinkManagerTest {
 				is(instanceOf(AlLinkWithoutArealLinkFactoryWithConfig.class)));
 	}
 
+	@Test
+	public void valuesCanBeUrisHavingParams() {
+		Configurer configurer = sut.getConfigurer(newURI("ardulink://dummyLink?c="
+				+ URIs.encode("ardulink://other?x=1&y=2") + "&e=SECONDS"));
+		assertThat(configurer.getAttribute("c").getValue(),
+				is((Object) "ardulink://other?x=1&y=2"));
+		assertThat(configurer.getAttribute("e").getValue(),
+				is((Object) TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void plusInValuesIsKept() {
+		Configurer configurer = sut.getConfigurer(newURI(
+				"ardulink://dummyLink?a=a+b&c=x%2By%20z"));
+		assertThat(configurer.getAttribute("a").getValue(), is((Object) "a+b"));
+		assertThat(configurer.getAttribute("c").getValue(), is((Object) "x+y z"));
+	}
+
 }
@@ -0,0 +1,124 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.core.ports;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ * 
+ * project Ardulink http://www.ardulink.org/
+ * 
+ * [adsense]
+ *
+ */
+public class PortRegistryTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final AtomicInteger listings = new AtomicInteger();
+
+	private List<String> ports = Arrays.asList("ttyUSB0");
+
+	private final PortRegistry.Enumerator enumerator = new PortRegistry.Enumerator() {
+		@Override
+		public List<String> listPorts() {
+			listings.incrementAndGet();
+			return ports;
+		}
+	};
+
+	@Test
+	public void listsPortsOnlyOnceWhileWatchedDirectoryIsUnchanged()
+			throws Exception {
+		File dev = folder.newFolder("dev");
+		PortRegistry registry = new PortRegistry(enumerator,
+				Arrays.asList(dev), 0);
+		assertThat(registry.getPorts(), is(ports));
+		assertThat(registry.getPorts(), is(ports));
+		assertThat(registry.getPorts(), is(ports));
+		assertThat(listings.get(), is(1));
+	}
+
+	@Test
+	public void listsPortsAgainWhenWatchedDirectoryChanged() throws Exception {
+		File dev = folder.newFolder("dev");
+		PortRegistry registry = new PortRegistry(enumerator,
+				Arrays.asList(dev), 0);
+		assertThat(registry.getPorts(), is(Arrays.asList("ttyUSB0")));
+
+		ports = Arrays.asList("ttyUSB0", "ttyUSB1");
+		plug(dev);
+		assertThat(registry.getPorts(), is(Arrays.asList("ttyUSB0", "ttyUSB1")));
+		assertThat(listings.get(), is(2));
+	}
+
+	@Test
+	public void listsPortsAgainWhenWatchedDirectoryAppears() throws Exception {
+		File byId = new File(folder.getRoot(), "by-id");
+		PortRegistry registry = new PortRegistry(enumerator, Arrays.asList(
+				folder.newFolder("dev"), byId), 0);
+		registry.getPorts();
+		assertThat(byId.mkdir(), is(true));
+		registry.getPorts();
+		assertThat(listings.get(), is(2));
+	}
+
+	@Test
+	public void listsPortsAgainAfterMaxAgeIfNothingCanBeWatched() {
+		PortRegistry cached = new PortRegistry(enumerator,
+				Arrays.asList(new File(folder.getRoot(), "missing")),
+				Long.MAX_VALUE);
+		cached.getPorts();
+		cached.getPorts();
+		assertThat(listings.get(), is(1));
+
+		PortRegistry expired = new PortRegistry(enumerator,
+				Collections.<File> emptyList(), 0);
+		expired.getPorts();
+		expired.getPorts();
+		assertThat(listings.get(), is(3));
+	}
+
+	@Test
+	public void listsPortsAgainAfterInvalidate() throws Exception {
+		PortRegistry registry = new PortRegistry(enumerator,
+				Arrays.asList(folder.newFolder("dev")), 0);
+		registry.getPorts();
+		registry.invalidate();
+		registry.getPorts();
+		assertThat(listings.get(), is(2));
+	}
+
+	private static void plug(File dir) {
+		// do not rely on the timestamp resolution of the filesystem
+		new File(dir, "ttyUSB1").mkdir();
+		dir.setLastModified(dir.lastModified() + 2000);
+	}
+
+}
@@ -0,0 +1,73 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.core.trace;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+import org.junit.Test;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public class LatencyHistogramTest {
+
+	private final LatencyHistogram histogram = new LatencyHistogram();
+
+	@Test
+	public void emptyHistogramReturnsZero() {
+		assertThat(histogram.getCount(), is(0L));
+		assertThat(histogram.getPercentile(99), is(0L));
+		assertThat(histogram.getMean(), is(0.0));
+	}
+
+	@Test
+	public void smallValuesAreExact() {
+		for (int i = 0; i < 8; i++) {
+			histogram.record(i);
+		}
+		assertThat(histogram.getPercentile(50), is(3L));
+		assertThat(histogram.getPercentile(100), is(7L));
+		assertThat(histogram.getMax(), is(7L));
+	}
+
+	@Test
+	public void percentilesAreAccurateToOneEighth() {
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(i * 1000L);
+		}
+		assertThat(histogram.getCount(), is(1000L));
+		assertThat(histogram.getMean(), is(500500.0));
+		long p50 = histogram.getPercentile(50);
+		assertThat(p50 >= 500000 && p50 <= 500000 * 9 / 8, is(true));
+		long p99 = histogram.getPercentile(99);
+		assertThat(p99 >= 990000 && p99 <= 1000000, is(true));
+		assertThat(histogram.getPercentile(100), is(1000000L));
+	}
+
+	@Test
+	public void negativeValuesAreRecordedAsZero() {
+		histogram.record(-5);
+		assertThat(histogram.getMax(), is(0L));
+		assertThat(histogram.getPercentile(100), is(0L));
+	}
+
+}
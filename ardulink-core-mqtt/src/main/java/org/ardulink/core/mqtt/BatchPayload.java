@@ -0,0 +1,156 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package org.ardulink.core.mqtt;
+
+import static java.lang.Character.toUpperCase;
+import static java.util.Collections.unmodifiableMap;
+import static org.ardulink.core.Pin.analogPin;
+import static org.ardulink.core.Pin.digitalPin;
+import static org.ardulink.util.Preconditions.checkArgument;
+import static org.ardulink.util.Preconditions.checkNotNull;
+import static org.ardulink.util.Preconditions.checkState;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.ardulink.core.Pin;
+import org.ardulink.core.Pin.Type;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * Payload of the (optional) batch topic. One batch carries the sample
+ * timestamp followed by any number of pin/value pairs, e.g.
+ * <code>1476806400000;A0=512;A1=17;D2=true</code>. When the same pin occurs
+ * more than once only the latest value is kept.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public final class BatchPayload {
+
+	public static final String TOPIC_SUFFIX = "batch";
+
+	private static final char SEPARATOR = ';';
+	private static final char KEY_VALUE_SEPARATOR = '=';
+
+	public static class Builder {
+
+		private long timestamp;
+		private final Map<Pin, Object> values = new LinkedHashMap<Pin, Object>();
+
+		private Builder(long timestamp) {
+			this.timestamp = timestamp;
+		}
+
+		public Builder timestamp(long timestamp) {
+			this.timestamp = timestamp;
+			return this;
+		}
+
+		public Builder add(Pin pin, Object value) {
+			checkNotNull(pin, "pin must not be null");
+			checkArgument(value instanceof Integer || value instanceof Boolean,
+					"Cannot handle value %s of pin %s", value, pin);
+			// re-add so that the order reflects the latest update
+			this.values.remove(pin);
+			this.values.put(pin, value);
+			return this;
+		}
+
+		public boolean isEmpty() {
+			return this.values.isEmpty();
+		}
+
+		public BatchPayload build() {
+			return new BatchPayload(this.timestamp,
+					new LinkedHashMap<Pin, Object>(this.values));
+		}
+
+	}
+
+	private final long timestamp;
+	private final Map<Pin, Object> values;
+
+	private BatchPayload(long timestamp, Map<Pin, Object> values) {
+		this.timestamp = timestamp;
+		this.values = unmodifiableMap(values);
+	}
+
+	public static Builder builder(long timestamp) {
+		return new Builder(timestamp);
+	}
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * Returns the pins and their values in the order they were added. Values
+	 * of analog pins are {@link Integer}s, values of digital pins are
+	 * {@link Boolean}s.
+	 *
+	 * @return pins and values of this batch
+	 */
+	public Map<Pin, Object> getValues() {
+		return values;
+	}
+
+	public String encode() {
+		StringBuilder sb = new StringBuilder(8 + 8 * values.size());
+		sb.append(timestamp);
+		for (Entry<Pin, Object> entry : values.entrySet()) {
+			Pin pin = entry.getKey();
+			sb.append(SEPARATOR).append(pin.is(Type.ANALOG) ? 'A' : 'D')
+					.append(pin.pinNum()).append(KEY_VALUE_SEPARATOR)
+					.append(entry.getValue());
+		}
+		return sb.toString();
+	}
+
+	public static BatchPayload decode(String payload) {
+		String[] parts = checkNotNull(payload, "payload must not be null")
+				.split(String.valueOf(SEPARATOR));
+		Builder builder = builder(Long.parseLong(parts[0].trim()));
+		for (int i = 1; i < parts.length; i++) {
+			String part = parts[i];
+			int idx = part.indexOf(KEY_VALUE_SEPARATOR);
+			checkState(idx >= 2, "Cannot parse %s of batch %s", part, payload);
+			char type = toUpperCase(part.charAt(0));
+			int pinNum = Integer.parseInt(part.substring(1, idx));
+			String value = part.substring(idx + 1);
+			if (type == 'A') {
+				builder.add(analogPin(pinNum), Integer.valueOf(value));
+			} else if (type == 'D') {
+				builder.add(digitalPin(pinNum), Boolean.valueOf(value));
+			} else {
+				throw new IllegalStateException("Cannot parse " + part
+						+ " of batch " + payload);
+			}
+		}
+		return builder.build();
+	}
+
+	@Override
+	public String toString() {
+		return encode();
+	}
+
+}
@@ -30,6 +30,7 @@ import static org.fusesource.mqtt.client.QoS.AT_LEAST_ONCE;
 import java.io.IOException;
 import java.util.EnumMap;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -75,6 +76,7 @@ public class MqttLink extends AbstractListenerLink {
 
 	private final String topic;
 	private final Pattern mqttReceivePattern;
+	private final String batchTopic;
 	private final MQTT mqttClient;
 	private final BlockingConnection connection;
 	private final boolean hasAppendix;
@@ -91,6 +93,7 @@ public class MqttLink extends AbstractListenerLink {
 		this.topic = config.getTopic();
 		this.mqttReceivePattern = Pattern.compile(MqttLink.this.topic
 				+ "([aAdD])(\\d+)" + Pattern.quote(appendixSub()));
+		this.batchTopic = MqttLink.this.topic + BatchPayload.TOPIC_SUFFIX;
 		this.mqttClient = newClient(config);
 		this.mqttClient.setConnectAttemptsMax(1);
 		this.connection = new BlockingConnection(new FutureConnection(
@@ -119,22 +122,18 @@ public class MqttLink extends AbstractListenerLink {
 				while (true) {
 					try {
 						Message message = connection.receive();
-						Matcher matcher = mqttReceivePattern.matcher(message
-								.getTopic());
-						if (matcher.matches() && matcher.groupCount() == 2) {
-							Pin pin = pin(matcher.group(1),
-									parseInt(matcher.group(2)));
-							if (pin != null) {
-								if (pin.is(Type.DIGITAL)) {
-									fireStateChanged(new DefaultDigitalPinValueChangedEvent(
-											(DigitalPin) pin,
-											Boolean.parseBoolean(new String(
-													message.getPayload()))));
-								} else if (pin.is(Type.ANALOG)) {
-									fireStateChanged(new DefaultAnalogPinValueChangedEvent(
-											(AnalogPin) pin,
-											Integer.parseInt(new String(message
-													.getPayload()))));
+						String messageTopic = message.getTopic();
+						if (batchTopic.equals(messageTopic)) {
+							handleBatch(new String(message.getPayload()));
+						} else {
+							Matcher matcher = mqttReceivePattern
+									.matcher(messageTopic);
+							if (matcher.matches() && matcher.groupCount() == 2) {
+								Pin pin = pin(matcher.group(1),
+										parseInt(matcher.group(2)));
+								if (pin != null) {
+									handle(pin,
+											new String(message.getPayload()));
 								}
 							}
 						}
@@ -159,6 +158,30 @@ public class MqttLink extends AbstractListenerLink {
 		};
 	}
 
+	private void handle(Pin pin, String payload) {
+		if (pin.is(Type.DIGITAL)) {
+			fireStateChanged(new DefaultDigitalPinValueChangedEvent(
+					(DigitalPin) pin, Boolean.parseBoolean(payload)));
+		} else if (pin.is(Type.ANALOG)) {
+			fireStateChanged(new DefaultAnalogPinValueChangedEvent(
+					(AnalogPin) pin, Integer.parseInt(payload)));
+		}
+	}
+
+	private void handleBatch(String payload) {
+		for (Entry<Pin, Object> entry : BatchPayload.decode(payload)
+				.getValues().entrySet()) {
+			Pin pin = entry.getKey();
+			if (pin.is(Type.DIGITAL)) {
+				fireStateChanged(new DefaultDigitalPinValueChangedEvent(
+						(DigitalPin) pin, (Boolean) entry.getValue()));
+			} else if (pin.is(Type.ANALOG)) {
+				fireStateChanged(new DefaultAnalogPinValueChangedEvent(
+						(AnalogPin) pin, (Integer) entry.getValue()));
+			}
+		}
+	}
+
 	private CallbackConnection newCallbackConnection() {
 		return new CallbackConnection(new MQTT(this.mqttClient)) {
 
@@ -0,0 +1,66 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+ 
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+ 
+    http://www.apache.org/licenses/LICENSE-2.0
+ 
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package org.ardulink.core.mqtt;
+
+import static org.ardulink.core.Pin.analogPin;
+import static org.ardulink.core.Pin.digitalPin;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ * 
+ * project Ardulink http://www.ardulink.org/
+ * 
+ * [adsense]
+ *
+ */
+public class BatchPayloadTest {
+
+	@Test
+	public void canEncode() {
+		String payload = BatchPayload.builder(42).add(analogPin(0), 512)
+				.add(digitalPin(2), true).add(analogPin(1), 17).build()
+				.encode();
+		assertThat(payload, is("42;A0=512;D2=true;A1=17"));
+	}
+
+	@Test
+	public void keepsLatestValueOfPin() {
+		String payload = BatchPayload.builder(42).add(analogPin(0), 512)
+				.add(digitalPin(2), true).add(analogPin(0), 17).build()
+				.encode();
+		assertThat(payload, is("42;D2=true;A0=17"));
+	}
+
+	@Test
+	public void canDecodeWhatWasEncoded() {
+		BatchPayload payload = BatchPayload.builder(1476806400000L)
+				.add(analogPin(3), 1023).add(digitalPin(13), false).build();
+		BatchPayload decoded = BatchPayload.decode(payload.encode());
+		assertThat(decoded.getTimestamp(), is(payload.getTimestamp()));
+		assertThat(decoded.getValues(), is(payload.getValues()));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void throwsExceptionOnUnknownPinType() {
+		BatchPayload.decode("42;X1=2");
+	}
+
+}
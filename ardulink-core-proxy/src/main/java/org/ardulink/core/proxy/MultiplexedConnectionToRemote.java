@@ -0,0 +1,499 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.core.proxy;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.ardulink.core.AbstractConnection;
+import org.ardulink.core.ConnectionListener;
+import org.ardulink.util.URIs;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * Client side of the multiplexed (version 2) proxy protocol: All links to
+ * the same proxy server share one TCP connection, each of them uses its own
+ * {@link Channel}. Control requests are pipelined (sent without waiting for
+ * the responses of the former ones) and matched by their request id. The
+ * choice values (e.g. the server's port list) are cached for
+ * {@link #CHOICES_TTL_MILLIS}. Connections are reference counted, they are
+ * closed when the last user closed them. If the TCP connection is lost all
+ * channels are closed and their {@link ConnectionListener}s are notified.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public class MultiplexedConnectionToRemote implements Closeable {
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(MultiplexedConnectionToRemote.class);
+
+	public static final String V2_CMD = "ardulink:networkproxyserver:v2";
+
+	public static final long CHOICES_TTL_MILLIS = 5000;
+
+	private static final long TIMEOUT_SECONDS = 30;
+
+	private static final String SEPARATOR = "\n";
+
+	private static final int CONTROL_CHANNEL = 0;
+
+	private static final String OK = "OK";
+
+	private static final Map<String, MultiplexedConnectionToRemote> remotes = new HashMap<String, MultiplexedConnectionToRemote>();
+
+	private static final Map<String, CachedChoices> choices = new HashMap<String, CachedChoices>();
+
+	private final String key;
+	private final Socket socket;
+	private final OutputStream outputStream;
+	private final BufferedReader reader;
+	private final Thread readerThread;
+	private final AtomicLong requestIds = new AtomicLong();
+	private final AtomicInteger channelIds = new AtomicInteger();
+	private final ConcurrentMap<Long, Response> pending = new ConcurrentHashMap<Long, Response>();
+	private final ConcurrentMap<Integer, Channel> channels = new ConcurrentHashMap<Integer, Channel>();
+	private int users;
+	private volatile boolean closed;
+
+	private MultiplexedConnectionToRemote(String key, String host, int port)
+			throws IOException {
+		this.key = key;
+		this.socket = new Socket(host, port);
+		this.socket.setTcpNoDelay(true);
+		this.outputStream = socket.getOutputStream();
+		this.reader = new BufferedReader(new InputStreamReader(
+				socket.getInputStream()));
+		try {
+			// servers not supporting version 2 do not answer at all
+			this.socket.setSoTimeout((int) SECONDS.toMillis(TIMEOUT_SECONDS));
+			writeLine(V2_CMD);
+			String response = reader.readLine();
+			if (!OK.equals(response)) {
+				throw new IOException("Did not receive " + OK + " from "
+						+ key + ", got " + response);
+			}
+			this.socket.setSoTimeout(0);
+		} catch (IOException e) {
+			socket.close();
+			throw e;
+		}
+		this.readerThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				readLoop();
+			}
+		}, "ProxyReader-" + key);
+		this.readerThread.setDaemon(true);
+		this.readerThread.start();
+	}
+
+	/**
+	 * Returns the connection to the proxy server, a new one is opened if there
+	 * is no open connection yet. Each call has to be followed by a call of
+	 * {@link #close()}. Connecting is done without holding the lock of the
+	 * open connections, if two threads connect concurrently the one finishing
+	 * last closes its connection and uses the other one.
+	 */
+	public static MultiplexedConnectionToRemote acquire(String host, int port)
+			throws IOException {
+		String key = host + ":" + port;
+		synchronized (remotes) {
+			MultiplexedConnectionToRemote remote = remotes.get(key);
+			if (remote != null && !remote.closed) {
+				remote.users++;
+				return remote;
+			}
+		}
+		MultiplexedConnectionToRemote created = new MultiplexedConnectionToRemote(
+				key, host, port);
+		MultiplexedConnectionToRemote remote;
+		synchronized (remotes) {
+			remote = remotes.get(key);
+			if (remote == null || remote.closed) {
+				remote = created;
+				remotes.put(key, remote);
+			}
+			remote.users++;
+		}
+		if (remote != created) {
+			try {
+				created.disconnect();
+			} catch (IOException e) {
+				logger.warn("Error closing superfluous connection to {}", key, e);
+			}
+		}
+		return remote;
+	}
+
+	/**
+	 * Returns the choice values of the attribute of the link created by the
+	 * server for the passed URI. The values are cached, concurrent calls share
+	 * the same request. The caller creating the cache entry connects and
+	 * requests outside the cache's lock, so a slow or unreachable server does
+	 * not block the calls for other servers.
+	 */
+	public static List<String> getChoiceValues(String host, int port,
+			String uri, String attribute) throws IOException {
+		String cacheKey = host + ":" + port + " " + uri + " " + attribute;
+		CachedChoices cached;
+		boolean load = false;
+		synchronized (choices) {
+			cached = choices.get(cacheKey);
+			if (cached == null || cached.isExpired()) {
+				cached = new CachedChoices(new Response(
+						MultiplexedSessionCommand.CHOICES, 0));
+				choices.put(cacheKey, cached);
+				load = true;
+			}
+		}
+		if (load) {
+			List<String> values = null;
+			try {
+				values = requestChoiceValues(host, port, uri, attribute);
+			} finally {
+				if (values == null) {
+					synchronized (choices) {
+						if (choices.get(cacheKey) == cached) {
+							choices.remove(cacheKey);
+						}
+					}
+					cached.response.failed("Cannot query " + host + ":" + port);
+				} else {
+					cached.response.succeeded(values);
+				}
+			}
+		}
+		return cached.response.await();
+	}
+
+	private static List<String> requestChoiceValues(String host, int port,
+			String uri, String attribute) throws IOException {
+		MultiplexedConnectionToRemote remote = acquire(host, port);
+		try {
+			return remote.request(MultiplexedSessionCommand.CHOICES, uri,
+					attribute).await();
+		} finally {
+			remote.close();
+		}
+	}
+
+	/**
+	 * Opens a channel to the link the server creates for the passed URI.
+	 */
+	public Channel openChannel(String uri) throws IOException {
+		Channel channel = new Channel(channelIds.incrementAndGet());
+		// registered before requesting so no frame gets lost
+		channels.put(channel.id, channel);
+		try {
+			request(MultiplexedSessionCommand.OPEN,
+					String.valueOf(channel.id), uri).await();
+		} catch (IOException e) {
+			channels.remove(channel.id);
+			throw e;
+		}
+		return channel;
+	}
+
+	/**
+	 * Sends the request and returns without waiting for the response.
+	 */
+	private Response request(MultiplexedSessionCommand command,
+			String... args) throws IOException {
+		long requestId = requestIds.incrementAndGet();
+		Response response = new Response(command, requestId);
+		pending.put(requestId, response);
+		if (closed) {
+			pending.remove(requestId);
+			throw new IOException("Connection to " + key + " closed");
+		}
+		StringBuilder sb = new StringBuilder().append(CONTROL_CHANNEL)
+				.append(' ').append(requestId).append(' ')
+				.append(command.getCommand());
+		for (String arg : args) {
+			sb.append(' ').append(URIs.encode(arg));
+		}
+		try {
+			writeLine(sb.toString());
+		} catch (IOException e) {
+			pending.remove(requestId);
+			throw e;
+		}
+		return response;
+	}
+
+	private void writeLine(String line) throws IOException {
+		byte[] bytes = (line + SEPARATOR).getBytes();
+		synchronized (outputStream) {
+			outputStream.write(bytes);
+			outputStream.flush();
+		}
+	}
+
+	private void readLoop() {
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				try {
+					lineReceived(line);
+				} catch (RuntimeException e) {
+					logger.error("Cannot handle {}", line, e);
+				}
+			}
+		} catch (IOException e) {
+			if (!closed) {
+				logger.error("Error reading from {}", key, e);
+			}
+		} finally {
+			closed = true;
+			for (Response response : pending.values()) {
+				response.failed("Connection to " + key + " closed");
+			}
+			pending.clear();
+			for (Channel channel : channels.values()) {
+				channel.connectionLost();
+			}
+			channels.clear();
+		}
+	}
+
+	private void lineReceived(String line) {
+		int space = line.indexOf(' ');
+		int id = Integer.parseInt(line.substring(0, space));
+		String payload = line.substring(space + 1);
+		if (id == CONTROL_CHANNEL) {
+			String[] tokens = payload.split(" ");
+			Response response = pending.remove(Long.valueOf(tokens[0]));
+			if (response == null) {
+				logger.warn("Got response for unknown request {}", line);
+			} else if (OK.equals(tokens[1])) {
+				response.succeeded(decode(tokens, 2));
+			} else {
+				List<String> message = decode(tokens, 2);
+				response.failed(message.isEmpty() ? tokens[1] : message.get(0));
+			}
+		} else {
+			Channel channel = channels.get(id);
+			if (channel == null) {
+				logger.debug("Dropping {}, channel {} not open", payload, id);
+			} else {
+				channel.contactListeners4Received(payload.getBytes());
+			}
+		}
+	}
+
+	private static List<String> decode(String[] tokens, int offset) {
+		List<String> values = new ArrayList<String>(tokens.length - offset);
+		for (String token : Arrays.asList(tokens).subList(offset,
+				tokens.length)) {
+			values.add(URIs.decode(token));
+		}
+		return values;
+	}
+
+	@Override
+	public void close() throws IOException {
+		synchronized (remotes) {
+			if (--users > 0) {
+				return;
+			}
+			if (remotes.get(key) == this) {
+				remotes.remove(key);
+			}
+		}
+		disconnect();
+	}
+
+	private void disconnect() throws IOException {
+		closed = true;
+		socket.close();
+	}
+
+	/**
+	 * The commands of channel 0.
+	 */
+	private static enum MultiplexedSessionCommand {
+
+		OPEN("open"), CLOSE("close"), CHOICES("choices");
+
+		private final String command;
+
+		private MultiplexedSessionCommand(String command) {
+			this.command = command;
+		}
+
+		public String getCommand() {
+			return command;
+		}
+
+	}
+
+	private static final class Response {
+
+		private final MultiplexedSessionCommand command;
+		private final long requestId;
+		private final CountDownLatch latch = new CountDownLatch(1);
+		private volatile List<String> values;
+		private volatile String error;
+
+		private Response(MultiplexedSessionCommand command, long requestId) {
+			this.command = command;
+			this.requestId = requestId;
+		}
+
+		private void succeeded(List<String> values) {
+			this.values = Collections.unmodifiableList(values);
+			this.latch.countDown();
+		}
+
+		private void failed(String error) {
+			this.error = error;
+			this.latch.countDown();
+		}
+
+		private List<String> await() throws IOException {
+			try {
+				if (!latch.await(TIMEOUT_SECONDS, SECONDS)) {
+					throw new IOException("No response to " + command + " ("
+							+ requestId + ") within " + TIMEOUT_SECONDS
+							+ " seconds");
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted waiting for " + command);
+			}
+			if (error != null) {
+				throw new IOException(command + " failed: " + error);
+			}
+			return values;
+		}
+
+	}
+
+	private static final class CachedChoices {
+
+		private final Response response;
+		private final long created = System.nanoTime();
+
+		private CachedChoices(Response response) {
+			this.response = response;
+		}
+
+		private boolean isExpired() {
+			return System.nanoTime() - created > MILLISECONDS
+					.toNanos(CHOICES_TTL_MILLIS);
+		}
+
+	}
+
+	/**
+	 * One logical link of the connection. The frames written are prefixed by
+	 * the channel's id.
+	 */
+	public class Channel extends AbstractConnection {
+
+		private final int id;
+		private final String prefix;
+		private final List<ConnectionListener> connectionListeners = new CopyOnWriteArrayList<ConnectionListener>();
+
+		private Channel(int id) {
+			this.id = id;
+			this.prefix = id + " ";
+		}
+
+		/**
+		 * Adds a listener that is notified if the connection to the proxy
+		 * server is lost.
+		 */
+		public void addConnectionListener(ConnectionListener listener) {
+			connectionListeners.add(listener);
+		}
+
+		public void removeConnectionListener(ConnectionListener listener) {
+			connectionListeners.remove(listener);
+		}
+
+		private void connectionLost() {
+			for (ConnectionListener listener : connectionListeners) {
+				try {
+					listener.connectionLost();
+				} catch (RuntimeException e) {
+					logger.error("ConnectionListener {} failure", listener, e);
+				}
+			}
+		}
+
+		@Override
+		public void write(byte[] bytes) throws IOException {
+			if (closed) {
+				throw new IOException("Connection to " + key + " closed");
+			}
+			StringBuilder sb = new StringBuilder();
+			for (String frame : new String(bytes).split(SEPARATOR)) {
+				if (!frame.isEmpty()) {
+					sb.append(prefix).append(frame).append(SEPARATOR);
+				}
+			}
+			byte[] lines = sb.toString().getBytes();
+			synchronized (outputStream) {
+				outputStream.write(lines);
+				outputStream.flush();
+			}
+			contactListeners4Sent(bytes);
+		}
+
+		/**
+		 * Closes the channel, the connection itself is not closed.
+		 */
+		@Override
+		public void close() throws IOException {
+			if (channels.remove(id) != null && !closed) {
+				request(MultiplexedSessionCommand.CLOSE, String.valueOf(id));
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "Channel [" + key + "#" + id + "]";
+		}
+
+	}
+
+}
@@ -28,10 +28,18 @@ import org.ardulink.core.linkmanager.LinkConfig;
 import org.ardulink.core.proto.api.Protocol;
 import org.ardulink.core.proto.api.Protocols;
 import org.ardulink.core.proto.impl.ArdulinkProtocol2;
+import org.ardulink.util.URIs;
 
 /**
  * [ardulinktitle] [ardulinkversion]
  * 
+ * Using protocol version 1 each link has its own connection to the proxy
+ * server and only serial links can be opened. Version 2 (used if
+ * <code>protocolversion</code> is 2 or a <code>linkuri</code> is set) shares
+ * one connection for all links to the server and opens the link of the
+ * passed URI (defaults to a serial link using <code>port</code> and
+ * <code>speed</code>).
+ * 
  * project Ardulink http://www.ardulink.org/
  * 
  * [adsense]
@@ -43,6 +51,8 @@ public class ProxyLinkConfig implements LinkConfig {
 
 	private static final int DEFAULT_SPEED = 115200;
 
+	private static final String SERIAL_URI = "ardulink://serial";
+
 	@Named("tcphost")
 	private String tcphost;
 
@@ -61,6 +71,14 @@ public class ProxyLinkConfig implements LinkConfig {
 	@Named("proto")
 	private Protocol proto = ArdulinkProtocol2.instance();
 
+	@Named("protocolversion")
+	@Min(1)
+	@Max(2)
+	private int protocolversion = 1;
+
+	@Named("linkuri")
+	private String linkuri;
+
 	private ProxyConnectionToRemote remote;
 
 	public String getPort() {
@@ -108,10 +126,43 @@ public class ProxyLinkConfig implements LinkConfig {
 		this.tcpport = tcpport;
 	}
 
+	public int getProtocolversion() {
+		return protocolversion;
+	}
+
+	public void setProtocolversion(int protocolversion) {
+		this.protocolversion = protocolversion;
+	}
+
+	public String getLinkuri() {
+		return linkuri;
+	}
+
+	public void setLinkuri(String linkuri) {
+		this.linkuri = linkuri;
+	}
+
+	public boolean isMultiplexed() {
+		return protocolversion >= 2 || linkuri != null;
+	}
+
+	/**
+	 * Returns the URI of the link to be opened by the server (protocol
+	 * version 2 only).
+	 */
+	public String getLinkUri() {
+		return linkuri != null ? linkuri : SERIAL_URI + "?port="
+				+ URIs.encode(port) + "&baudrate=" + speed;
+	}
+
 	@ChoiceFor(value = "port", dependsOn = { "tcphost", "tcpport" })
 	public List<String> getAvailablePorts() throws IOException {
-		return tcphost == null ? Collections.<String> emptyList()
-				: getRemoteInternal().getPortList();
+		if (tcphost == null) {
+			return Collections.<String> emptyList();
+		}
+		return isMultiplexed() ? MultiplexedConnectionToRemote
+				.getChoiceValues(tcphost, tcpport, linkuri == null ? SERIAL_URI
+						: linkuri, "port") : getRemoteInternal().getPortList();
 	}
 
 	public synchronized ProxyConnectionToRemote getRemote()
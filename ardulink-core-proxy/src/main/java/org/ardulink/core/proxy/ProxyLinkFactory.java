@@ -25,6 +25,7 @@ import java.net.Socket;
 import java.net.UnknownHostException;
 
 import org.ardulink.core.ConnectionBasedLink;
+import org.ardulink.core.ConnectionListener;
 import org.ardulink.core.StreamConnection;
 import org.ardulink.core.linkmanager.LinkFactory;
 import org.ardulink.core.proto.api.Protocol;
@@ -50,6 +51,9 @@ public class ProxyLinkFactory implements LinkFactory<ProxyLinkConfig> {
 	@Override
 	public ConnectionBasedLink newLink(ProxyLinkConfig config)
 			throws UnknownHostException, IOException {
+		if (config.isMultiplexed()) {
+			return newMultiplexedLink(config);
+		}
 		final ProxyConnectionToRemote remote = config.getRemote();
 
 		remote.send(CONNECT_CMD.getCommand());
@@ -71,6 +75,43 @@ public class ProxyLinkFactory implements LinkFactory<ProxyLinkConfig> {
 		};
 	}
 
+	private ConnectionBasedLink newMultiplexedLink(ProxyLinkConfig config)
+			throws IOException {
+		final MultiplexedConnectionToRemote remote = MultiplexedConnectionToRemote
+				.acquire(checkNotNull(config.getTcphost(),
+						"tcphost must not be null"), config.getTcpport());
+		MultiplexedConnectionToRemote.Channel channel;
+		try {
+			channel = remote.openChannel(config.getLinkUri());
+		} catch (IOException e) {
+			remote.close();
+			throw e;
+		}
+		Protocol proto = ArdulinkProtocol2.instance();
+		final ConnectionBasedLink link = new ConnectionBasedLink(channel, proto) {
+			@Override
+			public void close() throws IOException {
+				// closes the channel
+				super.close();
+				remote.close();
+			}
+		};
+		channel.addConnectionListener(new ConnectionListener() {
+
+			@Override
+			public void connectionLost() {
+				link.fireConnectionLost();
+			}
+
+			@Override
+			public void reconnected() {
+				link.fireReconnected();
+			}
+
+		});
+		return link;
+	}
+
 	@Override
 	public ProxyLinkConfig newLinkConfig() {
 		return new ProxyLinkConfig();
@@ -0,0 +1,180 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.core.proxy;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.ardulink.core.Pin.analogPin;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsCollectionContaining.hasItems;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.ardulink.core.AbstractListenerLink;
+import org.ardulink.core.ConnectionListener;
+import org.ardulink.core.Link;
+import org.ardulink.core.events.AnalogPinValueChangedEvent;
+import org.ardulink.core.events.EventListenerAdapter;
+import org.ardulink.core.linkmanager.LinkManager;
+import org.ardulink.core.linkmanager.LinkManager.Configurer;
+import org.ardulink.util.URIs;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public class MultiplexedProxyLinkTest {
+
+	@Rule
+	public Timeout timeout = new Timeout(5, SECONDS);
+
+	@Rule
+	public MultiplexedProxyServerDouble proxyServerDouble = new MultiplexedProxyServerDouble();
+
+	@Test
+	public void linksShareOneConnection() throws Exception {
+		Link link1 = newLink("protocolversion=2&port=myPortNr0");
+		Link link2 = newLink("linkuri=" + URIs.encode("ardulink://other"));
+		link1.switchAnalogPin(analogPin(1), 123);
+		link2.switchAnalogPin(analogPin(2), 45);
+
+		assertThat(proxyServerDouble.getReceived(), hasItems(
+				"ardulink:networkproxyserver:v2",
+				"1 alp://ppin/1/123",
+				"2 alp://ppin/2/45"));
+		assertThat(proxyServerDouble.getReceived("open"), hasItems(
+				"0 1 open 1 ardulink%3A%2F%2Fserial%3Fport%3DmyPortNr0%26baudrate%3D115200",
+				"0 2 open 2 ardulink%3A%2F%2Fother"));
+		// the one used to query the port list has been closed
+		assertThat(proxyServerDouble.getConnections(), is(1));
+
+		link1.close();
+		link2.close();
+		assertThat(proxyServerDouble.getReceived("close"),
+				hasItems("0 3 close 1", "0 4 close 2"));
+	}
+
+	@Test
+	public void portListIsCached() throws Exception {
+		Configurer configurer = configurer("protocolversion=2");
+		Object[] ports = new Object[] { "myPortNr0" };
+		assertThat(configurer.getAttribute("port").getChoiceValues(), is(ports));
+		assertThat(configurer.getAttribute("port").getChoiceValues(), is(ports));
+		assertThat(proxyServerDouble.getReceived("choices").size(), is(1));
+	}
+
+	@Test
+	public void unresponsiveServerDoesNotBlockChoicesOfOthers()
+			throws Exception {
+		final ServerSocket silent = new ServerSocket(0);
+		try {
+			Thread blocked = new Thread() {
+				@Override
+				public void run() {
+					try {
+						MultiplexedConnectionToRemote.getChoiceValues(
+								"localhost", silent.getLocalPort(),
+								"ardulink://serial", "port");
+					} catch (IOException e) {
+						// expected, the server is closed
+					}
+				}
+			};
+			blocked.setDaemon(true);
+			blocked.start();
+			// never answers the handshake so the connect blocks
+			Socket socket = silent.accept();
+			try {
+				assertThat(
+						MultiplexedConnectionToRemote.getChoiceValues(
+								"localhost",
+								proxyServerDouble.getLocalPort(),
+								"ardulink://serial", "port"),
+						is(Arrays.asList("myPortNr0")));
+			} finally {
+				socket.close();
+			}
+		} finally {
+			silent.close();
+		}
+	}
+
+	@Test
+	public void eventsAreDeliveredToTheirChannel() throws Exception {
+		Link link = newLink("protocolversion=2&port=myPortNr0");
+		final BlockingQueue<Integer> values = new LinkedBlockingQueue<Integer>();
+		link.addListener(new EventListenerAdapter() {
+			@Override
+			public void stateChanged(AnalogPinValueChangedEvent event) {
+				values.add(event.getValue());
+			}
+		});
+		proxyServerDouble.send("2 alp://ared/1/3");
+		proxyServerDouble.send("1 alp://ared/1/2");
+		assertThat(values.take(), is(2));
+		link.close();
+	}
+
+	@Test
+	public void linksAreNotifiedIfTheConnectionIsLost() throws Exception {
+		Link link1 = newLink("protocolversion=2&port=myPortNr0");
+		Link link2 = newLink("linkuri=" + URIs.encode("ardulink://other"));
+		final CountDownLatch lost = new CountDownLatch(2);
+		ConnectionListener listener = new ConnectionListener() {
+
+			@Override
+			public void connectionLost() {
+				lost.countDown();
+			}
+
+			@Override
+			public void reconnected() {
+				// not expected
+			}
+
+		};
+		((AbstractListenerLink) link1).addConnectionListener(listener);
+		((AbstractListenerLink) link2).addConnectionListener(listener);
+		proxyServerDouble.disconnectClients();
+		lost.await();
+		link1.close();
+		link2.close();
+	}
+
+	private Configurer configurer(String params) {
+		return LinkManager.getInstance().getConfigurer(
+				URIs.newURI("ardulink://proxy?tcphost=localhost&tcpport="
+						+ proxyServerDouble.getLocalPort() + "&" + params));
+	}
+
+	private Link newLink(String params) {
+		return configurer(params).newLink();
+	}
+
+}
@@ -0,0 +1,171 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.core.proxy;
+
+import static org.ardulink.core.proxy.ProxyServerDouble.newSocket;
+import static org.ardulink.util.Throwables.propagate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.rules.ExternalResource;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * Answers the control requests of the multiplexed protocol and records all
+ * lines received.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public class MultiplexedProxyServerDouble extends ExternalResource {
+
+	private final ServerSocket serverSocket = newSocket(0);
+	private final List<String> received = new CopyOnWriteArrayList<String>();
+	private final List<PrintWriter> clients = new CopyOnWriteArrayList<PrintWriter>();
+	private final List<Socket> sockets = new CopyOnWriteArrayList<Socket>();
+	private final Thread thread = new Thread() {
+		@Override
+		public void run() {
+			try {
+				while (true) {
+					final Socket socket = serverSocket.accept();
+					sockets.add(socket);
+					new Thread() {
+						@Override
+						public void run() {
+							serve(socket);
+						}
+					}.start();
+				}
+			} catch (IOException e) {
+				// server socket closed
+			}
+		}
+	};
+
+	private void serve(Socket socket) {
+		PrintWriter out = null;
+		try {
+			out = new PrintWriter(socket.getOutputStream(), false);
+			clients.add(out);
+			BufferedReader in = new BufferedReader(new InputStreamReader(
+					socket.getInputStream()));
+			String line;
+			while ((line = in.readLine()) != null) {
+				received.add(line);
+				String[] tokens = line.split(" ");
+				if (MultiplexedConnectionToRemote.V2_CMD.equals(line)) {
+					send(out, "OK");
+				} else if (tokens.length > 2 && "0".equals(tokens[0])
+						&& "choices".equals(tokens[2])) {
+					send(out, "0 " + tokens[1] + " OK myPortNr0");
+				} else if (tokens.length > 2 && "0".equals(tokens[0])) {
+					send(out, "0 " + tokens[1] + " OK");
+				}
+			}
+		} catch (IOException e) {
+			// client disconnected
+		} finally {
+			clients.remove(out);
+			sockets.remove(socket);
+		}
+	}
+
+	private static void send(PrintWriter out, String line) {
+		synchronized (out) {
+			out.print(line);
+			out.print("\n");
+			out.flush();
+		}
+	}
+
+	/**
+	 * Sends the line to all clients.
+	 */
+	public void send(String line) {
+		for (PrintWriter client : clients) {
+			send(client, line);
+		}
+	}
+
+	/**
+	 * Closes the connections of all clients.
+	 */
+	public void disconnectClients() throws IOException {
+		for (Socket socket : sockets) {
+			socket.close();
+		}
+	}
+
+	@Override
+	protected void before() {
+		this.thread.start();
+	}
+
+	@Override
+	protected void after() {
+		try {
+			this.serverSocket.close();
+		} catch (IOException e) {
+			throw propagate(e);
+		}
+	}
+
+	public int getLocalPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 * Returns the number of clients currently connected.
+	 */
+	public int getConnections() {
+		return clients.size();
+	}
+
+	public List<String> getReceived() {
+		try {
+			TimeUnit.MILLISECONDS.sleep(50);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return new ArrayList<String>(received);
+	}
+
+	public List<String> getReceived(String command) {
+		List<String> result = new ArrayList<String>();
+		for (String line : getReceived()) {
+			String[] tokens = line.split(" ");
+			if (tokens.length > 2 && "0".equals(tokens[0])
+					&& command.equals(tokens[2])) {
+				result.add(line);
+			}
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,54 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.core.replay;
+
+import static java.lang.String.format;
+
+import java.io.File;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * The layout of a capture: A directory holding numbered segment files of
+ * fixed size. Each segment starts with a header (magic, version, wall clock
+ * time the capture started in millis, segment number) followed by the frames
+ * (direction, nanos since the capture started, length, bytes). The unused
+ * rest of a segment is zero filled so a direction of 0 ends the segment.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+final class CaptureFormat {
+
+	static final int MAGIC = 0x414C4350; // "ALCP"
+	static final int VERSION = 1;
+
+	static final int HEADER_SIZE = 4 + 4 + 8 + 4;
+	static final int FRAME_HEADER_SIZE = 1 + 8 + 4;
+
+	static final byte END_OF_SEGMENT = 0;
+
+	private CaptureFormat() {
+		super();
+	}
+
+	static File segmentFile(File directory, int segment) {
+		return new File(directory, format("segment-%06d.cap", segment));
+	}
+
+}
@@ -0,0 +1,136 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.core.replay;
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static org.ardulink.core.replay.CaptureFormat.END_OF_SEGMENT;
+import static org.ardulink.core.replay.CaptureFormat.FRAME_HEADER_SIZE;
+import static org.ardulink.core.replay.CaptureFormat.MAGIC;
+import static org.ardulink.core.replay.CaptureFormat.VERSION;
+import static org.ardulink.core.replay.CaptureFormat.segmentFile;
+import static org.ardulink.util.Preconditions.checkArgument;
+import static org.ardulink.util.Preconditions.checkState;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * Reads the frames of a capture written by {@link TrafficCapture}. Not
+ * thread-safe.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public class CaptureReader implements Closeable {
+
+	private final File directory;
+	private final long startMillis;
+
+	private MappedByteBuffer segment;
+	private int segmentNumber;
+
+	private Direction direction;
+	private long timestamp;
+	private byte[] bytes;
+
+	public CaptureReader(File directory) throws IOException {
+		this.directory = directory;
+		checkArgument(segmentFile(directory, 0).exists(),
+				"%s does not contain a capture", directory);
+		this.segment = map(0);
+		this.startMillis = segment.getLong(8);
+	}
+
+	/**
+	 * Moves to the next frame.
+	 *
+	 * @return <code>false</code> if there are no more frames
+	 */
+	public boolean next() throws IOException {
+		while (segment != null) {
+			if (segment.remaining() >= FRAME_HEADER_SIZE
+					&& segment.get(segment.position()) != END_OF_SEGMENT) {
+				byte code = segment.get();
+				direction = Direction.fromCode(code).getOrThrow(
+						"Illegal direction %s in segment %s", code,
+						segmentNumber);
+				timestamp = segment.getLong();
+				bytes = new byte[segment.getInt()];
+				segment.get(bytes);
+				return true;
+			}
+			File next = segmentFile(directory, ++segmentNumber);
+			segment = next.exists() ? map(segmentNumber) : null;
+		}
+		return false;
+	}
+
+	private MappedByteBuffer map(int number) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(segmentFile(directory,
+				number), "r");
+		try {
+			MappedByteBuffer buffer = file.getChannel().map(READ_ONLY, 0,
+					file.length());
+			checkState(buffer.getInt() == MAGIC, "Segment %s is no capture",
+					number);
+			int version = buffer.getInt();
+			checkState(version == VERSION,
+					"Segment %s has unsupported version %s", number, version);
+			buffer.getLong();
+			checkState(buffer.getInt() == number,
+					"Segment %s has a wrong number", number);
+			return buffer;
+		} finally {
+			file.close();
+		}
+	}
+
+	/**
+	 * Returns the wall clock time in millis the capture started.
+	 */
+	public long getStartMillis() {
+		return startMillis;
+	}
+
+	public Direction getDirection() {
+		return direction;
+	}
+
+	/**
+	 * Returns the nanoseconds from the start of the capture to the current
+	 * frame.
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public byte[] getBytes() {
+		return bytes;
+	}
+
+	@Override
+	public void close() throws IOException {
+		segment = null;
+	}
+
+}
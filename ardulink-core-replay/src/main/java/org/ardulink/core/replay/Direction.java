@@ -0,0 +1,60 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.core.replay;
+
+import org.ardulink.util.Optional;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * The direction of a captured frame.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public enum Direction {
+
+	/**
+	 * Received from the arduino.
+	 */
+	RECEIVED((byte) 1),
+	/**
+	 * Sent to the arduino.
+	 */
+	SENT((byte) 2);
+
+	private final byte code;
+
+	private Direction(byte code) {
+		this.code = code;
+	}
+
+	byte getCode() {
+		return code;
+	}
+
+	static Optional<Direction> fromCode(byte code) {
+		for (Direction direction : values()) {
+			if (direction.code == code) {
+				return Optional.of(direction);
+			}
+		}
+		return Optional.absent();
+	}
+
+}
@@ -0,0 +1,141 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.core.replay;
+
+import static org.ardulink.core.replay.Direction.RECEIVED;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import org.ardulink.core.AbstractConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * Re-emits the received frames of a capture to its listeners. The frames are
+ * paced using absolute deadlines relative to the start of the replay so the
+ * timing does not drift, a speed of 0 replays as fast as possible. Frames
+ * written to this connection are dropped.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+class ReplayConnection extends AbstractConnection {
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(ReplayConnection.class);
+
+	private final CaptureReader reader;
+	private final double speed;
+	private final AtomicBoolean started = new AtomicBoolean();
+	private final CountDownLatch finished = new CountDownLatch(1);
+	private final Thread thread = new Thread("Replay") {
+		@Override
+		public void run() {
+			replay();
+		}
+	};
+
+	private volatile boolean closed;
+	private volatile long frames;
+
+	ReplayConnection(CaptureReader reader, double speed) {
+		this.reader = reader;
+		this.speed = speed;
+		this.thread.setDaemon(true);
+	}
+
+	void start() {
+		if (started.compareAndSet(false, true)) {
+			thread.start();
+		}
+	}
+
+	boolean awaitEnd(long timeout, TimeUnit unit) throws InterruptedException {
+		return finished.await(timeout, unit);
+	}
+
+	long getFrames() {
+		return frames;
+	}
+
+	private void replay() {
+		try {
+			long start = System.nanoTime();
+			long first = -1;
+			while (!closed && reader.next()) {
+				if (reader.getDirection() != RECEIVED) {
+					continue;
+				}
+				if (speed > 0) {
+					if (first < 0) {
+						first = reader.getTimestamp();
+					}
+					long deadline = start
+							+ (long) ((reader.getTimestamp() - first) / speed);
+					// parkNanos may return early (spuriously or interrupted)
+					long wait;
+					while (!closed
+							&& (wait = deadline - System.nanoTime()) > 0) {
+						LockSupport.parkNanos(this, wait);
+					}
+					if (closed) {
+						break;
+					}
+				}
+				contactListeners4Received(reader.getBytes());
+				frames++;
+			}
+		} catch (IOException e) {
+			logger.error("Replay failed", e);
+		} finally {
+			close(reader);
+			finished.countDown();
+		}
+	}
+
+	private static void close(CaptureReader reader) {
+		try {
+			reader.close();
+		} catch (IOException e) {
+			logger.warn("Error closing {}", reader, e);
+		}
+	}
+
+	@Override
+	public void write(byte[] bytes) throws IOException {
+		contactListeners4Sent(bytes);
+	}
+
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		if (started.compareAndSet(false, true)) {
+			close(reader);
+			finished.countDown();
+		} else {
+			thread.interrupt();
+		}
+	}
+
+}
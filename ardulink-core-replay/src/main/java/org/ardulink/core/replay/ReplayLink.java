@@ -0,0 +1,80 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.core.replay;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.ardulink.core.Link;
+import org.ardulink.core.convenience.LinkDelegate;
+import org.ardulink.core.events.EventListener;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * A link replaying a capture. If autostart is set the replay starts when the
+ * first {@link EventListener} is added, otherwise when {@link #start()} is
+ * called. Replaying as fast as possible measures the throughput of decoding
+ * and dispatching: {@link #getReplayedFrames()} divided by the time
+ * {@link #awaitEnd(long, TimeUnit)} took.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public class ReplayLink extends LinkDelegate {
+
+	private final ReplayConnection connection;
+	private final boolean autostart;
+
+	ReplayLink(Link delegate, ReplayConnection connection, boolean autostart) {
+		super(delegate);
+		this.connection = connection;
+		this.autostart = autostart;
+	}
+
+	@Override
+	public Link addListener(EventListener listener) throws IOException {
+		Link link = super.addListener(listener);
+		if (autostart) {
+			start();
+		}
+		return link;
+	}
+
+	/**
+	 * Starts the replay, does nothing if already started.
+	 */
+	public void start() {
+		connection.start();
+	}
+
+	/**
+	 * Waits until all frames have been replayed.
+	 *
+	 * @return <code>false</code> if the timeout elapsed before
+	 */
+	public boolean awaitEnd(long timeout, TimeUnit unit)
+			throws InterruptedException {
+		return connection.awaitEnd(timeout, unit);
+	}
+
+	public long getReplayedFrames() {
+		return connection.getFrames();
+	}
+
+}
@@ -0,0 +1,72 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.core.replay;
+
+import javax.validation.constraints.Min;
+
+import org.ardulink.core.linkmanager.LinkConfig;
+import org.ardulink.core.linkmanager.LinkConfig.I18n;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+@I18n("message")
+public class ReplayLinkConfig implements LinkConfig {
+
+	@Named("dir")
+	private String dir;
+
+	@Named("speed")
+	@Min(0)
+	private double speed = 1;
+
+	@Named("autostart")
+	private boolean autostart = true;
+
+	public String getDir() {
+		return dir;
+	}
+
+	/**
+	 * Returns the factor the capture is replayed faster than recorded, 0 means
+	 * as fast as possible.
+	 */
+	public double getSpeed() {
+		return speed;
+	}
+
+	public boolean isAutostart() {
+		return autostart;
+	}
+
+	public void setDir(String dir) {
+		this.dir = dir;
+	}
+
+	public void setSpeed(double speed) {
+		this.speed = speed;
+	}
+
+	public void setAutostart(boolean autostart) {
+		this.autostart = autostart;
+	}
+
+}
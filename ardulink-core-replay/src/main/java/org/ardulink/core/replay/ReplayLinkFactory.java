@@ -0,0 +1,60 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.core.replay;
+
+import static org.ardulink.util.Preconditions.checkArgument;
+import static org.ardulink.util.Preconditions.checkNotNull;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.ardulink.core.ConnectionBasedLink;
+import org.ardulink.core.linkmanager.LinkFactory;
+import org.ardulink.core.proto.impl.ArdulinkProtocol2;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public class ReplayLinkFactory implements LinkFactory<ReplayLinkConfig> {
+
+	@Override
+	public String getName() {
+		return "replay";
+	}
+
+	@Override
+	public ReplayLink newLink(ReplayLinkConfig config) throws IOException {
+		String dir = checkNotNull(config.getDir(), "dir must not be null");
+		checkArgument(config.getSpeed() >= 0,
+				"speed must not be negative but was %s", config.getSpeed());
+		ReplayConnection connection = new ReplayConnection(new CaptureReader(
+				new File(dir)), config.getSpeed());
+		return new ReplayLink(new ConnectionBasedLink(connection,
+				ArdulinkProtocol2.instance()), connection,
+				config.isAutostart());
+	}
+
+	@Override
+	public ReplayLinkConfig newLinkConfig() {
+		return new ReplayLinkConfig();
+	}
+
+}
@@ -0,0 +1,135 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.core.replay;
+
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+import static org.ardulink.core.replay.CaptureFormat.FRAME_HEADER_SIZE;
+import static org.ardulink.core.replay.CaptureFormat.HEADER_SIZE;
+import static org.ardulink.core.replay.CaptureFormat.MAGIC;
+import static org.ardulink.core.replay.CaptureFormat.VERSION;
+import static org.ardulink.core.replay.CaptureFormat.segmentFile;
+import static org.ardulink.core.replay.Direction.RECEIVED;
+import static org.ardulink.core.replay.Direction.SENT;
+import static org.ardulink.util.Preconditions.checkArgument;
+import static org.ardulink.util.Preconditions.checkState;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+
+import org.ardulink.core.Connection;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * Captures the traffic of a {@link Connection} it is added to as listener.
+ * The frames are copied into memory mapped segment files so capturing does
+ * not do any I/O on the connection's threads except when a segment is full
+ * and the next one is mapped. The capture can be replayed using the
+ * <code>ardulink://replay</code> link.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public class TrafficCapture implements Connection.Listener, Closeable {
+
+	public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+	private final File directory;
+	private final int segmentSize;
+	private final long startMillis = System.currentTimeMillis();
+	private final long startNanos = System.nanoTime();
+
+	private MappedByteBuffer segment;
+	private int segmentNumber;
+
+	public TrafficCapture(File directory) throws IOException {
+		this(directory, DEFAULT_SEGMENT_SIZE);
+	}
+
+	public TrafficCapture(File directory, int segmentSize) throws IOException {
+		checkArgument(segmentSize > HEADER_SIZE + FRAME_HEADER_SIZE,
+				"segmentSize must be greater than %s but was %s", HEADER_SIZE
+						+ FRAME_HEADER_SIZE, segmentSize);
+		checkArgument(directory.isDirectory() || directory.mkdirs(),
+				"Cannot create directory %s", directory);
+		checkState(!segmentFile(directory, 0).exists(),
+				"%s already contains a capture", directory);
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.segment = map(0);
+	}
+
+	@Override
+	public void received(byte[] bytes) throws IOException {
+		append(RECEIVED, bytes);
+	}
+
+	@Override
+	public void sent(byte[] bytes) throws IOException {
+		append(SENT, bytes);
+	}
+
+	private synchronized void append(Direction direction, byte[] bytes)
+			throws IOException {
+		long timestamp = System.nanoTime() - startNanos;
+		if (segment == null) {
+			// closed
+			return;
+		}
+		int size = FRAME_HEADER_SIZE + bytes.length;
+		checkArgument(size <= segmentSize - HEADER_SIZE,
+				"Frame of %s bytes does not fit into a segment", bytes.length);
+		if (segment.remaining() < size) {
+			segment = map(++segmentNumber);
+		}
+		segment.put(direction.getCode());
+		segment.putLong(timestamp);
+		segment.putInt(bytes.length);
+		segment.put(bytes);
+	}
+
+	private MappedByteBuffer map(int number) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(segmentFile(directory,
+				number), "rw");
+		try {
+			file.setLength(segmentSize);
+			MappedByteBuffer buffer = file.getChannel().map(READ_WRITE, 0,
+					segmentSize);
+			buffer.putInt(MAGIC);
+			buffer.putInt(VERSION);
+			buffer.putLong(startMillis);
+			buffer.putInt(number);
+			return buffer;
+		} finally {
+			// the mapping stays valid
+			file.close();
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (segment != null) {
+			segment.force();
+			segment = null;
+		}
+	}
+
+}
@@ -0,0 +1,147 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.core.replay;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.ardulink.core.Pin.analogPin;
+import static org.ardulink.core.Pin.digitalPin;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.ardulink.core.events.AnalogPinValueChangedEvent;
+import org.ardulink.core.events.DigitalPinValueChangedEvent;
+import org.ardulink.core.events.EventListenerAdapter;
+import org.ardulink.core.events.PinValueChangedEvent;
+import org.ardulink.core.linkmanager.LinkManager;
+import org.ardulink.util.URIs;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.Timeout;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public class CaptureReplayTest {
+
+	@Rule
+	public Timeout timeout = new Timeout(5, SECONDS);
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void replaysReceivedFrames() throws Exception {
+		File dir = new File(folder.getRoot(), "capture");
+		TrafficCapture capture = new TrafficCapture(dir);
+		capture.received("alp://ared/1/42".getBytes());
+		capture.sent("alp://ppin/3/1\n".getBytes());
+		capture.received("alp://dred/2/1".getBytes());
+		capture.close();
+
+		ReplayLink link = newLink(dir, "speed=0");
+		final List<PinValueChangedEvent> events = new ArrayList<PinValueChangedEvent>();
+		link.addListener(new EventListenerAdapter() {
+			@Override
+			public void stateChanged(AnalogPinValueChangedEvent event) {
+				events.add(event);
+			}
+
+			@Override
+			public void stateChanged(DigitalPinValueChangedEvent event) {
+				events.add(event);
+			}
+		});
+		assertThat(link.awaitEnd(1, SECONDS), is(true));
+		link.close();
+
+		assertThat(link.getReplayedFrames(), is(2L));
+		assertThat(events.size(), is(2));
+		assertThat(events.get(0).getPin(), is((Object) analogPin(1)));
+		assertThat(events.get(0).getValue(), is((Object) 42));
+		assertThat(events.get(1).getPin(), is((Object) digitalPin(2)));
+		assertThat(events.get(1).getValue(), is((Object) true));
+	}
+
+	@Test
+	public void framesAreSpreadOverSegments() throws IOException {
+		File dir = new File(folder.getRoot(), "capture");
+		TrafficCapture capture = new TrafficCapture(dir, 64);
+		for (int i = 0; i < 10; i++) {
+			capture.received(("alp://ared/1/" + i).getBytes());
+			capture.sent(("alp://ppin/3/" + i).getBytes());
+		}
+		capture.close();
+		assertThat(dir.list().length > 1, is(true));
+
+		CaptureReader reader = new CaptureReader(dir);
+		long timestamp = -1;
+		for (int i = 0; i < 10; i++) {
+			assertThat(reader.next(), is(true));
+			assertThat(reader.getDirection(), is(Direction.RECEIVED));
+			assertThat(new String(reader.getBytes()), is("alp://ared/1/" + i));
+			assertThat(reader.getTimestamp() >= timestamp, is(true));
+			timestamp = reader.getTimestamp();
+			assertThat(reader.next(), is(true));
+			assertThat(reader.getDirection(), is(Direction.SENT));
+			assertThat(Arrays.equals(reader.getBytes(),
+					("alp://ppin/3/" + i).getBytes()), is(true));
+		}
+		assertThat(reader.next(), is(false));
+		reader.close();
+	}
+
+	@Test
+	public void replaysWithTheCapturedTiming() throws Exception {
+		File dir = new File(folder.getRoot(), "capture");
+		TrafficCapture capture = new TrafficCapture(dir);
+		capture.received("alp://ared/1/1".getBytes());
+		MILLISECONDS.sleep(400);
+		capture.received("alp://ared/1/2".getBytes());
+		capture.close();
+
+		ReplayLink link = newLink(dir, "speed=2&autostart=false");
+		long start = System.nanoTime();
+		link.start();
+		assertThat(link.awaitEnd(1, SECONDS), is(true));
+		long millis = NANOSECONDS.toMillis(System.nanoTime() - start);
+		link.close();
+		assertThat(millis >= 190, is(true));
+	}
+
+	private static ReplayLink newLink(File dir, String params) {
+		return (ReplayLink) LinkManager
+				.getInstance()
+				.getConfigurer(
+						URIs.newURI("ardulink://replay?dir="
+								+ URIs.encode(dir.getAbsolutePath()) + "&"
+								+ params)).newLink();
+	}
+
+}
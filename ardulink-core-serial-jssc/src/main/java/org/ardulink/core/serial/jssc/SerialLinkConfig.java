@@ -18,6 +18,7 @@ package org.ardulink.core.serial.jssc;
 
 import static org.ardulink.util.Iterables.getFirst;
 
+import java.util.Arrays;
 import java.util.List;
 
 import javax.validation.constraints.Max;
@@ -27,6 +28,7 @@ import jssc.SerialPortList;
 
 import org.ardulink.core.linkmanager.LinkConfig;
 import org.ardulink.core.linkmanager.LinkConfig.I18n;
+import org.ardulink.core.ports.PortRegistry;
 import org.ardulink.core.proto.api.Protocol;
 import org.ardulink.core.proto.api.Protocols;
 import org.ardulink.core.proto.impl.ArdulinkProtocol2;
@@ -42,6 +44,14 @@ import org.ardulink.core.proto.impl.ArdulinkProtocol2;
 @I18n("message")
 public class SerialLinkConfig implements LinkConfig {
 
+	private static final PortRegistry portRegistry = new PortRegistry(
+			new PortRegistry.Enumerator() {
+				@Override
+				public List<String> listPorts() {
+					return Arrays.asList(SerialPortList.getPortNames());
+				}
+			});
+
 	@Named("port")
 	private String port;
 
@@ -49,6 +59,10 @@ public class SerialLinkConfig implements LinkConfig {
 	@Min(1)
 	private int baudrate = 115200;
 
+	@Named("upgradebaudrate")
+	@Min(0)
+	private int upgradebaudrate;
+
 	@Named("proto")
 	private Protocol protoName = useProtoOrFallback(ArdulinkProtocol2.instance());
 
@@ -67,6 +81,10 @@ public class SerialLinkConfig implements LinkConfig {
 		return baudrate;
 	}
 
+	public int getUpgradebaudrate() {
+		return upgradebaudrate;
+	}
+
 	private Protocol useProtoOrFallback(Protocol prefered) {
 		return isAvailable(prefered) ? prefered : getFirst(Protocols.list()).orNull();
 	}
@@ -81,7 +99,8 @@ public class SerialLinkConfig implements LinkConfig {
 
 	@ChoiceFor("port")
 	public String[] listPorts() {
-		return SerialPortList.getPortNames();
+		List<String> ports = portRegistry.getPorts();
+		return ports.toArray(new String[ports.size()]);
 	}
 
 	@ChoiceFor("proto")
@@ -113,6 +132,10 @@ public class SerialLinkConfig implements LinkConfig {
 		this.baudrate = baudrate;
 	}
 
+	public void setUpgradebaudrate(int upgradebaudrate) {
+		this.upgradebaudrate = upgradebaudrate;
+	}
+
 	public void setPingprobe(boolean pingprobe) {
 		this.pingprobe = pingprobe;
 	}
@@ -27,6 +27,7 @@ import java.io.IOException;
 import jssc.SerialPort;
 import jssc.SerialPortException;
 
+import org.ardulink.core.BaudrateNegotiation;
 import org.ardulink.core.ConnectionBasedLink;
 import org.ardulink.core.Link;
 import org.ardulink.core.StreamConnection;
@@ -68,7 +69,7 @@ public class SerialLinkFactory implements LinkFactory<SerialLinkConfig> {
 				: connectionBasedLink;
 
 		waitForArdulink(config, connectionBasedLink);
-		return new LinkDelegate(link) {
+		LinkDelegate linkDelegate = new LinkDelegate(link) {
 			@Override
 			public void close() throws IOException {
 				super.close();
@@ -79,6 +80,31 @@ public class SerialLinkFactory implements LinkFactory<SerialLinkConfig> {
 				}
 			}
 		};
+		if (config.getUpgradebaudrate() > 0) {
+			try {
+				upgradeBaudrate(config, connectionBasedLink, serialPort);
+			} catch (IOException e) {
+				linkDelegate.close();
+				throw e;
+			}
+		}
+		return linkDelegate;
+	}
+
+	private void upgradeBaudrate(SerialLinkConfig config,
+			ConnectionBasedLink link, final SerialPort serialPort)
+			throws IOException {
+		new BaudrateNegotiation(link, new BaudrateNegotiation.Port() {
+			@Override
+			public void setBaudrate(int baudrate) throws IOException {
+				try {
+					serialPort.setParams(baudrate, DATABITS_8, STOPBITS_1,
+							PARITY_NONE);
+				} catch (SerialPortException e) {
+					throw new IOException(e);
+				}
+			}
+		}).upgrade(config.getBaudrate(), config.getUpgradebaudrate());
 	}
 
 	private void waitForArdulink(SerialLinkConfig config,
@@ -88,11 +114,9 @@ public class SerialLinkFactory implements LinkFactory<SerialLinkConfig> {
 					link.waitForArduinoToBoot(config.getWaitsecs(), SECONDS),
 					"Waited for arduino to boot but no response received");
 		} else {
-			try {
-				SECONDS.sleep(config.getWaitsecs());
-			} catch (InterruptedException e) {
-				Thread.currentThread().interrupt();
-			}
+			// anything sent by the arduino (e.g. its ready paket) ends the
+			// wait before the time elapsed
+			link.waitForArduinoToSend(config.getWaitsecs(), SECONDS);
 		}
 	}
 
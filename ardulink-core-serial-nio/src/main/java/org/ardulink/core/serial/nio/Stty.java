@@ -0,0 +1,88 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.core.serial.nio;
+
+import static org.ardulink.util.Preconditions.checkArgument;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * Configures the line settings of a tty using the <code>stty</code> command:
+ * The baudrate, 8 data bits, no parity, one stop bit, no flow control and raw
+ * mode so the bytes are passed through unmodified and reads return as soon as
+ * a byte is available.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+final class Stty {
+
+	private Stty() {
+		super();
+	}
+
+	static List<String> command(String port, int baudrate) {
+		checkArgument(baudrate > 0, "baudrate must be positive but was %s",
+				baudrate);
+		return Arrays.asList("stty", "-F", port, String.valueOf(baudrate),
+				"raw", "-echo", "cs8", "-cstopb", "-parenb", "-crtscts",
+				"clocal", "cread", "min", "1", "time", "0");
+	}
+
+	static void configure(String port, int baudrate) throws IOException {
+		List<String> command = command(port, baudrate);
+		Process process = new ProcessBuilder(command).redirectErrorStream(
+				true).start();
+		try {
+			String output = readFully(process.getInputStream());
+			int exitCode = process.waitFor();
+			if (exitCode != 0) {
+				throw new IOException(command + " failed with exit code "
+						+ exitCode + ": " + output.trim());
+			}
+		} catch (InterruptedException e) {
+			process.destroy();
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while running "
+					+ command);
+		}
+	}
+
+	private static String readFully(InputStream inputStream)
+			throws IOException {
+		try {
+			ByteArrayOutputStream os = new ByteArrayOutputStream();
+			byte[] buffer = new byte[256];
+			int read;
+			while ((read = inputStream.read(buffer)) != -1) {
+				os.write(buffer, 0, read);
+			}
+			return os.toString();
+		} finally {
+			inputStream.close();
+		}
+	}
+
+}
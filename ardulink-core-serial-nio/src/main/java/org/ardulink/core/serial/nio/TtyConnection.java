@@ -0,0 +1,193 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.core.serial.nio;
+
+import static org.ardulink.util.Preconditions.checkArgument;
+import static org.ardulink.util.Preconditions.checkNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+
+import org.ardulink.core.AbstractConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * Connection to a device file (a tty, but a fifo works as well) using
+ * {@link FileChannel}s. The reader thread reads into a direct
+ * {@link ByteBuffer} as many bytes as are available and splits them at the
+ * protocol's separator in place, each frame is copied exactly once into the
+ * array passed to the listeners. Writes hand the frame to the channel
+ * without copying it.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public class TtyConnection extends AbstractConnection {
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(TtyConnection.class);
+
+	static final int READ_BUFFER_SIZE = 256;
+
+	/**
+	 * A frame not fitting into the read buffer doubles its size up to this,
+	 * longer frames are dropped.
+	 */
+	static final int MAX_FRAME_SIZE = 64 * 1024;
+
+	private final FileChannel in;
+	private final FileChannel out;
+	private final byte[] separator;
+	private final Thread thread;
+	private volatile boolean closed;
+
+	/**
+	 * Opens the device for reading and writing. Reads and writes of one
+	 * {@link FileChannel} are serialized, so the device is opened twice: A
+	 * single channel would block all writes while the reader thread waits for
+	 * data of an idle device. Both are opened read-write since opening a fifo
+	 * read- or write-only blocks until its other end is opened.
+	 */
+	public static TtyConnection open(File device, byte[] separator)
+			throws IOException {
+		FileChannel out = new RandomAccessFile(device, "rw").getChannel();
+		try {
+			return new TtyConnection(
+					new RandomAccessFile(device, "rw").getChannel(), out,
+					separator);
+		} catch (IOException e) {
+			out.close();
+			throw e;
+		}
+	}
+
+	public TtyConnection(FileChannel in, FileChannel out, byte[] separator) {
+		this.in = checkNotNull(in, "in must not be null");
+		this.out = checkNotNull(out, "out must not be null");
+		checkArgument(checkNotNull(separator, "separator must not be null").length > 0,
+				"separator must not be empty");
+		this.separator = separator.clone();
+		this.thread = new Thread("TtyConnection reader") {
+			@Override
+			public void run() {
+				readUntilClosed();
+			}
+		};
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	private void readUntilClosed() {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+		try {
+			while (!closed && in.read(buffer) >= 0) {
+				long readNanos = System.nanoTime();
+				buffer.flip();
+				deliverFrames(buffer, readNanos);
+				buffer.compact();
+				if (!buffer.hasRemaining()) {
+					buffer = grow(buffer);
+				}
+			}
+		} catch (ClosedChannelException e) {
+			// closed (possibly while blocked in read)
+		} catch (IOException e) {
+			if (!closed) {
+				logger.error("Error while reading", e);
+			}
+		}
+	}
+
+	/**
+	 * Passes all complete frames between the buffer's position and limit to
+	 * the listeners. Afterwards the position is at the start of the incomplete
+	 * frame left. The frames are timestamped with the time of the read that
+	 * completed them.
+	 */
+	private void deliverFrames(ByteBuffer buffer, long readNanos) {
+		int start = buffer.position();
+		int limit = buffer.limit();
+		for (int i = start; i <= limit - separator.length; i++) {
+			if (isSeparatorAt(buffer, i)) {
+				byte[] frame = new byte[i - start];
+				buffer.get(frame);
+				buffer.position(i + separator.length);
+				contactListeners4Received(frame, readNanos,
+						System.nanoTime());
+				start = buffer.position();
+				i = start - 1;
+			}
+		}
+	}
+
+	private boolean isSeparatorAt(ByteBuffer buffer, int index) {
+		for (int j = 0; j < separator.length; j++) {
+			if (buffer.get(index + j) != separator[j]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Called with a full buffer in write mode not containing a separator.
+	 */
+	private static ByteBuffer grow(ByteBuffer buffer) {
+		if (buffer.capacity() >= MAX_FRAME_SIZE) {
+			logger.warn("Dropping frame longer than {} bytes", MAX_FRAME_SIZE);
+			buffer.clear();
+			return buffer;
+		}
+		ByteBuffer grown = ByteBuffer.allocateDirect(Math.min(MAX_FRAME_SIZE,
+				2 * buffer.capacity()));
+		buffer.flip();
+		grown.put(buffer);
+		return grown;
+	}
+
+	@Override
+	public void write(byte[] bytes) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(checkNotNull(bytes,
+				"bytes must not be null"));
+		synchronized (out) {
+			while (buffer.hasRemaining()) {
+				out.write(buffer);
+			}
+		}
+		contactListeners4Sent(bytes);
+	}
+
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		try {
+			// unblocks the reader thread
+			in.close();
+		} finally {
+			out.close();
+		}
+	}
+
+}
@@ -0,0 +1,168 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.core.serial.nio;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+
+import org.ardulink.core.linkmanager.LinkConfig;
+import org.ardulink.core.linkmanager.LinkConfig.I18n;
+import org.ardulink.core.proto.api.Protocol;
+import org.ardulink.core.proto.api.Protocols;
+import org.ardulink.core.proto.impl.ArdulinkProtocol2;
+import org.ardulink.util.Lists;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+@I18n("message")
+public class TtyLinkConfig implements LinkConfig {
+
+	private static final File DEV = new File("/dev");
+
+	private static final List<String> TTY_PREFIXES = Arrays.asList("ttyUSB",
+			"ttyACM", "ttyAMA", "ttyS", "rfcomm");
+
+	@Named("port")
+	private String port;
+
+	@Named("baudrate")
+	@Min(1)
+	private int baudrate = 115200;
+
+	@Named("proto")
+	private Protocol protoName = ArdulinkProtocol2.instance();
+
+	@Named("qos")
+	private boolean qos;
+
+	@Min(0)
+	@Max(59)
+	@Named("waitsecs")
+	private int waitsecs = 10;
+
+	@Named("pingprobe")
+	private boolean pingprobe = true;
+
+	@Named("stty")
+	private boolean stty = true;
+
+	public String getPort() {
+		return port;
+	}
+
+	/**
+	 * Returns the usual serial ttys. They are no choice values for the port
+	 * since any device path (e.g. a /dev/serial/by-id link) can be used.
+	 */
+	public List<String> listPorts() {
+		List<String> ports = Lists.newArrayList();
+		File[] ttys = DEV.listFiles(new FileFilter() {
+			@Override
+			public boolean accept(File file) {
+				for (String prefix : TTY_PREFIXES) {
+					if (file.getName().startsWith(prefix)) {
+						return true;
+					}
+				}
+				return false;
+			}
+		});
+		if (ttys != null) {
+			for (File tty : ttys) {
+				ports.add(tty.getPath());
+			}
+		}
+		return ports;
+	}
+
+	public int getBaudrate() {
+		return baudrate;
+	}
+
+	@ChoiceFor("proto")
+	public List<String> availableProtos() {
+		return Protocols.names();
+	}
+
+	public String getProtoName() {
+		return protoName == null ? null : protoName.getName();
+	}
+
+	public Protocol getProto() {
+		return Protocols.getByName(getProtoName());
+	}
+
+	public boolean isQos() {
+		return qos;
+	}
+
+	public int getWaitsecs() {
+		return waitsecs;
+	}
+
+	public boolean isPingprobe() {
+		return pingprobe;
+	}
+
+	/**
+	 * Returns whether the line settings are configured using <code>stty</code>
+	 * before the device is opened. Can be disabled if they have been configured
+	 * otherwise or the device is no tty (e.g. a fifo).
+	 */
+	public boolean isStty() {
+		return stty;
+	}
+
+	public void setPort(String port) {
+		this.port = port;
+	}
+
+	public void setBaudrate(int baudrate) {
+		this.baudrate = baudrate;
+	}
+
+	public void setProtoName(String protoName) {
+		this.protoName = Protocols.getByName(protoName);
+	}
+
+	public void setQos(boolean qos) {
+		this.qos = qos;
+	}
+
+	public void setWaitsecs(int waitsecs) {
+		this.waitsecs = waitsecs;
+	}
+
+	public void setPingprobe(boolean pingprobe) {
+		this.pingprobe = pingprobe;
+	}
+
+	public void setStty(boolean stty) {
+		this.stty = stty;
+	}
+
+}
@@ -0,0 +1,87 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.core.serial.nio;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.ardulink.util.Preconditions.checkNotNull;
+import static org.ardulink.util.Preconditions.checkState;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.ardulink.core.ConnectionBasedLink;
+import org.ardulink.core.Link;
+import org.ardulink.core.convenience.LinkDelegate;
+import org.ardulink.core.linkmanager.LinkFactory;
+import org.ardulink.core.qos.QosLink;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * Serial link without native libraries for Linux: The tty is configured using
+ * <code>stty</code> and then read and written as a file using NIO channels.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public class TtyLinkFactory implements LinkFactory<TtyLinkConfig> {
+
+	@Override
+	public String getName() {
+		return "serial-nio";
+	}
+
+	@Override
+	public LinkDelegate newLink(TtyLinkConfig config) throws IOException {
+		File device = new File(checkNotNull(config.getPort(),
+				"port must not be null"));
+		checkState(device.exists(), "Port %s does not exist", device);
+		if (config.isStty()) {
+			Stty.configure(device.getPath(), config.getBaudrate());
+		}
+		TtyConnection connection = TtyConnection.open(device, config
+				.getProto().getSeparator());
+		ConnectionBasedLink connectionBasedLink = new ConnectionBasedLink(
+				connection, config.getProto());
+		@SuppressWarnings("resource")
+		Link link = config.isQos() ? new QosLink(connectionBasedLink)
+				: connectionBasedLink;
+
+		waitForArdulink(config, connectionBasedLink);
+		return new LinkDelegate(link);
+	}
+
+	private void waitForArdulink(TtyLinkConfig config,
+			ConnectionBasedLink link) {
+		if (config.isPingprobe()) {
+			checkState(
+					link.waitForArduinoToBoot(config.getWaitsecs(), SECONDS),
+					"Waited for arduino to boot but no response received");
+		} else {
+			// anything sent by the arduino (e.g. its ready paket) ends the
+			// wait before the time elapsed
+			link.waitForArduinoToSend(config.getWaitsecs(), SECONDS);
+		}
+	}
+
+	@Override
+	public TtyLinkConfig newLinkConfig() {
+		return new TtyLinkConfig();
+	}
+
+}
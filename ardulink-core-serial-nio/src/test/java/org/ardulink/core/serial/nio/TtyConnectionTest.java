@@ -0,0 +1,187 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.core.serial.nio;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.ardulink.core.Connection;
+import org.ardulink.core.ReceiveTimestamp;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.Timeout;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * Uses two fifos in place of a tty, one for each direction.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public class TtyConnectionTest {
+
+	@Rule
+	public Timeout timeout = new Timeout(10, SECONDS);
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private FileChannel deviceOut;
+	private FileChannel deviceIn;
+	private TtyConnection sut;
+
+	private final BlockingQueue<String> received = new LinkedBlockingQueue<String>();
+
+	@Before
+	public void setup() throws Exception {
+		File rx = mkfifo("rx");
+		File tx = mkfifo("tx");
+		deviceOut = new RandomAccessFile(rx, "rw").getChannel();
+		deviceIn = new RandomAccessFile(tx, "rw").getChannel();
+		sut = new TtyConnection(new RandomAccessFile(rx, "rw").getChannel(),
+				new RandomAccessFile(tx, "rw").getChannel(), "\n".getBytes());
+		sut.addListener(new Connection.ListenerAdapter() {
+			@Override
+			public void received(byte[] bytes) {
+				received.add(new String(bytes));
+			}
+		});
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		sut.close();
+		deviceOut.close();
+		deviceIn.close();
+	}
+
+	@Test
+	public void framesSplitAcrossReadsAreReassembled() throws Exception {
+		deviceWrites("alp://ared/1/");
+		deviceWrites("2\nalp://dred/3/1\nalp://");
+		deviceWrites("rply/ok?id=1\n");
+		assertThat(received.take(), is("alp://ared/1/2"));
+		assertThat(received.take(), is("alp://dred/3/1"));
+		assertThat(received.take(), is("alp://rply/ok?id=1"));
+	}
+
+	@Test
+	public void framesLongerThanTheReadBufferAreReceived() throws Exception {
+		char[] chars = new char[TtyConnection.READ_BUFFER_SIZE * 3];
+		Arrays.fill(chars, 'x');
+		String frame = new String(chars);
+		deviceWrites(frame + "\nalp://ared/1/2\n");
+		assertThat(received.take(), is(frame));
+		assertThat(received.take(), is("alp://ared/1/2"));
+	}
+
+	@Test
+	public void framesAreTimestamped() throws Exception {
+		final BlockingQueue<long[]> timestamps = new LinkedBlockingQueue<long[]>();
+		sut.addListener(new Connection.ListenerAdapter() {
+			@Override
+			public void received(byte[] bytes) {
+				if (ReceiveTimestamp.isSet()) {
+					timestamps.add(new long[] { ReceiveTimestamp.readNanos(),
+							ReceiveTimestamp.receivedNanos() });
+				}
+			}
+		});
+		long before = System.nanoTime();
+		deviceWrites("alp://ared/1/2\n");
+		long[] frame = timestamps.take();
+		assertThat(frame[0] - before >= 0, is(true));
+		assertThat(frame[1] - frame[0] >= 0, is(true));
+		assertThat(ReceiveTimestamp.isSet(), is(false));
+	}
+
+	@Test
+	public void writesReachTheDevice() throws Exception {
+		sut.write("alp://ppin/9/123\n".getBytes());
+		ByteBuffer buffer = ByteBuffer.allocate(64);
+		while (buffer.position() < 17) {
+			deviceIn.read(buffer);
+		}
+		assertThat(new String(buffer.array(), 0, buffer.position()),
+				is("alp://ppin/9/123\n"));
+	}
+
+	@Test
+	public void openedDeviceCanBeWrittenWhileNothingIsReceived()
+			throws Exception {
+		File tty = mkfifo("tty");
+		// keeps the fifo open so opening it for reading does not block
+		FileChannel device = new RandomAccessFile(tty, "rw").getChannel();
+		TtyConnection opened = TtyConnection.open(tty, "\n".getBytes());
+		try {
+			opened.addListener(new Connection.ListenerAdapter() {
+				@Override
+				public void received(byte[] bytes) {
+					received.add(new String(bytes));
+				}
+			});
+			// the reader thread is blocked reading the idle device
+			opened.write("alp://ppin/9/123\n".getBytes());
+			// a fifo echoes what is written
+			assertThat(received.take(), is("alp://ppin/9/123"));
+		} finally {
+			opened.close();
+			device.close();
+		}
+	}
+
+	private void deviceWrites(String data) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(data.getBytes());
+		while (buffer.hasRemaining()) {
+			deviceOut.write(buffer);
+		}
+	}
+
+	private File mkfifo(String name) throws Exception {
+		return mkfifo(folder, name);
+	}
+
+	static File mkfifo(TemporaryFolder folder, String name) throws Exception {
+		File fifo = new File(folder.getRoot(), name);
+		int exitCode;
+		try {
+			exitCode = new ProcessBuilder("mkfifo", fifo.getPath()).start()
+					.waitFor();
+		} catch (IOException e) {
+			exitCode = -1;
+		}
+		assumeTrue(exitCode == 0);
+		return fifo;
+	}
+
+}
@@ -0,0 +1,88 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.core.serial.nio;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.ardulink.core.Link;
+import org.ardulink.core.events.AnalogPinValueChangedEvent;
+import org.ardulink.core.events.EventListenerAdapter;
+import org.ardulink.core.linkmanager.LinkManager;
+import org.ardulink.util.URIs;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.Timeout;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public class TtyLinkFactoryTest {
+
+	@Rule
+	public Timeout timeout = new Timeout(10, SECONDS);
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void sttyCommandConfiguresRawEightNOne() {
+		assertThat(Stty.command("/dev/ttyUSB0", 57600).subList(0, 5)
+				.toString(), is("[stty, -F, /dev/ttyUSB0, 57600, raw]"));
+	}
+
+	@Test
+	public void canReceiveEventsFromTheDevice() throws Exception {
+		File fifo = TtyConnectionTest.mkfifo(folder, "tty");
+		Link link = LinkManager
+				.getInstance()
+				.getConfigurer(
+						URIs.newURI("ardulink://serial-nio?port="
+								+ fifo.getPath()
+								+ "&stty=false&pingprobe=false&waitsecs=0"))
+				.newLink();
+		final BlockingQueue<Integer> values = new LinkedBlockingQueue<Integer>();
+		link.addListener(new EventListenerAdapter() {
+			@Override
+			public void stateChanged(AnalogPinValueChangedEvent event) {
+				values.add(event.getValue());
+			}
+		});
+		FileChannel device = new RandomAccessFile(fifo, "rw").getChannel();
+		try {
+			device.write(ByteBuffer.wrap("alp://ared/1/42\n".getBytes()));
+			assertThat(values.take(), is(42));
+		} finally {
+			link.close();
+			device.close();
+		}
+	}
+
+}
@@ -29,6 +29,7 @@ import javax.validation.constraints.Min;
 
 import org.ardulink.core.linkmanager.LinkConfig;
 import org.ardulink.core.linkmanager.LinkConfig.I18n;
+import org.ardulink.core.ports.PortRegistry;
 import org.ardulink.core.proto.api.Protocol;
 import org.ardulink.core.proto.api.Protocols;
 import org.ardulink.core.proto.impl.ArdulinkProtocol2;
@@ -45,6 +46,20 @@ import org.ardulink.util.Lists;
 @I18n("message")
 public class SerialLinkConfig implements LinkConfig {
 
+	private static final PortRegistry portRegistry = new PortRegistry(
+			new PortRegistry.Enumerator() {
+				@Override
+				public List<String> listPorts() {
+					List<String> ports = Lists.newArrayList();
+					for (CommPortIdentifier portIdentifier : portIdentifiers()) {
+						if (portIdentifier.getPortType() == PORT_SERIAL) {
+							ports.add(portIdentifier.getName());
+						}
+					}
+					return ports;
+				}
+			});
+
 	@Named("port")
 	private String port;
 
@@ -52,6 +67,10 @@ public class SerialLinkConfig implements LinkConfig {
 	@Min(1)
 	private int baudrate = 115200;
 
+	@Named("upgradebaudrate")
+	@Min(0)
+	private int upgradebaudrate;
+
 	@Named("proto")
 	private Protocol protoName = useProtoOrFallback(ArdulinkProtocol2
 			.instance());
@@ -74,6 +93,10 @@ public class SerialLinkConfig implements LinkConfig {
 		return baudrate;
 	}
 
+	public int getUpgradebaudrate() {
+		return upgradebaudrate;
+	}
+
 	private Protocol useProtoOrFallback(Protocol prefered) {
 		return isAvailable(prefered) ? prefered : getFirst(Protocols.list())
 				.orNull();
@@ -89,13 +112,7 @@ public class SerialLinkConfig implements LinkConfig {
 
 	@ChoiceFor("port")
 	public List<String> listPorts() {
-		List<String> ports = Lists.newArrayList();
-		for (CommPortIdentifier portIdentifier : portIdentifiers()) {
-			if (portIdentifier.getPortType() == PORT_SERIAL) {
-				ports.add(portIdentifier.getName());
-			}
-		}
-		return ports;
+		return portRegistry.getPorts();
 	}
 
 	@ChoiceFor("proto")
@@ -124,7 +141,7 @@ public class SerialLinkConfig implements LinkConfig {
 	}
 
 	@SuppressWarnings("unchecked")
-	private Iterable<CommPortIdentifier> portIdentifiers() {
+	private static Iterable<CommPortIdentifier> portIdentifiers() {
 		return forEnumeration((Enumeration<CommPortIdentifier>) CommPortIdentifier
 				.getPortIdentifiers());
 	}
@@ -133,6 +150,10 @@ public class SerialLinkConfig implements LinkConfig {
 		this.baudrate = baudrate;
 	}
 
+	public void setUpgradebaudrate(int upgradebaudrate) {
+		this.upgradebaudrate = upgradebaudrate;
+	}
+
 	public void setPingprobe(boolean pingprobe) {
 		this.pingprobe = pingprobe;
 	}
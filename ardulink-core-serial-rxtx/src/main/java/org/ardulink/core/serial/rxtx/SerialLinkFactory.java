@@ -28,7 +28,9 @@ import gnu.io.SerialPort;
 import gnu.io.UnsupportedCommOperationException;
 
 import java.io.IOException;
+import java.util.TooManyListenersException;
 
+import org.ardulink.core.BaudrateNegotiation;
 import org.ardulink.core.ConnectionBasedLink;
 import org.ardulink.core.Link;
 import org.ardulink.core.StreamConnection;
@@ -46,6 +48,14 @@ import org.ardulink.core.qos.QosLink;
  */
 public class SerialLinkFactory implements LinkFactory<SerialLinkConfig> {
 
+	/**
+	 * Maximum number of bytes read from the port at once, also used as
+	 * receive threshold.
+	 */
+	private static final int READ_BUFFER_SIZE = 256;
+
+	private static final int RECEIVE_TIMEOUT_MILLIS = 50;
+
 	@Override
 	public String getName() {
 		return "serial";
@@ -54,16 +64,28 @@ public class SerialLinkFactory implements LinkFactory<SerialLinkConfig> {
 	@Override
 	public LinkDelegate newLink(SerialLinkConfig config)
 			throws NoSuchPortException, PortInUseException,
-			UnsupportedCommOperationException, IOException {
+			UnsupportedCommOperationException, IOException,
+			TooManyListenersException {
 		CommPortIdentifier portIdentifier = CommPortIdentifier
 				.getPortIdentifier(config.getPort());
 		checkState(!portIdentifier.isCurrentlyOwned(),
 				"Port %s is currently in use", config.getPort());
 		final SerialPort serialPort = serialPort(config, portIdentifier);
+		final SerialPortInputStream inputStream;
+		try {
+			inputStream = new SerialPortInputStream(serialPort,
+					READ_BUFFER_SIZE, RECEIVE_TIMEOUT_MILLIS);
+		} catch (UnsupportedCommOperationException e) {
+			serialPort.close();
+			throw e;
+		} catch (TooManyListenersException e) {
+			serialPort.close();
+			throw e;
+		}
 
-		StreamConnection connection = new StreamConnection(
-				serialPort.getInputStream(), serialPort.getOutputStream(),
-				config.getProto());
+		StreamConnection connection = new StreamConnection(inputStream,
+				serialPort.getOutputStream(), config.getProto(),
+				READ_BUFFER_SIZE);
 
 		ConnectionBasedLink connectionBasedLink = new ConnectionBasedLink(
 				connection, config.getProto());
@@ -72,13 +94,41 @@ public class SerialLinkFactory implements LinkFactory<SerialLinkConfig> {
 				: connectionBasedLink;
 
 		waitForArdulink(config, connectionBasedLink);
-		return new LinkDelegate(link) {
+		LinkDelegate linkDelegate = new LinkDelegate(link) {
 			@Override
 			public void close() throws IOException {
 				super.close();
+				// wakes up the reader and unregisters from the port's events
+				// before the port is closed
+				inputStream.close();
 				serialPort.close();
 			}
 		};
+		if (config.getUpgradebaudrate() > 0) {
+			try {
+				upgradeBaudrate(config, connectionBasedLink, serialPort);
+			} catch (IOException e) {
+				linkDelegate.close();
+				throw e;
+			}
+		}
+		return linkDelegate;
+	}
+
+	private void upgradeBaudrate(SerialLinkConfig config,
+			ConnectionBasedLink link, final SerialPort serialPort)
+			throws IOException {
+		new BaudrateNegotiation(link, new BaudrateNegotiation.Port() {
+			@Override
+			public void setBaudrate(int baudrate) throws IOException {
+				try {
+					serialPort.setSerialPortParams(baudrate, DATABITS_8,
+							STOPBITS_1, PARITY_NONE);
+				} catch (UnsupportedCommOperationException e) {
+					throw new IOException(e);
+				}
+			}
+		}).upgrade(config.getBaudrate(), config.getUpgradebaudrate());
 	}
 
 	private void waitForArdulink(SerialLinkConfig config,
@@ -88,11 +138,9 @@ public class SerialLinkFactory implements LinkFactory<SerialLinkConfig> {
 					link.waitForArduinoToBoot(config.getWaitsecs(), SECONDS),
 					"Waited for arduino to boot but no response received");
 		} else {
-			try {
-				SECONDS.sleep(config.getWaitsecs());
-			} catch (InterruptedException e) {
-				Thread.currentThread().interrupt();
-			}
+			// anything sent by the arduino (e.g. its ready paket) ends the
+			// wait before the time elapsed
+			link.waitForArduinoToSend(config.getWaitsecs(), SECONDS);
 		}
 	}
 
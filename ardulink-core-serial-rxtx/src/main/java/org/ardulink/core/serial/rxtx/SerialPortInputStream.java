@@ -0,0 +1,146 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package org.ardulink.core.serial.rxtx;
+
+import static gnu.io.SerialPortEvent.DATA_AVAILABLE;
+import gnu.io.SerialPort;
+import gnu.io.SerialPortEvent;
+import gnu.io.SerialPortEventListener;
+import gnu.io.UnsupportedCommOperationException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.TooManyListenersException;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ * 
+ * Reads a serial port event driven: Instead of blocking in RXTX's read, which
+ * polls the port depending on the receive timeout, the reader waits until
+ * RXTX signals {@link SerialPortEvent#DATA_AVAILABLE} and then reads
+ * everything available with one call. A read never returns more than is
+ * available so the receive threshold only makes RXTX hand over bursts in
+ * bulk, it does not delay a read. The receive timeout bounds each native
+ * read so closing the stream is not blocked by it.
+ * 
+ * project Ardulink http://www.ardulink.org/
+ * 
+ * [adsense]
+ *
+ */
+public class SerialPortInputStream extends InputStream implements
+		SerialPortEventListener {
+
+	/**
+	 * Even if a {@link SerialPortEvent#DATA_AVAILABLE} event got lost the data
+	 * is read after this time.
+	 */
+	private static final long RECHECK_MILLIS = 100;
+
+	private final SerialPort serialPort;
+	private final InputStream delegate;
+	private final Object lock = new Object();
+	private boolean dataAvailable;
+	private volatile boolean closed;
+
+	public SerialPortInputStream(SerialPort serialPort, int receiveThreshold,
+			int receiveTimeoutMillis) throws IOException,
+			UnsupportedCommOperationException, TooManyListenersException {
+		this.serialPort = serialPort;
+		this.delegate = serialPort.getInputStream();
+		serialPort.enableReceiveThreshold(receiveThreshold);
+		serialPort.enableReceiveTimeout(receiveTimeoutMillis);
+		serialPort.addEventListener(this);
+		serialPort.notifyOnDataAvailable(true);
+	}
+
+	@Override
+	public void serialEvent(SerialPortEvent event) {
+		if (event.getEventType() == DATA_AVAILABLE) {
+			synchronized (lock) {
+				dataAvailable = true;
+				lock.notifyAll();
+			}
+		}
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] b = new byte[1];
+		return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		int available;
+		while ((available = awaitData()) > 0) {
+			int read = delegate.read(b, off, Math.min(len, available));
+			if (read > 0) {
+				return read;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the number of bytes available or zero if the stream has been
+	 * closed or the reading thread has been interrupted.
+	 */
+	private int awaitData() throws IOException {
+		while (!closed) {
+			int available = delegate.available();
+			if (available > 0) {
+				return available;
+			}
+			synchronized (lock) {
+				try {
+					if (!dataAvailable && !closed) {
+						lock.wait(RECHECK_MILLIS);
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return 0;
+				}
+				dataAvailable = false;
+			}
+		}
+		return 0;
+	}
+
+	@Override
+	public int available() throws IOException {
+		return closed ? 0 : delegate.available();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		synchronized (lock) {
+			lock.notifyAll();
+		}
+		serialPort.notifyOnDataAvailable(false);
+		serialPort.removeEventListener();
+		delegate.close();
+	}
+
+}
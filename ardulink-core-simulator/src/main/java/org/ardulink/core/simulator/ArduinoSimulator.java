@@ -0,0 +1,413 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.core.simulator;
+
+import static java.lang.Integer.parseInt;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.ardulink.core.BaudrateNegotiation.DEVICE_VERIFY_MILLIS;
+import static org.ardulink.util.Preconditions.checkArgument;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * Simulates an arduino running the ArdulinkProtocol sketch. The host talks to
+ * it using the streams returned by {@link #getInputStream()} and
+ * {@link #getOutputStream()}. Like the sketch each pass of the loop reads at
+ * most one message from the serial receive buffer, executes it, answers it
+ * with a <code>rply</code> message if the message has an id and sends the
+ * values of the listened pins that have changed. The serial line is limited
+ * to the configured baudrate in both directions, bytes written by the host
+ * while the receive buffer is full are lost. Like the sketch the simulator
+ * switches its baudrate when the host proposes it (see
+ * {@link org.ardulink.core.BaudrateNegotiation}), bytes sent while the
+ * baudrates of the host and the simulator differ or exceed the maximum
+ * baudrate of the line are garbage.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public class ArduinoSimulator implements Closeable {
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(ArduinoSimulator.class);
+
+	private static final String PREFIX = "alp://";
+	private static final String ID_PARAM = "?id=";
+	private static final char SEPARATOR = '\n';
+
+	private static final int ANALOG_MAX = 1023;
+
+	/**
+	 * What a UART typically receives if the baudrates do not match (a
+	 * framing error).
+	 */
+	private static final byte GARBAGE = 0;
+
+	private final SerialLine rxLine;
+	private final SerialLine txLine;
+	private final RxBuffer rxBuffer;
+	private final long loopNanos;
+	private final int noise;
+	private final Random random = new Random();
+	private final int maxBaudrate;
+	private volatile int baudrate;
+	private volatile int hostBaudrate;
+
+	private final AtomicIntegerArray digitalValues;
+	private final AtomicIntegerArray analogValues;
+	private final AtomicIntegerArray powerPinIntensities;
+
+	// only accessed by the loop
+	private final boolean[] digitalPinListening;
+	private final boolean[] analogPinListening;
+	private final int[] digitalPinListenedValue;
+	private final int[] analogPinListenedValue;
+	private final StringBuilder inputString = new StringBuilder();
+	private boolean stringComplete;
+	private int switchToBaudrate;
+	private int fallbackBaudrate;
+	private long fallbackDeadline;
+
+	private final PipedInputStream inputStream;
+	private final PipedOutputStream tx;
+	private final OutputStream outputStream = new OutputStream() {
+
+		@Override
+		public void write(int b) throws IOException {
+			if (closed) {
+				throw new IOException("Simulator closed");
+			}
+			rxLine.transfer(1);
+			rxBuffer.offer(isGarbled() ? GARBAGE : (byte) b);
+		}
+
+	};
+
+	private final Thread thread = new Thread("ArduinoSimulator") {
+		@Override
+		public void run() {
+			loop();
+		}
+	};
+
+	private volatile boolean closed;
+
+	public ArduinoSimulator(SimulatorLinkConfig config) throws IOException {
+		this.rxLine = new SerialLine(config.getBaudrate());
+		this.txLine = new SerialLine(config.getBaudrate());
+		this.rxBuffer = new RxBuffer(config.getRxbuffersize());
+		this.loopNanos = MICROSECONDS.toNanos(config.getLooptime());
+		this.noise = config.getNoise();
+		this.maxBaudrate = config.getMaxbaudrate();
+		this.baudrate = config.getBaudrate();
+		this.hostBaudrate = config.getBaudrate();
+		this.digitalValues = new AtomicIntegerArray(config.getDigitalpins());
+		this.analogValues = new AtomicIntegerArray(config.getAnalogpins());
+		this.powerPinIntensities = new AtomicIntegerArray(
+				config.getDigitalpins());
+		this.digitalPinListening = new boolean[config.getDigitalpins()];
+		this.analogPinListening = new boolean[config.getAnalogpins()];
+		this.digitalPinListenedValue = new int[config.getDigitalpins()];
+		this.analogPinListenedValue = new int[config.getAnalogpins()];
+		this.inputStream = new PipedInputStream(4096);
+		this.tx = new PipedOutputStream(inputStream);
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	/**
+	 * Returns the stream the host reads the messages of the arduino from.
+	 */
+	public InputStream getInputStream() {
+		return inputStream;
+	}
+
+	/**
+	 * Returns the stream the host writes its messages to the arduino to.
+	 */
+	public OutputStream getOutputStream() {
+		return outputStream;
+	}
+
+	/**
+	 * Sets the value read from the analog pin.
+	 */
+	public void setAnalogValue(int pin, int value) {
+		checkArgument(value >= 0 && value <= ANALOG_MAX,
+				"value must be between 0 and %s but was %s", ANALOG_MAX, value);
+		analogValues.set(pin, value);
+	}
+
+	/**
+	 * Sets the value read from the digital pin.
+	 */
+	public void setDigitalValue(int pin, boolean value) {
+		digitalValues.set(pin, value ? 1 : 0);
+	}
+
+	/**
+	 * Returns the state of the digital pin as last switched by a
+	 * <code>ppsw</code> message or set by
+	 * {@link #setDigitalValue(int, boolean)}.
+	 */
+	public boolean getDigitalValue(int pin) {
+		return digitalValues.get(pin) == 1;
+	}
+
+	/**
+	 * Returns the intensity last set by a <code>ppin</code> message.
+	 */
+	public int getPowerPinIntensity(int pin) {
+		return powerPinIntensities.get(pin);
+	}
+
+	/**
+	 * Returns the number of bytes lost because the receive buffer was full.
+	 */
+	public long getRxOverflows() {
+		return rxBuffer.getOverflows();
+	}
+
+	/**
+	 * Returns the baudrate the simulated arduino currently uses.
+	 */
+	public int getBaudrate() {
+		return baudrate;
+	}
+
+	/**
+	 * Sets the baudrate the host's side of the line uses.
+	 */
+	public void setHostBaudrate(int hostBaudrate) {
+		checkArgument(hostBaudrate > 0,
+				"baudrate must be positive but was %s", hostBaudrate);
+		this.hostBaudrate = hostBaudrate;
+	}
+
+	private boolean isGarbled() {
+		int baudrate = this.baudrate;
+		return baudrate != hostBaudrate || maxBaudrate > 0
+				&& baudrate > maxBaudrate;
+	}
+
+	private void loop() {
+		try {
+			send("alp://rply/ok?id=0");
+			long next = System.nanoTime();
+			while (!closed) {
+				if (fallbackBaudrate > 0 && System.nanoTime() - fallbackDeadline > 0) {
+					// the host did not reach us at the new baudrate
+					logger.debug("Falling back to baudrate {}", fallbackBaudrate);
+					switchBaudrate(fallbackBaudrate);
+					fallbackBaudrate = 0;
+				}
+				serialEvent();
+				if (stringComplete) {
+					process(inputString.toString());
+					inputString.setLength(0);
+					stringComplete = false;
+				}
+				sendListenedPins();
+
+				next += loopNanos;
+				long wait = next - System.nanoTime();
+				if (wait > 0) {
+					LockSupport.parkNanos(this, wait);
+				} else {
+					// fell behind (e.g. the host does not read), do not
+					// catch up
+					next = System.nanoTime();
+				}
+			}
+		} catch (InterruptedIOException e) {
+			// closed
+		} catch (IOException e) {
+			if (!closed) {
+				logger.error("Simulator stopped", e);
+			}
+		}
+	}
+
+	private void serialEvent() {
+		int b;
+		while (!stringComplete && (b = rxBuffer.read()) >= 0) {
+			if (b == SEPARATOR) {
+				stringComplete = true;
+			} else {
+				inputString.append((char) b);
+			}
+		}
+	}
+
+	private void process(String message) throws IOException {
+		logger.debug("Received {}", message);
+		if (!message.startsWith(PREFIX)) {
+			return;
+		}
+		// receiving a message verifies a switched baudrate
+		fallbackBaudrate = 0;
+		int idPosition = message.indexOf(ID_PARAM);
+		String command = message.substring(PREFIX.length(),
+				idPosition < 0 ? message.length() : idPosition);
+		boolean msgRecognized = execute(command.split("/"));
+		if (idPosition >= 0) {
+			send("alp://rply/" + (msgRecognized ? "ok" : "ko") + ID_PARAM
+					+ message.substring(idPosition + ID_PARAM.length()));
+		}
+		if (switchToBaudrate > 0) {
+			// switch after the reply was sent at the old baudrate
+			fallbackBaudrate = baudrate;
+			fallbackDeadline = System.nanoTime()
+					+ MILLISECONDS.toNanos(DEVICE_VERIFY_MILLIS);
+			switchBaudrate(switchToBaudrate);
+			switchToBaudrate = 0;
+		}
+	}
+
+	private void switchBaudrate(int baudrate) {
+		this.baudrate = baudrate;
+		rxLine.setBaudrate(baudrate);
+		txLine.setBaudrate(baudrate);
+		// drop what was received before, it is garbage
+		inputString.setLength(0);
+		while (rxBuffer.read() >= 0) {
+			// discard
+		}
+	}
+
+	private boolean execute(String[] command) {
+		try {
+			String key = command[0];
+			if ("kprs".equals(key) || "tone".equals(key)
+					|| "notn".equals(key)) {
+				return true;
+			} else if ("ppin".equals(key)) {
+				powerPinIntensities.set(digitalPin(command[1]),
+						parseInt(command[2]));
+				return true;
+			} else if ("ppsw".equals(key)) {
+				int pin = digitalPin(command[1]);
+				int power = parseInt(command[2]);
+				if (power == 0 || power == 1) {
+					digitalValues.set(pin, power);
+				}
+				return true;
+			} else if ("srld".equals(key) || "spld".equals(key)) {
+				int pin = digitalPin(command[1]);
+				digitalPinListening[pin] = "srld".equals(key);
+				// ensure a message back when start listen happens
+				digitalPinListenedValue[pin] = -1;
+				return true;
+			} else if ("srla".equals(key) || "spla".equals(key)) {
+				int pin = analogPin(command[1]);
+				analogPinListening[pin] = "srla".equals(key);
+				analogPinListenedValue[pin] = -1;
+				return true;
+			} else if ("cust".equals(key) && command.length == 3
+					&& "baud".equals(command[1])) {
+				int baudrate = parseInt(command[2]);
+				if (baudrate <= 0) {
+					return false;
+				}
+				switchToBaudrate = baudrate;
+				return true;
+			}
+			return false;
+		} catch (RuntimeException e) {
+			logger.debug("Cannot execute {}", Arrays.toString(command), e);
+			return false;
+		}
+	}
+
+	private int digitalPin(String pin) {
+		return checkPin(parseInt(pin), digitalPinListening.length);
+	}
+
+	private int analogPin(String pin) {
+		return checkPin(parseInt(pin), analogPinListening.length);
+	}
+
+	private static int checkPin(int pin, int pins) {
+		checkArgument(pin >= 0 && pin < pins, "Pin %s not in range 0 to %s",
+				pin, pins - 1);
+		return pin;
+	}
+
+	private void sendListenedPins() throws IOException {
+		for (int pin = 0; pin < digitalPinListening.length; pin++) {
+			if (digitalPinListening[pin]) {
+				int value = digitalValues.get(pin);
+				if (value != digitalPinListenedValue[pin]) {
+					digitalPinListenedValue[pin] = value;
+					send("alp://dred/" + pin + "/" + value);
+				}
+			}
+		}
+		for (int pin = 0; pin < analogPinListening.length; pin++) {
+			if (analogPinListening[pin]) {
+				int value = analogRead(pin);
+				if (value != analogPinListenedValue[pin]) {
+					analogPinListenedValue[pin] = value;
+					send("alp://ared/" + pin + "/" + value);
+				}
+			}
+		}
+	}
+
+	private int analogRead(int pin) {
+		int value = analogValues.get(pin);
+		if (noise > 0) {
+			value += random.nextInt(2 * noise + 1) - noise;
+		}
+		return Math.max(0, Math.min(ANALOG_MAX, value));
+	}
+
+	private void send(String message) throws IOException {
+		byte[] bytes = (message + SEPARATOR).getBytes();
+		txLine.transfer(bytes.length);
+		if (isGarbled()) {
+			Arrays.fill(bytes, GARBAGE);
+		}
+		tx.write(bytes);
+		tx.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.closed = true;
+		this.thread.interrupt();
+		this.tx.close();
+	}
+
+}
@@ -0,0 +1,77 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.core.simulator;
+
+import static org.ardulink.util.Preconditions.checkArgument;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * The serial receive buffer of the arduino. Like the one of the hardware
+ * serial implementation it is a ring buffer of fixed size, bytes arriving
+ * while it is full are lost.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+final class RxBuffer {
+
+	private final byte[] buffer;
+	private int head;
+	private int size;
+	private long overflows;
+
+	RxBuffer(int capacity) {
+		checkArgument(capacity > 0, "capacity must be positive but was %s",
+				capacity);
+		this.buffer = new byte[capacity];
+	}
+
+	synchronized void offer(byte b) {
+		if (size == buffer.length) {
+			overflows++;
+		} else {
+			buffer[(head + size++) % buffer.length] = b;
+		}
+	}
+
+	synchronized int available() {
+		return size;
+	}
+
+	/**
+	 * Returns the next byte or -1 if the buffer is empty.
+	 */
+	synchronized int read() {
+		if (size == 0) {
+			return -1;
+		}
+		int b = buffer[head] & 0xFF;
+		head = (head + 1) % buffer.length;
+		size--;
+		return b;
+	}
+
+	/**
+	 * Returns the number of bytes lost because the buffer was full.
+	 */
+	synchronized long getOverflows() {
+		return overflows;
+	}
+
+}
@@ -0,0 +1,77 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.core.simulator;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.ardulink.util.Preconditions.checkArgument;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * Limits the throughput to the one of a serial line using 8N1 framing: Each
+ * byte takes ten bits so <code>baudrate / 10</code> bytes are transferred per
+ * second. The time a byte needs is accumulated and the caller is put asleep
+ * only when it is ahead more than a millisecond, so sleeping per byte is
+ * avoided.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+final class SerialLine {
+
+	private static final int BITS_PER_BYTE = 10;
+
+	private static final long MIN_SLEEP_NANOS = MILLISECONDS.toNanos(1);
+
+	private long nanosPerByte;
+	private long next = System.nanoTime();
+
+	SerialLine(int baudrate) {
+		setBaudrate(baudrate);
+	}
+
+	synchronized void setBaudrate(int baudrate) {
+		checkArgument(baudrate > 0, "baudrate must be positive but was %s",
+				baudrate);
+		this.nanosPerByte = SECONDS.toNanos(BITS_PER_BYTE) / baudrate;
+	}
+
+	/**
+	 * Blocks until the line has transferred the passed number of bytes.
+	 */
+	synchronized void transfer(int bytes) throws InterruptedIOException {
+		long now = System.nanoTime();
+		if (next - now < 0) {
+			// the line was idle
+			next = now;
+		}
+		next += bytes * nanosPerByte;
+		long wait = next - now;
+		if (wait > MIN_SLEEP_NANOS) {
+			LockSupport.parkNanos(this, wait);
+			if (Thread.interrupted()) {
+				throw new InterruptedIOException();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,55 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.core.simulator;
+
+import java.io.IOException;
+
+import org.ardulink.core.Link;
+import org.ardulink.core.convenience.LinkDelegate;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * A link to an {@link ArduinoSimulator}, closing the link stops the simulator.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public class SimulatorLink extends LinkDelegate {
+
+	private final ArduinoSimulator simulator;
+
+	public SimulatorLink(Link delegate, ArduinoSimulator simulator) {
+		super(delegate);
+		this.simulator = simulator;
+	}
+
+	public ArduinoSimulator getSimulator() {
+		return simulator;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			super.close();
+		} finally {
+			simulator.close();
+		}
+	}
+
+}
@@ -0,0 +1,154 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.core.simulator;
+
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+
+import org.ardulink.core.linkmanager.LinkConfig;
+import org.ardulink.core.linkmanager.LinkConfig.I18n;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+@I18n("message")
+public class SimulatorLinkConfig implements LinkConfig {
+
+	@Named("baudrate")
+	@Min(1)
+	private int baudrate = 115200;
+
+	@Named("upgradebaudrate")
+	@Min(0)
+	private int upgradebaudrate;
+
+	@Named("maxbaudrate")
+	@Min(0)
+	private int maxbaudrate;
+
+	@Named("qos")
+	private boolean qos;
+
+	@Named("looptime")
+	@Min(1)
+	private int looptime = 1000;
+
+	@Named("rxbuffersize")
+	@Min(1)
+	private int rxbuffersize = 64;
+
+	@Named("digitalpins")
+	@Min(0)
+	private int digitalpins = 14;
+
+	@Named("analogpins")
+	@Min(0)
+	private int analogpins = 6;
+
+	@Named("noise")
+	@Min(0)
+	@Max(1023)
+	private int noise;
+
+	public int getBaudrate() {
+		return baudrate;
+	}
+
+	/**
+	 * Returns the baudrate to switch to after the simulator did boot, 0 if
+	 * the baudrate is not switched.
+	 */
+	public int getUpgradebaudrate() {
+		return upgradebaudrate;
+	}
+
+	/**
+	 * Returns the highest baudrate the simulated line transfers without
+	 * errors, 0 if there is no limit.
+	 */
+	public int getMaxbaudrate() {
+		return maxbaudrate;
+	}
+
+	public boolean isQos() {
+		return qos;
+	}
+
+	/**
+	 * Returns the time in microseconds one pass of the sketch's loop takes.
+	 */
+	public int getLooptime() {
+		return looptime;
+	}
+
+	public int getRxbuffersize() {
+		return rxbuffersize;
+	}
+
+	public int getDigitalpins() {
+		return digitalpins;
+	}
+
+	public int getAnalogpins() {
+		return analogpins;
+	}
+
+	public int getNoise() {
+		return noise;
+	}
+
+	public void setBaudrate(int baudrate) {
+		this.baudrate = baudrate;
+	}
+
+	public void setUpgradebaudrate(int upgradebaudrate) {
+		this.upgradebaudrate = upgradebaudrate;
+	}
+
+	public void setMaxbaudrate(int maxbaudrate) {
+		this.maxbaudrate = maxbaudrate;
+	}
+
+	public void setQos(boolean qos) {
+		this.qos = qos;
+	}
+
+	public void setLooptime(int looptime) {
+		this.looptime = looptime;
+	}
+
+	public void setRxbuffersize(int rxbuffersize) {
+		this.rxbuffersize = rxbuffersize;
+	}
+
+	public void setDigitalpins(int digitalpins) {
+		this.digitalpins = digitalpins;
+	}
+
+	public void setAnalogpins(int analogpins) {
+		this.analogpins = analogpins;
+	}
+
+	public void setNoise(int noise) {
+		this.noise = noise;
+	}
+
+}
@@ -0,0 +1,87 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.core.simulator;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.ardulink.util.Preconditions.checkState;
+
+import java.io.IOException;
+
+import org.ardulink.core.BaudrateNegotiation;
+import org.ardulink.core.ConnectionBasedLink;
+import org.ardulink.core.Link;
+import org.ardulink.core.StreamConnection;
+import org.ardulink.core.linkmanager.LinkFactory;
+import org.ardulink.core.proto.api.Protocol;
+import org.ardulink.core.proto.impl.ArdulinkProtocol2;
+import org.ardulink.core.qos.QosLink;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public class SimulatorLinkFactory implements LinkFactory<SimulatorLinkConfig> {
+
+	private static final int BOOT_WAIT_SECS = 10;
+
+	@Override
+	public String getName() {
+		return "simulator";
+	}
+
+	@Override
+	public SimulatorLink newLink(SimulatorLinkConfig config) throws IOException {
+		final ArduinoSimulator simulator = new ArduinoSimulator(config);
+		Protocol proto = ArdulinkProtocol2.instance();
+		StreamConnection connection = new StreamConnection(
+				simulator.getInputStream(), simulator.getOutputStream(), proto);
+		ConnectionBasedLink connectionBasedLink = new ConnectionBasedLink(
+				connection, proto);
+		@SuppressWarnings("resource")
+		Link link = config.isQos() ? new QosLink(connectionBasedLink)
+				: connectionBasedLink;
+
+		checkState(connectionBasedLink.waitForArduinoToBoot(BOOT_WAIT_SECS,
+				SECONDS), "Waited for arduino to boot but no response received");
+		SimulatorLink simulatorLink = new SimulatorLink(link, simulator);
+		if (config.getUpgradebaudrate() > 0) {
+			try {
+				new BaudrateNegotiation(connectionBasedLink,
+						new BaudrateNegotiation.Port() {
+							@Override
+							public void setBaudrate(int baudrate) {
+								simulator.setHostBaudrate(baudrate);
+							}
+						}).upgrade(config.getBaudrate(),
+						config.getUpgradebaudrate());
+			} catch (IOException e) {
+				simulatorLink.close();
+				throw e;
+			}
+		}
+		return simulatorLink;
+	}
+
+	@Override
+	public SimulatorLinkConfig newLinkConfig() {
+		return new SimulatorLinkConfig();
+	}
+
+}
@@ -0,0 +1,127 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.core.simulator;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.ardulink.core.Pin.analogPin;
+import static org.ardulink.core.Pin.digitalPin;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.ardulink.core.events.AnalogPinValueChangedEvent;
+import org.ardulink.core.events.EventListenerAdapter;
+import org.ardulink.core.linkmanager.LinkManager;
+import org.ardulink.util.URIs;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public class SimulatorLinkTest {
+
+	@Rule
+	public Timeout timeout = new Timeout(5, SECONDS);
+
+	private SimulatorLink link;
+
+	@After
+	public void tearDown() throws IOException {
+		link.close();
+	}
+
+	@Test
+	public void executesConfirmedMessages() throws IOException {
+		link = newLink("qos=true");
+		link.switchAnalogPin(analogPin(3), 42);
+		link.switchDigitalPin(digitalPin(5), true);
+		assertThat(link.getSimulator().getPowerPinIntensity(3), is(42));
+		assertThat(link.getSimulator().getDigitalValue(5), is(true));
+	}
+
+	@Test
+	public void sendsChangesOfListenedPins() throws Exception {
+		link = newLink("");
+		final BlockingQueue<Integer> values = new LinkedBlockingQueue<Integer>();
+		link.addListener(new EventListenerAdapter() {
+			@Override
+			public void stateChanged(AnalogPinValueChangedEvent event) {
+				values.add(event.getValue());
+			}
+		});
+		link.getSimulator().setAnalogValue(1, 512);
+		link.startListening(analogPin(1));
+		assertThat(values.take(), is(512));
+		link.getSimulator().setAnalogValue(1, 700);
+		assertThat(values.take(), is(700));
+	}
+
+	@Test
+	public void losesBytesWhenRxBufferIsFull() throws IOException {
+		link = newLink("looptime=100000");
+		for (int i = 0; i < 10; i++) {
+			link.switchAnalogPin(analogPin(3), i);
+		}
+		assertThat(link.getSimulator().getRxOverflows() > 0, is(true));
+	}
+
+	@Test
+	public void throughputIsLimitedByBaudrate() throws IOException {
+		link = newLink("baudrate=2400&rxbuffersize=1024");
+		long start = System.nanoTime();
+		// 12 times 16 bytes take 800 ms at 240 bytes per second
+		for (int i = 0; i < 12; i++) {
+			link.switchAnalogPin(analogPin(3), 42);
+		}
+		long millis = NANOSECONDS.toMillis(System.nanoTime() - start);
+		assertThat(millis >= 700, is(true));
+	}
+
+	@Test
+	public void switchesToUpgradedBaudrate() throws IOException {
+		link = newLink("qos=true&upgradebaudrate=1000000");
+		assertThat(link.getSimulator().getBaudrate(), is(1000000));
+		link.switchAnalogPin(analogPin(3), 42);
+		assertThat(link.getSimulator().getPowerPinIntensity(3), is(42));
+	}
+
+	@Test
+	public void fallsBackIfUpgradedBaudrateDoesNotWork() throws IOException {
+		link = newLink("qos=true&upgradebaudrate=1000000&maxbaudrate=500000");
+		assertThat(link.getSimulator().getBaudrate(), is(115200));
+		link.switchAnalogPin(analogPin(3), 42);
+		assertThat(link.getSimulator().getPowerPinIntensity(3), is(42));
+	}
+
+	private static SimulatorLink newLink(String params) {
+		return (SimulatorLink) LinkManager.getInstance()
+				.getConfigurer(URIs.newURI("ardulink://simulator?" + params))
+				.newLink();
+	}
+
+}
@@ -5,6 +5,7 @@ import static org.ardulink.util.Preconditions.checkNotNull;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.net.URLDecoder;
 import java.net.URLEncoder;
 
 public final class URIs {
@@ -32,4 +33,13 @@ public final class URIs {
 		}
 	}
 
+	public static String decode(String encoded) {
+		try {
+			return URLDecoder.decode(
+					checkNotNull(encoded, "encoded must not be null"), "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw Throwables.propagate(e);
+		}
+	}
+
 }
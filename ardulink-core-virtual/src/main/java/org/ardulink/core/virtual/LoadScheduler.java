@@ -0,0 +1,154 @@
+package org.ardulink.core.virtual;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Paces the load generating {@link VirtualLink}s. One thread serves all links
+ * so the number of links does not multiply the number of threads. The tasks
+ * are run at absolute {@link System#nanoTime()} deadlines, so the rate does
+ * not drift: The thread parks until shortly before the next deadline and
+ * spins for the rest since parking is not precise enough for rates of tens of
+ * kHz.
+ */
+final class LoadScheduler {
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(LoadScheduler.class);
+
+	/**
+	 * Waits shorter than this are spun instead of parked.
+	 */
+	private static final long SPIN_NANOS = MICROSECONDS.toNanos(100);
+
+	/**
+	 * If a task falls behind more than this (e.g. because of slow listeners)
+	 * the missed runs are skipped instead of being caught up.
+	 */
+	private static final long MAX_LAG_NANOS = MILLISECONDS.toNanos(100);
+
+	private static final LoadScheduler instance = new LoadScheduler();
+
+	interface Task {
+
+		/**
+		 * Runs the task, returns the nanoseconds from this run's deadline to
+		 * the next one.
+		 */
+		long run();
+
+	}
+
+	private final PriorityQueue<Entry> queue = new PriorityQueue<Entry>();
+	private final Map<Task, Entry> entries = new HashMap<Task, Entry>();
+	private final Thread thread = new Thread("VirtualLinkLoad") {
+		@Override
+		public void run() {
+			runLoop();
+		}
+	};
+
+	private LoadScheduler() {
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	static LoadScheduler getInstance() {
+		return instance;
+	}
+
+	void schedule(Task task) {
+		synchronized (queue) {
+			Entry entry = new Entry(task, System.nanoTime());
+			entries.put(task, entry);
+			queue.add(entry);
+		}
+		LockSupport.unpark(thread);
+	}
+
+	void cancel(Task task) {
+		synchronized (queue) {
+			Entry entry = entries.remove(task);
+			if (entry != null) {
+				queue.remove(entry);
+			}
+		}
+	}
+
+	private void runLoop() {
+		while (true) {
+			Entry entry;
+			synchronized (queue) {
+				entry = queue.peek();
+			}
+			if (entry == null) {
+				LockSupport.park(this);
+				continue;
+			}
+			long wait = entry.deadline - System.nanoTime();
+			if (wait > SPIN_NANOS) {
+				LockSupport.parkNanos(this, wait - SPIN_NANOS);
+				continue;
+			} else if (wait > 0) {
+				Thread.yield();
+				continue;
+			}
+			synchronized (queue) {
+				if (queue.peek() != entry) {
+					// cancelled or an earlier task was scheduled meanwhile
+					continue;
+				}
+				queue.poll();
+			}
+			run(entry);
+		}
+	}
+
+	private void run(Entry entry) {
+		long delay;
+		try {
+			delay = entry.task.run();
+		} catch (RuntimeException e) {
+			logger.error("Task {} failure", entry.task, e);
+			// back off
+			delay = MAX_LAG_NANOS;
+		}
+		long now = System.nanoTime();
+		entry.deadline += delay;
+		if (now - entry.deadline > MAX_LAG_NANOS) {
+			entry.deadline = now;
+		}
+		synchronized (queue) {
+			if (entries.get(entry.task) == entry) {
+				queue.add(entry);
+			}
+		}
+	}
+
+	private static final class Entry implements Comparable<Entry> {
+
+		private final Task task;
+		private long deadline;
+
+		private Entry(Task task, long deadline) {
+			this.task = task;
+			this.deadline = deadline;
+		}
+
+		@Override
+		public int compareTo(Entry other) {
+			long diff = deadline - other.deadline;
+			return diff < 0 ? -1 : diff > 0 ? 1 : 0;
+		}
+
+	}
+
+}
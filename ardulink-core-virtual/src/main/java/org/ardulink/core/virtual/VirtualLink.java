@@ -1,5 +1,7 @@
 package org.ardulink.core.virtual;
 
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.ardulink.core.Pin.Type.ANALOG;
 import static org.ardulink.core.Pin.Type.DIGITAL;
 
@@ -40,11 +42,24 @@ public class VirtualLink extends AbstractListenerLink {
 
 	private VirtualLinkConfig config;
 
+	private final Generator generator;
+
 	public VirtualLink(VirtualLinkConfig config) {
 		super();
 		this.config = config;
-		this.thread.setDaemon(true);
-		this.thread.start();
+		if (config.isLoadGenerator()) {
+			this.generator = new Generator(config) {
+				@Override
+				void send(double value) {
+					sendGeneratedPinStates(value);
+				}
+			};
+			LoadScheduler.getInstance().schedule(generator);
+		} else {
+			this.generator = null;
+			this.thread.setDaemon(true);
+			this.thread.start();
+		}
 	}
 
 	protected void sendRandomMessagesAndSleep() {
@@ -65,10 +80,28 @@ public class VirtualLink extends AbstractListenerLink {
 		}
 	}
 
+	protected void sendGeneratedPinStates(double value) {
+		int analog = (int) Math.round(value * 1023);
+		boolean digital = value >= 0.5;
+		for (Pin pin : listeningPins.keySet()) {
+			if (pin.is(ANALOG)) {
+				fireStateChanged(new DefaultAnalogPinValueChangedEvent(
+						(AnalogPin) pin, analog));
+			} else if (pin.is(DIGITAL)) {
+				fireStateChanged(new DefaultDigitalPinValueChangedEvent(
+						(DigitalPin) pin, digital));
+			}
+		}
+	}
+
 	@Override
 	public void close() throws IOException {
 		super.close();
-		this.thread.interrupt();
+		if (generator == null) {
+			this.thread.interrupt();
+		} else {
+			LoadScheduler.getInstance().cancel(generator);
+		}
 	}
 
 	@Override
@@ -143,4 +176,54 @@ public class VirtualLink extends AbstractListenerLink {
 		return -1;
 	}
 
+	/**
+	 * Sends the samples of the waveform at the configured rate, all listened
+	 * pins get the same value. The samples are numbered so the values do not
+	 * depend on the timing, together with the seeded random the values sent
+	 * are reproducible.
+	 */
+	abstract static class Generator implements LoadScheduler.Task {
+
+		private final long rate;
+		private final Waveform waveform;
+		private final double samplesPerPeriod;
+		private final XorShiftRandom random;
+		private final int burstSize;
+		private final long burstPause;
+		private long sample;
+		private int burst;
+
+		Generator(VirtualLinkConfig config) {
+			this.rate = config.getRate();
+			this.waveform = config.getWaveform();
+			this.samplesPerPeriod = Math.max(1, rate * config.getPeriod()
+					/ 1000.0);
+			this.random = new XorShiftRandom(config.getSeed());
+			this.burstSize = config.getBurstSize();
+			this.burstPause = MILLISECONDS.toNanos(config.getBurstPause());
+		}
+
+		abstract void send(double value);
+
+		@Override
+		public long run() {
+			send(waveform.value(sample, samplesPerPeriod, random));
+			// difference of the absolute offsets so rounding does not add up
+			long delay = offset(sample + 1) - offset(sample);
+			sample++;
+			if (burstSize > 0 && ++burst == burstSize) {
+				burst = 0;
+				delay += burstPause;
+			}
+			return delay;
+		}
+
+		private long offset(long sample) {
+			long nanosPerSecond = SECONDS.toNanos(1);
+			return sample / rate * nanosPerSecond + sample % rate
+					* nanosPerSecond / rate;
+		}
+
+	}
+
 }
@@ -4,6 +4,8 @@ import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
 import java.util.concurrent.TimeUnit;
 
+import javax.validation.constraints.Min;
+
 import org.ardulink.core.linkmanager.LinkConfig;
 
 public class VirtualLinkConfig implements LinkConfig {
@@ -13,6 +15,41 @@ public class VirtualLinkConfig implements LinkConfig {
 
 	private TimeUnit delayUnit = MILLISECONDS;
 
+	/**
+	 * Samples per second and pin, 0 sends random values every delay.
+	 */
+	@Named("rate")
+	@Min(0)
+	private int rate;
+
+	@Named("waveform")
+	private Waveform waveform = Waveform.SINE;
+
+	/**
+	 * Period of the waveform in milliseconds.
+	 */
+	@Named("period")
+	@Min(1)
+	private long period = 1000;
+
+	@Named("seed")
+	private long seed;
+
+	/**
+	 * Number of samples sent at the rate before pausing, 0 sends without
+	 * pauses.
+	 */
+	@Named("burstSize")
+	@Min(0)
+	private int burstSize;
+
+	/**
+	 * Pause between two bursts in milliseconds.
+	 */
+	@Named("burstPause")
+	@Min(0)
+	private long burstPause;
+
 	public long getDelay() {
 		return delay;
 	}
@@ -36,6 +73,63 @@ public class VirtualLinkConfig implements LinkConfig {
 		return TimeUnit.values();
 	}
 
+	public int getRate() {
+		return rate;
+	}
+
+	public void setRate(int rate) {
+		this.rate = rate;
+	}
+
+	public Waveform getWaveform() {
+		return waveform;
+	}
+
+	public void setWaveform(Waveform waveform) {
+		this.waveform = waveform;
+	}
+
+	public long getPeriod() {
+		return period;
+	}
+
+	public void setPeriod(long period) {
+		this.period = period;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	public int getBurstSize() {
+		return burstSize;
+	}
+
+	public void setBurstSize(int burstSize) {
+		this.burstSize = burstSize;
+	}
+
+	public long getBurstPause() {
+		return burstPause;
+	}
+
+	public void setBurstPause(long burstPause) {
+		this.burstPause = burstPause;
+	}
+
+	/**
+	 * Returns <code>true</code> if the link generates the values of the
+	 * waveform at the configured rate instead of sending random values every
+	 * delay.
+	 */
+	public boolean isLoadGenerator() {
+		return rate > 0;
+	}
+
 	public void delay() {
 		try {
 			this.delayUnit.sleep(delay);
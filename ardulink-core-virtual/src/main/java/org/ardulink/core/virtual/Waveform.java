@@ -0,0 +1,45 @@
+package org.ardulink.core.virtual;
+
+/**
+ * Signals generated by a {@link VirtualLink} in load generation mode. Values
+ * are in the range 0 to 1, analog pins scale them to 0 to 1023, digital pins
+ * are <code>true</code> from 0.5 on.
+ */
+public enum Waveform {
+
+	CONSTANT {
+		@Override
+		double value(long sample, double samplesPerPeriod, XorShiftRandom random) {
+			return 0.5;
+		}
+	},
+	RAMP {
+		@Override
+		double value(long sample, double samplesPerPeriod, XorShiftRandom random) {
+			return (sample % samplesPerPeriod) / samplesPerPeriod;
+		}
+	},
+	SINE {
+		@Override
+		double value(long sample, double samplesPerPeriod, XorShiftRandom random) {
+			return 0.5 + 0.5 * Math.sin(2 * Math.PI
+					* (sample % samplesPerPeriod) / samplesPerPeriod);
+		}
+	},
+	SQUARE {
+		@Override
+		double value(long sample, double samplesPerPeriod, XorShiftRandom random) {
+			return sample % samplesPerPeriod < samplesPerPeriod / 2 ? 1 : 0;
+		}
+	},
+	NOISE {
+		@Override
+		double value(long sample, double samplesPerPeriod, XorShiftRandom random) {
+			return random.nextDouble();
+		}
+	};
+
+	abstract double value(long sample, double samplesPerPeriod,
+			XorShiftRandom random);
+
+}
@@ -0,0 +1,36 @@
+package org.ardulink.core.virtual;
+
+/**
+ * xorshift64* generator, not thread-safe. Much faster than
+ * {@link java.security.SecureRandom} and reproducible: The same seed always
+ * gives the same sequence.
+ */
+final class XorShiftRandom {
+
+	private long state;
+
+	XorShiftRandom(long seed) {
+		// splitmix64 so that similar seeds give unrelated sequences and the
+		// state never is 0
+		long z = seed + 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		z = z ^ (z >>> 31);
+		this.state = z == 0 ? 0x9E3779B97F4A7C15L : z;
+	}
+
+	long nextLong() {
+		state ^= state >>> 12;
+		state ^= state << 25;
+		state ^= state >>> 27;
+		return state * 0x2545F4914F6CDD1DL;
+	}
+
+	/**
+	 * Returns a value between 0 (inclusive) and 1 (exclusive).
+	 */
+	double nextDouble() {
+		return (nextLong() >>> 11) * 0x1.0p-53;
+	}
+
+}
@@ -0,0 +1,98 @@
+package org.ardulink.core.virtual;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.ardulink.core.virtual.VirtualLink.Generator;
+import org.junit.Test;
+
+public class GeneratorTest {
+
+	private final List<Double> values = new ArrayList<Double>();
+
+	@Test
+	public void delaysAddUpToExactlyOneSecondPerRateSamples() {
+		for (int rate : new int[] { 1, 3, 7, 1000, 44100 }) {
+			Generator generator = generator(config(rate));
+			long total = 0;
+			for (int i = 0; i < rate; i++) {
+				total += generator.run();
+			}
+			assertThat("rate " + rate, total, is(SECONDS.toNanos(1)));
+		}
+	}
+
+	@Test
+	public void delaysDifferByAtMostOneNanosecond() {
+		Generator generator = generator(config(3));
+		assertThat(generator.run(), is(333333333L));
+		assertThat(generator.run(), is(333333333L));
+		assertThat(generator.run(), is(333333334L));
+	}
+
+	@Test
+	public void pausesAfterEachBurst() {
+		VirtualLinkConfig config = config(1000);
+		config.setBurstSize(3);
+		config.setBurstPause(10);
+		Generator generator = generator(config);
+		long sample = MILLISECONDS.toNanos(1);
+		long pause = MILLISECONDS.toNanos(10);
+		for (int burst = 0; burst < 3; burst++) {
+			assertThat(generator.run(), is(sample));
+			assertThat(generator.run(), is(sample));
+			assertThat(generator.run(), is(sample + pause));
+		}
+	}
+
+	@Test
+	public void sendsTheWaveformsSamples() {
+		VirtualLinkConfig config = config(4);
+		config.setWaveform(Waveform.RAMP);
+		config.setPeriod(1000);
+		Generator generator = generator(config);
+		for (int i = 0; i < 6; i++) {
+			generator.run();
+		}
+		assertThat(values.toString(), is("[0.0, 0.25, 0.5, 0.75, 0.0, 0.25]"));
+	}
+
+	@Test
+	public void sameSeedSendsSameValues() {
+		VirtualLinkConfig config = config(1000);
+		config.setWaveform(Waveform.NOISE);
+		config.setSeed(4711);
+		Generator generator1 = generator(config);
+		for (int i = 0; i < 100; i++) {
+			generator1.run();
+		}
+		List<Double> values1 = new ArrayList<Double>(values);
+		values.clear();
+		Generator generator2 = generator(config);
+		for (int i = 0; i < 100; i++) {
+			generator2.run();
+		}
+		assertThat(values, is(values1));
+	}
+
+	private static VirtualLinkConfig config(int rate) {
+		VirtualLinkConfig config = new VirtualLinkConfig();
+		config.setRate(rate);
+		return config;
+	}
+
+	private Generator generator(VirtualLinkConfig config) {
+		return new Generator(config) {
+			@Override
+			void send(double value) {
+				values.add(value);
+			}
+		};
+	}
+
+}
@@ -0,0 +1,68 @@
+package org.ardulink.core.virtual;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class LoadSchedulerTest {
+
+	private final LoadScheduler scheduler = LoadScheduler.getInstance();
+
+	@Test
+	public void runsTasksAtTheirRate() throws InterruptedException {
+		CountingTask task = new CountingTask(MILLISECONDS.toNanos(1));
+		scheduler.schedule(task);
+		MILLISECONDS.sleep(500);
+		scheduler.cancel(task);
+		int runs = task.runs.get();
+		assertThat("runs " + runs, runs > 350 && runs < 650, is(true));
+	}
+
+	@Test
+	public void cancelledTasksAreNotRunAnymore() throws InterruptedException {
+		CountingTask task = new CountingTask(MILLISECONDS.toNanos(1));
+		scheduler.schedule(task);
+		MILLISECONDS.sleep(50);
+		scheduler.cancel(task);
+		// a run in progress while cancelling may complete
+		MILLISECONDS.sleep(20);
+		int runs = task.runs.get();
+		MILLISECONDS.sleep(100);
+		assertThat(task.runs.get(), is(runs));
+	}
+
+	@Test
+	public void runsManyTasksConcurrently() throws InterruptedException {
+		CountingTask task1 = new CountingTask(MILLISECONDS.toNanos(2));
+		CountingTask task2 = new CountingTask(MILLISECONDS.toNanos(5));
+		scheduler.schedule(task1);
+		scheduler.schedule(task2);
+		MILLISECONDS.sleep(500);
+		scheduler.cancel(task1);
+		scheduler.cancel(task2);
+		assertThat(task1.runs.get() > task2.runs.get(), is(true));
+		assertThat(task2.runs.get() > 50, is(true));
+	}
+
+	private static class CountingTask implements LoadScheduler.Task {
+
+		private final AtomicInteger runs = new AtomicInteger();
+		private final long delay;
+
+		private CountingTask(long delay) {
+			this.delay = delay;
+		}
+
+		@Override
+		public long run() {
+			runs.incrementAndGet();
+			return delay;
+		}
+
+	}
+
+}
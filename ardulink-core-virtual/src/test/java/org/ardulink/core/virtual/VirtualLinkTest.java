@@ -0,0 +1,37 @@
+package org.ardulink.core.virtual;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class VirtualLinkTest {
+
+	@Test
+	public void closeCancelsTheLoadGenerator() throws IOException,
+			InterruptedException {
+		VirtualLinkConfig config = new VirtualLinkConfig();
+		config.setRate(1000);
+		final AtomicInteger samples = new AtomicInteger();
+		VirtualLink link = new VirtualLink(config) {
+			@Override
+			protected void sendGeneratedPinStates(double value) {
+				samples.incrementAndGet();
+			}
+		};
+		MILLISECONDS.sleep(100);
+		assertThat(samples.get() > 0, is(true));
+
+		link.close();
+		// a run in progress while closing may complete
+		MILLISECONDS.sleep(20);
+		int samplesAfterClose = samples.get();
+		MILLISECONDS.sleep(100);
+		assertThat(samples.get(), is(samplesAfterClose));
+	}
+
+}
@@ -0,0 +1,57 @@
+package org.ardulink.core.virtual;
+
+import static org.ardulink.core.virtual.Waveform.CONSTANT;
+import static org.ardulink.core.virtual.Waveform.NOISE;
+import static org.ardulink.core.virtual.Waveform.RAMP;
+import static org.ardulink.core.virtual.Waveform.SINE;
+import static org.ardulink.core.virtual.Waveform.SQUARE;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class WaveformTest {
+
+	private static final double DELTA = 1e-9;
+
+	private final XorShiftRandom random = new XorShiftRandom(0);
+
+	@Test
+	public void constantIsHalf() {
+		assertValues(CONSTANT, 4, 0.5, 0.5, 0.5, 0.5);
+	}
+
+	@Test
+	public void rampRisesOncePerPeriod() {
+		assertValues(RAMP, 4, 0, 0.25, 0.5, 0.75, 0, 0.25);
+	}
+
+	@Test
+	public void sineStartsAtHalfAndPeaksAtAQuarterPeriod() {
+		assertValues(SINE, 4, 0.5, 1, 0.5, 0, 0.5);
+	}
+
+	@Test
+	public void squareIsHighForTheFirstHalfOfThePeriod() {
+		assertValues(SQUARE, 4, 1, 1, 0, 0, 1, 1);
+	}
+
+	@Test
+	public void noiseIsTheRandomsSequence() {
+		XorShiftRandom expected = new XorShiftRandom(0);
+		for (int sample = 0; sample < 100; sample++) {
+			assertThat(NOISE.value(sample, 4, random),
+					is(expected.nextDouble()));
+		}
+	}
+
+	private void assertValues(Waveform waveform, double samplesPerPeriod,
+			double... expected) {
+		for (int sample = 0; sample < expected.length; sample++) {
+			double value = waveform.value(sample, samplesPerPeriod, random);
+			assertThat("sample " + sample + " was " + value,
+					Math.abs(value - expected[sample]) < DELTA, is(true));
+		}
+	}
+
+}
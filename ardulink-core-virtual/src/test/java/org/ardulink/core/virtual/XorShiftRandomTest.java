@@ -0,0 +1,42 @@
+package org.ardulink.core.virtual;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class XorShiftRandomTest {
+
+	@Test
+	public void sameSeedGivesSameSequence() {
+		XorShiftRandom random1 = new XorShiftRandom(42);
+		XorShiftRandom random2 = new XorShiftRandom(42);
+		for (int i = 0; i < 1000; i++) {
+			assertThat(random1.nextLong(), is(random2.nextLong()));
+		}
+	}
+
+	@Test
+	public void similarSeedsGiveDifferentSequences() {
+		assertThat(new XorShiftRandom(1).nextLong(),
+				is(not(new XorShiftRandom(2).nextLong())));
+	}
+
+	@Test
+	public void doublesAreBetweenZeroAndOne() {
+		XorShiftRandom random = new XorShiftRandom(0);
+		double min = 1;
+		double max = 0;
+		for (int i = 0; i < 10000; i++) {
+			double value = random.nextDouble();
+			assertThat(value >= 0 && value < 1, is(true));
+			min = Math.min(min, value);
+			max = Math.max(max, value);
+		}
+		// and spread over the whole range
+		assertThat(min < 0.01, is(true));
+		assertThat(max > 0.99, is(true));
+	}
+
+}
@@ -0,0 +1,156 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.loadtest;
+
+import static org.ardulink.core.Pin.analogPin;
+import static org.ardulink.core.Pin.digitalPin;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.ardulink.core.Link;
+import org.ardulink.core.Pin.AnalogPin;
+import org.ardulink.core.events.AnalogPinValueChangedEvent;
+import org.ardulink.core.events.DigitalPinValueChangedEvent;
+import org.ardulink.core.events.EventListener;
+import org.ardulink.core.events.RplyEvent;
+import org.ardulink.core.events.RplyListener;
+import org.ardulink.core.trace.LatencyHistogram;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * One link under load: Counts the events it receives and the writes sent to
+ * it and records the time from sending a write until its <code>rply</code>
+ * arrives. Links that do not answer with <code>rply</code> messages (e.g. the
+ * virtual link) do not contribute to the reply latency.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+class LinkLoad implements Closeable {
+
+	/**
+	 * Writes that have not been answered yet are forgotten when there are more
+	 * than this so links never answering do not fill the memory.
+	 */
+	private static final int MAX_PENDING = 4096;
+
+	private final Link link;
+	private final LatencyHistogram replyLatency;
+	private final AnalogPin writePin;
+
+	private final AtomicLong events = new AtomicLong();
+	private final AtomicLong writes = new AtomicLong();
+	private final AtomicLong writeFailures = new AtomicLong();
+
+	// guarded by this, a rply may arrive before its id has been returned by
+	// the link, it is kept in answered until the write records it
+	private final Map<Long, Long> pending = new HashMap<Long, Long>();
+	private final Map<Long, Long> answered = new HashMap<Long, Long>();
+
+	LinkLoad(Link link, LatencyHistogram replyLatency, int writePin) {
+		this.link = link;
+		this.replyLatency = replyLatency;
+		this.writePin = analogPin(writePin);
+	}
+
+	LinkLoad start(int[] analogs, int[] digitals) throws IOException {
+		link.addListener(new EventListener() {
+			@Override
+			public void stateChanged(AnalogPinValueChangedEvent event) {
+				events.incrementAndGet();
+			}
+
+			@Override
+			public void stateChanged(DigitalPinValueChangedEvent event) {
+				events.incrementAndGet();
+			}
+		});
+		link.addRplyListener(new RplyListener() {
+			@Override
+			public void rplyReceived(RplyEvent event) {
+				replied(event.getId(), System.nanoTime());
+			}
+		});
+		for (int analog : analogs) {
+			link.startListening(analogPin(analog));
+		}
+		for (int digital : digitals) {
+			link.startListening(digitalPin(digital));
+		}
+		return this;
+	}
+
+	void write(int value) {
+		long sent = System.nanoTime();
+		long id;
+		try {
+			id = link.switchAnalogPin(writePin, value);
+		} catch (IOException e) {
+			writeFailures.incrementAndGet();
+			return;
+		} catch (RuntimeException e) {
+			writeFailures.incrementAndGet();
+			return;
+		}
+		writes.incrementAndGet();
+		if (id > 0) {
+			sent(id, sent);
+		}
+	}
+
+	private synchronized void sent(long id, long sent) {
+		Long received = answered.remove(id);
+		if (received != null) {
+			replyLatency.record(received - sent);
+		} else if (pending.size() < MAX_PENDING) {
+			pending.put(id, sent);
+		}
+	}
+
+	private synchronized void replied(long id, long received) {
+		Long sent = pending.remove(id);
+		if (sent != null) {
+			replyLatency.record(received - sent);
+		} else if (answered.size() < MAX_PENDING) {
+			answered.put(id, received);
+		}
+	}
+
+	long getEvents() {
+		return events.get();
+	}
+
+	long getWrites() {
+		return writes.get();
+	}
+
+	long getWriteFailures() {
+		return writeFailures.get();
+	}
+
+	@Override
+	public void close() throws IOException {
+		link.close();
+	}
+
+}
@@ -0,0 +1,360 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.loadtest;
+
+import static java.lang.String.format;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.ardulink.loadtest.Report.perSecond;
+import static org.ardulink.loadtest.Report.seconds;
+import static org.ardulink.util.Preconditions.checkArgument;
+import static org.ardulink.util.ServerSockets.freePort;
+import static org.ardulink.util.URIs.newURI;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+import org.ardulink.connection.proxy.SelectorProxyServer;
+import org.ardulink.core.linkmanager.LinkManager;
+import org.ardulink.core.trace.LatencyHistogram;
+import org.ardulink.mqtt.MqttMain;
+import org.ardulink.mqtt.MqttMain.Engine;
+import org.ardulink.util.URIs;
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * Puts links under load for a given time: Opens a number of links, listens to
+ * pins on each of them, optionally writes to them at a fixed rate and reports
+ * the events and writes per second, the reply latency, the garbage
+ * collections and the bytes allocated per event. The links can be connected
+ * directly or via an in-process proxy server or mqtt bridge so those can be
+ * soak tested, too.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public class LoadTest {
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(LoadTest.class);
+
+	public enum Bridge {
+		/**
+		 * The links are opened directly.
+		 */
+		NONE,
+		/**
+		 * The links connect to a proxy server running in this JVM which opens
+		 * the connection.
+		 */
+		PROXY,
+		/**
+		 * A mqtt bridge with a standalone broker running in this JVM bridges
+		 * one device per link, the links connect to the broker.
+		 */
+		MQTT;
+	}
+
+	@Option(name = "-connection", usage = "Connection URI of the links to put under load")
+	private String connection = "ardulink://virtual?rate=1000";
+
+	@Option(name = "-n", aliases = "--links", usage = "Number of links to open")
+	private int links = 1;
+
+	@Option(name = "-a", aliases = "--analog", usage = "Analog pins each link listens to")
+	private int[] analogs = new int[] { 0 };
+
+	@Option(name = "-d", aliases = "--digital", usage = "Digital pins each link listens to")
+	private int[] digitals = new int[0];
+
+	@Option(name = "-w", aliases = "--writeRate", usage = "Writes per second to each link (0 does not write)")
+	private int writeRate;
+
+	@Option(name = "-wp", aliases = "--writePin", usage = "Analog pin the writes go to")
+	private int writePin = 9;
+
+	@Option(name = "-t", aliases = "--duration", usage = "Seconds to run")
+	private int duration = 60;
+
+	@Option(name = "-i", aliases = "--interval", usage = "Seconds between the progress lines (0 prints the summary only)")
+	private int interval = 5;
+
+	@Option(name = "-bridge", usage = "What to put between the links and the connection")
+	private Bridge bridge = Bridge.NONE;
+
+	@Option(name = "-bridgePort", usage = "Port of the proxy server or mqtt broker (0 picks a free one)")
+	private int bridgePort;
+
+	private PrintStream out = System.out;
+
+	public static void main(String[] args) throws Exception {
+		new LoadTest().doMain(args);
+	}
+
+	public void doMain(String... args) throws Exception {
+		CmdLineParser cmdLineParser = new CmdLineParser(this);
+		try {
+			cmdLineParser.parseArgument(args);
+		} catch (CmdLineException e) {
+			System.err.println(e.getMessage());
+			cmdLineParser.printUsage(System.err);
+			return;
+		}
+		out.println(run());
+	}
+
+	public Report run() throws Exception {
+		checkArgument(links > 0, "links must be positive but was %s", links);
+		checkArgument(duration > 0, "duration must be positive but was %s",
+				duration);
+		int port = bridgePort == 0 ? freePort() : bridgePort;
+		Closeable bridge = startBridge(port);
+		List<LinkLoad> loads = new ArrayList<LinkLoad>(links);
+		try {
+			LatencyHistogram replyLatency = new LatencyHistogram();
+			for (int i = 0; i < links; i++) {
+				loads.add(new LinkLoad(LinkManager.getInstance()
+						.getConfigurer(newURI(clientUri(i, port))).newLink(),
+						replyLatency, writePin).start(analogs, digitals));
+			}
+			return measure(loads, replyLatency);
+		} finally {
+			for (LinkLoad load : loads) {
+				close(load);
+			}
+			close(bridge);
+		}
+	}
+
+	private Closeable startBridge(int port) throws Exception {
+		switch (bridge) {
+		case PROXY:
+			return new SelectorProxyServer(port);
+		case MQTT:
+			MqttMain mqttMain = new MqttMain();
+			mqttMain.setStandalone(true);
+			mqttMain.setBrokerPort(port);
+			mqttMain.setEngine(Engine.DIRECT);
+			mqttMain.setDevices(devices());
+			mqttMain.connectToMqttBroker();
+			return mqttMainCloser(mqttMain);
+		default:
+			return null;
+		}
+	}
+
+	private static Closeable mqttMainCloser(final MqttMain mqttMain) {
+		return new Closeable() {
+			@Override
+			public void close() throws IOException {
+				mqttMain.close();
+			}
+		};
+	}
+
+	/**
+	 * One device per link each having its own topic, the compaction of analog
+	 * values is disabled so each event is published.
+	 */
+	private String[] devices() {
+		String[] devices = new String[links];
+		for (int i = 0; i < links; i++) {
+			devices[i] = "connection=" + connection + ";brokerTopic="
+					+ topic(i) + ";a=" + join(analogs) + ";d="
+					+ join(digitals) + ";athms=0";
+		}
+		return devices;
+	}
+
+	private String clientUri(int i, int port) {
+		switch (bridge) {
+		case PROXY:
+			return "ardulink://proxy?tcphost=localhost&tcpport=" + port
+					+ "&linkuri=" + URIs.encode(connection);
+		case MQTT:
+			return "ardulink://mqtt?host=localhost&port=" + port + "&topic="
+					+ topic(i) + "&clientId=loadtest" + i;
+		default:
+			return connection;
+		}
+	}
+
+	private static String topic(int i) {
+		return "loadtest/" + i + "/";
+	}
+
+	private static String join(int[] values) {
+		StringBuilder sb = new StringBuilder();
+		for (int value : values) {
+			if (sb.length() > 0) {
+				sb.append(',');
+			}
+			sb.append(value);
+		}
+		return sb.toString();
+	}
+
+	private Report measure(List<LinkLoad> loads, LatencyHistogram replyLatency)
+			throws InterruptedException {
+		Writer writer = writeRate > 0 ? new Writer(loads, writeRate) : null;
+		try {
+			Snapshot start = Snapshot.take(loads);
+			Snapshot last = start;
+			long end = start.nanos + SECONDS.toNanos(duration);
+			long remaining;
+			while ((remaining = end - System.nanoTime()) > 0) {
+				NANOSECONDS.sleep(interval > 0 ? Math.min(
+						SECONDS.toNanos(interval), remaining) : remaining);
+				Snapshot now = Snapshot.take(loads);
+				if (interval > 0) {
+					out.println(progress(start, last, now));
+				}
+				last = now;
+			}
+			return new Report(loads.size(), start, last, replyLatency);
+		} finally {
+			if (writer != null) {
+				writer.stopWriting();
+			}
+		}
+	}
+
+	private static String progress(Snapshot start, Snapshot last,
+			Snapshot now) {
+		double seconds = seconds(last, now);
+		return format("%6.0f s %10.0f events/s %8.0f writes/s %4d gc",
+				seconds(start, now),
+				perSecond(now.events - last.events, seconds),
+				perSecond(now.writes - last.writes, seconds), now.gcCount
+						- last.gcCount);
+	}
+
+	/**
+	 * One thread writes to the links in turn. The writes are scheduled on
+	 * absolute deadlines so the rate does not drift, when the writer fell
+	 * behind more than a second (e.g. a link blocked) it does not try to catch
+	 * up. It is stopped by a flag and not by interrupting it since links may
+	 * swallow the interrupt while writing.
+	 */
+	private static final class Writer extends Thread {
+
+		private final List<LinkLoad> loads;
+		private final long period;
+		private volatile boolean stopped;
+
+		private Writer(List<LinkLoad> loads, int writeRate) {
+			super("LoadTest writer");
+			this.loads = loads;
+			this.period = Math.max(1,
+					SECONDS.toNanos(1) / ((long) writeRate * loads.size()));
+			setDaemon(true);
+			start();
+		}
+
+		@Override
+		public void run() {
+			long next = System.nanoTime();
+			int index = 0;
+			int value = 0;
+			while (!stopped) {
+				loads.get(index).write(value);
+				index = (index + 1) % loads.size();
+				value = (value + 1) % 256;
+				next += period;
+				long wait = next - System.nanoTime();
+				if (wait > 0) {
+					LockSupport.parkNanos(this, wait);
+				} else if (wait < -SECONDS.toNanos(1)) {
+					next = System.nanoTime();
+				}
+			}
+		}
+
+		private void stopWriting() throws InterruptedException {
+			stopped = true;
+			LockSupport.unpark(this);
+			join();
+		}
+
+	}
+
+	private static void close(Closeable closeable) {
+		if (closeable != null) {
+			try {
+				closeable.close();
+			} catch (IOException e) {
+				logger.warn("Error closing {}", closeable, e);
+			}
+		}
+	}
+
+	public void setConnection(String connection) {
+		this.connection = connection;
+	}
+
+	public void setLinks(int links) {
+		this.links = links;
+	}
+
+	public void setAnalogs(int... analogs) {
+		this.analogs = analogs;
+	}
+
+	public void setDigitals(int... digitals) {
+		this.digitals = digitals;
+	}
+
+	public void setWriteRate(int writeRate) {
+		this.writeRate = writeRate;
+	}
+
+	public void setWritePin(int writePin) {
+		this.writePin = writePin;
+	}
+
+	public void setDuration(int duration) {
+		this.duration = duration;
+	}
+
+	public void setInterval(int interval) {
+		this.interval = interval;
+	}
+
+	public void setBridge(Bridge bridge) {
+		this.bridge = bridge;
+	}
+
+	public void setBridgePort(int bridgePort) {
+		this.bridgePort = bridgePort;
+	}
+
+	public void setOut(PrintStream out) {
+		this.out = out;
+	}
+
+}
@@ -0,0 +1,141 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.loadtest;
+
+import static java.lang.String.format;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import org.ardulink.core.trace.LatencyHistogram;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * The result of a {@link LoadTest} run.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public class Report {
+
+	private final int links;
+	private final Snapshot start;
+	private final Snapshot end;
+	private final LatencyHistogram replyLatency;
+
+	Report(int links, Snapshot start, Snapshot end,
+			LatencyHistogram replyLatency) {
+		this.links = links;
+		this.start = start;
+		this.end = end;
+		this.replyLatency = replyLatency;
+	}
+
+	public double getSeconds() {
+		return seconds(start, end);
+	}
+
+	public long getEvents() {
+		return end.events - start.events;
+	}
+
+	public double getEventsPerSecond() {
+		return perSecond(getEvents(), getSeconds());
+	}
+
+	public long getWrites() {
+		return end.writes - start.writes;
+	}
+
+	public double getWritesPerSecond() {
+		return perSecond(getWrites(), getSeconds());
+	}
+
+	public long getWriteFailures() {
+		return end.writeFailures - start.writeFailures;
+	}
+
+	/**
+	 * Returns the time from sending a write until its <code>rply</code>
+	 * arrived.
+	 */
+	public LatencyHistogram getReplyLatency() {
+		return replyLatency;
+	}
+
+	public long getGcCount() {
+		return end.gcCount - start.gcCount;
+	}
+
+	public long getGcMillis() {
+		return end.gcMillis - start.gcMillis;
+	}
+
+	/**
+	 * Returns the bytes allocated per received event or -1 if the JVM does not
+	 * measure allocations or no event has been received.
+	 */
+	public long getAllocatedBytesPerEvent() {
+		long events = getEvents();
+		return start.allocatedBytes < 0 || end.allocatedBytes < 0
+				|| events == 0 ? -1 : (end.allocatedBytes - start.allocatedBytes)
+				/ events;
+	}
+
+	static double seconds(Snapshot from, Snapshot to) {
+		return (double) (to.nanos - from.nanos) / SECONDS.toNanos(1);
+	}
+
+	static double perSecond(long count, double seconds) {
+		return seconds > 0 ? count / seconds : 0;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(format("Duration        %.1f s%n", getSeconds()));
+		sb.append(format("Links           %d%n", links));
+		sb.append(format("Events          %d (%.0f/s)%n", getEvents(),
+				getEventsPerSecond()));
+		sb.append(format("Writes          %d (%.0f/s, %d failed)%n",
+				getWrites(), getWritesPerSecond(), getWriteFailures()));
+		sb.append("Reply latency   ");
+		if (replyLatency.getCount() == 0) {
+			sb.append(format("n/a (no rply received)%n"));
+		} else {
+			sb.append(format(
+					"p50 %d us, p90 %d us, p99 %d us, p99.9 %d us, max %d us (%d replies)%n",
+					micros(replyLatency.getPercentile(50)),
+					micros(replyLatency.getPercentile(90)),
+					micros(replyLatency.getPercentile(99)),
+					micros(replyLatency.getPercentile(99.9)),
+					micros(replyLatency.getMax()), replyLatency.getCount()));
+		}
+		sb.append(format("GC              %d collections, %d ms%n",
+				getGcCount(), getGcMillis()));
+		long bytesPerEvent = getAllocatedBytesPerEvent();
+		sb.append("Allocated       ").append(
+				bytesPerEvent < 0 ? "n/a" : bytesPerEvent + " bytes/event");
+		return sb.toString();
+	}
+
+	private static long micros(long nanos) {
+		return NANOSECONDS.toMicros(nanos);
+	}
+
+}
@@ -0,0 +1,101 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.loadtest;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * The counters of all links and of the JVM at one point in time. The
+ * difference of two snapshots is what happened in between.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+final class Snapshot {
+
+	final long nanos;
+	final long events;
+	final long writes;
+	final long writeFailures;
+	final long gcCount;
+	final long gcMillis;
+	/**
+	 * Bytes allocated by all live threads, -1 if the JVM cannot tell.
+	 */
+	final long allocatedBytes;
+
+	private Snapshot(long nanos, long events, long writes,
+			long writeFailures, long gcCount, long gcMillis,
+			long allocatedBytes) {
+		this.nanos = nanos;
+		this.events = events;
+		this.writes = writes;
+		this.writeFailures = writeFailures;
+		this.gcCount = gcCount;
+		this.gcMillis = gcMillis;
+		this.allocatedBytes = allocatedBytes;
+	}
+
+	static Snapshot take(List<LinkLoad> loads) {
+		long events = 0;
+		long writes = 0;
+		long writeFailures = 0;
+		for (LinkLoad load : loads) {
+			events += load.getEvents();
+			writes += load.getWrites();
+			writeFailures += load.getWriteFailures();
+		}
+		long gcCount = 0;
+		long gcMillis = 0;
+		for (GarbageCollectorMXBean bean : ManagementFactory
+				.getGarbageCollectorMXBeans()) {
+			gcCount += Math.max(0, bean.getCollectionCount());
+			gcMillis += Math.max(0, bean.getCollectionTime());
+		}
+		return new Snapshot(System.nanoTime(), events, writes, writeFailures,
+				gcCount, gcMillis, allocatedBytes());
+	}
+
+	/**
+	 * Threads that terminated between two snapshots are not counted, the
+	 * links' threads live as long as the test so this does not matter.
+	 */
+	private static long allocatedBytes() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+			return -1;
+		}
+		com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+		if (!sunBean.isThreadAllocatedMemorySupported()
+				|| !sunBean.isThreadAllocatedMemoryEnabled()) {
+			return -1;
+		}
+		long sum = 0;
+		for (long bytes : sunBean.getThreadAllocatedBytes(bean
+				.getAllThreadIds())) {
+			sum += Math.max(0, bytes);
+		}
+		return sum;
+	}
+
+}
@@ -0,0 +1,74 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.loadtest;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import org.ardulink.loadtest.LoadTest.Bridge;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ * 
+ * project Ardulink http://www.ardulink.org/
+ * 
+ * [adsense]
+ *
+ */
+public class LoadTestTest {
+
+	private final LoadTest loadTest = new LoadTest();
+
+	@Before
+	public void setup() {
+		loadTest.setDuration(1);
+		loadTest.setInterval(0);
+	}
+
+	@Test
+	public void countsEventsAndWritesOfAllLinks() throws Exception {
+		loadTest.setConnection("ardulink://virtual?rate=500");
+		loadTest.setLinks(2);
+		loadTest.setWriteRate(100);
+		Report report = loadTest.run();
+		assertTrue(report.toString(), report.getEvents() > 0);
+		assertTrue(report.toString(), report.getWrites() > 0);
+		assertThat(report.getWriteFailures(), is(0L));
+		// the virtual link does not reply
+		assertThat(report.getReplyLatency().getCount(), is(0L));
+	}
+
+	@Test
+	public void measuresReplyLatency() throws Exception {
+		loadTest.setConnection("ardulink://simulator?looptime=100");
+		loadTest.setWriteRate(200);
+		Report report = loadTest.run();
+		assertTrue(report.toString(),
+				report.getReplyLatency().getCount() > 0);
+	}
+
+	@Test
+	public void canRunThroughTheProxy() throws Exception {
+		loadTest.setConnection("ardulink://virtual?rate=500");
+		loadTest.setBridge(Bridge.PROXY);
+		Report report = loadTest.run();
+		assertTrue(report.toString(), report.getEvents() > 0);
+	}
+
+}
@@ -104,7 +104,9 @@ public class ArdulinkMailOnCamelIntegrationTest {
 
 	@After
 	public void tearDown() throws IOException {
-		link.close();
+		if (link != null) {
+			link.close();
+		}
 	}
 
 	@Test
@@ -168,9 +170,12 @@ public class ArdulinkMailOnCamelIntegrationTest {
 		context.start();
 
 		waitUntilMailWasFetched();
+		// the link is shared, it is closed when camel releases it as well
+		Link mock = getMock();
+		link.close();
+		link = null;
 		context.stop();
 
-		Link mock = getMock();
 		verify(mock).switchDigitalPin(digitalPin(13), true);
 		verify(mock).switchAnalogPin(analogPin(2), 123);
 		verify(mock).close();
@@ -0,0 +1,203 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+ */
+package org.ardulink.mqtt;
+
+import static org.ardulink.core.Pin.analogPin;
+import static org.ardulink.core.Pin.digitalPin;
+import static org.ardulink.util.Preconditions.checkArgument;
+import static org.ardulink.util.Preconditions.checkNotNull;
+import static org.ardulink.util.Strings.nullOrEmpty;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.ardulink.core.Pin;
+import org.ardulink.mqtt.MqttCamelRouteBuilder.CompactStrategy;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * One arduino bridged by {@link MqttMain}: Its connection URI, its topic
+ * namespace, the pins to listen to and how to compact its analog values.
+ * Devices are described as <code>key=value</code> pairs separated by
+ * <code>;</code> using the names of the corresponding {@link MqttMain}
+ * options, e.g.
+ * <code>connection=ardulink://serial?port=/dev/ttyUSB0;brokerTopic=home/uno1;a=0,1;d=2;athstr=MAX</code>
+ * . Values not given are taken from the defaults passed.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public class Device {
+
+	private String connection;
+	private String brokerTopic;
+	private int[] analogs = new int[0];
+	private int[] digitals = new int[0];
+	private int throttleMillis;
+	private CompactStrategy compactStrategy;
+	private int windowMillis;
+
+	public Device() {
+		super();
+	}
+
+	private Device(Device device) {
+		this.connection = device.connection;
+		this.brokerTopic = device.brokerTopic;
+		this.analogs = device.analogs.clone();
+		this.digitals = device.digitals.clone();
+		this.throttleMillis = device.throttleMillis;
+		this.compactStrategy = device.compactStrategy;
+		this.windowMillis = device.windowMillis;
+	}
+
+	public static Device parse(String spec, Device defaults) {
+		Device device = new Device(checkNotNull(defaults,
+				"defaults must not be null"));
+		for (String part : checkNotNull(spec, "spec must not be null").split(
+				";")) {
+			if (part.trim().isEmpty()) {
+				continue;
+			}
+			int idx = part.indexOf('=');
+			checkArgument(idx > 0, "Cannot parse %s of device %s", part, spec);
+			device.set(part.substring(0, idx).trim(), part.substring(idx + 1)
+					.trim());
+		}
+		checkArgument(!nullOrEmpty(device.connection),
+				"No connection given for device %s", spec);
+		return device;
+	}
+
+	private void set(String key, String value) {
+		if ("connection".equals(key)) {
+			connection(value);
+		} else if ("brokerTopic".equals(key)) {
+			brokerTopic(value);
+		} else if ("a".equals(key) || "analog".equals(key)) {
+			analogs(parsePins(value));
+		} else if ("d".equals(key) || "digital".equals(key)) {
+			digitals(parsePins(value));
+		} else if ("athms".equals(key) || "throttle".equals(key)) {
+			throttleMillis(Integer.parseInt(value));
+		} else if ("athstr".equals(key) || "strategy".equals(key)) {
+			compactStrategy(CompactStrategy.valueOf(value.toUpperCase()));
+		} else if ("athwin".equals(key) || "window".equals(key)) {
+			windowMillis(Integer.parseInt(value));
+		} else {
+			throw new IllegalArgumentException("Unknown attribute " + key);
+		}
+	}
+
+	private static int[] parsePins(String value) {
+		String[] pins = value.isEmpty() ? new String[0] : value.split(",");
+		int[] result = new int[pins.length];
+		for (int i = 0; i < pins.length; i++) {
+			result[i] = Integer.parseInt(pins[i].trim());
+		}
+		return result;
+	}
+
+	public Device connection(String connection) {
+		this.connection = connection;
+		return this;
+	}
+
+	public Device brokerTopic(String brokerTopic) {
+		this.brokerTopic = brokerTopic.endsWith("/") ? brokerTopic
+				: brokerTopic + '/';
+		return this;
+	}
+
+	public Device analogs(int... analogs) {
+		this.analogs = analogs == null ? new int[0] : analogs.clone();
+		return this;
+	}
+
+	public Device digitals(int... digitals) {
+		this.digitals = digitals == null ? new int[0] : digitals.clone();
+		return this;
+	}
+
+	public Device throttleMillis(int throttleMillis) {
+		this.throttleMillis = throttleMillis;
+		return this;
+	}
+
+	public Device compactStrategy(CompactStrategy compactStrategy) {
+		this.compactStrategy = compactStrategy;
+		return this;
+	}
+
+	public Device windowMillis(int windowMillis) {
+		this.windowMillis = windowMillis;
+		return this;
+	}
+
+	public String getConnection() {
+		return connection;
+	}
+
+	public String getBrokerTopic() {
+		return brokerTopic;
+	}
+
+	public int[] getAnalogs() {
+		return analogs.clone();
+	}
+
+	public int[] getDigitals() {
+		return digitals.clone();
+	}
+
+	public int getThrottleMillis() {
+		return throttleMillis;
+	}
+
+	public CompactStrategy getCompactStrategy() {
+		return compactStrategy;
+	}
+
+	public int getWindowMillis() {
+		return windowMillis;
+	}
+
+	public boolean isCompacting() {
+		return throttleMillis > 0 && compactStrategy != null;
+	}
+
+	public List<Pin> getListenToPins() {
+		List<Pin> pins = new ArrayList<Pin>();
+		for (int digital : digitals) {
+			pins.add(digitalPin(digital));
+		}
+		for (int analog : analogs) {
+			pins.add(analogPin(analog));
+		}
+		return pins;
+	}
+
+	@Override
+	public String toString() {
+		return "Device [connection=" + connection + ", brokerTopic="
+				+ brokerTopic + "]";
+	}
+
+}
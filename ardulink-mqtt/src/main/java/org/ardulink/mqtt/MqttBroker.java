@@ -25,8 +25,13 @@ import static io.moquette.BrokerConstants.KEY_STORE_PASSWORD_PROPERTY_NAME;
 import static io.moquette.BrokerConstants.PERSISTENT_STORE_PROPERTY_NAME;
 import static io.moquette.BrokerConstants.PORT_PROPERTY_NAME;
 import static io.moquette.BrokerConstants.SSL_PORT_PROPERTY_NAME;
+import static io.moquette.parser.proto.messages.AbstractMessage.QOSType.LEAST_ONE;
 import static org.ardulink.util.Preconditions.checkState;
 import static org.ardulink.util.Throwables.propagate;
+import io.moquette.interception.AbstractInterceptHandler;
+import io.moquette.interception.InterceptHandler;
+import io.moquette.interception.messages.InterceptPublishMessage;
+import io.moquette.parser.proto.messages.PublishMessage;
 import io.moquette.server.Server;
 import io.moquette.server.config.IConfig;
 import io.moquette.server.config.MemoryConfig;
@@ -34,8 +39,11 @@ import io.moquette.spi.security.IAuthenticator;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.ardulink.util.Strings;
 
@@ -151,8 +159,16 @@ public class MqttBroker implements Closeable {
 
 	}
 
+	/**
+	 * Gets notified about messages published by the clients of the broker.
+	 */
+	public interface PublishListener {
+		void published(String topic, byte[] payload);
+	}
+
 	private final Server broker;
 	private final IConfig config;
+	private final ConcurrentMap<PublishListener, InterceptHandler> listeners = new ConcurrentHashMap<PublishListener, InterceptHandler>();
 
 	public static Builder builder() {
 		return new Builder();
@@ -172,6 +188,41 @@ public class MqttBroker implements Closeable {
 		}
 	}
 
+	/**
+	 * Publishes the message from within the JVM, no network connection is
+	 * involved.
+	 */
+	public void publish(String topic, byte[] payload) {
+		PublishMessage message = new PublishMessage();
+		message.setTopicName(topic);
+		message.setPayload(ByteBuffer.wrap(payload));
+		message.setQos(LEAST_ONE);
+		message.setRetainFlag(false);
+		broker.internalPublish(message);
+	}
+
+	public void addPublishListener(final PublishListener listener) {
+		InterceptHandler handler = new AbstractInterceptHandler() {
+			@Override
+			public void onPublish(InterceptPublishMessage message) {
+				ByteBuffer buffer = message.getPayload().duplicate();
+				byte[] payload = new byte[buffer.remaining()];
+				buffer.get(payload);
+				listener.published(message.getTopicName(), payload);
+			}
+		};
+		if (listeners.putIfAbsent(listener, handler) == null) {
+			broker.addInterceptHandler(handler);
+		}
+	}
+
+	public void removePublishListener(PublishListener listener) {
+		InterceptHandler handler = listeners.remove(listener);
+		if (handler != null) {
+			broker.removeInterceptHandler(handler);
+		}
+	}
+
 	public int getPort() {
 		return Integer.parseInt(config.getProperty(PORT_PROPERTY_NAME));
 	}
@@ -1,35 +1,63 @@
 package org.ardulink.mqtt;
 
-import static java.math.RoundingMode.HALF_UP;
 import static org.apache.camel.ShutdownRunningTask.CompleteAllTasks;
+import static org.ardulink.mqtt.camel.BatchAggregationStrategy.toPayload;
 import static org.ardulink.mqtt.camel.FromArdulinkProtocol.fromArdulinkProtocol;
 import static org.ardulink.mqtt.camel.ToArdulinkProtocol.toArdulinkProtocol;
 import static org.ardulink.util.Preconditions.checkArgument;
 import static org.ardulink.util.Preconditions.checkNotNull;
 
-import java.math.BigDecimal;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.camel.CamelContext;
 import org.apache.camel.Exchange;
 import org.apache.camel.Message;
 import org.apache.camel.Processor;
+import org.apache.camel.ProducerTemplate;
 import org.apache.camel.builder.RouteBuilder;
-import org.apache.camel.builder.ValueBuilder;
-import org.apache.camel.model.AggregateDefinition;
-import org.apache.camel.model.ChoiceDefinition;
 import org.apache.camel.model.RouteDefinition;
-import org.apache.camel.processor.aggregate.AggregationStrategy;
-import org.apache.camel.processor.aggregate.UseLatestAggregationStrategy;
+import org.apache.camel.support.ServiceSupport;
+import org.ardulink.core.Pin;
+import org.ardulink.mqtt.buffer.BufferDrainer;
+import org.ardulink.mqtt.buffer.BufferDrainer.Publisher;
+import org.ardulink.mqtt.buffer.PublishBuffer;
+import org.ardulink.mqtt.buffer.PublishBuffer.Overflow;
+import org.ardulink.mqtt.camel.BatchAggregationStrategy;
+import org.ardulink.mqtt.compact.WindowedAggregator;
+import org.ardulink.mqtt.compact.WindowedAggregator.Sink;
 import org.ardulink.util.Strings;
 
 public class MqttCamelRouteBuilder {
 
 	private static final String PUBLISH_HEADER = "CamelMQTTPublishTopic";
 	private static final String SUBSCRIBE_HEADER = "CamelMQTTSubscribeTopic";
+	private static final String PIN_HEADER = "ArdulinkPin";
+	private static final int BUFFER_BATCH_SIZE = 64;
 
+	/**
+	 * How the analog values within a window are compacted into the value
+	 * published.
+	 */
 	public enum CompactStrategy {
-		AVERAGE, USE_LATEST;
+		AVERAGE, USE_LATEST, MIN, MAX,
+		/**
+		 * median of (a random sample of) the values within the window
+		 */
+		MEDIAN,
+		/**
+		 * exponentially weighted moving average over all values received
+		 */
+		EWMA,
+		/**
+		 * change per second between the first and the last value of the
+		 * window, nothing is published while there are less than two values
+		 */
+		RATE_OF_CHANGE;
 	}
 
 	public static class MqttConnectionProperties {
@@ -71,6 +99,30 @@ public class MqttCamelRouteBuilder {
 			return this;
 		}
 
+		public String getName() {
+			return name;
+		}
+
+		public String getBrokerHost() {
+			return brokerHost;
+		}
+
+		public boolean isSsl() {
+			return ssl;
+		}
+
+		public String getClientId() {
+			return clientId;
+		}
+
+		public String getUser() {
+			return user;
+		}
+
+		public byte[] getPass() {
+			return pass;
+		}
+
 		public int getBrokerPort() {
 			return brokerPort == null ? (ssl ? 8883 : 1883) : brokerPort
 					.intValue();
@@ -99,11 +151,11 @@ public class MqttCamelRouteBuilder {
 			return sb.toString();
 		}
 
-		private boolean hasAuth() {
+		public boolean hasAuth() {
 			return user != null && pass != null;
 		}
 
-		private boolean hasClientId() {
+		public boolean hasClientId() {
 			return clientId != null;
 		}
 
@@ -129,13 +181,18 @@ public class MqttCamelRouteBuilder {
 		}
 	}
 
+	private static final AtomicInteger instances = new AtomicInteger();
+
+	// routes of many devices can be added to one context
+	private final int instance = instances.incrementAndGet();
 	private final CamelContext context;
 	private final Topics topics;
 	private String something;
 	private String mqtt;
 
-	private CompactStrategy compactStrategy;
-	private long compactMillis;
+	private WindowedAggregator.Builder compaction;
+	private long batchMillis;
+	private PublishBuffer buffer;
 
 	public MqttCamelRouteBuilder(CamelContext context, Topics topics) {
 		this.context = context;
@@ -144,15 +201,54 @@ public class MqttCamelRouteBuilder {
 
 	public MqttCamelRouteBuilder compact(CompactStrategy strategy,
 			int duration, TimeUnit timeUnit) {
-		this.compactStrategy = checkNotNull(strategy,
-				"strategy must not be null");
+		return compact(WindowedAggregator.builder(strategy).tumbling(duration,
+				timeUnit));
+	}
+
+	/**
+	 * Compact the values of analog pins, e.g. using a sliding window.
+	 */
+	public MqttCamelRouteBuilder compact(WindowedAggregator.Builder compaction) {
+		this.compaction = checkNotNull(compaction,
+				"compaction must not be null");
+		return this;
+	}
+
+	/**
+	 * Publish the pin values collected within the passed window as one message
+	 * to the batch topic instead of publishing each value to its own topic.
+	 * The {@link Topics} must have the batch topic enabled.
+	 */
+	public MqttCamelRouteBuilder batch(int duration, TimeUnit timeUnit) {
+		checkArgument(topics.getTopicBatch() != null,
+				"batch topic not enabled in %s", topics);
 		checkArgument(duration > 0,
 				"duration must not be zero or negative but was %s", duration);
-		this.compactMillis = checkNotNull(timeUnit, "timeUnit must not be null")
+		this.batchMillis = checkNotNull(timeUnit, "timeUnit must not be null")
 				.toMillis(duration);
 		return this;
 	}
 
+	/**
+	 * Decouples the link from the broker: Messages are buffered (up to
+	 * capacity) and published by a separate thread, so a slow or unreachable
+	 * broker does not block the thread reading from the link. Batches are
+	 * never conflated.
+	 */
+	public MqttCamelRouteBuilder buffer(int capacity, Overflow overflow) {
+		this.buffer = new PublishBuffer(capacity, overflow,
+				PublishBuffer.unconflated(topics));
+		return this;
+	}
+
+	/**
+	 * Returns the buffer messages are published through or <code>null</code>
+	 * if messages are published immediately.
+	 */
+	public PublishBuffer getPublishBuffer() {
+		return buffer;
+	}
+
 	public MqttCamelRouteBuilder to(String to) {
 		return this;
 	}
@@ -167,96 +263,158 @@ public class MqttCamelRouteBuilder {
 			final String something, final String mqtt) throws Exception {
 		this.something = something;
 		this.mqtt = mqtt;
+		if (buffer != null) {
+			context.addService(new BufferService(buffer, mqtt));
+		}
 		context.addRoutes(new RouteBuilder() {
 			@Override
 			public void configure() {
 				RouteDefinition routeDef = from(something).process(
 						fromArdulinkProtocol(topics).headerNameForTopic(
-								PUBLISH_HEADER));
-				if (compactStrategy != null) {
-					ChoiceDefinition pre = routeDef.choice().when(
-							simple("${in.body} is 'java.lang.Number'"));
-					useStrategy(pre, compactStrategy)
-							.to("direct:endOfAnalogAggregation").endChoice()
-							.otherwise().to("direct:endOfAnalogAggregation");
-					routeDef = from("direct:endOfAnalogAggregation");
+								PUBLISH_HEADER).headerNameForPin(PIN_HEADER));
+				if (compaction != null) {
+					String endOfAnalogAggregation = "direct:endOfAnalogAggregation"
+							+ instance;
+					WindowedAggregator<Pin> aggregator = compaction.build();
+					routeDef.choice()
+							.when(simple("${in.body} is 'java.lang.Number'"))
+							.process(addTo(aggregator)).otherwise()
+							.to(endOfAnalogAggregation);
+					from(
+							"timer:ardulinkCompaction" + instance + "?period="
+									+ aggregator.getSlideMillis())
+							.process(drain(aggregator)).split(body())
+							.process(toAnalogMessage())
+							.to(endOfAnalogAggregation);
+					routeDef = from(endOfAnalogAggregation);
 				}
-				routeDef.transform(body().convertToString()).to(mqtt);
-			}
-
-			private AggregateDefinition useStrategy(ChoiceDefinition def,
-					CompactStrategy strategy) {
-				switch (strategy) {
-				case USE_LATEST:
-					return appendUseLatestStrategy(def);
-				case AVERAGE:
-					return appendAverageStrategy(def);
-				default:
-					throw new IllegalStateException("Cannot handle " + strategy);
+				String publish = buffer == null ? mqtt : "direct:publishBuffer"
+						+ instance;
+				if (buffer != null) {
+					from(publish).process(offerTo(buffer));
+				}
+				if (batchMillis > 0) {
+					routeDef.aggregate(constant(true),
+							new BatchAggregationStrategy(PIN_HEADER))
+							.completionInterval(batchMillis)
+							.completeAllOnStop()
+							.process(toPayload(PUBLISH_HEADER,
+									topics.getTopicBatch())).to(publish);
+				} else {
+					routeDef.transform(body().convertToString()).to(publish);
 				}
-			}
-
-			private AggregateDefinition appendUseLatestStrategy(
-					ChoiceDefinition def) {
-				return def
-						.aggregate(header(PUBLISH_HEADER),
-								new UseLatestAggregationStrategy())
-						.completionInterval(compactMillis).completeAllOnStop();
-			}
-
-			private AggregateDefinition appendAverageStrategy(
-					ChoiceDefinition def) {
-				return def
-						.aggregate(header(PUBLISH_HEADER), sum())
-						.completionInterval(compactMillis)
-						.completeAllOnStop()
-						.process(
-								divideByValueOf(exchangeProperty("CamelAggregatedSize")));
 			}
 
 		});
 		return new ConfiguredMqttCamelRouteBuilder();
 	}
 
-	private Processor divideByValueOf(final ValueBuilder valueBuilder) {
+	private static Processor offerTo(final PublishBuffer buffer) {
 		return new Processor() {
 			@Override
 			public void process(Exchange exchange) throws Exception {
 				Message in = exchange.getIn();
-				BigDecimal sum = new BigDecimal(checkNotNull(
-						in.getBody(Number.class), "Body of %s is null", in)
-						.toString());
-				BigDecimal divisor = new BigDecimal(checkNotNull(
-						valueBuilder.evaluate(exchange, Integer.class),
-						"No %s set in exchange %s", valueBuilder, exchange)
-						.toString());
-				in.setBody(sum.divide(divisor, HALF_UP));
+				buffer.offer(
+						checkNotNull(in.getHeader(PUBLISH_HEADER, String.class),
+								"No topic found in %s", in),
+						in.getBody(String.class));
 			}
-
 		};
 	}
 
-	private AggregationStrategy sum() {
-		return new AggregationStrategy() {
-			@Override
-			public Exchange aggregate(Exchange oldExchange, Exchange newExchange) {
-				if (oldExchange == null) {
-					return newExchange;
+	/**
+	 * Publishes the messages of the buffer to the mqtt endpoint while the
+	 * camel context is running.
+	 */
+	private class BufferService extends ServiceSupport {
+
+		private final PublishBuffer buffer;
+		private final String mqtt;
+		private ProducerTemplate template;
+		private BufferDrainer drainer;
+
+		private BufferService(PublishBuffer buffer, String mqtt) {
+			this.buffer = buffer;
+			this.mqtt = mqtt;
+		}
+
+		@Override
+		protected void doStart() throws Exception {
+			final ProducerTemplate template = context.createProducerTemplate();
+			this.template = template;
+			this.drainer = BufferDrainer.start(buffer, new Publisher() {
+				@Override
+				public void publish(List<PublishBuffer.Message> messages)
+						throws Exception {
+					for (PublishBuffer.Message message : messages) {
+						template.sendBodyAndHeader(mqtt, message.getPayload(),
+								PUBLISH_HEADER, message.getTopic());
+					}
 				}
-				oldExchange.getIn().setBody(sum(oldExchange, newExchange));
-				return oldExchange;
+			}, BUFFER_BATCH_SIZE);
+		}
+
+		@Override
+		protected void doStop() throws Exception {
+			BufferDrainer tmpDrainer = this.drainer;
+			if (tmpDrainer != null) {
+				tmpDrainer.close();
 			}
+			ProducerTemplate tmpTemplate = this.template;
+			if (tmpTemplate != null) {
+				tmpTemplate.stop();
+			}
+		}
 
-			private BigDecimal sum(Exchange oldExchange, Exchange newExchange) {
-				return numberFromPayload(oldExchange).add(
-						numberFromPayload(newExchange));
+	}
+
+	private Processor addTo(final WindowedAggregator<Pin> aggregator) {
+		return new Processor() {
+			@Override
+			public void process(Exchange exchange) throws Exception {
+				Message in = exchange.getIn();
+				aggregator.add(
+						checkNotNull(in.getHeader(PIN_HEADER, Pin.class),
+								"No pin found in %s", in),
+						in.getBody(Number.class).intValue());
 			}
+		};
+	}
 
-			private BigDecimal numberFromPayload(Exchange oldExchange) {
-				return new BigDecimal(oldExchange.getIn().getBody(Number.class)
-						.toString());
+	/**
+	 * Drains the aggregator into a list of pin/value entries, one exchange
+	 * has to be created for each entry.
+	 */
+	private Processor drain(final WindowedAggregator<Pin> aggregator) {
+		return new Processor() {
+			@Override
+			public void process(Exchange exchange) throws Exception {
+				final List<Entry<Pin, Integer>> values = new ArrayList<Entry<Pin, Integer>>();
+				aggregator.drain(new Sink<Pin>() {
+					@Override
+					public void emit(Pin pin, int value) {
+						values.add(new SimpleImmutableEntry<Pin, Integer>(pin,
+								Integer.valueOf(value)));
+					}
+				});
+				exchange.getIn().setBody(values);
 			}
+		};
+	}
 
+	private Processor toAnalogMessage() {
+		return new Processor() {
+			@SuppressWarnings("unchecked")
+			@Override
+			public void process(Exchange exchange) throws Exception {
+				Message in = exchange.getIn();
+				Entry<Pin, Integer> entry = in.getBody(Entry.class);
+				Pin pin = entry.getKey();
+				in.setHeader(PUBLISH_HEADER, String.format(
+						topics.getTopicPatternAnalogRead(), pin.pinNum()));
+				in.setHeader(PIN_HEADER, pin);
+				in.setBody(entry.getValue());
+			}
 		};
 	}
 
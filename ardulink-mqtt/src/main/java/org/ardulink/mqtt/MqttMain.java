@@ -23,18 +23,31 @@ import static org.ardulink.util.Strings.nullOrEmpty;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.camel.CamelContext;
 import org.apache.camel.Route;
 import org.apache.camel.impl.DefaultCamelContext;
+import org.ardulink.core.Link;
+import org.ardulink.core.Pin;
+import org.ardulink.core.convenience.Links;
 import org.ardulink.mqtt.MqttBroker.Builder;
 import org.ardulink.mqtt.MqttCamelRouteBuilder.CompactStrategy;
 import org.ardulink.mqtt.MqttCamelRouteBuilder.MqttConnectionProperties;
+import org.ardulink.mqtt.buffer.PublishBuffer.Overflow;
+import org.ardulink.mqtt.compact.WindowedAggregator;
+import org.ardulink.mqtt.direct.DirectMqttBridge;
+import org.ardulink.mqtt.direct.MqttClientConnection;
 import org.ardulink.util.Joiner;
+import org.ardulink.util.URIs;
 import org.kohsuke.args4j.CmdLineException;
 import org.kohsuke.args4j.CmdLineParser;
 import org.kohsuke.args4j.Option;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * [ardulinktitle] [ardulinkversion]
@@ -46,6 +59,21 @@ import org.kohsuke.args4j.Option;
  */
 public class MqttMain {
 
+	private static final Logger logger = LoggerFactory
+			.getLogger(MqttMain.class);
+
+	public enum Engine {
+		/**
+		 * route all messages through camel (using the ardulink and the mqtt
+		 * component)
+		 */
+		CAMEL, /**
+		 * connect the link directly to the mqtt client without any
+		 * intermediate text protocol
+		 */
+		DIRECT;
+	}
+
 	@Option(name = "-brokerTopic", usage = "Topic to register. "
 			+ "To switch pins a message of the form $brokerTopic/[A|D]$pinNumber must be sent. "
 			+ "When separateTopics is enabled the topis has to be $brokerTopic/[A|D]$pinNumber/value/set. "
@@ -87,6 +115,21 @@ public class MqttMain {
 	@Option(name = "-athstr", aliases = "--strategy", usage = "Analog throttle strategy")
 	private CompactStrategy compactStrategy = AVERAGE;
 
+	@Option(name = "-athwin", aliases = "--window", usage = "Analog throttle window, when greater than <throttleMillis> the values of the last <windowMillis> are compacted every <throttleMillis> (sliding window)")
+	private int windowMillis;
+
+	@Option(name = "-athalpha", aliases = "--alpha", usage = "Smoothing factor (0..1] of the EWMA analog throttle strategy")
+	private double ewmaAlpha = 0.3;
+
+	@Option(name = "-batchms", aliases = "--batch", usage = "Publish all pin values of <batchMillis> as one message to $brokerTopic/batch (0 publishes each value to its own topic)")
+	private int batchMillis;
+
+	@Option(name = "-bufsize", aliases = "--buffer", usage = "Buffer up to <bufferSize> messages to publish so a slow or unreachable broker does not block reading the arduino (0 publishes immediately)")
+	private int bufferSize;
+
+	@Option(name = "-bufoverflow", aliases = "--overflow", usage = "What to do when the buffer is full")
+	private Overflow bufferOverflow = Overflow.CONFLATE;
+
 	@Option(name = "-connection", usage = "Connection URI to the arduino")
 	private String connection = "ardulink://serial";
 
@@ -96,34 +139,163 @@ public class MqttMain {
 	@Option(name = "-standalone", usage = "Start a mqtt server on this host")
 	private boolean standalone;
 
+	@Option(name = "-engine", aliases = "--engine", usage = "How to connect the arduino to the broker. "
+			+ "Using the direct engine together with -standalone the broker is accessed in-VM.")
+	private Engine engine = Engine.CAMEL;
+
+	@Option(name = "-device", aliases = "--device", usage = "Bridge this arduino, can be repeated. "
+			+ "Format is key=value;key=value... using the keys connection, brokerTopic, a, d, athms, athstr, athwin. "
+			+ "Values not given are taken from the corresponding options. "
+			+ "More than one device requires -engine direct, all devices then share one broker connection "
+			+ "and a device that cannot be connected does not prevent the others from being bridged.")
+	private List<String> devices = new ArrayList<String>();
+
 	private MqttBroker standaloneServer;
 
 	private CamelContext context;
 
-	private CamelContext createCamelContext(Topics topics) throws Exception {
-		return addRoutes(topics, new DefaultCamelContext());
+	private MqttClientConnection sharedConnection;
+
+	private final List<DirectMqttBridge> bridges = new CopyOnWriteArrayList<DirectMqttBridge>();
+
+	/**
+	 * The camel engine bridges exactly one device: All routes share one
+	 * context, so a device failing to start would stop all the others, too.
+	 */
+	private CamelContext createCamelContext(Device device) throws Exception {
+		return addRoutes(device, new DefaultCamelContext(), "mqttMain");
+	}
+
+	private CamelContext addRoutes(Device device, CamelContext context,
+			String name) throws Exception {
+		MqttCamelRouteBuilder rb = new MqttCamelRouteBuilder(context,
+				topics(device));
+		if (device.isCompacting()) {
+			rb = rb.compact(compaction(device));
+		}
+		if (batchMillis > 0) {
+			rb = rb.batch(batchMillis, MILLISECONDS);
+		}
+		if (bufferSize > 0) {
+			rb = rb.buffer(bufferSize, bufferOverflow);
+		}
+		String ardulink = appendListenTo(device);
+		rb.fromSomethingToMqtt(ardulink, mqttConnectionProperties().name(name))
+				.andReverse();
+		return context;
 	}
 
-	private CamelContext addRoutes(Topics topics, CamelContext context)
-			throws Exception {
-		MqttCamelRouteBuilder rb = new MqttCamelRouteBuilder(context, topics);
-		if (throttleMillis > 0 && compactStrategy != null) {
-			rb = rb.compact(compactStrategy, throttleMillis, MILLISECONDS);
+	private Topics topics(Device device) {
+		String brokerTopic = device.getBrokerTopic();
+		Topics topics = separateTopics ? Topics
+				.withSeparateReadWriteTopics(brokerTopic) : Topics
+				.basedOn(brokerTopic);
+		if (batchMillis > 0) {
+			topics = topics.withBatchTopicEnabled();
+		}
+		if (this.control) {
+			topics = topics.withControlChannelEnabled();
 		}
-		String ardulink = appendListenTo(connection);
-		MqttConnectionProperties mqtt = appendAuth(
+		return topics;
+	}
+
+	private WindowedAggregator.Builder compaction(Device device) {
+		WindowedAggregator.Builder builder = WindowedAggregator.builder(
+				device.getCompactStrategy()).alpha(ewmaAlpha);
+		int throttle = device.getThrottleMillis();
+		int window = device.getWindowMillis();
+		return window > throttle ? builder.sliding(window, throttle,
+				MILLISECONDS) : builder.tumbling(throttle, MILLISECONDS);
+	}
+
+	private MqttConnectionProperties mqttConnectionProperties() {
+		return appendAuth(
 				new MqttConnectionProperties().name("mqttMain")
 						.brokerHost(brokerHost).ssl(ssl))
 				.brokerPort(brokerPort);
-		rb.fromSomethingToMqtt(ardulink, mqtt).andReverse();
-		return context;
 	}
 
-	private String appendListenTo(String connection) {
-		String listenTo = listenTo();
-		return listenTo.isEmpty() ? connection : connection
-				+ (connection.contains("?") ? "&" : "?") + "listenTo="
-				+ listenTo;
+	/**
+	 * Bridges all devices using one broker connection. A device that cannot
+	 * be connected is logged and skipped, so it does not prevent the others
+	 * from being bridged. If the broker runs standalone inside this JVM the
+	 * bridges talk to it directly instead of via the network.
+	 */
+	private void createDirectBridges(List<Device> devices) throws IOException {
+		this.sharedConnection = standaloneServer == null ? MqttClientConnection
+				.connect(mqttConnectionProperties().clientId(clientId))
+				: MqttClientConnection.inVm(standaloneServer);
+		IOException firstFailure = null;
+		for (Device device : devices) {
+			try {
+				bridges.add(createDirectBridge(device));
+			} catch (IOException e) {
+				logger.error("Cannot bridge {}", device, e);
+				firstFailure = firstFailure == null ? e : firstFailure;
+			} catch (RuntimeException e) {
+				logger.error("Cannot bridge {}", device, e);
+				firstFailure = firstFailure == null ? new IOException(e)
+						: firstFailure;
+			}
+		}
+		if (bridges.isEmpty() && firstFailure != null) {
+			throw firstFailure;
+		}
+	}
+
+	private DirectMqttBridge createDirectBridge(Device device)
+			throws IOException {
+		Link link = Links.getLink(URIs.newURI(device.getConnection()));
+		try {
+			for (Pin pin : device.getListenToPins()) {
+				link.startListening(pin);
+			}
+			DirectMqttBridge.Builder builder = DirectMqttBridge.builder(link,
+					topics(device)).connection(sharedConnection);
+			if (device.isCompacting()) {
+				builder = builder.compact(compaction(device));
+			}
+			if (batchMillis > 0) {
+				builder = builder.batch(batchMillis, MILLISECONDS);
+			}
+			if (bufferSize > 0) {
+				builder = builder.buffer(bufferSize, bufferOverflow);
+			}
+			return builder.start();
+		} catch (IOException e) {
+			link.close();
+			throw e;
+		} catch (RuntimeException e) {
+			link.close();
+			throw e;
+		}
+	}
+
+	private List<Device> devices() {
+		Device defaults = new Device().connection(connection)
+				.brokerTopic(brokerTopic).analogs(analogs)
+				.digitals(digitals).throttleMillis(throttleMillis)
+				.compactStrategy(compactStrategy).windowMillis(windowMillis);
+		if (this.devices.isEmpty()) {
+			return Collections.singletonList(defaults);
+		}
+		List<Device> result = new ArrayList<Device>(this.devices.size());
+		for (String spec : this.devices) {
+			result.add(Device.parse(spec, defaults));
+		}
+		return result;
+	}
+
+	/**
+	 * The routes stay inside the JVM so the link's events are passed as typed
+	 * bodies instead of alp text.
+	 */
+	private String appendListenTo(Device device) {
+		String connection = device.getConnection();
+		String listenTo = listenTo(device);
+		String params = "bodyType=event"
+				+ (listenTo.isEmpty() ? "" : "&listenTo=" + listenTo);
+		return connection + (connection.contains("?") ? "&" : "?") + params;
 	}
 
 	private MqttConnectionProperties appendAuth(
@@ -136,10 +308,11 @@ public class MqttMain {
 		return properties.auth(auth[0], auth[1].getBytes());
 	}
 
-	private String listenTo() {
+	private String listenTo(Device device) {
 		return Joiner.on(",").join(
-				add("D%s", digitals,
-						add("A%s", analogs, new ArrayList<String>())));
+				add("D%s", device.getDigitals(),
+						add("A%s", device.getAnalogs(),
+								new ArrayList<String>())));
 	}
 
 	private List<String> add(String format, int[] pins, List<String> to) {
@@ -181,15 +354,19 @@ public class MqttMain {
 
 	public void connectToMqttBroker() throws Exception {
 		ensureBrokerTopicIsnormalized();
+		List<Device> devices = devices();
+		checkState(engine == Engine.DIRECT || devices.size() == 1,
+				"Bridging %s devices requires -engine %s", devices.size(),
+				Engine.DIRECT);
 		if (standalone) {
 			this.standaloneServer = createBroker().startBroker();
 		}
-		Topics topics = separateTopics ? Topics
-				.withSeparateReadWriteTopics(this.brokerTopic) : Topics
-				.basedOn(this.brokerTopic);
-		this.context = createCamelContext(this.control ? topics
-				.withControlChannelEnabled() : topics);
-		this.context.start();
+		if (engine == Engine.DIRECT) {
+			createDirectBridges(devices);
+		} else {
+			this.context = createCamelContext(devices.get(0));
+			this.context.start();
+		}
 	}
 
 	protected Builder createBroker() {
@@ -202,6 +379,10 @@ public class MqttMain {
 	}
 
 	public boolean isConnected() {
+		MqttClientConnection tmpConnection = this.sharedConnection;
+		if (tmpConnection != null) {
+			return tmpConnection.isConnected();
+		}
 		List<Route> routes = context.getRoutes();
 		for (Route route : routes) {
 			if (!context.getRouteStatus(route.getId()).isStarted()) {
@@ -212,6 +393,20 @@ public class MqttMain {
 	}
 
 	public void close() throws IOException {
+		for (DirectMqttBridge bridge : bridges) {
+			try {
+				bridge.close();
+			} catch (IOException e) {
+				logger.warn("Error closing {}", bridge, e);
+			}
+		}
+		bridges.clear();
+
+		MqttClientConnection tmpConnection = this.sharedConnection;
+		if (tmpConnection != null) {
+			tmpConnection.close();
+		}
+
 		CamelContext tmpContext = this.context;
 		if ((tmpContext) != null) {
 			try {
@@ -256,10 +451,27 @@ public class MqttMain {
 		this.digitals = digitals == null ? new int[0] : digitals.clone();
 	}
 
+	public void setBatchMillis(int batchMillis) {
+		this.batchMillis = batchMillis;
+	}
+
+	public void setBuffer(int bufferSize, Overflow bufferOverflow) {
+		this.bufferSize = bufferSize;
+		this.bufferOverflow = bufferOverflow;
+	}
+
 	public void setConnection(String connection) {
 		this.connection = connection;
 	}
 
+	public void setDevices(String... devices) {
+		this.devices = new ArrayList<String>(Arrays.asList(devices));
+	}
+
+	public void setEngine(Engine engine) {
+		this.engine = engine;
+	}
+
 	public void setStandalone(boolean standalone) {
 		this.standalone = standalone;
 	}
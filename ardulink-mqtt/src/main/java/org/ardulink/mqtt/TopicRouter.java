@@ -0,0 +1,243 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+ */
+package org.ardulink.mqtt;
+
+import static org.ardulink.util.Integers.tryParse;
+import static org.ardulink.util.Preconditions.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * Resolves the kind of an inbound topic and the pin it addresses. The
+ * {@link Topics} are compiled once: every write/control pattern of the form
+ * <code>literalPrefix(\w+)literalSuffix</code> (which is what the
+ * {@link Topics} builder methods create) is put into a prefix trie so a topic
+ * is resolved walking its characters once. Patterns that cannot be
+ * decomposed that way are matched using their regular expression.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public final class TopicRouter {
+
+	public enum Kind {
+		DIGITAL_WRITE, ANALOG_WRITE, ANALOG_CONTROL, DIGITAL_CONTROL;
+	}
+
+	public static final class Match {
+
+		private final Kind kind;
+		private final int pin;
+
+		private Match(Kind kind, int pin) {
+			this.kind = kind;
+			this.pin = pin;
+		}
+
+		public Kind getKind() {
+			return kind;
+		}
+
+		public int getPin() {
+			return pin;
+		}
+
+		@Override
+		public String toString() {
+			return "Match [kind=" + kind + ", pin=" + pin + "]";
+		}
+
+	}
+
+	private static final String PIN_GROUP = "(\\w+)";
+	private static final String REGEX_META_CHARS = "\\.[]{}()*+?^$|";
+	private static final int CACHED_PINS = 128;
+
+	private static class Route {
+
+		private final int priority;
+		private final Kind kind;
+		private final String suffix;
+		private final Pattern pattern;
+		private final Match[] cache = new Match[CACHED_PINS];
+
+		private Route(int priority, Kind kind, String suffix, Pattern pattern) {
+			this.priority = priority;
+			this.kind = kind;
+			this.suffix = suffix;
+			this.pattern = pattern;
+			for (int i = 0; i < cache.length; i++) {
+				cache[i] = new Match(kind, i);
+			}
+		}
+
+		private Match match(int pin) {
+			return pin >= 0 && pin < cache.length ? cache[pin] : new Match(kind, pin);
+		}
+
+		/**
+		 * Checks if the topic's remainder (after the prefix) is a pin number
+		 * followed by this route's suffix.
+		 */
+		private Match matchRemainder(String topic, int start) {
+			int end = topic.length() - suffix.length();
+			if (end <= start || !topic.startsWith(suffix, end)) {
+				return null;
+			}
+			int pin = parsePin(topic, start, end);
+			return pin < 0 ? null : match(pin);
+		}
+
+		private Match matchRegex(String topic) {
+			Matcher matcher = pattern.matcher(topic);
+			if (matcher.matches() && matcher.groupCount() > 0) {
+				Integer pin = tryParse(matcher.group(1)).orNull();
+				return pin == null ? null : match(pin.intValue());
+			}
+			return null;
+		}
+
+	}
+
+	private static class Node {
+
+		private final Map<Character, Node> children = new HashMap<Character, Node>();
+		private final List<Route> routes = new ArrayList<Route>();
+
+		private Node child(char c) {
+			Node child = children.get(Character.valueOf(c));
+			if (child == null) {
+				children.put(Character.valueOf(c), child = new Node());
+			}
+			return child;
+		}
+
+	}
+
+	private final Node root = new Node();
+	private final List<Route> regexRoutes = new ArrayList<Route>();
+
+	public static TopicRouter compile(Topics topics) {
+		return new TopicRouter(topics);
+	}
+
+	private TopicRouter(Topics topics) {
+		checkNotNull(topics, "topics must not be null");
+		add(Kind.DIGITAL_WRITE, topics.getTopicPatternDigitalWrite());
+		add(Kind.ANALOG_WRITE, topics.getTopicPatternAnalogWrite());
+		add(Kind.ANALOG_CONTROL, topics.getTopicPatternAnalogControl());
+		add(Kind.DIGITAL_CONTROL, topics.getTopicPatternDigitalControl());
+	}
+
+	private void add(Kind kind, Pattern pattern) {
+		if (pattern == null) {
+			return;
+		}
+		int priority = kind.ordinal();
+		String regex = pattern.pattern();
+		int idx = regex.indexOf(PIN_GROUP);
+		String prefix = idx < 0 ? null : regex.substring(0, idx);
+		String suffix = idx < 0 ? null : regex
+				.substring(idx + PIN_GROUP.length());
+		if (pattern.flags() == 0 && prefix != null && isLiteral(prefix)
+				&& isLiteral(suffix)) {
+			Node node = root;
+			for (int i = 0; i < prefix.length(); i++) {
+				node = node.child(prefix.charAt(i));
+			}
+			node.routes.add(new Route(priority, kind, suffix, null));
+		} else {
+			regexRoutes.add(new Route(priority, kind, null, pattern));
+		}
+	}
+
+	private static boolean isLiteral(String string) {
+		for (int i = 0; i < string.length(); i++) {
+			if (REGEX_META_CHARS.indexOf(string.charAt(i)) >= 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Resolves the topic passed.
+	 *
+	 * @param topic
+	 *            the topic to resolve
+	 * @return the kind of the topic and the pin addressed or <code>null</code>
+	 *         if the topic does not match any of the configured patterns
+	 */
+	public Match route(String topic) {
+		Match best = null;
+		int bestPriority = Integer.MAX_VALUE;
+		Node node = root;
+		for (int i = 0; node != null; i++) {
+			for (Route route : node.routes) {
+				if (route.priority < bestPriority) {
+					Match match = route.matchRemainder(topic, i);
+					if (match != null) {
+						best = match;
+						bestPriority = route.priority;
+					}
+				}
+			}
+			node = i < topic.length() ? node.children.get(Character
+					.valueOf(topic.charAt(i))) : null;
+		}
+		for (Route route : regexRoutes) {
+			if (route.priority < bestPriority) {
+				Match match = route.matchRegex(topic);
+				if (match != null) {
+					return match;
+				}
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Parses the ASCII digits between start (inclusive) and end (exclusive).
+	 *
+	 * @return the parsed number or <code>-1</code> if the range contains
+	 *         anything else than digits or the value overflows an int
+	 */
+	private static int parsePin(String string, int start, int end) {
+		long value = 0;
+		for (int i = start; i < end; i++) {
+			char c = string.charAt(i);
+			if (c < '0' || c > '9') {
+				return -1;
+			}
+			value = value * 10 + (c - '0');
+			if (value > Integer.MAX_VALUE) {
+				return -1;
+			}
+		}
+		return end > start ? (int) value : -1;
+	}
+
+}
@@ -20,6 +20,8 @@ import static java.util.regex.Pattern.compile;
 
 import java.util.regex.Pattern;
 
+import org.ardulink.core.mqtt.BatchPayload;
+
 /**
  * [ardulinktitle] [ardulinkversion]
  * 
@@ -39,6 +41,7 @@ public abstract class Topics {
 		private String topicPatternAnalogRead;
 		private Pattern topicPatternDigitalControl;
 		private Pattern topicPatternAnalogControl;
+		private String topicBatch;
 
 		private DefaultTopics(String topic) {
 			this.topic = topic.endsWith("/") ? topic : topic + "/";
@@ -56,6 +59,7 @@ public abstract class Topics {
 			this.topicPatternAnalogRead = t.getTopicPatternAnalogRead();
 			this.topicPatternDigitalControl = t.getTopicPatternDigitalControl();
 			this.topicPatternAnalogControl = t.getTopicPatternAnalogControl();
+			this.topicBatch = t.getTopicBatch();
 		}
 
 		@Override
@@ -93,6 +97,11 @@ public abstract class Topics {
 			return topicPatternAnalogControl;
 		}
 
+		@Override
+		public String getTopicBatch() {
+			return topicBatch;
+		}
+
 		public static Topics copyOf(Topics topics) {
 			return typedCopy(topics);
 		}
@@ -158,6 +167,22 @@ public abstract class Topics {
 						prefix(getTopicPatternAnalogWrite(), prefix));
 	}
 
+	/**
+	 * Enables the batch topic ($brokerTopic/batch) that carries many pin
+	 * values within one message, see {@link BatchPayload}.
+	 * 
+	 * @return copy of this Topics with the batch topic enabled
+	 */
+	public Topics withBatchTopicEnabled() {
+		return withTopicBatch(getTopic() + BatchPayload.TOPIC_SUFFIX);
+	}
+
+	public Topics withTopicBatch(String topicBatch) {
+		DefaultTopics copy = DefaultTopics.typedCopy(this);
+		copy.topicBatch = topicBatch;
+		return copy;
+	}
+
 	private String prefix(Pattern writePattern, String prefix) {
 		return new StringBuilder(writePattern.pattern()).insert(
 				getTopic().length(), prefix).toString();
@@ -183,7 +208,7 @@ public abstract class Topics {
 		return String.format(format, "%s");
 	}
 
-	protected abstract String getTopic();
+	public abstract String getTopic();
 
 	public abstract Pattern getTopicPatternDigitalWrite();
 
@@ -197,4 +222,10 @@ public abstract class Topics {
 
 	public abstract Pattern getTopicPatternAnalogControl();
 
+	/**
+	 * @return the topic to publish batches to or <code>null</code> if batching
+	 *         is not enabled
+	 */
+	public abstract String getTopicBatch();
+
 }
@@ -0,0 +1,143 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+ */
+package org.ardulink.mqtt.buffer;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.ardulink.util.Preconditions.checkArgument;
+import static org.ardulink.util.Preconditions.checkNotNull;
+
+import java.io.Closeable;
+import java.util.List;
+
+import org.ardulink.mqtt.buffer.PublishBuffer.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * Thread taking the messages of a {@link PublishBuffer} in batches and handing
+ * them to a {@link Publisher}. If publishing fails (e.g. the broker is
+ * unreachable) the batch is put back into the buffer and retried after a
+ * backoff, doubling up to one second, so the buffer drains as soon as the
+ * broker is back. Since a failed batch is retried as a whole messages are
+ * published at least once.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public class BufferDrainer implements Closeable {
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(BufferDrainer.class);
+
+	private static final long MIN_BACKOFF_MILLIS = 10;
+	private static final long MAX_BACKOFF_MILLIS = 1000;
+	private static final long JOIN_MILLIS = 5000;
+
+	/**
+	 * Publishes all messages of a batch. Has to throw an exception if not all
+	 * messages could be published.
+	 */
+	public interface Publisher {
+		void publish(List<Message> messages) throws Exception;
+	}
+
+	private final PublishBuffer buffer;
+	private final Publisher publisher;
+	private final int batchSize;
+	private final Thread thread;
+	private volatile boolean running = true;
+
+	public static BufferDrainer start(PublishBuffer buffer,
+			Publisher publisher, int batchSize) {
+		BufferDrainer drainer = new BufferDrainer(buffer, publisher, batchSize);
+		drainer.thread.start();
+		return drainer;
+	}
+
+	private BufferDrainer(PublishBuffer buffer, Publisher publisher,
+			int batchSize) {
+		checkArgument(batchSize > 0,
+				"batchSize must be greater than zero but was %s", batchSize);
+		this.buffer = checkNotNull(buffer, "buffer must not be null");
+		this.publisher = checkNotNull(publisher, "publisher must not be null");
+		this.batchSize = batchSize;
+		this.thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				drain();
+			}
+		}, "ardulink-mqtt-buffer");
+		this.thread.setDaemon(true);
+	}
+
+	private void drain() {
+		long backoff = MIN_BACKOFF_MILLIS;
+		try {
+			while (running) {
+				List<Message> batch = buffer.take(batchSize, 100, MILLISECONDS);
+				if (!batch.isEmpty()) {
+					if (publish(batch)) {
+						backoff = MIN_BACKOFF_MILLIS;
+					} else {
+						buffer.requeue(batch);
+						Thread.sleep(backoff);
+						backoff = Math.min(2 * backoff, MAX_BACKOFF_MILLIS);
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private boolean publish(List<Message> batch) {
+		try {
+			publisher.publish(batch);
+			return true;
+		} catch (Exception e) {
+			logger.warn("Cannot publish {} messages, {}", batch.size(),
+					buffer, e);
+			return false;
+		}
+	}
+
+	/**
+	 * Stops draining and makes one last attempt to publish the messages
+	 * still buffered.
+	 */
+	@Override
+	public void close() {
+		buffer.close();
+		running = false;
+		try {
+			thread.join(JOIN_MILLIS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		List<Message> batch;
+		while (!(batch = buffer.poll(batchSize)).isEmpty()) {
+			if (!publish(batch)) {
+				return;
+			}
+		}
+	}
+
+}
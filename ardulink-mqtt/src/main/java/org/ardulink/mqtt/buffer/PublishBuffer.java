@@ -0,0 +1,296 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+ */
+package org.ardulink.mqtt.buffer;
+
+import static org.ardulink.util.Preconditions.checkArgument;
+import static org.ardulink.util.Preconditions.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.ardulink.mqtt.Topics;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * Bounded buffer for the messages to be published. The link's events are
+ * {@link #offer(String, String) offered} to the buffer and a
+ * {@link BufferDrainer} takes them in batches and publishes them, so a slow
+ * or unreachable broker never blocks the thread reading from the arduino
+ * (unless {@link Overflow#BLOCK} is chosen). What happens when the buffer is
+ * full is defined by its {@link Overflow} strategy.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public final class PublishBuffer {
+
+	public enum Overflow {
+		/**
+		 * keep only the latest value of each topic, if the buffer is full of
+		 * distinct topics the oldest message is dropped. Messages of the
+		 * topics excluded from conflation (e.g. the batch topic whose messages
+		 * each carry distinct values) are never replaced.
+		 */
+		CONFLATE,
+		/**
+		 * drop the oldest message
+		 */
+		DROP_OLDEST,
+		/**
+		 * block the caller until there is room in the buffer
+		 */
+		BLOCK;
+	}
+
+	public static final class Message {
+
+		private final String topic;
+		private final String payload;
+
+		public Message(String topic, String payload) {
+			this.topic = topic;
+			this.payload = payload;
+		}
+
+		public String getTopic() {
+			return topic;
+		}
+
+		public String getPayload() {
+			return payload;
+		}
+
+		@Override
+		public String toString() {
+			return "Message [topic=" + topic + ", payload=" + payload + "]";
+		}
+
+	}
+
+	private final int capacity;
+	private final Overflow overflow;
+	private final Set<String> unconflated;
+
+	/**
+	 * Keyed by topic when conflating, by a sequence number otherwise. Iteration
+	 * order is the order to publish.
+	 */
+	private Map<Object, Message> messages = new LinkedHashMap<Object, Message>();
+	private long sequence;
+	private long dropped;
+	private long conflated;
+	private boolean closed;
+
+	public PublishBuffer(int capacity, Overflow overflow) {
+		this(capacity, overflow, Collections.<String> emptySet());
+	}
+
+	/**
+	 * @param unconflated
+	 *            topics whose messages are never conflated even if the
+	 *            overflow strategy is {@link Overflow#CONFLATE}
+	 */
+	public PublishBuffer(int capacity, Overflow overflow,
+			Set<String> unconflated) {
+		checkArgument(capacity > 0,
+				"capacity must be greater than zero but was %s", capacity);
+		this.capacity = capacity;
+		this.overflow = checkNotNull(overflow, "overflow must not be null");
+		this.unconflated = new HashSet<String>(checkNotNull(unconflated,
+				"unconflated must not be null"));
+	}
+
+	/**
+	 * Returns the topics of the topics passed whose messages must not be
+	 * conflated: Each batch carries distinct values, replacing a batch by the
+	 * next would silently drop all values of the former.
+	 */
+	public static Set<String> unconflated(Topics topics) {
+		String batch = topics.getTopicBatch();
+		return batch == null ? Collections.<String> emptySet() : Collections
+				.singleton(batch);
+	}
+
+	/**
+	 * Adds the message to the buffer. Returns <code>false</code> if the
+	 * message was not added since the buffer is closed or (using
+	 * {@link Overflow#BLOCK}) the calling thread was interrupted.
+	 */
+	public synchronized boolean offer(String topic, String payload) {
+		Message message = new Message(checkNotNull(topic,
+				"topic must not be null"), checkNotNull(payload,
+				"payload must not be null"));
+		if (conflates(topic) && messages.containsKey(topic)) {
+			// keeps the position of the value replaced
+			messages.put(topic, message);
+			conflated++;
+			return true;
+		}
+		if (overflow == Overflow.BLOCK) {
+			while (!closed && messages.size() >= capacity) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					dropped++;
+					return false;
+				}
+			}
+		}
+		if (closed) {
+			dropped++;
+			return false;
+		}
+		messages.put(key(message), message);
+		dropOverflow();
+		notifyAll();
+		return true;
+	}
+
+	/**
+	 * Removes up to max messages from the buffer waiting up to the timeout
+	 * passed for the first one. Returns an empty list if there were no
+	 * messages within the timeout or the buffer has been closed.
+	 */
+	public synchronized List<Message> take(int max, long timeout,
+			TimeUnit timeUnit) throws InterruptedException {
+		long deadline = System.nanoTime() + timeUnit.toNanos(timeout);
+		long remaining;
+		while (!closed && messages.isEmpty()
+				&& (remaining = deadline - System.nanoTime()) > 0) {
+			TimeUnit.NANOSECONDS.timedWait(this, remaining);
+		}
+		return poll(max);
+	}
+
+	/**
+	 * Removes up to max messages from the buffer without waiting.
+	 */
+	public synchronized List<Message> poll(int max) {
+		if (messages.isEmpty()) {
+			return Collections.emptyList();
+		}
+		List<Message> result = new ArrayList<Message>(Math.min(max,
+				messages.size()));
+		for (Iterator<Message> it = messages.values().iterator(); it.hasNext()
+				&& result.size() < max;) {
+			result.add(it.next());
+			it.remove();
+		}
+		notifyAll();
+		return result;
+	}
+
+	/**
+	 * Puts messages that could not be published back to the head of the
+	 * buffer. When conflating a message is skipped if there is already a newer
+	 * value for its topic. Never blocks: Messages that do not fit are dropped,
+	 * oldest first.
+	 */
+	public synchronized void requeue(List<Message> unpublished) {
+		Map<Object, Message> requeued = new LinkedHashMap<Object, Message>();
+		for (Message message : unpublished) {
+			if (conflates(message.getTopic())
+					&& messages.containsKey(message.getTopic())) {
+				conflated++;
+			} else {
+				requeued.put(key(message), message);
+			}
+		}
+		requeued.putAll(messages);
+		messages = requeued;
+		dropOverflow();
+	}
+
+	private boolean conflates(String topic) {
+		return overflow == Overflow.CONFLATE && !unconflated.contains(topic);
+	}
+
+	private Object key(Message message) {
+		return conflates(message.getTopic()) ? message.getTopic() : Long
+				.valueOf(sequence++);
+	}
+
+	private void dropOverflow() {
+		for (Iterator<Message> it = messages.values().iterator(); messages
+				.size() > capacity;) {
+			it.next();
+			it.remove();
+			dropped++;
+		}
+	}
+
+	/**
+	 * Wakes up all threads waiting on this buffer. Messages offered afterwards
+	 * are dropped, the messages buffered can still be taken.
+	 */
+	public synchronized void close() {
+		closed = true;
+		notifyAll();
+	}
+
+	public synchronized boolean isClosed() {
+		return closed;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public Overflow getOverflow() {
+		return overflow;
+	}
+
+	/**
+	 * Number of messages currently buffered.
+	 */
+	public synchronized int getDepth() {
+		return messages.size();
+	}
+
+	/**
+	 * Number of messages dropped since the buffer was full or closed.
+	 */
+	public synchronized long getDropped() {
+		return dropped;
+	}
+
+	/**
+	 * Number of messages replaced by a newer value of the same topic.
+	 */
+	public synchronized long getConflated() {
+		return conflated;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "PublishBuffer [capacity=" + capacity + ", overflow="
+				+ overflow + ", depth=" + messages.size() + ", dropped="
+				+ dropped + ", conflated=" + conflated + "]";
+	}
+
+}
@@ -0,0 +1,76 @@
+package org.ardulink.mqtt.camel;
+
+import static org.ardulink.core.Pin.Type.ANALOG;
+import static org.ardulink.util.Preconditions.checkNotNull;
+
+import java.util.Date;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.Processor;
+import org.apache.camel.processor.aggregate.AggregationStrategy;
+import org.ardulink.core.Pin;
+import org.ardulink.core.mqtt.BatchPayload;
+
+/**
+ * Collects the pin values of all aggregated exchanges into one
+ * {@link BatchPayload}. The pin of each exchange is read from the header
+ * passed, the value is the exchange's body. {@link #toPayload(String, String)}
+ * has to be used to turn the aggregated exchange into a message that can be
+ * published.
+ */
+public class BatchAggregationStrategy implements AggregationStrategy {
+
+	private final String headerNameForPin;
+
+	public BatchAggregationStrategy(String headerNameForPin) {
+		this.headerNameForPin = checkNotNull(headerNameForPin,
+				"headerNameForPin must not be null");
+	}
+
+	@Override
+	public Exchange aggregate(Exchange oldExchange, Exchange newExchange) {
+		Message in = newExchange.getIn();
+		Pin pin = checkNotNull(in.getHeader(headerNameForPin, Pin.class),
+				"No pin found in header %s of %s", headerNameForPin, in);
+		long timestamp = timestamp(newExchange);
+		if (oldExchange == null) {
+			in.setBody(BatchPayload.builder(timestamp).add(pin,
+					value(pin, in)));
+			return newExchange;
+		}
+		oldExchange.getIn().getBody(BatchPayload.Builder.class)
+				.timestamp(timestamp).add(pin, value(pin, in));
+		return oldExchange;
+	}
+
+	private static Object value(Pin pin, Message in) {
+		return pin.is(ANALOG) ? Integer.valueOf(in.getBody(Number.class)
+				.intValue()) : in.getBody(Boolean.class);
+	}
+
+	private static long timestamp(Exchange exchange) {
+		Date created = exchange.getProperty(Exchange.CREATED_TIMESTAMP,
+				Date.class);
+		return created == null ? System.currentTimeMillis() : created
+				.getTime();
+	}
+
+	/**
+	 * Encodes the {@link BatchPayload} of an exchange aggregated by a
+	 * {@link BatchAggregationStrategy} and sets the header for the topic.
+	 */
+	public static Processor toPayload(final String headerNameForTopic,
+			final String topic) {
+		return new Processor() {
+			@Override
+			public void process(Exchange exchange) throws Exception {
+				Message in = exchange.getIn();
+				in.setHeader(headerNameForTopic, topic);
+				in.setBody(in.getBody(BatchPayload.Builder.class).build()
+						.encode());
+			}
+		};
+	}
+
+}
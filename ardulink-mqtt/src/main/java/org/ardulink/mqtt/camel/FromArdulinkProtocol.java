@@ -9,6 +9,7 @@ import org.apache.camel.Exchange;
 import org.apache.camel.Message;
 import org.apache.camel.Processor;
 import org.ardulink.core.Pin;
+import org.ardulink.core.events.PinValueChangedEvent;
 import org.ardulink.core.messages.api.FromDeviceMessage;
 import org.ardulink.core.messages.api.FromDeviceMessagePinStateChanged;
 import org.ardulink.core.proto.api.Protocol;
@@ -24,6 +25,7 @@ public final class FromArdulinkProtocol implements Processor {
 	private final Protocol protocol = ArdulinkProtocol2.instance();
 	private final Topics topics;
 	private String headerNameForTopic = "topic";
+	private String headerNameForPin;
 
 	public static FromArdulinkProtocol fromArdulinkProtocol(Topics topics) {
 		return new FromArdulinkProtocol(topics);
@@ -39,9 +41,26 @@ public final class FromArdulinkProtocol implements Processor {
 		return this;
 	}
 
+	/**
+	 * When set the {@link Pin} of the message is stored into the header with
+	 * the passed name.
+	 */
+	public FromArdulinkProtocol headerNameForPin(String headerNameForPin) {
+		this.headerNameForPin = checkNotNull(headerNameForPin,
+				"headerNameForPin must not be null");
+		return this;
+	}
+
 	@Override
 	public void process(Exchange exchange) throws Exception {
 		Message in = exchange.getIn();
+		Object body = in.getBody();
+		if (body instanceof PinValueChangedEvent) {
+			// typed bodies (bodyType=event) need no parsing
+			PinValueChangedEvent event = (PinValueChangedEvent) body;
+			handle(in, event.getPin(), event.getValue());
+			return;
+		}
 		FromDeviceMessage deviceMessage = protocol.fromDevice(in.getBody(
 				String.class).getBytes());
 		checkState(deviceMessage instanceof FromDeviceMessagePinStateChanged,
@@ -50,10 +69,16 @@ public final class FromArdulinkProtocol implements Processor {
 	}
 
 	private void handle(Message in, FromDeviceMessagePinStateChanged event) {
-		Pin pin = event.getPin();
+		handle(in, event.getPin(), event.getValue());
+	}
+
+	private void handle(Message in, Pin pin, Object value) {
 		String topic = String.format(patternFor(pin), pin.pinNum());
 		in.setHeader(headerNameForTopic, topic);
-		in.setBody(event.getValue());
+		if (headerNameForPin != null) {
+			in.setHeader(headerNameForPin, pin);
+		}
+		in.setBody(value);
 	}
 
 	private String patternFor(Pin pin) {
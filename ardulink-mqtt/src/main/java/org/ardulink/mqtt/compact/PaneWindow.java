@@ -0,0 +1,264 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+ */
+package org.ardulink.mqtt.compact;
+
+import java.util.Arrays;
+
+import org.ardulink.mqtt.MqttCamelRouteBuilder.CompactStrategy;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * The window of one key. The window is divided into panes, one per slide,
+ * each pane is a slot of the primitive arrays. A tumbling window has exactly
+ * one pane. All methods have to be called holding the window's monitor.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+final class PaneWindow {
+
+	private static final double NANOS_PER_SECOND = 1000000000D;
+
+	private final CompactStrategy strategy;
+	private final double alpha;
+
+	private final long[] sum;
+	private final int[] count;
+	private final int[] min;
+	private final int[] max;
+	private final int[] first;
+	private final int[] last;
+	private final long[] firstNanos;
+	private final long[] lastNanos;
+
+	private final int[][] reservoir;
+	private final int[] merged;
+	private long random = 0x2545F4914F6CDD1DL;
+
+	private double ewma;
+	private boolean ewmaInitialized;
+
+	private int current;
+
+	PaneWindow(CompactStrategy strategy, int panes, double alpha,
+			int reservoirSize) {
+		this.strategy = strategy;
+		this.alpha = alpha;
+		this.sum = new long[panes];
+		this.count = new int[panes];
+		this.min = new int[panes];
+		this.max = new int[panes];
+		this.first = new int[panes];
+		this.last = new int[panes];
+		this.firstNanos = new long[panes];
+		this.lastNanos = new long[panes];
+		boolean median = strategy == CompactStrategy.MEDIAN;
+		this.reservoir = median ? new int[panes][reservoirSize] : null;
+		this.merged = median ? new int[panes * reservoirSize] : null;
+	}
+
+	synchronized void add(int value, long nanos) {
+		int p = current;
+		int n = count[p];
+		if (n == 0) {
+			min[p] = value;
+			max[p] = value;
+			first[p] = value;
+			firstNanos[p] = nanos;
+		} else {
+			min[p] = Math.min(min[p], value);
+			max[p] = Math.max(max[p], value);
+		}
+		sum[p] += value;
+		last[p] = value;
+		lastNanos[p] = nanos;
+		count[p] = n + 1;
+		if (reservoir != null) {
+			sample(reservoir[p], n, value);
+		}
+		if (strategy == CompactStrategy.EWMA) {
+			ewma = ewmaInitialized ? alpha * value + (1 - alpha) * ewma
+					: value;
+			ewmaInitialized = true;
+		}
+	}
+
+	/**
+	 * Reservoir sampling (algorithm R), seen is the number of values added to
+	 * the pane before this one.
+	 */
+	private void sample(int[] samples, int seen, int value) {
+		if (seen < samples.length) {
+			samples[seen] = value;
+		} else {
+			int idx = (int) ((nextRandom() >>> 1) % (seen + 1));
+			if (idx < samples.length) {
+				samples[idx] = value;
+			}
+		}
+	}
+
+	private long nextRandom() {
+		random ^= random << 13;
+		random ^= random >>> 7;
+		random ^= random << 17;
+		return random;
+	}
+
+	boolean hasValues() {
+		int values = 0;
+		for (int c : count) {
+			values += c;
+		}
+		if (strategy == CompactStrategy.RATE_OF_CHANGE) {
+			return values > 1 && lastNanos() != firstNanos();
+		}
+		return values > 0;
+	}
+
+	/**
+	 * Computes the value of the whole window. Must only be called if
+	 * {@link #hasValues()} returned <code>true</code>.
+	 */
+	int compute() {
+		switch (strategy) {
+		case AVERAGE:
+			return average();
+		case USE_LATEST:
+			return last[newest()];
+		case MIN:
+			return min();
+		case MAX:
+			return max();
+		case MEDIAN:
+			return median();
+		case EWMA:
+			return (int) Math.round(ewma);
+		case RATE_OF_CHANGE:
+			return rateOfChange();
+		default:
+			throw new IllegalStateException("Cannot handle " + strategy);
+		}
+	}
+
+	/**
+	 * Moves the window by one slide, dropping the values of its oldest pane.
+	 */
+	void advance() {
+		current = (current + 1) % count.length;
+		sum[current] = 0;
+		count[current] = 0;
+	}
+
+	private int average() {
+		long s = 0;
+		int n = 0;
+		for (int p = 0; p < count.length; p++) {
+			s += sum[p];
+			n += count[p];
+		}
+		return divideHalfUp(s, n);
+	}
+
+	private int min() {
+		int result = Integer.MAX_VALUE;
+		for (int p = 0; p < count.length; p++) {
+			if (count[p] > 0) {
+				result = Math.min(result, min[p]);
+			}
+		}
+		return result;
+	}
+
+	private int max() {
+		int result = Integer.MIN_VALUE;
+		for (int p = 0; p < count.length; p++) {
+			if (count[p] > 0) {
+				result = Math.max(result, max[p]);
+			}
+		}
+		return result;
+	}
+
+	private int median() {
+		int n = 0;
+		for (int p = 0; p < count.length; p++) {
+			int kept = Math.min(count[p], reservoir[p].length);
+			System.arraycopy(reservoir[p], 0, merged, n, kept);
+			n += kept;
+		}
+		Arrays.sort(merged, 0, n);
+		int mid = n / 2;
+		return n % 2 == 1 ? merged[mid] : divideHalfUp((long) merged[mid - 1]
+				+ merged[mid], 2);
+	}
+
+	private int rateOfChange() {
+		int oldest = oldest();
+		int newest = newest();
+		double seconds = (lastNanos[newest] - firstNanos[oldest])
+				/ NANOS_PER_SECOND;
+		return (int) Math.round((last[newest] - first[oldest]) / seconds);
+	}
+
+	private long firstNanos() {
+		return firstNanos[oldest()];
+	}
+
+	private long lastNanos() {
+		return lastNanos[newest()];
+	}
+
+	/**
+	 * @return the index of the oldest pane having values
+	 */
+	private int oldest() {
+		for (int i = 1; i <= count.length; i++) {
+			int p = (current + i) % count.length;
+			if (count[p] > 0) {
+				return p;
+			}
+		}
+		throw new IllegalStateException("window is empty");
+	}
+
+	/**
+	 * @return the index of the newest pane having values
+	 */
+	private int newest() {
+		for (int i = 0; i < count.length; i++) {
+			int p = (current - i + count.length) % count.length;
+			if (count[p] > 0) {
+				return p;
+			}
+		}
+		throw new IllegalStateException("window is empty");
+	}
+
+	static int divideHalfUp(long dividend, long divisor) {
+		long quotient = dividend / divisor;
+		long remainder = dividend % divisor;
+		if (2 * Math.abs(remainder) >= divisor) {
+			quotient += Long.signum(dividend);
+		}
+		return (int) quotient;
+	}
+
+}
@@ -0,0 +1,213 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+ */
+package org.ardulink.mqtt.compact;
+
+import static org.ardulink.util.Preconditions.checkArgument;
+import static org.ardulink.util.Preconditions.checkNotNull;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.ardulink.mqtt.MqttCamelRouteBuilder.CompactStrategy;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * Compacts the values of many keys (e.g. pins) using a
+ * {@link CompactStrategy}. Each key owns a {@link PaneWindow} holding
+ * primitive accumulators only, so adding a value does not allocate.
+ * {@link #drain(Sink)} has to be called every {@link #getSlideMillis()}
+ * milliseconds: It emits the compacted value of every key that had values
+ * within its window and advances the windows.
+ *
+ * A tumbling window (the default) starts from scratch on each drain. A sliding
+ * window spans several slides, so values are taken into account until they
+ * drop out of the window.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public final class WindowedAggregator<K> {
+
+	public interface Sink<K> {
+		void emit(K key, int value);
+	}
+
+	public static class Builder {
+
+		private final CompactStrategy strategy;
+		private long slideMillis;
+		private int panes = 1;
+		private double alpha = 0.3;
+		private int reservoirSize = 32;
+
+		private Builder(CompactStrategy strategy) {
+			this.strategy = checkNotNull(strategy, "strategy must not be null");
+		}
+
+		/**
+		 * Emits and restarts the window after each duration passed.
+		 */
+		public Builder tumbling(int duration, TimeUnit timeUnit) {
+			this.slideMillis = millis(duration, timeUnit);
+			this.panes = 1;
+			return this;
+		}
+
+		/**
+		 * Emits the values of the last windowDuration after each slideDuration.
+		 * The window is rounded up to a multiple of the slide.
+		 */
+		public Builder sliding(int windowDuration, int slideDuration,
+				TimeUnit timeUnit) {
+			long windowMillis = millis(windowDuration, timeUnit);
+			this.slideMillis = millis(slideDuration, timeUnit);
+			checkArgument(windowMillis >= slideMillis,
+					"window (%s) must not be shorter than the slide (%s)",
+					windowMillis, slideMillis);
+			this.panes = (int) ((windowMillis + slideMillis - 1) / slideMillis);
+			return this;
+		}
+
+		/**
+		 * Smoothing factor of {@link CompactStrategy#EWMA}, the weight of the
+		 * latest value.
+		 */
+		public Builder alpha(double alpha) {
+			checkArgument(alpha > 0 && alpha <= 1,
+					"alpha must be within (0,1] but was %s", alpha);
+			this.alpha = alpha;
+			return this;
+		}
+
+		/**
+		 * Maximum number of values per slide kept for
+		 * {@link CompactStrategy#MEDIAN}. If there are more values a uniform
+		 * random sample is kept.
+		 */
+		public Builder reservoirSize(int reservoirSize) {
+			checkArgument(reservoirSize > 0,
+					"reservoirSize must be positive but was %s", reservoirSize);
+			this.reservoirSize = reservoirSize;
+			return this;
+		}
+
+		public CompactStrategy getStrategy() {
+			return strategy;
+		}
+
+		public long getSlideMillis() {
+			return slideMillis;
+		}
+
+		public <K> WindowedAggregator<K> build() {
+			checkArgument(slideMillis > 0, "no window configured");
+			return new WindowedAggregator<K>(this);
+		}
+
+		private static long millis(int duration, TimeUnit timeUnit) {
+			checkArgument(duration > 0,
+					"duration must not be zero or negative but was %s",
+					duration);
+			return checkNotNull(timeUnit, "timeUnit must not be null")
+					.toMillis(duration);
+		}
+
+	}
+
+	private final CompactStrategy strategy;
+	private final long slideMillis;
+	private final int panes;
+	private final double alpha;
+	private final int reservoirSize;
+	private final ConcurrentMap<K, PaneWindow> windows = new ConcurrentHashMap<K, PaneWindow>();
+	/**
+	 * the windows in the order their keys were seen first
+	 */
+	private final List<Entry<K, PaneWindow>> ordered = new CopyOnWriteArrayList<Entry<K, PaneWindow>>();
+
+	public static Builder builder(CompactStrategy strategy) {
+		return new Builder(strategy);
+	}
+
+	private WindowedAggregator(Builder builder) {
+		this.strategy = builder.strategy;
+		this.slideMillis = builder.slideMillis;
+		this.panes = builder.panes;
+		this.alpha = builder.alpha;
+		this.reservoirSize = builder.reservoirSize;
+	}
+
+	public CompactStrategy getStrategy() {
+		return strategy;
+	}
+
+	public long getSlideMillis() {
+		return slideMillis;
+	}
+
+	public void add(K key, int value) {
+		add(key, value, System.nanoTime());
+	}
+
+	/**
+	 * Adds a value sampled at the passed time (as returned by
+	 * {@link System#nanoTime()}).
+	 */
+	public void add(K key, int value, long nanos) {
+		window(key).add(value, nanos);
+	}
+
+	public void drain(Sink<K> sink) {
+		for (Entry<K, PaneWindow> entry : ordered) {
+			PaneWindow window = entry.getValue();
+			int value;
+			synchronized (window) {
+				boolean hasValue = window.hasValues();
+				value = hasValue ? window.compute() : 0;
+				window.advance();
+				if (!hasValue) {
+					continue;
+				}
+			}
+			sink.emit(entry.getKey(), value);
+		}
+	}
+
+	private PaneWindow window(K key) {
+		PaneWindow window = windows.get(key);
+		if (window == null) {
+			PaneWindow newWindow = new PaneWindow(strategy, panes, alpha,
+					reservoirSize);
+			window = windows.putIfAbsent(key, newWindow);
+			if (window == null) {
+				window = newWindow;
+				ordered.add(new SimpleImmutableEntry<K, PaneWindow>(key,
+						newWindow));
+			}
+		}
+		return window;
+	}
+
+}
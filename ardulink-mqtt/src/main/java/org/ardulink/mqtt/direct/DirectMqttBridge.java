@@ -0,0 +1,411 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+ */
+package org.ardulink.mqtt.direct;
+
+import static java.lang.Boolean.parseBoolean;
+import static java.lang.Integer.parseInt;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.ardulink.core.Pin.analogPin;
+import static org.ardulink.core.Pin.digitalPin;
+import static org.ardulink.util.Preconditions.checkArgument;
+import static org.ardulink.util.Preconditions.checkNotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.ardulink.core.Link;
+import org.ardulink.core.Pin;
+import org.ardulink.core.Pin.Type;
+import org.ardulink.core.events.AnalogPinValueChangedEvent;
+import org.ardulink.core.events.DigitalPinValueChangedEvent;
+import org.ardulink.core.events.EventListener;
+import org.ardulink.core.mqtt.BatchPayload;
+import org.ardulink.mqtt.MqttCamelRouteBuilder.CompactStrategy;
+import org.ardulink.mqtt.MqttCamelRouteBuilder.MqttConnectionProperties;
+import org.ardulink.mqtt.TopicRouter;
+import org.ardulink.mqtt.TopicRouter.Match;
+import org.ardulink.mqtt.Topics;
+import org.ardulink.mqtt.buffer.BufferDrainer;
+import org.ardulink.mqtt.buffer.BufferDrainer.Publisher;
+import org.ardulink.mqtt.buffer.PublishBuffer;
+import org.ardulink.mqtt.buffer.PublishBuffer.Message;
+import org.ardulink.mqtt.buffer.PublishBuffer.Overflow;
+import org.ardulink.mqtt.compact.WindowedAggregator;
+import org.ardulink.mqtt.compact.WindowedAggregator.Sink;
+import org.ardulink.mqtt.direct.MqttClientConnection.Handler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * Connects a {@link Link} directly to a mqtt broker. Other than the camel
+ * based routes there is no intermediate text protocol: Events of the link are
+ * published as they are and messages received from the broker are turned into
+ * calls on the link. Topics, the control channel, compaction and batching
+ * behave the same as in the camel routes built by
+ * {@link org.ardulink.mqtt.MqttCamelRouteBuilder}.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public class DirectMqttBridge implements Closeable {
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(DirectMqttBridge.class);
+
+	private static final int BUFFER_BATCH_SIZE = 64;
+
+	public static class Builder {
+
+		private final Link link;
+		private final Topics topics;
+		private MqttConnectionProperties properties = new MqttConnectionProperties();
+		private MqttClientConnection connection;
+		private WindowedAggregator.Builder compaction;
+		private long batchMillis;
+		private PublishBuffer buffer;
+
+		private Builder(Link link, Topics topics) {
+			this.link = checkNotNull(link, "link must not be null");
+			this.topics = checkNotNull(topics, "topics must not be null");
+		}
+
+		public Builder properties(MqttConnectionProperties properties) {
+			this.properties = checkNotNull(properties,
+					"properties must not be null");
+			return this;
+		}
+
+		/**
+		 * Use the (shared) connection passed instead of opening a connection
+		 * using the {@link #properties(MqttConnectionProperties)}. The
+		 * connection is not closed when the bridge is closed.
+		 */
+		public Builder connection(MqttClientConnection connection) {
+			this.connection = checkNotNull(connection,
+					"connection must not be null");
+			return this;
+		}
+
+		public Builder compact(CompactStrategy strategy, int duration,
+				TimeUnit timeUnit) {
+			return compact(WindowedAggregator.builder(strategy).tumbling(
+					duration, timeUnit));
+		}
+
+		public Builder compact(WindowedAggregator.Builder compaction) {
+			this.compaction = checkNotNull(compaction,
+					"compaction must not be null");
+			return this;
+		}
+
+		public Builder batch(int duration, TimeUnit timeUnit) {
+			checkArgument(topics.getTopicBatch() != null,
+					"batch topic not enabled in %s", topics);
+			checkArgument(duration > 0,
+					"duration must not be zero or negative but was %s",
+					duration);
+			this.batchMillis = checkNotNull(timeUnit,
+					"timeUnit must not be null").toMillis(duration);
+			return this;
+		}
+
+		/**
+		 * Decouples the link from the broker: Messages are buffered (up to
+		 * capacity) and published by a separate thread, so a slow or
+		 * unreachable broker does not block the link. Batches are never
+		 * conflated.
+		 */
+		public Builder buffer(int capacity, Overflow overflow) {
+			this.buffer = new PublishBuffer(capacity, overflow,
+					PublishBuffer.unconflated(topics));
+			return this;
+		}
+
+		public DirectMqttBridge start() throws IOException {
+			return new DirectMqttBridge(this);
+		}
+
+	}
+
+	private final Link link;
+	private final Topics topics;
+	private final TopicRouter router;
+	private final WindowedAggregator<Pin> aggregator;
+	private final boolean batching;
+	private final MqttClientConnection connection;
+	private final boolean ownsConnection;
+	private final PublishBuffer buffer;
+	private final BufferDrainer drainer;
+	private final EventListener eventListener = eventListener();
+	private final Handler handler = handler();
+	private final Executor inbound;
+	private final List<ScheduledFuture<?>> scheduled = new ArrayList<ScheduledFuture<?>>();
+	private final ConcurrentMap<Pin, String> readTopics = new ConcurrentHashMap<Pin, String>();
+	private final Object batchLock = new Object();
+	private BatchPayload.Builder batch = BatchPayload.builder(0);
+
+	private final Sink<Pin> emitter = new Sink<Pin>() {
+		@Override
+		public void emit(Pin pin, int value) {
+			DirectMqttBridge.this.emit(pin, Integer.valueOf(value));
+		}
+	};
+
+	public static Builder builder(Link link, Topics topics) {
+		return new Builder(link, topics);
+	}
+
+	private DirectMqttBridge(Builder builder) throws IOException {
+		this.link = builder.link;
+		this.topics = builder.topics;
+		this.router = TopicRouter.compile(builder.topics);
+		this.aggregator = builder.compaction == null ? null : builder.compaction
+				.<Pin> build();
+		this.batching = builder.batchMillis > 0;
+		this.ownsConnection = builder.connection == null;
+		this.connection = ownsConnection ? MqttClientConnection
+				.connect(builder.properties) : builder.connection;
+		this.inbound = connection.newLane();
+		this.buffer = builder.buffer;
+		this.drainer = buffer == null ? null : BufferDrainer.start(buffer,
+				new Publisher() {
+					@Override
+					public void publish(List<Message> messages)
+							throws IOException {
+						connection.publishAll(messages);
+					}
+				}, BUFFER_BATCH_SIZE);
+		try {
+			this.connection.subscribe(topics.getTopic(), handler);
+		} catch (IOException e) {
+			closeDrainer();
+			closeConnection();
+			throw e;
+		}
+		if (aggregator != null) {
+			scheduleAtFixedRate(new Runnable() {
+				@Override
+				public void run() {
+					flushWindows();
+				}
+			}, aggregator.getSlideMillis());
+		}
+		if (batching) {
+			scheduleAtFixedRate(new Runnable() {
+				@Override
+				public void run() {
+					flushBatch();
+				}
+			}, builder.batchMillis);
+		}
+		this.link.addListener(eventListener);
+	}
+
+	private void scheduleAtFixedRate(final Runnable runnable, long millis) {
+		Runnable logging = new Runnable() {
+			@Override
+			public void run() {
+				try {
+					runnable.run();
+				} catch (Exception e) {
+					logger.error("Error while flushing", e);
+				}
+			}
+		};
+		this.scheduled.add(connection.getScheduler().scheduleAtFixedRate(
+				logging, millis, millis, MILLISECONDS));
+	}
+
+	private Handler handler() {
+		return new Handler() {
+			@Override
+			public void handle(final String topic, final String value) {
+				inbound.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							DirectMqttBridge.this.handle(topic, value);
+						} catch (Exception e) {
+							logger.error("Cannot handle {} on {}", value,
+									topic, e);
+						}
+					}
+				});
+			}
+		};
+	}
+
+	private EventListener eventListener() {
+		return new EventListener() {
+
+			@Override
+			public void stateChanged(AnalogPinValueChangedEvent event) {
+				Pin pin = event.getPin();
+				int value = event.getValue().intValue();
+				if (aggregator == null) {
+					emit(pin, Integer.valueOf(value));
+				} else {
+					aggregator.add(pin, value);
+				}
+			}
+
+			@Override
+			public void stateChanged(DigitalPinValueChangedEvent event) {
+				emit(event.getPin(), event.getValue());
+			}
+
+		};
+	}
+
+	private void emit(Pin pin, Object value) {
+		if (batching) {
+			synchronized (batchLock) {
+				batch.timestamp(System.currentTimeMillis()).add(pin, value);
+			}
+		} else {
+			publish(readTopic(pin), String.valueOf(value));
+		}
+	}
+
+	private String readTopic(Pin pin) {
+		String topic = readTopics.get(pin);
+		if (topic == null) {
+			topic = String.format(pin.is(Type.ANALOG) ? topics
+					.getTopicPatternAnalogRead() : topics
+					.getTopicPatternDigitalRead(), pin.pinNum());
+			readTopics.putIfAbsent(pin, topic);
+		}
+		return topic;
+	}
+
+	private void flushWindows() {
+		aggregator.drain(emitter);
+	}
+
+	private void flushBatch() {
+		BatchPayload payload;
+		synchronized (batchLock) {
+			if (batch.isEmpty()) {
+				return;
+			}
+			payload = batch.build();
+			batch = BatchPayload.builder(0);
+		}
+		publish(topics.getTopicBatch(), payload.encode());
+	}
+
+	private void publish(String topic, String payload) {
+		if (buffer == null) {
+			connection.publish(topic, payload);
+		} else {
+			buffer.offer(topic, payload);
+		}
+	}
+
+	private void handle(String topic, String value) throws IOException {
+		Match match = router.route(topic);
+		if (match == null) {
+			return;
+		}
+		int pin = match.getPin();
+		switch (match.getKind()) {
+		case DIGITAL_WRITE:
+			link.switchDigitalPin(digitalPin(pin), parseBoolean(value));
+			break;
+		case ANALOG_WRITE:
+			link.switchAnalogPin(analogPin(pin), parseInt(value));
+			break;
+		case ANALOG_CONTROL:
+			changeListeningState(analogPin(pin), parseBoolean(value));
+			break;
+		case DIGITAL_CONTROL:
+			changeListeningState(digitalPin(pin), parseBoolean(value));
+			break;
+		default:
+			throw new IllegalStateException("Cannot handle " + match);
+		}
+	}
+
+	private void changeListeningState(Pin pin, boolean listen)
+			throws IOException {
+		if (listen) {
+			link.startListening(pin);
+		} else {
+			link.stopListening(pin);
+		}
+	}
+
+	public boolean isConnected() {
+		return connection.isConnected();
+	}
+
+	/**
+	 * Returns the buffer messages are published through or <code>null</code>
+	 * if messages are published immediately.
+	 */
+	public PublishBuffer getPublishBuffer() {
+		return buffer;
+	}
+
+	@Override
+	public void close() throws IOException {
+		link.removeListener(eventListener);
+		connection.unsubscribe(handler);
+		for (ScheduledFuture<?> future : scheduled) {
+			future.cancel(false);
+		}
+		try {
+			if (aggregator != null) {
+				flushWindows();
+			}
+			if (batching) {
+				flushBatch();
+			}
+		} finally {
+			try {
+				closeDrainer();
+				closeConnection();
+			} finally {
+				link.close();
+			}
+		}
+	}
+
+	private void closeDrainer() {
+		if (drainer != null) {
+			drainer.close();
+		}
+	}
+
+	private void closeConnection() throws IOException {
+		if (ownsConnection) {
+			connection.close();
+		}
+	}
+
+}
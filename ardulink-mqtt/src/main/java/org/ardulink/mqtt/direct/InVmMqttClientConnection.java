@@ -0,0 +1,91 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+ */
+package org.ardulink.mqtt.direct;
+
+import java.util.List;
+
+import org.ardulink.mqtt.MqttBroker;
+import org.ardulink.mqtt.MqttBroker.PublishListener;
+import org.ardulink.mqtt.buffer.PublishBuffer.Message;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * {@link MqttClientConnection} to a {@link MqttBroker} running in the same
+ * JVM. Messages are injected into the broker directly and the messages
+ * published by the broker's clients are received through an interceptor, so
+ * there is no socket, no client session and no (de)serialization of mqtt
+ * frames. Since the interceptor sees every message published the topic
+ * filtering is done by this connection itself.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+class InVmMqttClientConnection extends MqttClientConnection {
+
+	private final MqttBroker broker;
+	private volatile boolean connected;
+
+	private final PublishListener listener = new PublishListener() {
+		@Override
+		public void published(String topic, byte[] payload) {
+			received(topic, new String(payload));
+		}
+	};
+
+	InVmMqttClientConnection(MqttBroker broker) {
+		this.broker = broker;
+		this.broker.addPublishListener(listener);
+		this.connected = true;
+	}
+
+	@Override
+	protected void subscribe(String topicFilter) {
+		// the listener receives all messages published
+	}
+
+	@Override
+	protected void unsubscribe(String topicFilter) {
+		// the listener receives all messages published
+	}
+
+	@Override
+	public void publish(String topic, String payload) {
+		broker.publish(topic, payload.getBytes());
+	}
+
+	@Override
+	public void publishAll(List<Message> messages) {
+		for (Message message : messages) {
+			publish(message.getTopic(), message.getPayload());
+		}
+	}
+
+	@Override
+	public boolean isConnected() {
+		return connected;
+	}
+
+	@Override
+	protected void disconnect() {
+		connected = false;
+		broker.removePublishListener(listener);
+	}
+
+}
@@ -0,0 +1,184 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+ */
+package org.ardulink.mqtt.direct;
+
+import static org.ardulink.util.Preconditions.checkNotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.ardulink.mqtt.MqttBroker;
+import org.ardulink.mqtt.MqttCamelRouteBuilder.MqttConnectionProperties;
+import org.ardulink.mqtt.buffer.PublishBuffer.Message;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * One connection to the mqtt broker that can be shared by many
+ * {@link DirectMqttBridge}s. Messages received are handed to the
+ * {@link Handler} whose topic prefix matches. The connection also owns the
+ * threads of its bridges: A scheduler for periodic work and a worker pool
+ * that {@link #newLane() lanes} run on. Each bridge uses its own lane so a
+ * bridge blocking (e.g. writing to a stalled serial port) does not delay the
+ * others. <br>
+ * Connections are either made over the network ({@link #connect}) or, if the
+ * broker runs inside the same JVM, directly to the broker ({@link #inVm}).
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public abstract class MqttClientConnection implements Closeable {
+
+	public interface Handler {
+		void handle(String topic, String value);
+	}
+
+	private static class Subscription {
+
+		private final String prefix;
+		private final Handler handler;
+
+		private Subscription(String prefix, Handler handler) {
+			this.prefix = prefix;
+			this.handler = handler;
+		}
+
+	}
+
+	private final List<Subscription> subscriptions = new CopyOnWriteArrayList<Subscription>();
+	private final ScheduledExecutorService scheduler = Executors
+			.newSingleThreadScheduledExecutor();
+	private final ExecutorService workers = Executors.newCachedThreadPool();
+
+	/**
+	 * Connects to the broker over the network.
+	 */
+	public static MqttClientConnection connect(
+			MqttConnectionProperties properties) throws IOException {
+		NetworkMqttClientConnection connection = new NetworkMqttClientConnection(
+				properties);
+		try {
+			connection.connect();
+			return connection;
+		} catch (IOException e) {
+			connection.shutdownThreads();
+			throw e;
+		}
+	}
+
+	/**
+	 * Connects to a broker running inside this JVM. Messages are passed to and
+	 * from the broker without any serialization or socket in between.
+	 */
+	public static MqttClientConnection inVm(MqttBroker broker) {
+		return new InVmMqttClientConnection(checkNotNull(broker,
+				"broker must not be null"));
+	}
+
+	/**
+	 * Subscribes to all topics below the prefix passed. Messages received on
+	 * these topics are passed to the handler (on the connection's thread, so
+	 * the handler should return quickly).
+	 */
+	public void subscribe(String prefix, Handler handler) throws IOException {
+		Subscription subscription = new Subscription(checkNotNull(prefix,
+				"prefix must not be null"), checkNotNull(handler,
+				"handler must not be null"));
+		subscriptions.add(subscription);
+		try {
+			subscribe(prefix + "#");
+		} catch (IOException e) {
+			subscriptions.remove(subscription);
+			throw e;
+		}
+	}
+
+	public void unsubscribe(Handler handler) {
+		for (Subscription subscription : subscriptions) {
+			if (subscription.handler == handler) {
+				subscriptions.remove(subscription);
+				unsubscribe(subscription.prefix + "#");
+			}
+		}
+	}
+
+	public abstract void publish(String topic, String payload);
+
+	/**
+	 * Publishes all messages passed and waits until the broker has received
+	 * them.
+	 * 
+	 * @throws IOException
+	 *             if not all messages could be published
+	 */
+	public abstract void publishAll(List<Message> messages) throws IOException;
+
+	public abstract boolean isConnected();
+
+	protected abstract void subscribe(String topicFilter) throws IOException;
+
+	protected abstract void unsubscribe(String topicFilter);
+
+	/**
+	 * Hands a message received from the broker to the handlers subscribed.
+	 */
+	protected void received(String topic, String value) {
+		for (Subscription subscription : subscriptions) {
+			if (topic.startsWith(subscription.prefix)) {
+				subscription.handler.handle(topic, value);
+			}
+		}
+	}
+
+	/**
+	 * Returns a new {@link Executor} running its tasks one after the other on
+	 * the worker pool of this connection.
+	 */
+	public Executor newLane() {
+		return new SerialExecutor(workers);
+	}
+
+	public ScheduledExecutorService getScheduler() {
+		return scheduler;
+	}
+
+	@Override
+	public void close() throws IOException {
+		subscriptions.clear();
+		try {
+			disconnect();
+		} finally {
+			shutdownThreads();
+		}
+	}
+
+	protected abstract void disconnect();
+
+	protected void shutdownThreads() {
+		scheduler.shutdown();
+		workers.shutdown();
+	}
+
+}
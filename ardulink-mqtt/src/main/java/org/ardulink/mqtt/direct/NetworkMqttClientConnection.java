@@ -0,0 +1,255 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+ */
+package org.ardulink.mqtt.direct;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.ardulink.util.Preconditions.checkNotNull;
+import static org.fusesource.mqtt.client.QoS.AT_LEAST_ONCE;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.ardulink.mqtt.MqttCamelRouteBuilder.MqttConnectionProperties;
+import org.ardulink.mqtt.buffer.PublishBuffer.Message;
+import org.ardulink.util.URIs;
+import org.fusesource.hawtbuf.Buffer;
+import org.fusesource.hawtbuf.UTF8Buffer;
+import org.fusesource.mqtt.client.Callback;
+import org.fusesource.mqtt.client.CallbackConnection;
+import org.fusesource.mqtt.client.Listener;
+import org.fusesource.mqtt.client.MQTT;
+import org.fusesource.mqtt.client.Promise;
+import org.fusesource.mqtt.client.Topic;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * {@link MqttClientConnection} talking to the broker over tcp/ssl.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+class NetworkMqttClientConnection extends MqttClientConnection {
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(NetworkMqttClientConnection.class);
+
+	private static final int PUBLISH_TIMEOUT_SECONDS = 10;
+
+	private final CallbackConnection connection;
+	private volatile boolean connected;
+
+	private final Callback<Void> publishCallback = new Callback<Void>() {
+
+		@Override
+		public void onSuccess(Void value) {
+			// nothing to do
+		}
+
+		@Override
+		public void onFailure(Throwable value) {
+			logger.error("Error publishing message", value);
+		}
+
+	};
+
+	NetworkMqttClientConnection(MqttConnectionProperties properties) {
+		this.connection = new CallbackConnection(newClient(checkNotNull(
+				properties, "properties must not be null")));
+		this.connection.listener(connectionListener());
+	}
+
+	private static MQTT newClient(MqttConnectionProperties properties) {
+		MQTT client = new MQTT();
+		client.setHost(URIs.newURI((properties.isSsl() ? "ssl" : "tcp") + "://"
+				+ properties.getBrokerHost() + ":"
+				+ properties.getBrokerPort()));
+		client.setClientId(properties.hasClientId() ? properties
+				.getClientId() : properties.getName());
+		if (properties.hasAuth()) {
+			client.setUserName(properties.getUser());
+			client.setPassword(new String(properties.getPass()));
+		}
+		client.setConnectAttemptsMax(1);
+		client.setReconnectAttemptsMax(0);
+		return client;
+	}
+
+	void connect() throws IOException {
+		final Promise<Void> promise = new Promise<Void>();
+		dispatch(new Runnable() {
+			@Override
+			public void run() {
+				connection.connect(promise);
+			}
+		});
+		await(promise);
+	}
+
+	@Override
+	protected void subscribe(final String topicFilter) throws IOException {
+		final Promise<byte[]> promise = new Promise<byte[]>();
+		dispatch(new Runnable() {
+			@Override
+			public void run() {
+				connection.subscribe(new Topic[] { new Topic(topicFilter,
+						AT_LEAST_ONCE) }, promise);
+			}
+		});
+		await(promise);
+	}
+
+	@Override
+	protected void unsubscribe(final String topicFilter) {
+		dispatch(new Runnable() {
+			@Override
+			public void run() {
+				connection.unsubscribe(
+						new UTF8Buffer[] { new UTF8Buffer(topicFilter) },
+						new Promise<Void>());
+			}
+		});
+	}
+
+	@Override
+	public void publish(final String topic, String payload) {
+		final byte[] bytes = payload.getBytes();
+		dispatch(new Runnable() {
+			@Override
+			public void run() {
+				connection.publish(topic, bytes, AT_LEAST_ONCE, false,
+						publishCallback);
+			}
+		});
+	}
+
+	@Override
+	public void publishAll(final List<Message> messages) throws IOException {
+		final CountDownLatch acknowledged = new CountDownLatch(messages.size());
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		final Callback<Void> callback = new Callback<Void>() {
+
+			@Override
+			public void onSuccess(Void value) {
+				acknowledged.countDown();
+			}
+
+			@Override
+			public void onFailure(Throwable value) {
+				failure.compareAndSet(null, value);
+				acknowledged.countDown();
+			}
+
+		};
+		dispatch(new Runnable() {
+			@Override
+			public void run() {
+				for (Message message : messages) {
+					connection.publish(message.getTopic(), message
+							.getPayload().getBytes(), AT_LEAST_ONCE, false,
+							callback);
+				}
+			}
+		});
+		try {
+			if (!acknowledged.await(PUBLISH_TIMEOUT_SECONDS, SECONDS)) {
+				throw new IOException("Broker did not acknowledge "
+						+ messages.size() + " messages within "
+						+ PUBLISH_TIMEOUT_SECONDS + " seconds");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		}
+		if (failure.get() != null) {
+			throw new IOException(failure.get());
+		}
+	}
+
+	@Override
+	public boolean isConnected() {
+		return connected;
+	}
+
+	/**
+	 * The {@link CallbackConnection} has to be accessed from its dispatch
+	 * queue only.
+	 */
+	private void dispatch(Runnable runnable) {
+		this.connection.getDispatchQueue().execute(runnable);
+	}
+
+	private static <T> T await(Promise<T> promise) throws IOException {
+		try {
+			return promise.await();
+		} catch (IOException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOException(e);
+		}
+	}
+
+	private Listener connectionListener() {
+		return new Listener() {
+
+			@Override
+			public void onPublish(UTF8Buffer topic, Buffer body, Runnable ack) {
+				received(topic.toString(), new String(body.toByteArray()));
+				ack.run();
+			}
+
+			@Override
+			public void onFailure(Throwable value) {
+				logger.error("Connection failure", value);
+			}
+
+			@Override
+			public void onDisconnected() {
+				connected = false;
+			}
+
+			@Override
+			public void onConnected() {
+				connected = true;
+			}
+
+		};
+	}
+
+	@Override
+	protected void disconnect() {
+		try {
+			final Promise<Void> disconnected = new Promise<Void>();
+			dispatch(new Runnable() {
+				@Override
+				public void run() {
+					connection.disconnect(disconnected);
+				}
+			});
+			disconnected.await(5, SECONDS);
+		} catch (Exception e) {
+			logger.warn("Error disconnecting from broker", e);
+		}
+	}
+
+}
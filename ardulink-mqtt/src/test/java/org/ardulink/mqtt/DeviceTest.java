@@ -0,0 +1,84 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package org.ardulink.mqtt;
+
+import static org.ardulink.core.Pin.analogPin;
+import static org.ardulink.core.Pin.digitalPin;
+import static org.ardulink.mqtt.MqttCamelRouteBuilder.CompactStrategy.AVERAGE;
+import static org.ardulink.mqtt.MqttCamelRouteBuilder.CompactStrategy.MAX;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+
+import org.ardulink.core.Pin;
+import org.junit.Test;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public class DeviceTest {
+
+	private final Device defaults = new Device()
+			.connection("ardulink://serial").brokerTopic("home/devices")
+			.analogs(0).throttleMillis(250).compactStrategy(AVERAGE);
+
+	@Test
+	public void valuesNotGivenAreTakenFromDefaults() {
+		Device device = Device.parse(
+				"connection=ardulink://serial?port=/dev/ttyUSB1&baudrate=115200",
+				defaults);
+		assertThat(device.getConnection(),
+				is("ardulink://serial?port=/dev/ttyUSB1&baudrate=115200"));
+		assertThat(device.getBrokerTopic(), is("home/devices/"));
+		assertThat(device.getListenToPins(), is(Arrays.<Pin> asList(analogPin(0))));
+		assertThat(device.getThrottleMillis(), is(250));
+		assertThat(device.getCompactStrategy(), is(AVERAGE));
+	}
+
+	@Test
+	public void canOverwriteAllValues() {
+		Device device = Device.parse("connection=ardulink://virtual; "
+				+ "brokerTopic=home/uno2;a=1,2;d=3;athms=100;athstr=max;"
+				+ "athwin=1000", defaults);
+		assertThat(device.getConnection(), is("ardulink://virtual"));
+		assertThat(device.getBrokerTopic(), is("home/uno2/"));
+		assertThat(device.getListenToPins(), is(Arrays.<Pin> asList(digitalPin(3),
+				analogPin(1), analogPin(2))));
+		assertThat(device.getThrottleMillis(), is(100));
+		assertThat(device.getCompactStrategy(), is(MAX));
+		assertThat(device.getWindowMillis(), is(1000));
+	}
+
+	@Test
+	public void defaultsAreNotModified() {
+		Device.parse("a=5;brokerTopic=other", defaults);
+		assertThat(defaults.getBrokerTopic(), is("home/devices/"));
+		assertThat(defaults.getListenToPins(), is(Arrays.<Pin> asList(analogPin(0))));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void unknownAttributesAreRejected() {
+		Device.parse("port=/dev/ttyUSB0", defaults);
+	}
+
+}
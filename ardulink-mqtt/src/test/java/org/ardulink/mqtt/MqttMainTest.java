@@ -0,0 +1,53 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+
+package org.ardulink.mqtt;
+
+import static org.hamcrest.CoreMatchers.containsString;
+
+import org.ardulink.mqtt.MqttMain.Engine;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public class MqttMainTest {
+
+	@Rule
+	public ExpectedException exceptions = ExpectedException.none();
+
+	@Test
+	public void camelEngineDoesNotBridgeMoreThanOneDevice() throws Exception {
+		MqttMain mqttMain = new MqttMain();
+		mqttMain.setBrokerTopic("home/devices/ardulink/");
+		mqttMain.setEngine(Engine.CAMEL);
+		mqttMain.setStandalone(true);
+		mqttMain.setDevices("connection=ardulink://mock;brokerTopic=a/",
+				"connection=ardulink://mock;brokerTopic=b/");
+		exceptions.expect(IllegalStateException.class);
+		exceptions.expectMessage(containsString("-engine DIRECT"));
+		mqttMain.connectToMqttBroker();
+	}
+
+}
@@ -0,0 +1,101 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package org.ardulink.mqtt;
+
+import static org.ardulink.mqtt.TopicRouter.Kind.ANALOG_CONTROL;
+import static org.ardulink.mqtt.TopicRouter.Kind.ANALOG_WRITE;
+import static org.ardulink.mqtt.TopicRouter.Kind.DIGITAL_CONTROL;
+import static org.ardulink.mqtt.TopicRouter.Kind.DIGITAL_WRITE;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.regex.Pattern;
+
+import org.ardulink.mqtt.TopicRouter.Kind;
+import org.ardulink.mqtt.TopicRouter.Match;
+import org.junit.Test;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public class TopicRouterTest {
+
+	private static final String TOPIC = "home/devices/ardulink/";
+
+	@Test
+	public void resolvesWriteTopics() {
+		TopicRouter sut = TopicRouter.compile(Topics.basedOn(TOPIC));
+		assertMatch(sut.route(TOPIC + "D13"), DIGITAL_WRITE, 13);
+		assertMatch(sut.route(TOPIC + "A0"), ANALOG_WRITE, 0);
+		assertMatch(sut.route(TOPIC + "A1234"), ANALOG_WRITE, 1234);
+	}
+
+	@Test
+	public void resolvesControlTopics() {
+		TopicRouter sut = TopicRouter.compile(Topics.basedOn(TOPIC)
+				.withControlChannelEnabled());
+		assertMatch(sut.route(TOPIC + "system/listening/D2"),
+				DIGITAL_CONTROL, 2);
+		assertMatch(sut.route(TOPIC + "system/listening/A3"),
+				ANALOG_CONTROL, 3);
+		assertMatch(sut.route(TOPIC + "D2"), DIGITAL_WRITE, 2);
+	}
+
+	@Test
+	public void resolvesTopicsWithSuffix() {
+		TopicRouter sut = TopicRouter.compile(Topics
+				.withSeparateReadWriteTopics(TOPIC).withControlChannelEnabled());
+		assertMatch(sut.route(TOPIC + "D2/value/set"), DIGITAL_WRITE, 2);
+		assertMatch(sut.route(TOPIC + "system/listening/A3/value/set"),
+				ANALOG_CONTROL, 3);
+		assertThat(sut.route(TOPIC + "D2/value/get"), is(nullValue()));
+		assertThat(sut.route(TOPIC + "D2"), is(nullValue()));
+	}
+
+	@Test
+	public void doesNotResolveUnknownTopics() {
+		TopicRouter sut = TopicRouter.compile(Topics.basedOn(TOPIC));
+		assertThat(sut.route(TOPIC + "D"), is(nullValue()));
+		assertThat(sut.route(TOPIC + "Dx"), is(nullValue()));
+		assertThat(sut.route(TOPIC + "D1x"), is(nullValue()));
+		assertThat(sut.route(TOPIC + "D99999999999"), is(nullValue()));
+		assertThat(sut.route(TOPIC + "system/listening/D2"), is(nullValue()));
+		assertThat(sut.route("other/D2"), is(nullValue()));
+		assertThat(sut.route(""), is(nullValue()));
+	}
+
+	@Test
+	public void fallsBackToRegexForNonLiteralPatterns() {
+		TopicRouter sut = TopicRouter.compile(Topics.basedOn(TOPIC)
+				.withTopicPatternDigitalWrite(
+						Pattern.compile("home/.+/D(\\w+)/set")));
+		assertMatch(sut.route("home/foo/bar/D7/set"), DIGITAL_WRITE, 7);
+		assertMatch(sut.route(TOPIC + "A7"), ANALOG_WRITE, 7);
+	}
+
+	private static void assertMatch(Match match, Kind kind, int pin) {
+		assertThat(match.getKind(), is(kind));
+		assertThat(match.getPin(), is(pin));
+	}
+
+}
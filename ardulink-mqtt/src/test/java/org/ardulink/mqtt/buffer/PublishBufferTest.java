@@ -0,0 +1,153 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package org.ardulink.mqtt.buffer;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.ardulink.mqtt.buffer.PublishBuffer.Overflow.BLOCK;
+import static org.ardulink.mqtt.buffer.PublishBuffer.Overflow.CONFLATE;
+import static org.ardulink.mqtt.buffer.PublishBuffer.Overflow.DROP_OLDEST;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.ardulink.mqtt.Topics;
+import org.ardulink.mqtt.buffer.BufferDrainer.Publisher;
+import org.ardulink.mqtt.buffer.PublishBuffer.Message;
+import org.junit.Test;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public class PublishBufferTest {
+
+	@Test
+	public void conflatesPerTopicKeepingTheLatestValue() {
+		PublishBuffer sut = new PublishBuffer(2, CONFLATE);
+		sut.offer("A0", "1");
+		sut.offer("A1", "2");
+		sut.offer("A0", "3");
+		assertThat(sut.getDepth(), is(2));
+		assertThat(sut.getConflated(), is(1L));
+		sut.offer("A2", "4");
+		assertThat(sut.getDropped(), is(1L));
+		assertThat(values(sut.poll(10)), is(Arrays.asList("A1=2", "A2=4")));
+	}
+
+	@Test
+	public void doesNotConflateTheBatchTopic() {
+		Topics topics = Topics.basedOn("home/devices/ardulink/")
+				.withBatchTopicEnabled();
+		String batch = topics.getTopicBatch();
+		PublishBuffer sut = new PublishBuffer(10, CONFLATE,
+				PublishBuffer.unconflated(topics));
+		sut.offer(batch, "1;A0=1");
+		sut.offer("A0", "1");
+		sut.offer(batch, "2;A0=2");
+		sut.offer("A0", "2");
+		assertThat(sut.getConflated(), is(1L));
+		assertThat(values(sut.poll(10)), is(Arrays.asList(batch + "=1;A0=1",
+				"A0=2", batch + "=2;A0=2")));
+	}
+
+	@Test
+	public void dropsOldest() {
+		PublishBuffer sut = new PublishBuffer(2, DROP_OLDEST);
+		sut.offer("A0", "1");
+		sut.offer("A0", "2");
+		sut.offer("A0", "3");
+		assertThat(sut.getDropped(), is(1L));
+		assertThat(values(sut.poll(10)), is(Arrays.asList("A0=2", "A0=3")));
+		assertThat(sut.getDepth(), is(0));
+	}
+
+	@Test
+	public void blocksUntilThereIsRoom() throws InterruptedException {
+		final PublishBuffer sut = new PublishBuffer(1, BLOCK);
+		sut.offer("A0", "1");
+		final CountDownLatch offered = new CountDownLatch(1);
+		new Thread() {
+			@Override
+			public void run() {
+				sut.offer("A0", "2");
+				offered.countDown();
+			}
+		}.start();
+		assertThat(offered.await(100, MILLISECONDS), is(false));
+		assertThat(values(sut.take(1, 1, SECONDS)), is(Arrays.asList("A0=1")));
+		assertThat(offered.await(5, SECONDS), is(true));
+		assertThat(values(sut.poll(10)), is(Arrays.asList("A0=2")));
+		assertThat(sut.getDropped(), is(0L));
+	}
+
+	@Test
+	public void requeuedMessagesAreNotOlderThanTheBufferedOnes() {
+		PublishBuffer sut = new PublishBuffer(10, CONFLATE);
+		sut.offer("A0", "1");
+		sut.offer("A1", "2");
+		List<Message> failed = sut.poll(10);
+		sut.offer("A1", "3");
+		sut.requeue(failed);
+		assertThat(values(sut.poll(10)), is(Arrays.asList("A0=1", "A1=3")));
+	}
+
+	@Test
+	public void drainerRetriesUntilPublishingSucceeds() throws Exception {
+		PublishBuffer buffer = new PublishBuffer(10, DROP_OLDEST);
+		buffer.offer("A0", "1");
+		buffer.offer("A0", "2");
+		final AtomicInteger failures = new AtomicInteger(2);
+		final List<String> published = new CopyOnWriteArrayList<String>();
+		final CountDownLatch done = new CountDownLatch(1);
+		BufferDrainer drainer = BufferDrainer.start(buffer, new Publisher() {
+			@Override
+			public void publish(List<Message> messages) throws Exception {
+				if (failures.getAndDecrement() > 0) {
+					throw new IllegalStateException("broker unreachable");
+				}
+				published.addAll(values(messages));
+				done.countDown();
+			}
+		}, 10);
+		try {
+			assertThat(done.await(5, SECONDS), is(true));
+			assertThat(published, is(Arrays.asList("A0=1", "A0=2")));
+		} finally {
+			drainer.close();
+		}
+	}
+
+	private static List<String> values(List<Message> messages) {
+		List<String> values = new ArrayList<String>(messages.size());
+		for (Message message : messages) {
+			values.add(message.getTopic() + "=" + message.getPayload());
+		}
+		return values;
+	}
+
+}
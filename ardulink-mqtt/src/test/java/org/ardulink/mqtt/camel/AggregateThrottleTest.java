@@ -5,6 +5,7 @@ import static org.ardulink.core.Pin.analogPin;
 import static org.ardulink.core.Pin.digitalPin;
 import static org.ardulink.core.Pin.Type.ANALOG;
 import static org.ardulink.mqtt.MqttCamelRouteBuilder.CompactStrategy.AVERAGE;
+import static org.ardulink.mqtt.MqttCamelRouteBuilder.CompactStrategy.MAX;
 import static org.ardulink.mqtt.MqttCamelRouteBuilder.CompactStrategy.USE_LATEST;
 
 import org.apache.camel.CamelContext;
@@ -76,6 +77,27 @@ public class AggregateThrottleTest {
 		out.assertIsSatisfied();
 	}
 
+	@Test
+	public void agregateAnalogsSeparatlyUsingMaxAndKeepsDigitals()
+			throws Exception {
+		context = camelContext(topics(), MAX);
+		MockEndpoint out = getMockEndpoint();
+		out.expectedBodiesReceived(true, false, 12, 999);
+		out.expectedHeaderValuesReceivedInAnyOrder(HEADER_FOR_TOPIC,
+				"foo/bar/topic/D0", "foo/bar/topic/D0", "foo/bar/topic/A1",
+				"foo/bar/topic/A0");
+
+		simArduinoSends(alpMessage(analogPin(0), 1));
+		simArduinoSends(alpMessage(analogPin(0), 3));
+		simArduinoSends(alpMessage(analogPin(1), 999));
+		simArduinoSends(alpMessage(digitalPin(0), true));
+		simArduinoSends(alpMessage(digitalPin(0), false));
+		simArduinoSends(alpMessage(analogPin(0), 12));
+		simArduinoSends(alpMessage(analogPin(1), 1));
+
+		out.assertIsSatisfied();
+	}
+
 	private void simArduinoSends(String message) {
 		context.createProducerTemplate().sendBody(IN, message);
 	}
@@ -0,0 +1,93 @@
+package org.ardulink.mqtt.camel;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.ardulink.core.Pin.analogPin;
+import static org.ardulink.core.Pin.digitalPin;
+import static org.ardulink.core.Pin.Type.ANALOG;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Map;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.ardulink.core.Pin;
+import org.ardulink.core.mqtt.BatchPayload;
+import org.ardulink.mqtt.MqttCamelRouteBuilder;
+import org.ardulink.mqtt.Topics;
+import org.ardulink.util.MapBuilder;
+import org.junit.After;
+import org.junit.Test;
+
+public class BatchTest {
+
+	private static final String HEADER_FOR_TOPIC = "CamelMQTTPublishTopic";
+
+	private static final String TOPIC = "foo/bar/topic/";
+
+	private static final String IN = "direct:in";
+	private static final String OUT = "mock:result";
+
+	private CamelContext context;
+
+	@After
+	public void tearDown() throws Exception {
+		context.stop();
+	}
+
+	@Test
+	public void publishesAllValuesOfWindowAsOneBatch() throws Exception {
+		context = camelContext(Topics.basedOn(TOPIC).withBatchTopicEnabled());
+		MockEndpoint out = context.getEndpoint(OUT, MockEndpoint.class);
+		out.expectedMessageCount(1);
+		out.expectedHeaderReceived(HEADER_FOR_TOPIC, "foo/bar/topic/batch");
+
+		simArduinoSends(alpMessage(analogPin(0), 1));
+		simArduinoSends(alpMessage(analogPin(1), 999));
+		simArduinoSends(alpMessage(digitalPin(0), true));
+		simArduinoSends(alpMessage(analogPin(0), 12));
+
+		out.assertIsSatisfied();
+		BatchPayload payload = BatchPayload.decode(out.getExchanges().get(0)
+				.getIn().getBody(String.class));
+		Map<Pin, Object> expected = MapBuilder.<Pin, Object> newMapBuilder()
+				.put(analogPin(0), 12).put(analogPin(1), 999)
+				.put(digitalPin(0), true).build();
+		assertThat(payload.getValues(), is(expected));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void batchTopicHasToBeEnabled() throws Exception {
+		context = new DefaultCamelContext();
+		new MqttCamelRouteBuilder(context, Topics.basedOn(TOPIC)).batch(1,
+				SECONDS);
+	}
+
+	private void simArduinoSends(String message) {
+		context.createProducerTemplate().sendBody(IN, message);
+	}
+
+	private String alpMessage(Pin pin, Object value) {
+		return String.format("alp://%sred/%s/%s", pin.is(ANALOG) ? "a" : "d",
+				pin.pinNum(), alpValue(value));
+	}
+
+	private Integer alpValue(Object value) {
+		if (value instanceof Integer) {
+			return (Integer) value;
+		} else if (value instanceof Boolean) {
+			return Boolean.TRUE.equals(value) ? 1 : 0;
+		}
+		throw new IllegalStateException("Cannot handle " + value);
+	}
+
+	private CamelContext camelContext(Topics topics) throws Exception {
+		CamelContext context = new DefaultCamelContext();
+		new MqttCamelRouteBuilder(context, topics).batch(1, SECONDS)
+				.fromSomethingToMqtt(IN, OUT);
+		context.start();
+		return context;
+	}
+
+}
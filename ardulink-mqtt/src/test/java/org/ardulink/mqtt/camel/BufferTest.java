@@ -0,0 +1,49 @@
+package org.ardulink.mqtt.camel;
+
+import static org.ardulink.mqtt.buffer.PublishBuffer.Overflow.CONFLATE;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.ardulink.mqtt.MqttCamelRouteBuilder;
+import org.ardulink.mqtt.Topics;
+import org.junit.After;
+import org.junit.Test;
+
+public class BufferTest {
+
+	private static final String HEADER_FOR_TOPIC = "CamelMQTTPublishTopic";
+
+	private static final String TOPIC = "foo/bar/topic/";
+
+	private static final String IN = "direct:in";
+	private static final String OUT = "mock:result";
+
+	private CamelContext context;
+
+	@After
+	public void tearDown() throws Exception {
+		context.stop();
+	}
+
+	@Test
+	public void publishesThroughTheBuffer() throws Exception {
+		context = new DefaultCamelContext();
+		MqttCamelRouteBuilder builder = new MqttCamelRouteBuilder(context,
+				Topics.basedOn(TOPIC)).buffer(10, CONFLATE);
+		builder.fromSomethingToMqtt(IN, OUT);
+		context.start();
+
+		MockEndpoint out = context.getEndpoint(OUT, MockEndpoint.class);
+		out.expectedBodiesReceived("42");
+		out.expectedHeaderReceived(HEADER_FOR_TOPIC, "foo/bar/topic/A0");
+
+		context.createProducerTemplate().sendBody(IN, "alp://ared/0/42");
+
+		out.assertIsSatisfied();
+		assertThat(builder.getPublishBuffer().getDepth(), is(0));
+	}
+
+}
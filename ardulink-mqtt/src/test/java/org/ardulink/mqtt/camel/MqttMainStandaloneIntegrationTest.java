@@ -17,7 +17,9 @@ limitations under the License.
 package org.ardulink.mqtt.camel;
 
 import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.CoreMatchers.is;
 import static org.ardulink.util.ServerSockets.freePort;
+import static org.junit.Assert.assertThat;
 
 import java.io.IOException;
 
@@ -25,6 +27,7 @@ import org.apache.camel.FailedToCreateProducerException;
 import org.ardulink.mqtt.MqttBroker;
 import org.ardulink.mqtt.MqttBroker.Builder;
 import org.ardulink.mqtt.MqttMain;
+import org.ardulink.mqtt.MqttMain.Engine;
 import org.ardulink.util.Strings;
 import org.junit.After;
 import org.junit.Ignore;
@@ -131,6 +134,14 @@ public class MqttMainStandaloneIntegrationTest {
 		sut.connectToMqttBroker();
 	}
 
+	@Test
+	public void directEngineCanConnectToNewlyStartedBroker() throws Exception {
+		sut = mqttMain().withBrokerPort(freePort());
+		sut.setEngine(Engine.DIRECT);
+		sut.connectToMqttBroker();
+		assertThat(sut.isConnected(), is(true));
+	}
+
 	@Test
 	public void clientCanConnectUsingCredentialsToNewlyStartedBroker()
 			throws Exception {
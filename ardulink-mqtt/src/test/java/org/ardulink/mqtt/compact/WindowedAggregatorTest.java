@@ -0,0 +1,172 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package org.ardulink.mqtt.compact;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.ardulink.mqtt.MqttCamelRouteBuilder.CompactStrategy.AVERAGE;
+import static org.ardulink.mqtt.MqttCamelRouteBuilder.CompactStrategy.EWMA;
+import static org.ardulink.mqtt.MqttCamelRouteBuilder.CompactStrategy.MAX;
+import static org.ardulink.mqtt.MqttCamelRouteBuilder.CompactStrategy.MEDIAN;
+import static org.ardulink.mqtt.MqttCamelRouteBuilder.CompactStrategy.MIN;
+import static org.ardulink.mqtt.MqttCamelRouteBuilder.CompactStrategy.RATE_OF_CHANGE;
+import static org.ardulink.mqtt.MqttCamelRouteBuilder.CompactStrategy.USE_LATEST;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.ardulink.mqtt.MqttCamelRouteBuilder.CompactStrategy;
+import org.ardulink.mqtt.compact.WindowedAggregator.Sink;
+import org.ardulink.util.MapBuilder;
+import org.junit.Test;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public class WindowedAggregatorTest {
+
+	private static final long SECOND = SECONDS.toNanos(1);
+
+	@Test
+	public void tumblingWindowsPerKey() {
+		WindowedAggregator<String> sut = tumbling(AVERAGE);
+		sut.add("a", 1);
+		sut.add("a", 3);
+		sut.add("a", 12);
+		sut.add("b", 999);
+		sut.add("b", 1);
+		assertThat(drain(sut), is(values("a", 5, "b", 500)));
+		assertThat(drain(sut), is(noValues()));
+	}
+
+	@Test
+	public void primitiveStrategies() {
+		assertThat(compact(USE_LATEST, 4, 9, 2), is(2));
+		assertThat(compact(MIN, 4, -9, 2), is(-9));
+		assertThat(compact(MAX, 4, 9, 2), is(9));
+		assertThat(compact(AVERAGE, -1, -2), is(-2));
+		assertThat(compact(MEDIAN, 7, 1, 1000, 3, 5), is(5));
+		assertThat(compact(MEDIAN, 7, 1, 1000, 4), is(6));
+	}
+
+	@Test
+	public void ewmaSpansWindows() {
+		WindowedAggregator<String> sut = WindowedAggregator.builder(EWMA)
+				.tumbling(1, SECONDS).alpha(0.5).build();
+		sut.add("a", 100);
+		assertThat(drain(sut), is(values("a", 100)));
+		sut.add("a", 0);
+		assertThat(drain(sut), is(values("a", 50)));
+		sut.add("a", 0);
+		assertThat(drain(sut), is(values("a", 25)));
+	}
+
+	@Test
+	public void rateOfChangeIsPerSecond() {
+		WindowedAggregator<String> sut = tumbling(RATE_OF_CHANGE);
+		sut.add("a", 10, 0);
+		assertThat(drain(sut), is(noValues()));
+		sut.add("a", 10, 0);
+		sut.add("a", 20, SECOND / 2);
+		sut.add("a", 40, 2 * SECOND);
+		assertThat(drain(sut), is(values("a", 15)));
+	}
+
+	@Test
+	public void slidingWindowKeepsValuesUntilTheyDropOut() {
+		WindowedAggregator<String> sut = WindowedAggregator.builder(MAX)
+				.sliding(300, 100, MILLISECONDS).build();
+		sut.add("a", 9);
+		assertThat(drain(sut), is(values("a", 9)));
+		sut.add("a", 1);
+		assertThat(drain(sut), is(values("a", 9)));
+		assertThat(drain(sut), is(values("a", 9)));
+		assertThat(drain(sut), is(values("a", 1)));
+		assertThat(drain(sut), is(noValues()));
+	}
+
+	@Test
+	public void slidingAverageCombinesPanes() {
+		WindowedAggregator<String> sut = WindowedAggregator.builder(AVERAGE)
+				.sliding(2, 1, SECONDS).build();
+		sut.add("a", 2);
+		sut.add("a", 4);
+		assertThat(drain(sut), is(values("a", 3)));
+		sut.add("a", 12);
+		assertThat(drain(sut), is(values("a", 6)));
+		assertThat(drain(sut), is(values("a", 12)));
+	}
+
+	@Test
+	public void medianIsTakenFromReservoir() {
+		WindowedAggregator<String> sut = WindowedAggregator.builder(MEDIAN)
+				.tumbling(1, SECONDS).reservoirSize(16).build();
+		for (int i = 0; i < 10000; i++) {
+			sut.add("a", 500);
+		}
+		sut.add("a", 0);
+		assertThat(drain(sut), is(values("a", 500)));
+	}
+
+	private static int compact(CompactStrategy strategy, int... values) {
+		WindowedAggregator<String> sut = tumbling(strategy);
+		for (int value : values) {
+			sut.add("a", value);
+		}
+		return drain(sut).get("a").intValue();
+	}
+
+	private static WindowedAggregator<String> tumbling(
+			CompactStrategy strategy) {
+		return WindowedAggregator.builder(strategy).tumbling(1, SECONDS)
+				.build();
+	}
+
+	private static Map<String, Integer> drain(WindowedAggregator<String> sut) {
+		final Map<String, Integer> values = new LinkedHashMap<String, Integer>();
+		sut.drain(new Sink<String>() {
+			@Override
+			public void emit(String key, int value) {
+				values.put(key, value);
+			}
+		});
+		return values;
+	}
+
+	private static Map<String, Integer> noValues() {
+		return MapBuilder.<String, Integer> newMapBuilder().build();
+	}
+
+	private static Map<String, Integer> values(String key, int value) {
+		return MapBuilder.<String, Integer> newMapBuilder().put(key, value)
+				.build();
+	}
+
+	private static Map<String, Integer> values(String key1, int value1,
+			String key2, int value2) {
+		return MapBuilder.<String, Integer> newMapBuilder().put(key1, value1)
+				.put(key2, value2).build();
+	}
+
+}
@@ -0,0 +1,234 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+
+package org.ardulink.mqtt.direct;
+
+import static java.util.concurrent.TimeUnit.HOURS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.ardulink.core.Pin.analogPin;
+import static org.ardulink.core.Pin.digitalPin;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.ardulink.core.Link;
+import org.ardulink.core.events.DefaultAnalogPinValueChangedEvent;
+import org.ardulink.core.events.DefaultDigitalPinValueChangedEvent;
+import org.ardulink.core.events.EventListener;
+import org.ardulink.core.mqtt.BatchPayload;
+import org.ardulink.mqtt.MqttCamelRouteBuilder.CompactStrategy;
+import org.ardulink.mqtt.Topics;
+import org.ardulink.mqtt.buffer.PublishBuffer.Message;
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public class DirectMqttBridgeTest {
+
+	private static final String TOPIC = "home/devices/ardulink/";
+
+	private static final int TIMEOUT = 5000;
+
+	private static class FakeMqttClientConnection extends
+			MqttClientConnection {
+
+		private final BlockingQueue<String> published = new LinkedBlockingQueue<String>();
+
+		@Override
+		public void publish(String topic, String payload) {
+			published.add(topic + "=" + payload);
+		}
+
+		@Override
+		public void publishAll(List<Message> messages) {
+			for (Message message : messages) {
+				publish(message.getTopic(), message.getPayload());
+			}
+		}
+
+		@Override
+		public boolean isConnected() {
+			return true;
+		}
+
+		@Override
+		protected void subscribe(String topicFilter) {
+			// nothing to do
+		}
+
+		@Override
+		protected void unsubscribe(String topicFilter) {
+			// nothing to do
+		}
+
+		@Override
+		protected void disconnect() {
+			// nothing to do
+		}
+
+		private String nextPublished() throws InterruptedException {
+			return published.poll(TIMEOUT, MILLISECONDS);
+		}
+
+	}
+
+	private final FakeMqttClientConnection connection = new FakeMqttClientConnection();
+
+	private final Link link = mock(Link.class);
+
+	private DirectMqttBridge bridge;
+
+	@After
+	public void tearDown() throws IOException {
+		if (bridge != null) {
+			bridge.close();
+		}
+		connection.close();
+	}
+
+	@Test
+	public void publishesPinEventsOnTheReadTopics() throws Exception {
+		bridge = DirectMqttBridge.builder(link, Topics.basedOn(TOPIC))
+				.connection(connection).start();
+		EventListener listener = eventListener();
+		listener.stateChanged(new DefaultAnalogPinValueChangedEvent(
+				analogPin(0), 42));
+		listener.stateChanged(new DefaultDigitalPinValueChangedEvent(
+				digitalPin(13), true));
+		assertThat(connection.nextPublished(), is(TOPIC + "A0=42"));
+		assertThat(connection.nextPublished(), is(TOPIC + "D13=true"));
+	}
+
+	@Test
+	public void publishesPinEventsOnSeparateReadTopics() throws Exception {
+		bridge = DirectMqttBridge
+				.builder(link, Topics.withSeparateReadWriteTopics(TOPIC))
+				.connection(connection).start();
+		EventListener listener = eventListener();
+		listener.stateChanged(new DefaultAnalogPinValueChangedEvent(
+				analogPin(1), 7));
+		listener.stateChanged(new DefaultDigitalPinValueChangedEvent(
+				digitalPin(2), false));
+		assertThat(connection.nextPublished(), is(TOPIC + "A1/value/get=7"));
+		assertThat(connection.nextPublished(),
+				is(TOPIC + "D2/value/get=false"));
+	}
+
+	@Test
+	public void switchesPinsOnMessagesReceived() throws Exception {
+		bridge = DirectMqttBridge.builder(link, Topics.basedOn(TOPIC))
+				.connection(connection).start();
+		connection.received(TOPIC + "D13", "true");
+		connection.received(TOPIC + "A3", "127");
+		verify(link, timeout(TIMEOUT)).switchDigitalPin(digitalPin(13), true);
+		verify(link, timeout(TIMEOUT)).switchAnalogPin(analogPin(3), 127);
+	}
+
+	@Test
+	public void switchesPinsOnSeparateWriteTopics() throws Exception {
+		bridge = DirectMqttBridge
+				.builder(link, Topics.withSeparateReadWriteTopics(TOPIC))
+				.connection(connection).start();
+		connection.received(TOPIC + "D4/value/set", "true");
+		connection.received(TOPIC + "A5/value/set", "99");
+		verify(link, timeout(TIMEOUT)).switchDigitalPin(digitalPin(4), true);
+		verify(link, timeout(TIMEOUT)).switchAnalogPin(analogPin(5), 99);
+	}
+
+	@Test
+	public void controlChannelStartsAndStopsListening() throws Exception {
+		bridge = DirectMqttBridge
+				.builder(link, Topics.basedOn(TOPIC).withControlChannelEnabled())
+				.connection(connection).start();
+		connection.received(TOPIC + "system/listening/A2", "true");
+		connection.received(TOPIC + "system/listening/D6", "true");
+		connection.received(TOPIC + "system/listening/A2", "false");
+		verify(link, timeout(TIMEOUT)).startListening(analogPin(2));
+		verify(link, timeout(TIMEOUT)).startListening(digitalPin(6));
+		verify(link, timeout(TIMEOUT)).stopListening(analogPin(2));
+	}
+
+	@Test
+	public void compactsAnalogValuesOfAWindow() throws Exception {
+		bridge = DirectMqttBridge.builder(link, Topics.basedOn(TOPIC))
+				.connection(connection).compact(CompactStrategy.AVERAGE, 1, HOURS)
+				.start();
+		EventListener listener = eventListener();
+		for (int value : new int[] { 10, 20, 30 }) {
+			listener.stateChanged(new DefaultAnalogPinValueChangedEvent(
+					analogPin(0), value));
+		}
+		listener.stateChanged(new DefaultDigitalPinValueChangedEvent(
+				digitalPin(1), true));
+		assertThat(connection.nextPublished(), is(TOPIC + "D1=true"));
+
+		// closing the bridge flushes the (still open) window
+		bridge.close();
+		bridge = null;
+		assertThat(connection.nextPublished(), is(TOPIC + "A0=20"));
+		assertThat(connection.published.poll(), is(nullValue()));
+	}
+
+	@Test
+	public void batchesValuesOnTheBatchTopic() throws Exception {
+		bridge = DirectMqttBridge
+				.builder(link, Topics.basedOn(TOPIC).withBatchTopicEnabled())
+				.connection(connection).batch(1, HOURS).start();
+		EventListener listener = eventListener();
+		listener.stateChanged(new DefaultAnalogPinValueChangedEvent(
+				analogPin(0), 42));
+		listener.stateChanged(new DefaultDigitalPinValueChangedEvent(
+				digitalPin(13), true));
+		assertThat(connection.published.poll(1, SECONDS), is(nullValue()));
+
+		bridge.close();
+		bridge = null;
+		String published = connection.nextPublished();
+		String prefix = TOPIC + BatchPayload.TOPIC_SUFFIX + "=";
+		assertThat(published.startsWith(prefix), is(true));
+		BatchPayload payload = BatchPayload.decode(published.substring(prefix
+				.length()));
+		assertThat(payload.getValues().size(), is(2));
+		assertThat(payload.getValues().get(analogPin(0)), is((Object) 42));
+		assertThat(payload.getValues().get(digitalPin(13)), is((Object) true));
+	}
+
+	private EventListener eventListener() throws IOException {
+		ArgumentCaptor<EventListener> captor = ArgumentCaptor
+				.forClass(EventListener.class);
+		verify(link).addListener(captor.capture());
+		return captor.getValue();
+	}
+
+}
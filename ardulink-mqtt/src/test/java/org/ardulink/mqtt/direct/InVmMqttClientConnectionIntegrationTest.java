@@ -0,0 +1,102 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+
+package org.ardulink.mqtt.direct;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.ardulink.core.Pin.analogPin;
+import static org.ardulink.util.ServerSockets.freePort;
+import static org.hamcrest.CoreMatchers.hasItem;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.ardulink.mqtt.MqttBroker;
+import org.ardulink.mqtt.direct.MqttClientConnection.Handler;
+import org.ardulink.mqtt.util.AnotherMqttClient;
+import org.ardulink.mqtt.util.Message;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public class InVmMqttClientConnectionIntegrationTest {
+
+	private static final String TOPIC = "home/devices/ardulink/";
+
+	@Rule
+	public Timeout timeout = new Timeout(15, SECONDS);
+
+	private final MqttBroker broker = MqttBroker.builder().port(freePort())
+			.startBroker();
+
+	private final MqttClientConnection sut = MqttClientConnection.inVm(broker);
+
+	private final AnotherMqttClient mqttClient = AnotherMqttClient.builder()
+			.topic(TOPIC).port(broker.getPort()).connect();
+
+	private final BlockingQueue<String> received = new LinkedBlockingQueue<String>();
+
+	@After
+	public void tearDown() throws IOException {
+		mqttClient.close();
+		sut.close();
+		broker.close();
+	}
+
+	@Test
+	public void networkClientReceivesMessagesPublishedInVm()
+			throws InterruptedException {
+		Message expected = new Message(TOPIC + "A0", "42");
+		List<Message> messages;
+		// the network client's subscription completes asynchronously so
+		// publish until it shows up
+		do {
+			sut.publish(expected.getTopic(), expected.getMessage());
+			messages = mqttClient.getMessages();
+		} while (!messages.contains(expected));
+		assertThat(messages, hasItem(expected));
+	}
+
+	@Test
+	public void messagesPublishedByNetworkClientReachTheListener()
+			throws IOException, InterruptedException {
+		sut.subscribe(TOPIC, new Handler() {
+			@Override
+			public void handle(String topic, String value) {
+				received.add(topic + "=" + value);
+			}
+		});
+		mqttClient.switchPin(analogPin(3), 127);
+		assertThat(received.poll(10, SECONDS), is(TOPIC + "A3=127"));
+		assertThat(received.poll(100, MILLISECONDS), is((String) null));
+	}
+
+}
@@ -0,0 +1,99 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package org.ardulink.mqtt.direct;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.ardulink.mqtt.MqttBroker;
+import org.ardulink.mqtt.MqttBroker.PublishListener;
+import org.ardulink.mqtt.direct.MqttClientConnection.Handler;
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public class InVmMqttClientConnectionTest {
+
+	private final MqttBroker broker = mock(MqttBroker.class);
+
+	private final MqttClientConnection sut = MqttClientConnection.inVm(broker);
+
+	private final List<String> received = new ArrayList<String>();
+
+	private final Handler handler = new Handler() {
+		@Override
+		public void handle(String topic, String value) {
+			received.add(topic + "=" + value);
+		}
+	};
+
+	@After
+	public void tearDown() throws IOException {
+		sut.close();
+	}
+
+	@Test
+	public void publishesDirectlyToTheBroker() {
+		sut.publish("home/devices/D1/value/set", "true");
+		verify(broker).publish("home/devices/D1/value/set", "true".getBytes());
+	}
+
+	@Test
+	public void receivesMessagesBelowThePrefixSubscribed() throws IOException {
+		sut.subscribe("home/devices/", handler);
+		PublishListener listener = publishListener();
+		listener.published("home/devices/A0/value/set", "42".getBytes());
+		listener.published("home/other/A0/value/set", "43".getBytes());
+		assertThat(received, is(Arrays.asList("home/devices/A0/value/set=42")));
+
+		sut.unsubscribe(handler);
+		listener.published("home/devices/A0/value/set", "44".getBytes());
+		assertThat(received.size(), is(1));
+	}
+
+	@Test
+	public void closingRemovesTheListener() throws IOException {
+		assertThat(sut.isConnected(), is(true));
+		PublishListener listener = publishListener();
+		sut.close();
+		verify(broker).removePublishListener(listener);
+		assertThat(sut.isConnected(), is(false));
+	}
+
+	private PublishListener publishListener() {
+		ArgumentCaptor<PublishListener> captor = ArgumentCaptor
+				.forClass(PublishListener.class);
+		verify(broker).addPublishListener(captor.capture());
+		return captor.getValue();
+	}
+
+}
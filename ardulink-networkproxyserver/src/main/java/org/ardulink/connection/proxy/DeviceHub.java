@@ -0,0 +1,342 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.connection.proxy;
+
+import static org.ardulink.util.Preconditions.checkState;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.ardulink.core.Connection;
+import org.ardulink.core.ConnectionBasedLink;
+import org.ardulink.core.Link;
+import org.ardulink.core.convenience.LinkDelegate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * Fans out the data of one device to all the proxy clients connected to it.
+ * Each frame received is encoded once (payload and separator) into a
+ * read-only buffer that is shared by all clients, the clients only get a
+ * {@link ByteBuffer#duplicate()}. Clients have to queue the frames without
+ * blocking so a slow client does not block the others nor the device's
+ * reader. The frames of all clients to the device are passed to one writer
+ * thread that merges all frames available into one write. If the device does
+ * not keep up the clients are asked to stop reading until the writer has
+ * caught up (backpressure), no frame of a client is dropped. Links that are
+ * not based on a {@link Connection} are adapted by a {@link LinkDevice}.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public final class DeviceHub {
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(DeviceHub.class);
+
+	private static final Map<Object, DeviceHub> hubs = new HashMap<Object, DeviceHub>();
+
+	/**
+	 * Number of frames waiting to be written to the device at which the
+	 * clients are asked to pause.
+	 */
+	private static final int MAX_QUEUED_WRITES = 4096;
+
+	/**
+	 * Number of frames waiting to be written to the device below which the
+	 * paused clients are resumed.
+	 */
+	private static final int RESUME_QUEUED_WRITES = MAX_QUEUED_WRITES / 2;
+
+	/**
+	 * Queued after the last frame when the hub gets closed.
+	 */
+	private static final byte[] EOF = new byte[0];
+
+	public interface Client {
+
+		/**
+		 * Called for each frame received from the device. Must not block.
+		 */
+		void deliver(ByteBuffer frame);
+
+	}
+
+	/**
+	 * The device side of a hub.
+	 */
+	interface Device {
+
+		/**
+		 * Starts passing the data received from the device to
+		 * {@link DeviceHub#received(byte[])}.
+		 */
+		void attach(DeviceHub hub) throws IOException;
+
+		void detach(DeviceHub hub) throws IOException;
+
+		/**
+		 * Writes the frames (each including its separator) to the device.
+		 */
+		void write(byte[] frames) throws IOException;
+
+	}
+
+	private final Object key;
+	private final Device device;
+	private final byte[] separator;
+	private final List<Client> clients = new CopyOnWriteArrayList<Client>();
+	private final BlockingQueue<byte[]> writes = new LinkedBlockingQueue<byte[]>();
+	private final Queue<Runnable> paused = new ConcurrentLinkedQueue<Runnable>();
+	private final Thread writer;
+	private final FrameTap tap;
+	private volatile boolean closed;
+	private Runnable onClosed;
+
+	private DeviceHub(Object key, Device device, byte[] separator, FrameTap tap) {
+		this.key = key;
+		this.device = device;
+		this.separator = separator.clone();
+		this.tap = tap;
+		this.writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				writeLoop();
+			}
+		}, "ProxyDeviceWriter");
+		this.writer.setDaemon(true);
+	}
+
+	/**
+	 * Adds the client to the hub of the connection, the hub is created if it's
+	 * the connection's first client.
+	 * 
+	 * @param tap
+	 *            the tap observing the frames received from the device (used
+	 *            if the hub gets created), may be <code>null</code>
+	 */
+	public static DeviceHub join(Connection connection, byte[] separator,
+			FrameTap tap, Client client) throws IOException {
+		return join(connection, new ConnectionDevice(connection), separator,
+				tap, client);
+	}
+
+	/**
+	 * Adds the client to the hub of the link. {@link ConnectionBasedLink}s
+	 * share the hub of their {@link Connection}, all other links are adapted
+	 * using a {@link LinkDevice}.
+	 * 
+	 * @see #join(Connection, byte[], FrameTap, Client)
+	 */
+	public static DeviceHub join(Link link, byte[] separator, FrameTap tap,
+			Client client) throws IOException {
+		Link root = link;
+		while (root instanceof LinkDelegate) {
+			root = ((LinkDelegate) root).getDelegate();
+		}
+		return root instanceof ConnectionBasedLink ? join(
+				((ConnectionBasedLink) root).getConnection(), separator, tap,
+				client) : join(root, new LinkDevice(root, separator),
+				separator, tap, client);
+	}
+
+	private static DeviceHub join(Object key, Device device,
+			byte[] separator, FrameTap tap, Client client) throws IOException {
+		synchronized (hubs) {
+			DeviceHub hub = hubs.get(key);
+			if (hub == null) {
+				hub = new DeviceHub(key, device, separator, tap);
+				device.attach(hub);
+				hub.writer.start();
+				hubs.put(key, hub);
+			}
+			hub.clients.add(client);
+			return hub;
+		}
+	}
+
+	/**
+	 * Removes the client, the hub is closed if it was the last one. The frames
+	 * already queued are still written to the device.
+	 * 
+	 * @param afterwards
+	 *            run once the frames queued by the client have been written
+	 *            (e.g. to close the client's link), at once if the hub is
+	 *            still used by other clients
+	 */
+	public void leave(Client client, Runnable afterwards) {
+		synchronized (hubs) {
+			if (clients.remove(client) && clients.isEmpty()) {
+				hubs.remove(key);
+				try {
+					device.detach(this);
+				} catch (IOException e) {
+					logger.error("Error detaching from {}", device, e);
+				}
+				closed = true;
+				onClosed = afterwards;
+				writes.add(EOF);
+				return;
+			}
+		}
+		afterwards.run();
+	}
+
+	/**
+	 * Passes a frame (without separator) received from the device to all
+	 * clients.
+	 */
+	void received(byte[] bytes) {
+		ByteBuffer frame = ByteBuffer.allocate(bytes.length + separator.length);
+		frame.put(bytes).put(separator).flip();
+		ByteBuffer shared = frame.asReadOnlyBuffer();
+		if (tap != null) {
+			tap.fromDevice(shared.duplicate());
+		}
+		for (Client client : clients) {
+			client.deliver(shared.duplicate());
+		}
+	}
+
+	public int getClientCount() {
+		return clients.size();
+	}
+
+	/**
+	 * Queues the frame (including its separator) to be written to the device.
+	 * Does not block, the frame is always queued.
+	 * 
+	 * @param resume
+	 *            run by the hub's writer once the device has caught up if
+	 *            <code>false</code> is returned
+	 * @return <code>false</code> if the device does not keep up, the client
+	 *         should stop reading frames until <code>resume</code> is run
+	 */
+	public boolean write(byte[] frame, Runnable resume) {
+		checkState(!closed, "hub closed");
+		writes.add(frame);
+		if (writes.size() < MAX_QUEUED_WRITES) {
+			return true;
+		}
+		paused.add(resume);
+		// the writer could have caught up before the client was registered
+		return writes.size() < RESUME_QUEUED_WRITES && paused.remove(resume);
+	}
+
+	private void writeLoop() {
+		List<byte[]> frames = new ArrayList<byte[]>();
+		ByteArrayOutputStream merged = new ByteArrayOutputStream();
+		boolean eof = false;
+		try {
+			while (!eof) {
+				frames.add(writes.take());
+				writes.drainTo(frames);
+				int end = frames.indexOf(EOF);
+				if (end >= 0) {
+					eof = true;
+					frames.subList(end, frames.size()).clear();
+					if (frames.isEmpty()) {
+						break;
+					}
+				}
+				byte[] bytes;
+				if (frames.size() == 1) {
+					bytes = frames.get(0);
+				} else {
+					merged.reset();
+					for (byte[] frame : frames) {
+						merged.write(frame, 0, frame.length);
+					}
+					bytes = merged.toByteArray();
+				}
+				frames.clear();
+				try {
+					device.write(bytes);
+				} catch (IOException e) {
+					logger.error("Error writing to {}", device, e);
+				}
+				if (writes.size() < RESUME_QUEUED_WRITES) {
+					resumeClients();
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		paused.clear();
+		if (onClosed != null) {
+			onClosed.run();
+		}
+	}
+
+	private void resumeClients() {
+		Runnable resume;
+		while ((resume = paused.poll()) != null) {
+			resume.run();
+		}
+	}
+
+	private static final class ConnectionDevice implements Device {
+
+		private final Connection connection;
+		private Connection.Listener listener;
+
+		private ConnectionDevice(Connection connection) {
+			this.connection = connection;
+		}
+
+		@Override
+		public void attach(final DeviceHub hub) {
+			this.listener = new Connection.ListenerAdapter() {
+				@Override
+				public void received(byte[] bytes) throws IOException {
+					hub.received(bytes);
+				}
+			};
+			connection.addListener(listener);
+		}
+
+		@Override
+		public void detach(DeviceHub hub) {
+			connection.removeListener(listener);
+		}
+
+		@Override
+		public void write(byte[] frames) throws IOException {
+			connection.write(frames);
+		}
+
+		@Override
+		public String toString() {
+			return String.valueOf(connection);
+		}
+
+	}
+
+}
@@ -0,0 +1,91 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.connection.proxy;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * {@link FrameTap} counting the frames and bytes relayed in each direction.
+ * The frames sent to the device are counted by their separators since the
+ * raw relay mode passes many frames at once.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public class FrameCounter implements FrameTap {
+
+	private final byte[] separator;
+	private final AtomicLong framesToDevice = new AtomicLong();
+	private final AtomicLong bytesToDevice = new AtomicLong();
+	private final AtomicLong framesFromDevice = new AtomicLong();
+	private final AtomicLong bytesFromDevice = new AtomicLong();
+
+	public FrameCounter(byte[] separator) {
+		this.separator = separator.clone();
+	}
+
+	@Override
+	public void toDevice(byte[] frames) {
+		int count = 0;
+		outer: for (int i = 0; i <= frames.length - separator.length; i++) {
+			for (int j = 0; j < separator.length; j++) {
+				if (frames[i + j] != separator[j]) {
+					continue outer;
+				}
+			}
+			count++;
+			i += separator.length - 1;
+		}
+		framesToDevice.addAndGet(count);
+		bytesToDevice.addAndGet(frames.length);
+	}
+
+	@Override
+	public void fromDevice(ByteBuffer frame) {
+		framesFromDevice.incrementAndGet();
+		bytesFromDevice.addAndGet(frame.remaining());
+	}
+
+	public long getFramesToDevice() {
+		return framesToDevice.get();
+	}
+
+	public long getBytesToDevice() {
+		return bytesToDevice.get();
+	}
+
+	public long getFramesFromDevice() {
+		return framesFromDevice.get();
+	}
+
+	public long getBytesFromDevice() {
+		return bytesFromDevice.get();
+	}
+
+	@Override
+	public String toString() {
+		return "FrameCounter [framesToDevice=" + framesToDevice
+				+ ", bytesToDevice=" + bytesToDevice + ", framesFromDevice="
+				+ framesFromDevice + ", bytesFromDevice=" + bytesFromDevice
+				+ "]";
+	}
+
+}
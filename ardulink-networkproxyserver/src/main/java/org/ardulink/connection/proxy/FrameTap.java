@@ -0,0 +1,46 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.connection.proxy;
+
+import java.nio.ByteBuffer;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * Observes the data relayed by the proxy, e.g. for metrics. Implementations
+ * must not block and must not modify the data passed.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public interface FrameTap {
+
+	/**
+	 * Called for the data sent by a client to the device. Depending on the
+	 * relay mode these are one or many complete frames, each one including
+	 * its separator.
+	 */
+	void toDevice(byte[] frames);
+
+	/**
+	 * Called once for each frame received from the device (including its
+	 * separator), no matter how many clients it's passed to.
+	 */
+	void fromDevice(ByteBuffer frame);
+
+}
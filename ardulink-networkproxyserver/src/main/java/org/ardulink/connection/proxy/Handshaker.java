@@ -22,21 +22,21 @@ import static org.ardulink.connection.proxy.NetworkProxyMessages.KO;
 import static org.ardulink.connection.proxy.NetworkProxyMessages.NUMBER_OF_PORTS;
 import static org.ardulink.connection.proxy.NetworkProxyMessages.OK;
 import static org.ardulink.connection.proxy.NetworkProxyMessages.STOP_SERVER_CMD;
+import static org.ardulink.connection.proxy.NetworkProxyMessages.V2_CMD;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.io.PrintWriter;
-import java.util.Scanner;
-import java.util.regex.Pattern;
-
-import org.ardulink.core.Link;
-import org.ardulink.core.convenience.Links;
-import org.ardulink.core.linkmanager.LinkManager.Configurer;
 
 /**
  * [ardulinktitle] [ardulinkversion]
  * 
+ * Does the handshaking of a client. It is fed line by line (without the
+ * {@link #PROXY_CONNECTION_SEPARATOR}) and never blocks: Connecting is
+ * delegated to {@link #connect(String, int)} whose implementation has to
+ * answer by calling {@link #connected()} or {@link #connectFailed()}.
+ * Clients sending {@link NetworkProxyMessages#V2_CMD} instead of connecting
+ * switch to the multiplexed protocol, the lines following are no longer
+ * handshake lines.
+ * 
  * project Ardulink http://www.ardulink.org/
  * 
  * [adsense]
@@ -46,53 +46,85 @@ public abstract class Handshaker {
 
 	public static final String PROXY_CONNECTION_SEPARATOR = "\n";
 
-	private final Scanner scanner;
-	private final PrintWriter printWriter;
-	private final Configurer configurer;
-
-	public Handshaker(InputStream inputStream, OutputStream outputStream) {
-		this.configurer = Links.getDefaultConfigurer();
-		this.printWriter = new PrintWriter(outputStream);
-		this.scanner = new Scanner(inputStream).useDelimiter(Pattern.quote(PROXY_CONNECTION_SEPARATOR));
+	private enum State {
+		COMMAND, PORT, BAUDRATE, CONNECTING, CONNECTED, MULTIPLEXED;
 	}
 
+	private State state = State.COMMAND;
+	private String port;
+
 	/**
-	 * Does the handshaking. If the client sends a
-	 * {@link NetworkProxyMessages#STOP_SERVER_CMD} command the parent Thread
-	 * will be interrupted.
-	 * 
-	 * @return a Link to communicate with, e.g. a serial one
-	 * @throws Exception
+	 * Handles the line received. If the client sends a
+	 * {@link NetworkProxyMessages#STOP_SERVER_CMD} command
+	 * {@link #stopServer()} is called.
 	 */
-	public Link doHandshake() throws Exception {
-		while (scanner.hasNext()) {
-			String input = read();
-			if (input.equals(STOP_SERVER_CMD)) {
-				Thread currentThread = Thread.currentThread();
-				currentThread.getThreadGroup().getParent().interrupt();
-				currentThread.interrupt();
-			} else if (GET_PORT_LIST_CMD.equals(input)) {
+	public void lineReceived(String line) throws IOException {
+		switch (state) {
+		case COMMAND:
+			if (STOP_SERVER_CMD.equals(line)) {
+				stopServer();
+			} else if (GET_PORT_LIST_CMD.equals(line)) {
 				handleGetPortList();
-			} else if (CONNECT_CMD.equals(input)) {
-				try {
-					// Ardulink-1 only did support Proxy to connect to serial links. So the
-					// handshake contains serial specific attributes. We should deprecate
-					// the Proxy since MQTT supports the same (or even more) features.
-					// Otherwise: Proxy should not contain serial specific things but send
-					// the ardulink:// URI to connect to (e.g.
-					// ardulink://serial?baudrate=9600)
-					configurer.getAttribute("port").setValue(read());
-					configurer.getAttribute("baudrate").setValue(Integer.valueOf(read()));
-					Link link = newLink(configurer);
-					write(OK);
-					return link;
-				} catch (Exception e) {
-					write(KO);
-				}
+			} else if (CONNECT_CMD.equals(line)) {
+				state = State.PORT;
+			} else if (V2_CMD.equals(line)) {
+				state = State.MULTIPLEXED;
+				multiplexed();
+				write(OK);
 			}
-			printWriter.flush();
+			break;
+		case PORT:
+			port = line;
+			state = State.BAUDRATE;
+			break;
+		case BAUDRATE:
+			int baudrate;
+			try {
+				baudrate = Integer.parseInt(line.trim());
+			} catch (NumberFormatException e) {
+				connectFailed();
+				return;
+			}
+			state = State.CONNECTING;
+			connect(port, baudrate);
+			break;
+		default:
+			throw new IllegalStateException("Cannot handle " + line
+					+ " while " + state);
 		}
-		throw new IllegalStateException("No more data but no " + CONNECT_CMD + " received");
+	}
+
+	/**
+	 * Returns <code>true</code> if the handshake is done and the connection can
+	 * be used to talk to the link.
+	 */
+	public boolean isConnected() {
+		return state == State.CONNECTED;
+	}
+
+	/**
+	 * Returns <code>true</code> if the client switched to the multiplexed
+	 * protocol.
+	 */
+	public boolean isMultiplexed() {
+		return state == State.MULTIPLEXED;
+	}
+
+	/**
+	 * Returns <code>true</code> while waiting for the link to be opened.
+	 */
+	public boolean isConnecting() {
+		return state == State.CONNECTING;
+	}
+
+	public void connected() throws IOException {
+		state = State.CONNECTED;
+		write(OK);
+	}
+
+	public void connectFailed() throws IOException {
+		state = State.COMMAND;
+		write(KO);
 	}
 
 	private void handleGetPortList() throws IOException {
@@ -102,25 +134,28 @@ public abstract class Handshaker {
 		}
 		write(NUMBER_OF_PORTS + portList.length);
 		for (Object port : portList) {
-			write(port);
+			write(String.valueOf(port));
 		}
 	}
 
-	private String read() {
-		return scanner.next();
-	}
+	/**
+	 * Writes the message followed by the {@link #PROXY_CONNECTION_SEPARATOR}.
+	 */
+	protected abstract void write(String message) throws IOException;
 
-	private void write(Object object) throws IOException {
-		String message = object instanceof String ? ((String) object) : String.valueOf(object);
-		printWriter.write(message);
-		printWriter.write(PROXY_CONNECTION_SEPARATOR);
-		printWriter.flush();
-	}
+	protected abstract Object[] getPortList();
 
-	protected abstract Link newLink(Configurer configurer) throws Exception;
+	/**
+	 * Opens the link to talk to, e.g. a serial one. Must not block.
+	 */
+	protected abstract void connect(String port, int baudrate);
 
-	private Object[] getPortList() {
-		return configurer.getAttribute("port").getChoiceValues();
-	}
+	protected abstract void stopServer();
+
+	/**
+	 * Called when the client switched to the multiplexed protocol, before
+	 * {@link NetworkProxyMessages#OK} is written.
+	 */
+	protected abstract void multiplexed();
 
 }
@@ -0,0 +1,183 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.connection.proxy;
+
+import static java.lang.Integer.parseInt;
+import static org.ardulink.core.Pin.analogPin;
+import static org.ardulink.core.Pin.digitalPin;
+import static org.ardulink.core.proto.impl.ALProtoBuilder.alpProtocolMessage;
+import static org.ardulink.core.proto.impl.ALProtoBuilder.ALPProtocolKey.ANALOG_PIN_READ;
+import static org.ardulink.core.proto.impl.ALProtoBuilder.ALPProtocolKey.DIGITAL_PIN_READ;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Arrays;
+
+import org.ardulink.core.Link;
+import org.ardulink.core.events.AnalogPinValueChangedEvent;
+import org.ardulink.core.events.DigitalPinValueChangedEvent;
+import org.ardulink.core.events.EventListener;
+import org.ardulink.core.proto.impl.ALProtoBuilder.ALPProtocolKey;
+import org.ardulink.util.URIs;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * Adapts a {@link Link} that is not based on a connection (e.g. a link
+ * talking to a broker) so it can be served by a {@link DeviceHub}: The frames
+ * of the clients are parsed and passed to the link's methods, the link's
+ * events are encoded as frames. Only pin switching, listening and custom
+ * messages are supported, other frames are dropped.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+final class LinkDevice implements DeviceHub.Device {
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(LinkDevice.class);
+
+	private final Link link;
+	private final byte[] separator;
+	private volatile DeviceHub hub;
+	private final EventListener listener = new EventListener() {
+
+		@Override
+		public void stateChanged(AnalogPinValueChangedEvent event) {
+			received(alpProtocolMessage(ANALOG_PIN_READ).forPin(
+					event.getPin().pinNum()).withValue(event.getValue()));
+		}
+
+		@Override
+		public void stateChanged(DigitalPinValueChangedEvent event) {
+			received(alpProtocolMessage(DIGITAL_PIN_READ).forPin(
+					event.getPin().pinNum()).withState(
+					event.getValue().booleanValue()));
+		}
+
+	};
+
+	LinkDevice(Link link, byte[] separator) {
+		this.link = link;
+		this.separator = separator.clone();
+	}
+
+	private void received(String message) {
+		DeviceHub tmpHub = this.hub;
+		if (tmpHub != null) {
+			tmpHub.received(message.getBytes());
+		}
+	}
+
+	@Override
+	public void attach(DeviceHub hub) throws IOException {
+		this.hub = hub;
+		link.addListener(listener);
+	}
+
+	@Override
+	public void detach(DeviceHub hub) throws IOException {
+		link.removeListener(listener);
+		this.hub = null;
+	}
+
+	@Override
+	public void write(byte[] frames) throws IOException {
+		int start = 0;
+		for (int i = 0; i <= frames.length - separator.length; i++) {
+			if (startsWith(frames, i, separator)) {
+				if (i > start) {
+					String frame = new String(frames, start, i - start);
+					try {
+						dispatch(frame);
+					} catch (RuntimeException e) {
+						logger.warn("Cannot handle {}", frame, e);
+					}
+				}
+				i += separator.length - 1;
+				start = i + 1;
+			}
+		}
+	}
+
+	private static boolean startsWith(byte[] bytes, int offset, byte[] prefix) {
+		for (int i = 0; i < prefix.length; i++) {
+			if (bytes[offset + i] != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void dispatch(String frame) throws IOException {
+		URI uri = URIs.newURI(frame);
+		ALPProtocolKey key = ALPProtocolKey.fromString(
+				String.valueOf(uri.getHost())).or(null);
+		String path = uri.getPath();
+		String[] specs = path == null || path.length() < 2 ? new String[0]
+				: path.substring(1).split("/");
+		if (key == null) {
+			logger.warn("Dropping unsupported frame {}", frame);
+		} else if (key == ALPProtocolKey.CUSTOM_MESSAGE) {
+			link.sendCustomMessage(specs);
+		} else if (specs.length == 0) {
+			logger.warn("Dropping frame {} without pin", frame);
+		} else {
+			dispatch(key, specs, frame);
+		}
+	}
+
+	private void dispatch(ALPProtocolKey key, String[] specs, String frame)
+			throws IOException {
+		int pin = parseInt(specs[0]);
+		switch (key) {
+		case POWER_PIN_INTENSITY:
+			link.switchAnalogPin(analogPin(pin), parseInt(specs[1]));
+			break;
+		case POWER_PIN_SWITCH:
+			link.switchDigitalPin(digitalPin(pin), parseInt(specs[1]) != 0);
+			break;
+		case START_LISTENING_ANALOG:
+			link.startListening(analogPin(pin));
+			break;
+		case START_LISTENING_DIGITAL:
+			link.startListening(digitalPin(pin));
+			break;
+		case STOP_LISTENING_ANALOG:
+			link.stopListening(analogPin(pin));
+			break;
+		case STOP_LISTENING_DIGITAL:
+			link.stopListening(digitalPin(pin));
+			break;
+		case NOTONE:
+			link.sendNoTone(analogPin(pin));
+			break;
+		default:
+			logger.warn("Dropping unsupported frame {} ({})", frame,
+					Arrays.toString(specs));
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.valueOf(link);
+	}
+
+}
@@ -0,0 +1,339 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.connection.proxy;
+
+import static org.ardulink.connection.proxy.NetworkProxyMessages.KO;
+import static org.ardulink.connection.proxy.NetworkProxyMessages.OK;
+import static org.ardulink.util.Preconditions.checkArgument;
+import static org.ardulink.util.Preconditions.checkState;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.ardulink.connection.proxy.SelectorProxyServer.Callback;
+import org.ardulink.core.Link;
+import org.ardulink.util.URIs;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * The multiplexed (version 2) protocol of a
+ * {@link NetworkProxyServerConnection}: Several links share the client's
+ * connection, each line is prefixed by the id of the channel it belongs to (
+ * <code>&lt;channel&gt; &lt;frame&gt;</code>). Channel 0 is used for control
+ * requests, each of them carries an id chosen by the client that is repeated
+ * in the response so the client can send requests without waiting for the
+ * responses of the former ones:
+ *
+ * <pre>
+ * 0 &lt;id&gt; open &lt;channel&gt; &lt;uri&gt;        -&gt; 0 &lt;id&gt; OK
+ * 0 &lt;id&gt; close &lt;channel&gt;             -&gt; 0 &lt;id&gt; OK
+ * 0 &lt;id&gt; choices &lt;uri&gt; &lt;attribute&gt;  -&gt; 0 &lt;id&gt; OK &lt;value&gt;...
+ * </pre>
+ *
+ * Failing requests are answered by <code>0 &lt;id&gt; KO &lt;message&gt;</code>
+ * . URIs, attributes, values and messages are URL encoded. All methods have
+ * to be called by the connection's I/O thread.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+final class MultiplexedSession {
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(MultiplexedSession.class);
+
+	static final int CONTROL_CHANNEL = 0;
+
+	static final String OPEN = "open";
+	static final String CLOSE = "close";
+	static final String CHOICES = "choices";
+
+	/**
+	 * The client's side of the session.
+	 */
+	interface Output {
+
+		/**
+		 * Queues a line received from a device, must not block.
+		 */
+		void deliver(ByteBuffer line);
+
+		/**
+		 * Writes a control response (without separator).
+		 */
+		void reply(String response) throws IOException;
+
+		/**
+		 * Stops reading lines from the client until {@link #resume()} is
+		 * called, used if a device does not keep up.
+		 */
+		void pause();
+
+		void resume();
+
+	}
+
+	private final SelectorProxyServer server;
+	private final SelectorWorker worker;
+	private final byte[] separator;
+	private final Output output;
+	private final Map<Integer, Channel> channels = new HashMap<Integer, Channel>();
+	private final Runnable resume = new Runnable() {
+		@Override
+		public void run() {
+			output.resume();
+		}
+	};
+	private boolean closed;
+
+	MultiplexedSession(SelectorProxyServer server, SelectorWorker worker,
+			byte[] separator, Output output) {
+		this.server = server;
+		this.worker = worker;
+		this.separator = separator.clone();
+		this.output = output;
+	}
+
+	/**
+	 * Handles a line (without separator) received from the client.
+	 */
+	void lineReceived(String line) throws IOException {
+		int space = line.indexOf(' ');
+		int id;
+		try {
+			id = Integer.parseInt(space < 0 ? line : line.substring(0, space));
+		} catch (NumberFormatException e) {
+			throw new IOException("Invalid line " + line, e);
+		}
+		String payload = space < 0 ? "" : line.substring(space + 1);
+		if (id == CONTROL_CHANNEL) {
+			control(payload.split(" "));
+		} else {
+			relay(id, payload);
+		}
+	}
+
+	private void relay(int id, String frame) throws IOException {
+		Channel channel = channels.get(id);
+		if (channel == null || channel.hub == null) {
+			logger.debug("Dropping {}, channel {} is not open", frame, id);
+			return;
+		}
+		byte[] payload = frame.getBytes();
+		byte[] bytes = new byte[payload.length + separator.length];
+		System.arraycopy(payload, 0, bytes, 0, payload.length);
+		System.arraycopy(separator, 0, bytes, payload.length, separator.length);
+		FrameTap tap = server.getTap();
+		if (tap != null) {
+			tap.toDevice(bytes);
+		}
+		if (!channel.hub.write(bytes, resume)) {
+			output.pause();
+		}
+	}
+
+	private void control(String[] request) throws IOException {
+		String requestId = request[0];
+		String command = request.length > 1 ? request[1] : "";
+		try {
+			if (OPEN.equals(command) && request.length == 4) {
+				open(requestId, channelId(request[2]),
+						URIs.newURI(URIs.decode(request[3])));
+			} else if (CLOSE.equals(command) && request.length == 3) {
+				close(channels.remove(channelId(request[2])));
+				reply(requestId, OK);
+			} else if (CHOICES.equals(command) && request.length == 4) {
+				choices(requestId, URIs.newURI(URIs.decode(request[2])),
+						URIs.decode(request[3]));
+			} else {
+				reply(requestId, KO, "Unknown request " + command);
+			}
+		} catch (RuntimeException e) {
+			reply(requestId, KO, String.valueOf(e.getMessage()));
+		}
+	}
+
+	private static int channelId(String id) {
+		int channelId = Integer.parseInt(id);
+		checkArgument(channelId > CONTROL_CHANNEL,
+				"channel must be greater than %s but was %s", CONTROL_CHANNEL,
+				channelId);
+		return channelId;
+	}
+
+	private void open(final String requestId, final int id, final URI uri) {
+		checkState(!channels.containsKey(id), "channel %s already in use", id);
+		final Channel channel = new Channel(id);
+		channels.put(id, channel);
+		server.submit(new Callable<Link>() {
+			@Override
+			public Link call() throws Exception {
+				return server.newLink(uri);
+			}
+		}, worker, new Callback<Link>() {
+			@Override
+			public void done(Link link, Exception error) {
+				if (closed || channels.get(id) != channel) {
+					// closed while opening
+					close(link);
+					return;
+				}
+				Exception failure = error;
+				if (failure == null) {
+					try {
+						channel.open(link);
+					} catch (IOException e) {
+						close(link);
+						failure = e;
+					}
+				}
+				if (failure == null) {
+					replyQuietly(requestId, OK);
+				} else {
+					logger.error("Error opening {}", uri, failure);
+					channels.remove(id);
+					replyQuietly(requestId, KO,
+							String.valueOf(failure.getMessage()));
+				}
+			}
+		});
+	}
+
+	private void choices(final String requestId, final URI uri,
+			final String attribute) {
+		server.submit(new Callable<Object[]>() {
+			@Override
+			public Object[] call() throws Exception {
+				return server.getChoiceValues(uri, attribute);
+			}
+		}, worker, new Callback<Object[]>() {
+			@Override
+			public void done(Object[] values, Exception error) {
+				if (closed) {
+					return;
+				}
+				if (error == null) {
+					List<String> strings = new ArrayList<String>();
+					for (Object value : values == null ? new Object[0] : values) {
+						strings.add(String.valueOf(value));
+					}
+					replyQuietly(requestId, OK,
+							strings.toArray(new String[strings.size()]));
+				} else {
+					replyQuietly(requestId, KO,
+							String.valueOf(error.getMessage()));
+				}
+			}
+		});
+	}
+
+	private void reply(String requestId, String status, String... values)
+			throws IOException {
+		StringBuilder sb = new StringBuilder().append(CONTROL_CHANNEL)
+				.append(' ').append(requestId).append(' ').append(status);
+		for (String value : values) {
+			sb.append(' ').append(URIs.encode(value));
+		}
+		output.reply(sb.toString());
+	}
+
+	private void replyQuietly(String requestId, String status,
+			String... values) {
+		try {
+			reply(requestId, status, values);
+		} catch (IOException e) {
+			logger.debug("Cannot reply to request {}", requestId, e);
+		}
+	}
+
+	/**
+	 * Closes all channels of the session.
+	 */
+	void close() {
+		closed = true;
+		for (Channel channel : channels.values()) {
+			close(channel);
+		}
+		channels.clear();
+	}
+
+	private static void close(Channel channel) {
+		if (channel != null) {
+			channel.close();
+		}
+	}
+
+	private static void close(Link link) {
+		if (link != null) {
+			try {
+				link.close();
+			} catch (IOException e) {
+				logger.error("Error closing link {}", link, e);
+			}
+		}
+	}
+
+	private final class Channel implements DeviceHub.Client {
+
+		private final byte[] prefix;
+		private Link link;
+		private DeviceHub hub;
+
+		private Channel(int id) {
+			this.prefix = (id + " ").getBytes();
+		}
+
+		private void open(Link link) throws IOException {
+			this.link = link;
+			this.hub = DeviceHub.join(link, separator, server.getTap(), this);
+		}
+
+		@Override
+		public void deliver(ByteBuffer frame) {
+			ByteBuffer line = ByteBuffer.allocate(prefix.length
+					+ frame.remaining());
+			line.put(prefix).put(frame).flip();
+			output.deliver(line);
+		}
+
+		private void close() {
+			if (hub == null) {
+				MultiplexedSession.close(link);
+			} else {
+				final Link tmpLink = link;
+				hub.leave(this, new Runnable() {
+					@Override
+					public void run() {
+						MultiplexedSession.close(tmpLink);
+					}
+				});
+			}
+		}
+
+	}
+
+}
@@ -33,5 +33,9 @@ public final class NetworkProxyMessages {
 	public static final String STOP_SERVER_CMD = PREFIX + "stop_server";
 	public static final String GET_PORT_LIST_CMD = PREFIX + "get_port_list";
 	public static final String CONNECT_CMD = PREFIX + "connect";
+	/**
+	 * Switches the connection to the multiplexed version 2 protocol.
+	 */
+	public static final String V2_CMD = PREFIX + "v2";
 
 }
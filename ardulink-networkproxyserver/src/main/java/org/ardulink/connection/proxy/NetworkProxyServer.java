@@ -20,9 +20,11 @@ import static org.ardulink.connection.proxy.NetworkProxyMessages.STOP_SERVER_CMD
 
 import java.io.PrintWriter;
 import java.net.InetAddress;
-import java.net.ServerSocket;
 import java.net.Socket;
 
+import org.ardulink.connection.proxy.SelectorProxyServer.RelayMode;
+import org.ardulink.connection.proxy.SelectorProxyServer.SlowClientPolicy;
+import org.ardulink.core.proto.impl.ArdulinkProtocol2;
 import org.kohsuke.args4j.Argument;
 import org.kohsuke.args4j.CmdLineException;
 import org.kohsuke.args4j.CmdLineParser;
@@ -42,24 +44,30 @@ import org.kohsuke.args4j.spi.SubCommands;
 public class NetworkProxyServer {
 
 	private interface Command {
-		void execute(int portNumber);
+		void execute(NetworkProxyServer options);
 	}
 
 	public static class StartCommand implements Command {
 
 		@Override
-		public void execute(int portNumber) {
+		public void execute(NetworkProxyServer options) {
 			try {
-				ServerSocket serverSocket = new ServerSocket(portNumber);
+				FrameCounter counter = options.metrics ? new FrameCounter(
+						ArdulinkProtocol2.instance().getSeparator()) : null;
+				SelectorProxyServer server = new SelectorProxyServer(
+						options.portNumber, options.ioThreads)
+						.slowClients(options.slowClientPolicy,
+								options.maxQueuedFrames)
+						.relayMode(options.relayMode).tap(counter);
 				try {
 					System.out
 							.println("Ardulink Network Proxy Server running...");
-					while (true) {
-						new Thread(new NetworkProxyServerConnection(
-								serverSocket.accept())).start();
-					}
+					server.awaitTermination();
 				} finally {
-					serverSocket.close();
+					server.close();
+				}
+				if (counter != null) {
+					System.out.println(counter);
 				}
 			} catch (Exception e) {
 				e.printStackTrace();
@@ -73,11 +81,11 @@ public class NetworkProxyServer {
 	public static class StopCommand implements Command {
 
 		@Override
-		public void execute(int portNumber) {
+		public void execute(NetworkProxyServer options) {
 			try {
 				InetAddress localHost = InetAddress.getLocalHost();
 				Socket socket = new Socket("127.0.0.1",
-						portNumber);
+						options.portNumber);
 				socket.setSoTimeout((int) SECONDS.toMillis(5));
 				PrintWriter writer = new PrintWriter(socket.getOutputStream(),
 						true);
@@ -103,6 +111,21 @@ public class NetworkProxyServer {
 	@Option(name = "-p", aliases = "--port", usage = "Local port to bind to")
 	private int portNumber = DEFAULT_LISTENING_PORT;
 
+	@Option(name = "-t", aliases = "--ioThreads", usage = "Number of threads serving the clients")
+	private int ioThreads = SelectorProxyServer.DEFAULT_IO_THREADS;
+
+	@Option(name = "-slow", aliases = "--slowClients", usage = "What to do with clients not keeping up")
+	private SlowClientPolicy slowClientPolicy = SlowClientPolicy.DISCONNECT;
+
+	@Option(name = "-q", aliases = "--maxQueuedFrames", usage = "Frames queued per client before it is considered to be slow")
+	private int maxQueuedFrames = SelectorProxyServer.DEFAULT_MAX_QUEUED_FRAMES;
+
+	@Option(name = "-relay", aliases = "--relayMode", usage = "RAW passes all complete frames read at once, FRAMED frame by frame")
+	private RelayMode relayMode = RelayMode.RAW;
+
+	@Option(name = "-metrics", aliases = "--metrics", usage = "Count the frames relayed and print the counters on stop")
+	private boolean metrics;
+
 	public static void main(String[] args) {
 		new NetworkProxyServer().doMain(args);
 	}
@@ -116,7 +139,7 @@ public class NetworkProxyServer {
 			cmdLineParser.printUsage(System.err);
 			return;
 		}
-		command.execute(portNumber);
+		command.execute(this);
 	}
 
 
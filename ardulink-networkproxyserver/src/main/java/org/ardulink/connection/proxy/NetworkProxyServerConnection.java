@@ -15,20 +15,25 @@ limitations under the License.
  */
 package org.ardulink.connection.proxy;
 
-import static org.ardulink.util.Preconditions.checkState;
+import static java.nio.channels.SelectionKey.OP_READ;
+import static java.nio.channels.SelectionKey.OP_WRITE;
+import static org.ardulink.connection.proxy.Handshaker.PROXY_CONNECTION_SEPARATOR;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.Socket;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import org.ardulink.connection.proxy.SelectorProxyServer.RelayMode;
+import org.ardulink.connection.proxy.SelectorProxyServer.SlowClientPolicy;
+import org.ardulink.connection.proxy.SelectorWorker.Handler;
 import org.ardulink.core.Connection;
-import org.ardulink.core.ConnectionBasedLink;
 import org.ardulink.core.Link;
-import org.ardulink.core.StreamReader;
-import org.ardulink.core.convenience.LinkDelegate;
-import org.ardulink.core.convenience.Links;
-import org.ardulink.core.linkmanager.LinkManager.Configurer;
 import org.ardulink.core.proto.api.Protocol;
 import org.ardulink.core.proto.impl.ArdulinkProtocol2;
 import org.slf4j.Logger;
@@ -37,88 +42,422 @@ import org.slf4j.LoggerFactory;
 /**
  * [ardulinktitle] [ardulinkversion]
  * 
+ * One client of the {@link SelectorProxyServer}. The bytes read are kept in a
+ * direct {@link ByteBuffer} and split into frames at the separator: While
+ * handshaking the frames are passed to the {@link Handshaker}, afterwards
+ * they are passed to the {@link DeviceHub} of the link's {@link Connection}:
+ * Using {@link RelayMode#RAW} all complete frames read are passed at once
+ * without looking at each of them, using {@link RelayMode#FRAMED} frame by
+ * frame. The frames received from the device are
+ * queued by the hub's reader and written by the client's I/O thread using
+ * gathering writes. The queue is bounded, what happens if a client does not
+ * keep up is defined by the server's {@link SlowClientPolicy}. If the device
+ * does not keep up with the frames of the client, reading from the client is
+ * paused until the hub has caught up. Clients
+ * switching to the multiplexed protocol pass each line to their
+ * {@link MultiplexedSession}.
+ * 
  * project Ardulink http://www.ardulink.org/
  * 
  * [adsense]
  *
  */
-public class NetworkProxyServerConnection implements Runnable {
+public class NetworkProxyServerConnection implements Handler {
 
 	private static final Logger logger = LoggerFactory
 			.getLogger(NetworkProxyServerConnection.class);
 
+	private static final int BUFFER_SIZE = 64 * 1024;
+
 	private final Protocol proto = ArdulinkProtocol2.instance();
 
-	private final Socket socket;
+	private final byte[] handshakeSeparator = PROXY_CONNECTION_SEPARATOR
+			.getBytes();
 
+	private final SelectorProxyServer server;
+	private final SelectorWorker worker;
+	private final SocketChannel channel;
+	private final SocketAddress remoteAddress;
+	private final ByteBuffer in = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private final Queue<ByteBuffer> out = new ArrayDeque<ByteBuffer>();
+	private final AtomicBoolean closed = new AtomicBoolean();
+	private final Handshaker handshaker;
+	private final DeviceHub.Client client = new DeviceHub.Client() {
+		@Override
+		public void deliver(ByteBuffer frame) {
+			enqueue(frame);
+		}
+	};
+	private final Runnable resumeReading = new Runnable() {
+		@Override
+		public void run() {
+			enableOps(OP_READ);
+		}
+	};
+	private final Runnable flush = new Runnable() {
+		@Override
+		public void run() {
+			try {
+				flush();
+			} catch (IOException e) {
+				logger.debug("Closing {}", NetworkProxyServerConnection.this, e);
+				close();
+			}
+		}
+	};
+
+	private SelectionKey key;
 	private Link link;
+	private DeviceHub hub;
+	private MultiplexedSession session;
+	private long dropped;
+	private boolean disconnecting;
+
+	public NetworkProxyServerConnection(final SelectorProxyServer server,
+			final SelectorWorker worker, SocketChannel channel) {
+		this.server = server;
+		this.worker = worker;
+		this.channel = channel;
+		this.remoteAddress = channel.socket().getRemoteSocketAddress();
+		this.handshaker = new Handshaker() {
+
+			@Override
+			protected void write(String message) throws IOException {
+				writeLine(message);
+			}
+
+			@Override
+			protected Object[] getPortList() {
+				return server.getPortList();
+			}
 
-	public NetworkProxyServerConnection(Socket socket) {
-		this.socket = socket;
+			@Override
+			protected void connect(String port, int baudrate) {
+				// stop reading until the link is ready, data already
+				// received is kept in the buffer
+				disableOps(OP_READ);
+				server.connect(NetworkProxyServerConnection.this, worker, port,
+						baudrate);
+			}
+
+			@Override
+			protected void stopServer() {
+				server.close();
+			}
+
+			@Override
+			protected void multiplexed() {
+				session = new MultiplexedSession(server, worker,
+						proto.getSeparator(), new MultiplexedSession.Output() {
+
+							@Override
+							public void deliver(ByteBuffer line) {
+								enqueue(line);
+							}
+
+							@Override
+							public void reply(String response)
+									throws IOException {
+								writeLine(response);
+							}
+
+							@Override
+							public void pause() {
+								disableOps(OP_READ);
+							}
+
+							@Override
+							public void resume() {
+								resumeReading.run();
+							}
+
+						});
+			}
+
+		};
+	}
+
+	/**
+	 * Writes the message followed by the handshake separator, the message is
+	 * queued regardless of the {@link SlowClientPolicy}.
+	 */
+	private void writeLine(String message) throws IOException {
+		synchronized (out) {
+			if (closed.get()) {
+				return;
+			}
+			out.add(ByteBuffer.wrap(message.getBytes()));
+			out.add(ByteBuffer.wrap(handshakeSeparator));
+		}
+		flush();
 	}
 
 	@Override
-	public void run() {
+	public void ready(SelectionKey key) throws IOException {
+		this.key = key;
+		if (key.isReadable()) {
+			read();
+		}
+		if (key.isValid() && key.isWritable()) {
+			flush();
+		}
+	}
+
+	private void read() throws IOException {
+		if (channel.read(in) < 0) {
+			close();
+			return;
+		}
+		in.flip();
 		try {
-			final OutputStream osRemote = socket.getOutputStream();
-			InputStream isRemote = socket.getInputStream();
+			handleFrames();
+		} finally {
+			in.compact();
+		}
+		if (!in.hasRemaining()) {
+			throw new IOException("Frame exceeds " + BUFFER_SIZE + " bytes");
+		}
+	}
 
-			Handshaker handshaker = new Handshaker(isRemote, osRemote) {
-				@Override
-				protected Link newLink(Configurer configurer) throws Exception {
-					return Links.getLink(configurer);
+	private void handleFrames() throws IOException {
+		while (!handshaker.isConnecting()) {
+			if (handshaker.isMultiplexed()) {
+				int end = indexOf(handshakeSeparator);
+				if (end < 0) {
+					return;
 				}
-			};
+				session.lineReceived(readLine(end, handshakeSeparator));
+				continue;
+			}
+			boolean connected = handshaker.isConnected();
+			byte[] sep = connected ? proto.getSeparator() : handshakeSeparator;
+			int end = indexOf(sep);
+			if (end < 0) {
+				return;
+			}
+			if (connected && server.getRelayMode() == RelayMode.RAW) {
+				// all complete frames at once, the incomplete rest stays in
+				// the buffer so frames of different clients do not interleave
+				relay(lastIndexOf(sep) + sep.length);
+				return;
+			} else if (connected) {
+				// the separator is passed to the device, too
+				relay(end + sep.length);
+			} else {
+				handshaker.lineReceived(readLine(end, sep));
+			}
+		}
+	}
 
-			Link link = getRoot(handshaker.doHandshake());
-			checkState(link instanceof ConnectionBasedLink,
-					"Only %s links supported for now (got %s)",
-					ConnectionBasedLink.class.getName(), link.getClass());
+	/**
+	 * Reads the line ending at the passed absolute index and skips the
+	 * separator.
+	 */
+	private String readLine(int end, byte[] sep) {
+		byte[] line = new byte[end - in.position()];
+		in.get(line);
+		in.position(in.position() + sep.length);
+		return new String(line);
+	}
 
-			final Connection connection = ((ConnectionBasedLink) link)
-					.getConnection();
-			connection.addListener(new Connection.ListenerAdapter() {
-				@Override
-				public void received(byte[] bytes) throws IOException {
-					osRemote.write(bytes);
-					osRemote.write(proto.getSeparator());
+	private void relay(int end) throws IOException {
+		byte[] frames = new byte[end - in.position()];
+		in.get(frames);
+		FrameTap tap = server.getTap();
+		if (tap != null) {
+			tap.toDevice(frames);
+		}
+		if (!hub.write(frames, resumeReading)) {
+			disableOps(OP_READ);
+		}
+	}
+
+	/**
+	 * Returns the absolute index of the last separator within the buffer's
+	 * remaining bytes or -1 if not found.
+	 */
+	private int lastIndexOf(byte[] sep) {
+		outer: for (int i = in.limit() - sep.length; i >= in.position(); i--) {
+			for (int j = 0; j < sep.length; j++) {
+				if (in.get(i + j) != sep[j]) {
+					continue outer;
 				}
-			});
+			}
+			return i;
+		}
+		return -1;
+	}
 
-			StreamReader streamReader = new StreamReader(isRemote) {
-				@Override
-				protected void received(byte[] bytes) throws Exception {
-					connection.write(bytes);
-					connection.write(proto.getSeparator());
+	/**
+	 * Returns the absolute index of the separator within the buffer's
+	 * remaining bytes or -1 if not found.
+	 */
+	private int indexOf(byte[] sep) {
+		outer: for (int i = in.position(); i <= in.limit() - sep.length; i++) {
+			for (int j = 0; j < sep.length; j++) {
+				if (in.get(i + j) != sep[j]) {
+					continue outer;
 				}
-			};
+			}
+			return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Called on the worker's thread when the link has been opened (
+	 * <code>null</code> if it couldn't).
+	 */
+	void connected(Link link) {
+		try {
+			if (closed.get() || link == null) {
+				close(link);
+				handshaker.connectFailed();
+			} else {
+				this.link = link;
+				this.hub = DeviceHub.join(link, proto.getSeparator(),
+						server.getTap(), client);
+				handshaker.connected();
+			}
+			enableOps(OP_READ);
+			// handle the frames received while connecting
+			in.flip();
 			try {
-				streamReader.readUntilClosed(proto.getSeparator());
+				handleFrames();
 			} finally {
-				streamReader.close();
+				in.compact();
 			}
-		} catch (Exception e) {
-			logger.error("Error while doing proxy", e);
-		} finally {
-			logger.info("{} connection closed.",
-					socket.getRemoteSocketAddress());
-			close(link);
-			close(socket);
+		} catch (IOException e) {
+			logger.debug("Closing {}", this, e);
+			close();
 		}
 	}
 
-	private Link getRoot(Link link) {
-		while (link instanceof LinkDelegate) {
-			link = ((LinkDelegate) link).getDelegate();
+	/**
+	 * Queues a frame received from the device, called by the device's reader.
+	 * Never writes to the channel nor blocks, the flush is done by the
+	 * client's I/O thread.
+	 */
+	private void enqueue(ByteBuffer frame) {
+		boolean wasEmpty;
+		synchronized (out) {
+			if (closed.get() || disconnecting) {
+				return;
+			}
+			if (out.size() >= server.getMaxQueuedFrames()) {
+				if (server.getSlowClientPolicy() == SlowClientPolicy.DISCONNECT) {
+					disconnecting = true;
+					logger.warn("{} does not keep up, disconnecting",
+							remoteAddress);
+					worker.execute(new Runnable() {
+						@Override
+						public void run() {
+							close();
+						}
+					});
+					return;
+				}
+				dropOldest();
+			}
+			wasEmpty = out.isEmpty();
+			out.add(frame);
+		}
+		if (wasEmpty) {
+			worker.execute(flush);
 		}
-		return link;
 	}
 
-	private void close(Socket socket) {
-		try {
-			socket.close();
-		} catch (IOException e) {
-			logger.error("Error closing socket {}", socket, e);
+	/**
+	 * Drops the oldest frame not yet started to be written.
+	 */
+	private void dropOldest() {
+		Iterator<ByteBuffer> iterator = out.iterator();
+		ByteBuffer head = iterator.next();
+		if (head.position() == 0) {
+			iterator.remove();
+		} else if (iterator.hasNext()) {
+			iterator.next();
+			iterator.remove();
+		}
+		if (++dropped % 1000 == 1) {
+			logger.warn("{} does not keep up, {} frames dropped so far",
+					remoteAddress, dropped);
+		}
+	}
+
+	/**
+	 * Writes the queued frames using one gathering write, called by the
+	 * worker's thread only.
+	 */
+	private void flush() throws IOException {
+		synchronized (out) {
+			if (closed.get() || out.isEmpty()) {
+				return;
+			}
+			channel.write(out.toArray(new ByteBuffer[out.size()]));
+			while (!out.isEmpty() && !out.peek().hasRemaining()) {
+				out.poll();
+			}
+			if (out.isEmpty()) {
+				disableOps(OP_WRITE);
+			} else {
+				enableOps(OP_WRITE);
+			}
+		}
+	}
+
+	private void enableOps(final int ops) {
+		updateOps(ops, true);
+	}
+
+	private void disableOps(final int ops) {
+		updateOps(ops, false);
+	}
+
+	private void updateOps(final int ops, final boolean enable) {
+		if (worker.inWorkerThread()) {
+			SelectionKey tmpKey = key;
+			if (tmpKey != null && tmpKey.isValid()) {
+				tmpKey.interestOps(enable ? tmpKey.interestOps() | ops
+						: tmpKey.interestOps() & ~ops);
+			}
+		} else {
+			worker.execute(new Runnable() {
+				@Override
+				public void run() {
+					updateOps(ops, enable);
+				}
+			});
+		}
+	}
+
+	@Override
+	public void close() {
+		if (closed.compareAndSet(false, true)) {
+			logger.info("{} connection closed.", remoteAddress);
+			if (hub == null) {
+				close(link);
+			} else {
+				// the link is closed once the frames read have been written
+				final Link tmpLink = link;
+				hub.leave(client, new Runnable() {
+					@Override
+					public void run() {
+						close(tmpLink);
+					}
+				});
+			}
+			if (session != null) {
+				session.close();
+			}
+			try {
+				channel.close();
+			} catch (IOException e) {
+				logger.error("Error closing channel {}", channel, e);
+			}
+			synchronized (out) {
+				out.clear();
+			}
 		}
 	}
 
@@ -132,4 +471,9 @@ public class NetworkProxyServerConnection implements Runnable {
 		}
 	}
 
+	@Override
+	public String toString() {
+		return "NetworkProxyServerConnection [" + remoteAddress + "]";
+	}
+
 }
@@ -0,0 +1,365 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.connection.proxy;
+
+import static java.nio.channels.SelectionKey.OP_ACCEPT;
+import static java.nio.channels.SelectionKey.OP_READ;
+import static org.ardulink.util.Preconditions.checkArgument;
+import static org.ardulink.util.Preconditions.checkNotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.ardulink.connection.proxy.SelectorWorker.Handler;
+import org.ardulink.core.Link;
+import org.ardulink.core.convenience.Links;
+import org.ardulink.core.linkmanager.LinkManager;
+import org.ardulink.core.linkmanager.LinkManager.Configurer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * Network proxy server using non-blocking {@link SocketChannel}s. A fixed
+ * number of {@link SelectorWorker}s serves all the clients, the first one
+ * accepts the connections, too. Only opening the links (which blocks until
+ * the device is ready) is done by a separate thread so the I/O threads are
+ * never blocked. Besides the serial only handshake of Ardulink-1 clients can
+ * use the multiplexed protocol (see {@link MultiplexedSession}) to open any
+ * link known by the {@link LinkManager}.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public class SelectorProxyServer implements Closeable {
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(SelectorProxyServer.class);
+
+	public static final int DEFAULT_IO_THREADS = 2;
+
+	public static final int DEFAULT_MAX_QUEUED_FRAMES = 1024;
+
+	/**
+	 * How the data of the clients is passed to the device after the
+	 * handshake.
+	 */
+	public enum RelayMode {
+		/**
+		 * all complete frames read are passed at once, only the last separator
+		 * is searched
+		 */
+		RAW,
+		/**
+		 * each frame is passed on its own
+		 */
+		FRAMED;
+	}
+
+	/**
+	 * What to do with clients that do not read the data as fast as the device
+	 * sends it.
+	 */
+	public enum SlowClientPolicy {
+		/**
+		 * close the client's connection
+		 */
+		DISCONNECT,
+		/**
+		 * drop the oldest frames so the client gets the latest data
+		 */
+		DROP_OLDEST;
+	}
+
+	/**
+	 * Result of a task passed to
+	 * {@link SelectorProxyServer#submit(Callable, SelectorWorker, Callback)}
+	 * .
+	 */
+	interface Callback<T> {
+
+		/**
+		 * Called on the worker's thread, error is <code>null</code> if the task
+		 * succeeded.
+		 */
+		void done(T result, Exception error);
+
+	}
+
+	private final ServerSocketChannel serverChannel;
+	private final SelectorWorker[] workers;
+	private final ExecutorService connector = Executors
+			.newCachedThreadPool(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "ProxyConnector");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+	private final AtomicBoolean closed = new AtomicBoolean();
+	private volatile SlowClientPolicy slowClientPolicy = SlowClientPolicy.DISCONNECT;
+	private volatile int maxQueuedFrames = DEFAULT_MAX_QUEUED_FRAMES;
+	private volatile RelayMode relayMode = RelayMode.RAW;
+	private volatile FrameTap tap;
+
+	public SelectorProxyServer(int port) throws IOException {
+		this(port, DEFAULT_IO_THREADS);
+	}
+
+	public SelectorProxyServer(int port, int ioThreads) throws IOException {
+		checkArgument(ioThreads > 0,
+				"ioThreads must be greater than 0 but was %s", ioThreads);
+		this.serverChannel = ServerSocketChannel.open();
+		this.serverChannel.configureBlocking(false);
+		this.serverChannel.socket().setReuseAddress(true);
+		this.serverChannel.socket().bind(new InetSocketAddress(port));
+		this.workers = new SelectorWorker[ioThreads];
+		for (int i = 0; i < workers.length; i++) {
+			workers[i] = new SelectorWorker("ProxyIO-" + i).start();
+		}
+		workers[0].register(serverChannel, OP_ACCEPT, new Acceptor());
+	}
+
+	/**
+	 * Defines what happens to clients having maxQueuedFrames frames queued
+	 * that are not yet written to them.
+	 */
+	public SelectorProxyServer slowClients(SlowClientPolicy policy,
+			int maxQueuedFrames) {
+		checkArgument(maxQueuedFrames > 0,
+				"maxQueuedFrames must be greater than 0 but was %s",
+				maxQueuedFrames);
+		this.slowClientPolicy = checkNotNull(policy,
+				"policy must not be null");
+		this.maxQueuedFrames = maxQueuedFrames;
+		return this;
+	}
+
+	public SelectorProxyServer relayMode(RelayMode relayMode) {
+		this.relayMode = checkNotNull(relayMode, "relayMode must not be null");
+		return this;
+	}
+
+	/**
+	 * Sets the tap observing the data relayed, <code>null</code> removes it.
+	 * Should be set before the first client connects.
+	 */
+	public SelectorProxyServer tap(FrameTap tap) {
+		this.tap = tap;
+		return this;
+	}
+
+	public RelayMode getRelayMode() {
+		return relayMode;
+	}
+
+	public FrameTap getTap() {
+		return tap;
+	}
+
+	public SlowClientPolicy getSlowClientPolicy() {
+		return slowClientPolicy;
+	}
+
+	public int getMaxQueuedFrames() {
+		return maxQueuedFrames;
+	}
+
+	public int getLocalPort() {
+		return serverChannel.socket().getLocalPort();
+	}
+
+	/**
+	 * Blocks until the server has been closed.
+	 */
+	public void awaitTermination() throws InterruptedException {
+		for (SelectorWorker worker : workers) {
+			worker.join();
+		}
+	}
+
+	@Override
+	public void close() {
+		if (closed.compareAndSet(false, true)) {
+			try {
+				serverChannel.close();
+			} catch (IOException e) {
+				logger.error("Error closing server socket", e);
+			}
+			connector.shutdownNow();
+			for (SelectorWorker worker : workers) {
+				worker.close();
+			}
+		}
+	}
+
+	protected Object[] getPortList() {
+		return Links.getDefaultConfigurer().getAttribute("port")
+				.getChoiceValues();
+	}
+
+	/**
+	 * Opens the link for the client. Ardulink-1 only did support the proxy to
+	 * connect to serial links so the handshake contains serial specific
+	 * attributes.
+	 */
+	protected Link newLink(String port, int baudrate) throws Exception {
+		Configurer configurer = Links.getDefaultConfigurer();
+		configurer.getAttribute("port").setValue(port);
+		configurer.getAttribute("baudrate").setValue(Integer.valueOf(baudrate));
+		return Links.getLink(configurer);
+	}
+
+	/**
+	 * Opens the link for a client using the multiplexed protocol.
+	 */
+	protected Link newLink(URI uri) throws Exception {
+		return Links.getLink(uri);
+	}
+
+	protected Object[] getChoiceValues(URI uri, String attribute) {
+		return LinkManager.getInstance().getConfigurer(uri)
+				.getAttribute(attribute).getChoiceValues();
+	}
+
+	/**
+	 * Opens the link asynchronously and passes the result to the client's
+	 * I/O thread.
+	 */
+	void connect(final NetworkProxyServerConnection client,
+			SelectorWorker worker, final String port, final int baudrate) {
+		submit(new Callable<Link>() {
+			@Override
+			public Link call() throws Exception {
+				return newLink(port, baudrate);
+			}
+		}, worker, new Callback<Link>() {
+			@Override
+			public void done(Link link, Exception error) {
+				if (error != null) {
+					logger.error("Error connecting to {}", port, error);
+				}
+				client.connected(link);
+			}
+		});
+	}
+
+	/**
+	 * Runs the (blocking) task by the connector and passes the result to the
+	 * worker's thread.
+	 */
+	<T> void submit(final Callable<T> task, final SelectorWorker worker,
+			final Callback<T> callback) {
+		connector.execute(new Runnable() {
+			@Override
+			public void run() {
+				T result = null;
+				Exception error = null;
+				try {
+					result = task.call();
+				} catch (Exception e) {
+					error = e;
+				}
+				final T tmpResult = result;
+				final Exception tmpError = error;
+				worker.execute(new Runnable() {
+					@Override
+					public void run() {
+						callback.done(tmpResult, tmpError);
+					}
+				});
+			}
+		});
+	}
+
+	private class Acceptor implements Handler {
+
+		private int next;
+
+		/**
+		 * Accepts all pending clients. A client that cannot be accepted is
+		 * dropped on its own, the server socket stays registered so later
+		 * clients are still accepted.
+		 */
+		@Override
+		public void ready(SelectionKey key) {
+			SocketChannel channel;
+			while ((channel = accept()) != null) {
+				try {
+					channel.configureBlocking(false);
+					channel.socket().setTcpNoDelay(true);
+				} catch (IOException e) {
+					logger.error("Error accepting {}", channel, e);
+					closeQuietly(channel);
+					continue;
+				}
+				SelectorWorker worker = workers[next];
+				next = (next + 1) % workers.length;
+				logger.info("{} connected.", channel.socket()
+						.getRemoteSocketAddress());
+				worker.register(channel, OP_READ,
+						new NetworkProxyServerConnection(
+								SelectorProxyServer.this, worker, channel));
+			}
+		}
+
+		/**
+		 * @return the next pending client or <code>null</code> if there is
+		 *         none or it could not be accepted (e.g. the process ran out of
+		 *         file descriptors)
+		 */
+		private SocketChannel accept() {
+			try {
+				return serverChannel.accept();
+			} catch (IOException e) {
+				logger.error("Error accepting client", e);
+				return null;
+			}
+		}
+
+		private void closeQuietly(SocketChannel channel) {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				logger.debug("Error closing {}", channel, e);
+			}
+		}
+
+		/**
+		 * Only called when the worker owning the server socket shuts down.
+		 */
+		@Override
+		public void close() {
+			SelectorProxyServer.this.close();
+		}
+
+	}
+
+}
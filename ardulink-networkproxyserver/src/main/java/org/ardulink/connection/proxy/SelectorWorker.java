@@ -0,0 +1,170 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.connection.proxy;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * One I/O thread of the {@link SelectorProxyServer}. It owns a
+ * {@link Selector} and serves all the channels registered on it. Other
+ * threads pass work using {@link #execute(Runnable)} so the selector's keys
+ * are only changed by the worker's own thread.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public class SelectorWorker implements Runnable, Closeable {
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(SelectorWorker.class);
+
+	/**
+	 * Attachment of the {@link SelectionKey}s, called when the key is ready.
+	 */
+	public interface Handler {
+
+		void ready(SelectionKey key) throws IOException;
+
+		void close();
+
+	}
+
+	private final Selector selector;
+	private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+	private final Thread thread;
+	private volatile boolean closed;
+
+	public SelectorWorker(String name) throws IOException {
+		this.selector = Selector.open();
+		this.thread = new Thread(this, name);
+	}
+
+	public SelectorWorker start() {
+		this.thread.start();
+		return this;
+	}
+
+	/**
+	 * Runs the task on the worker's thread.
+	 */
+	public void execute(Runnable task) {
+		tasks.add(task);
+		selector.wakeup();
+	}
+
+	public boolean inWorkerThread() {
+		return Thread.currentThread() == thread;
+	}
+
+	/**
+	 * Registers the channel (which has to be non-blocking) for the passed
+	 * operations. The handler is called on the worker's thread.
+	 */
+	public void register(final SelectableChannel channel, final int ops,
+			final Handler handler) {
+		execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					channel.register(selector, ops, handler);
+				} catch (IOException e) {
+					logger.error("Error registering {}", channel, e);
+					handler.close();
+				}
+			}
+		});
+	}
+
+	@Override
+	public void run() {
+		try {
+			while (!closed) {
+				selector.select();
+				runTasks();
+				Iterator<SelectionKey> keys = selector.selectedKeys()
+						.iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					Handler handler = (Handler) key.attachment();
+					try {
+						if (key.isValid()) {
+							handler.ready(key);
+						}
+					} catch (IOException e) {
+						logger.debug("Closing {}", handler, e);
+						handler.close();
+					} catch (RuntimeException e) {
+						logger.error("Error handling {}", handler, e);
+						handler.close();
+					}
+				}
+			}
+		} catch (IOException e) {
+			logger.error("Selector failure", e);
+		} finally {
+			closeAll();
+		}
+	}
+
+	private void runTasks() {
+		Runnable task;
+		while ((task = tasks.poll()) != null) {
+			try {
+				task.run();
+			} catch (RuntimeException e) {
+				logger.error("Task {} failure", task, e);
+			}
+		}
+	}
+
+	private void closeAll() {
+		runTasks();
+		for (SelectionKey key : selector.keys()) {
+			((Handler) key.attachment()).close();
+		}
+		try {
+			selector.close();
+		} catch (IOException e) {
+			logger.error("Error closing selector", e);
+		}
+	}
+
+	@Override
+	public void close() {
+		this.closed = true;
+		selector.wakeup();
+	}
+
+	public void join() throws InterruptedException {
+		this.thread.join();
+	}
+
+}
@@ -0,0 +1,415 @@
+package org.ardulink.connection.proxy;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.ardulink.connection.proxy.NetworkProxyMessages.CONNECT_CMD;
+import static org.ardulink.connection.proxy.NetworkProxyMessages.GET_PORT_LIST_CMD;
+import static org.ardulink.connection.proxy.NetworkProxyMessages.V2_CMD;
+import static org.ardulink.connection.proxy.SelectorProxyServer.RelayMode.FRAMED;
+import static org.ardulink.connection.proxy.SelectorProxyServer.RelayMode.RAW;
+import static org.ardulink.connection.proxy.SelectorProxyServer.SlowClientPolicy.DISCONNECT;
+import static org.ardulink.core.Pin.analogPin;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.ardulink.core.AbstractConnection;
+import org.ardulink.core.ConnectionBasedLink;
+import org.ardulink.core.AbstractListenerLink;
+import org.ardulink.core.Link;
+import org.ardulink.core.Pin;
+import org.ardulink.core.Pin.AnalogPin;
+import org.ardulink.core.Pin.DigitalPin;
+import org.ardulink.core.Tone;
+import org.ardulink.core.events.DefaultAnalogPinValueChangedEvent;
+import org.ardulink.core.proto.impl.ArdulinkProtocol2;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+public class SelectorProxyServerTest {
+
+	@Rule
+	public Timeout timeout = new Timeout(10, SECONDS);
+
+	private final BlockingQueue<String> written = new LinkedBlockingQueue<String>();
+
+	private volatile CountDownLatch deviceWritable = new CountDownLatch(0);
+
+	private final AbstractConnection connection = new AbstractConnection() {
+
+		@Override
+		public void write(byte[] bytes) throws IOException {
+			try {
+				deviceWritable.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException(e);
+			}
+			written.add(new String(bytes));
+		}
+
+		@Override
+		public void close() throws IOException {
+			// nothing to close
+		}
+
+	};
+
+	private final Link link = new ConnectionBasedLink(connection,
+			ArdulinkProtocol2.instance());
+
+	/**
+	 * A link not based on a connection, records the calls.
+	 */
+	private final AbstractListenerLink recordingLink = new AbstractListenerLink() {
+
+		@Override
+		public long startListening(Pin pin) {
+			return record("startListening " + pin);
+		}
+
+		@Override
+		public long stopListening(Pin pin) {
+			return record("stopListening " + pin);
+		}
+
+		@Override
+		public long switchAnalogPin(AnalogPin analogPin, int value) {
+			return record("switchAnalogPin " + analogPin.pinNum() + " " + value);
+		}
+
+		@Override
+		public long switchDigitalPin(DigitalPin digitalPin, boolean value) {
+			return record("switchDigitalPin " + digitalPin.pinNum() + " "
+					+ value);
+		}
+
+		@Override
+		public long sendKeyPressEvent(char keychar, int keycode,
+				int keylocation, int keymodifiers, int keymodifiersex) {
+			return record("sendKeyPressEvent");
+		}
+
+		@Override
+		public long sendTone(Tone tone) {
+			return record("sendTone");
+		}
+
+		@Override
+		public long sendNoTone(AnalogPin analogPin) {
+			return record("sendNoTone " + analogPin.pinNum());
+		}
+
+		@Override
+		public long sendCustomMessage(String... messages) {
+			return record("sendCustomMessage " + Arrays.asList(messages));
+		}
+
+		private long record(String call) {
+			written.add(call);
+			return 0;
+		}
+
+	};
+
+	private SelectorProxyServer server;
+
+	@Before
+	public void setup() throws IOException {
+		server = new SelectorProxyServer(0) {
+
+			@Override
+			protected Object[] getPortList() {
+				return new Object[] { "COM1", "COM2" };
+			}
+
+			@Override
+			protected Link newLink(String port, int baudrate) {
+				return link;
+			}
+
+			@Override
+			protected Link newLink(URI uri) {
+				return "ardulink://recording".equals(uri.toString()) ? recordingLink
+						: link;
+			}
+
+			@Override
+			protected Object[] getChoiceValues(URI uri, String attribute) {
+				return new Object[] { uri + " " + attribute, "COM 2" };
+			}
+
+		};
+	}
+
+	@After
+	public void tearDown() throws InterruptedException {
+		server.close();
+		server.awaitTermination();
+	}
+
+	@Test
+	public void canListPorts() throws IOException {
+		Client client = new Client();
+		client.send(GET_PORT_LIST_CMD);
+		assertThat(client.read(), is("NUMBER_OF_PORTS=2"));
+		assertThat(client.read(), is("COM1"));
+		assertThat(client.read(), is("COM2"));
+		client.close();
+	}
+
+	@Test
+	public void relaysBetweenClientAndLink() throws Exception {
+		Client client = new Client();
+		client.send(CONNECT_CMD);
+		client.send("COM1");
+		client.send("115200");
+		assertThat(client.read(), is("OK"));
+
+		client.send("alp://ppin/1/42");
+		assertThat(written.take(), is("alp://ppin/1/42\n"));
+
+		connection.contactListeners4Received("alp://ared/1/2".getBytes());
+		assertThat(client.read(), is("alp://ared/1/2"));
+		client.close();
+	}
+
+	@Test
+	public void servesMoreClientsThanIoThreads() throws Exception {
+		Client[] clients = new Client[2 * SelectorProxyServer.DEFAULT_IO_THREADS + 1];
+		for (int i = 0; i < clients.length; i++) {
+			clients[i] = new Client();
+			clients[i].send(CONNECT_CMD);
+			clients[i].send("COM1");
+			clients[i].send("115200");
+			assertThat(clients[i].read(), is("OK"));
+		}
+		connection.contactListeners4Received("alp://dred/2/1".getBytes());
+		for (Client client : clients) {
+			assertThat(client.read(), is("alp://dred/2/1"));
+			client.close();
+		}
+	}
+
+	@Test
+	public void devicesDataIsFannedOutByOneListener() throws Exception {
+		Client client1 = connectedClient();
+		Client client2 = connectedClient();
+		// the link's listener and the hub's one
+		assertThat(connection.getListeners().size(), is(2));
+		connection.contactListeners4Received("alp://ared/1/2".getBytes());
+		assertThat(client1.read(), is("alp://ared/1/2"));
+		assertThat(client2.read(), is("alp://ared/1/2"));
+		client1.close();
+		client2.close();
+	}
+
+	@Test
+	public void rawRelayPassesCompleteFramesOnly() throws Exception {
+		FrameCounter counter = new FrameCounter("\n".getBytes());
+		server.relayMode(RAW).tap(counter);
+		Client client = connectedClient();
+		client.sendRaw("alp://ppin/1/42\nalp://ppsw/2/1\nalp://pp");
+		assertThat(written.take(), is("alp://ppin/1/42\nalp://ppsw/2/1\n"));
+		client.sendRaw("in/3/1\n");
+		assertThat(written.take(), is("alp://ppin/3/1\n"));
+		assertThat(counter.getFramesToDevice(), is(3L));
+
+		connection.contactListeners4Received("alp://ared/1/2".getBytes());
+		assertThat(client.read(), is("alp://ared/1/2"));
+		assertThat(counter.getFramesFromDevice(), is(1L));
+		client.close();
+	}
+
+	@Test
+	public void framedRelayPassesFrameByFrame() throws Exception {
+		server.relayMode(FRAMED);
+		Client client = connectedClient();
+		client.sendRaw("alp://ppin/1/42\nalp://ppsw/2/1\n");
+		String first = written.take();
+		String all = first.length() < 30 ? first + written.take() : first;
+		assertThat(all, is("alp://ppin/1/42\nalp://ppsw/2/1\n"));
+		client.close();
+	}
+
+	@Test
+	public void slowClientsGetDisconnected() throws Exception {
+		server.slowClients(DISCONNECT, 8);
+		Client slow = connectedClient();
+		char[] chars = new char[1000];
+		Arrays.fill(chars, 'x');
+		byte[] payload = ("alp://cevnt/" + new String(chars)).getBytes();
+		// the device's reader must never block
+		for (int i = 0; i < 20000; i++) {
+			connection.contactListeners4Received(payload);
+		}
+		try {
+			while (slow.read() != null) {
+				// read until the server closed the connection
+			}
+		} catch (SocketException e) {
+			// connection reset
+		}
+		slow.close();
+	}
+
+	@Test
+	public void slowDevicesPauseTheClientAndGetAllFrames() throws Exception {
+		server.relayMode(FRAMED);
+		deviceWritable = new CountDownLatch(1);
+		final Client client = connectedClient();
+		final int frames = 10000;
+		Thread sender = new Thread() {
+			@Override
+			public void run() {
+				for (int i = 0; i < frames; i++) {
+					client.send("alp://ppin/1/42");
+				}
+				try {
+					// the frames queued must still be written
+					client.close();
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		};
+		sender.start();
+		Thread.sleep(200);
+		deviceWritable.countDown();
+		int received = 0;
+		while (received < frames) {
+			String data = written.take();
+			for (int i = data.indexOf('\n'); i >= 0; i = data.indexOf('\n',
+					i + 1)) {
+				received++;
+			}
+		}
+		sender.join();
+		assertThat(received, is(frames));
+	}
+
+	@Test
+	public void multiplexedClientsCanPipelineRequests() throws Exception {
+		Client client = new Client();
+		client.send(V2_CMD);
+		assertThat(client.read(), is("OK"));
+		client.send("0 1 choices ardulink%3A%2F%2Fserial port");
+		client.send("0 2 open 1 ardulink%3A%2F%2Fmock");
+		client.send("0 3 open 2 ardulink%3A%2F%2Fmock");
+		assertThat(
+				new HashSet<String>(Arrays.asList(client.read(), client.read(),
+						client.read())),
+				is(new HashSet<String>(Arrays.asList(
+						"0 1 OK ardulink%3A%2F%2Fserial+port COM+2", "0 2 OK",
+						"0 3 OK"))));
+
+		client.send("2 alp://ppin/1/42");
+		assertThat(written.take(), is("alp://ppin/1/42\n"));
+
+		// both channels use the same link
+		connection.contactListeners4Received("alp://ared/1/2".getBytes());
+		assertThat(
+				new HashSet<String>(Arrays.asList(client.read(), client.read())),
+				is(new HashSet<String>(Arrays.asList("1 alp://ared/1/2",
+						"2 alp://ared/1/2"))));
+
+		client.send("0 4 close 1");
+		assertThat(client.read(), is("0 4 OK"));
+		connection.contactListeners4Received("alp://ared/1/3".getBytes());
+		assertThat(client.read(), is("2 alp://ared/1/3"));
+		client.close();
+	}
+
+	@Test
+	public void multiplexedClientsCanUseLinksNotBasedOnConnections()
+			throws Exception {
+		Client client = new Client();
+		client.send(V2_CMD);
+		assertThat(client.read(), is("OK"));
+		client.send("0 1 open 1 ardulink%3A%2F%2Frecording");
+		assertThat(client.read(), is("0 1 OK"));
+
+		client.send("1 alp://srla/1");
+		assertThat(written.take(), is("startListening " + analogPin(1)));
+		client.send("1 alp://ppin/1/42");
+		assertThat(written.take(), is("switchAnalogPin 1 42"));
+		client.send("1 alp://ppsw/3/1");
+		assertThat(written.take(), is("switchDigitalPin 3 true"));
+
+		recordingLink.fireStateChanged(new DefaultAnalogPinValueChangedEvent(
+				analogPin(1), 123));
+		assertThat(client.read(), is("1 alp://ared/1/123"));
+		client.close();
+	}
+
+	@Test
+	public void multiplexedClientsGetErrors() throws Exception {
+		Client client = new Client();
+		client.send(V2_CMD);
+		assertThat(client.read(), is("OK"));
+		client.send("0 1 open 0 ardulink%3A%2F%2Fmock");
+		assertThat(client.read(),
+				is("0 1 KO channel+must+be+greater+than+0+but+was+0"));
+		client.send("0 2 unknown");
+		assertThat(client.read(), is("0 2 KO Unknown+request+unknown"));
+		client.close();
+	}
+
+	private Client connectedClient() throws IOException {
+		Client client = new Client();
+		client.send(CONNECT_CMD);
+		client.send("COM1");
+		client.send("115200");
+		assertThat(client.read(), is("OK"));
+		return client;
+	}
+
+	private class Client {
+
+		private final Socket socket;
+		private final PrintWriter writer;
+		private final BufferedReader reader;
+
+		private Client() throws IOException {
+			this.socket = new Socket("127.0.0.1", server.getLocalPort());
+			this.writer = new PrintWriter(socket.getOutputStream());
+			this.reader = new BufferedReader(new InputStreamReader(
+					socket.getInputStream()));
+		}
+
+		private void sendRaw(String data) {
+			writer.print(data);
+			writer.flush();
+		}
+
+		private void send(String message) {
+			writer.print(message);
+			writer.print("\n");
+			writer.flush();
+		}
+
+		private String read() throws IOException {
+			return reader.readLine();
+		}
+
+		private void close() throws IOException {
+			socket.close();
+		}
+
+	}
+
+}
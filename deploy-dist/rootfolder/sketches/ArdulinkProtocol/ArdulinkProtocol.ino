@@ -33,9 +33,15 @@ boolean analogPinListening[analogPinListeningNum]; // Array used to know which p
 int digitalPinListenedValue[digitalPinListeningNum]; // Array used to know which value is read last time.
 int analogPinListenedValue[analogPinListeningNum]; // Array used to know which value is read last time.
 
+#define baudrateVerifyMillis 2000 // Time to wait for a message after switching the baudrate before falling back (this is general code you can reuse)
+long baudrate = 115200;          // the baudrate currently used (this is general code you can reuse)
+long switchToBaudrate = 0;       // baudrate proposed by the host, switched to after the reply was sent (this is general code you can reuse)
+long fallbackBaudrate = 0;       // baudrate to fall back to while the switched baudrate is not verified (this is general code you can reuse)
+unsigned long baudrateSwitchedAt = 0;
+
 void setup() {
   // initialize serial: (this is general code you can reuse)
-  Serial.begin(115200);
+  Serial.begin(baudrate);
   
   Serial.print("alp://rply/");
   Serial.print("ok?id=0");
@@ -71,11 +77,18 @@ void setup() {
 }
 
 void loop() {
+  // fall back if the host did not reach us at the switched baudrate (this is general code you can reuse)
+  if(fallbackBaudrate != 0 && millis() - baudrateSwitchedAt > baudrateVerifyMillis) {
+    switchBaudrate(fallbackBaudrate);
+    fallbackBaudrate = 0;
+  }
+
   // when a newline arrives:
   if (stringComplete) {
     
     if(inputString.startsWith("alp://")) { // OK is a message I know (this is general code you can reuse)
     
+      fallbackBaudrate = 0; // a message received verifies a switched baudrate
       boolean msgRecognized = true;
       
       if(inputString.substring(6,10) == "kprs") { // KeyPressed
@@ -137,6 +150,9 @@ void loop() {
           String pin = inputString.substring(11);
           analogPinListening[pin.toInt()] = false;
           analogPinListenedValue[pin.toInt()] = -1; // Ensure a message back when start listen happens.
+      } else if(inputString.substring(6,16) == "cust/baud/") { // Switch baudrate proposed by the host (this is general code you can reuse)
+          switchToBaudrate = inputString.substring(16).toInt();
+          msgRecognized = switchToBaudrate > 0;
       } else {
         msgRecognized = false; // this sketch doesn't know other messages in this case command is ko (not ok)
       }
@@ -161,6 +177,14 @@ void loop() {
     // clear the string:
     inputString = "";
     stringComplete = false;
+
+    // switch after the reply was sent at the old baudrate (this is general code you can reuse)
+    if(switchToBaudrate > 0) {
+      fallbackBaudrate = baudrate;
+      baudrateSwitchedAt = millis();
+      switchBaudrate(switchToBaudrate);
+      switchToBaudrate = 0;
+    }
   }
   
   // Send listen messages
@@ -195,6 +219,15 @@ void loop() {
   }
 }
 
+// Switches the serial line to the passed baudrate (this is general code you can reuse)
+void switchBaudrate(long newBaudrate) {
+  Serial.flush(); // wait until everything is sent at the old baudrate
+  Serial.end();   // drops bytes received at the old baudrate
+  Serial.begin(newBaudrate);
+  baudrate = newBaudrate;
+  inputString = "";
+}
+
 // Reads 4 times and computes the average value
 int highPrecisionAnalogRead(int pin) {
   int value1 = analogRead(pin);